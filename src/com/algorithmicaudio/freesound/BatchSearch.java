@@ -0,0 +1,267 @@
+package com.algorithmicaudio.freesound;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.algorithmicaudio.freesound.response.SearchResponse;
+
+/**
+ * A group of searches that are running at the same time. Instances are created by
+ * FreeSound.searchBatch.
+ *
+ * At most a fixed number of searches are sent at once. As each one finishes, the next one
+ * starts, and all of them still go through the rate limiter of the client. Every query gets its own
+ * future, so you can use each result as soon as it arrives, or wait for all of them with await().
+ *
+ * A search that fails doesn't stop the others. Its reason is kept in getErrors(), keyed by
+ * the query, instead of showing up as a null response.
+ */
+public class BatchSearch
+{
+	private final List<SearchQuery> queries;
+	private final Map<SearchQuery, CompletableFuture<SearchResponse>> futures;
+	private final CompletableFuture<BatchSearch> done = new CompletableFuture<BatchSearch>();
+	private final AtomicInteger nextQuery = new AtomicInteger(0);
+	private final AtomicInteger completed = new AtomicInteger(0);
+	private final QueryRunner runner;
+	private volatile boolean cancelled = false; // set by cancel, so that no more searches start
+
+	/**
+	 * Starts one search for a BatchSearch.
+	 */
+	interface QueryRunner
+	{
+		/**
+		 * @param	query	The search to start.
+		 * @return			A future that completes with the response. Cancelling it stops the search.
+		 */
+		CompletableFuture<SearchResponse> start(SearchQuery query);
+	}
+
+	/**
+	 * Start running the given searches. The first searches begin immediately.
+	 *
+	 * @param	queries						The searches. A query that is in the list twice is only run once.
+	 * @param	maximumConcurrentSearches	The maximum number of searches that are sent at the same time.
+	 * @param	runner						Starts each search.
+	 */
+	BatchSearch(List<SearchQuery> queries, int maximumConcurrentSearches, QueryRunner runner)
+	{
+		this.queries = Collections.unmodifiableList(new ArrayList<SearchQuery>(new LinkedHashSet<SearchQuery>(queries)));
+		this.runner = runner;
+
+		Map<SearchQuery, CompletableFuture<SearchResponse>> newFutures = new LinkedHashMap<SearchQuery, CompletableFuture<SearchResponse>>();
+		for(SearchQuery query : this.queries)
+		{
+			newFutures.put(query, new CompletableFuture<SearchResponse>());
+		}
+		futures = Collections.unmodifiableMap(newFutures);
+
+		if (this.queries.isEmpty())
+			done.complete(this);
+
+		for(int i = 0; i < Math.max(1, maximumConcurrentSearches); i++)
+		{
+			startNext();
+		}
+	}
+
+	/**
+	 * Start the next search that hasn't started yet, if there is one.
+	 */
+	private void startNext()
+	{
+		int index = nextQuery.getAndIncrement();
+		if (index >= queries.size())
+			return;
+
+		SearchQuery query = queries.get(index);
+		CompletableFuture<SearchResponse> future = futures.get(query);
+
+		// cancelled before it started, like when the whole batch was cancelled
+		if (cancelled || future.isDone())
+		{
+			future.cancel(true);
+			finished();
+			return;
+		}
+
+		CompletableFuture<SearchResponse> search;
+		try
+		{
+			search = runner.start(query);
+		}
+		catch(RuntimeException e)
+		{
+			search = new CompletableFuture<SearchResponse>();
+			search.completeExceptionally(e);
+		}
+
+		CompletableFuture<SearchResponse> running = search;
+		running.whenComplete((response, error) -> {
+			if (error != null)
+				future.completeExceptionally(unwrap(error));
+			else if (response == null)
+				future.completeExceptionally(new IllegalStateException("FreeSound returned no response for " + query + "."));
+			else
+				future.complete(response);
+			finished();
+		});
+
+		// cancelling the future of a query stops its search
+		future.whenComplete((response, error) -> {
+			if (future.isCancelled())
+				running.cancel(true);
+		});
+	}
+
+	/**
+	 * Called once for every query, when it has finished one way or another.
+	 */
+	private void finished()
+	{
+		if (completed.incrementAndGet() == queries.size())
+			done.complete(this);
+		startNext();
+	}
+
+	private static Throwable unwrap(Throwable error)
+	{
+		if (error instanceof CompletionException && error.getCause() != null)
+			return error.getCause();
+		return error;
+	}
+
+	/**
+	 * @return	the queries in this batch, in the order they were given, without duplicates
+	 */
+	public List<SearchQuery> getQueries()
+	{
+		return queries;
+	}
+
+	/**
+	 * One future per query, in the order the queries were given. Each future completes with the
+	 * response, or completes exceptionally if the search failed.
+	 */
+	public Map<SearchQuery, CompletableFuture<SearchResponse>> getFutures()
+	{
+		return futures;
+	}
+
+	/**
+	 * @param	query	One of the queries in this batch.
+	 * @return			The future for that query, or null if it isn't in this batch.
+	 */
+	public CompletableFuture<SearchResponse> getFuture(SearchQuery query)
+	{
+		return futures.get(query);
+	}
+
+	/**
+	 * @return	A future that completes with this batch when every search has finished, including failures.
+	 */
+	public CompletableFuture<BatchSearch> whenDone()
+	{
+		return done;
+	}
+
+	/**
+	 * @return	the number of searches that have finished, including failures
+	 */
+	public int getCompletedCount()
+	{
+		return completed.get();
+	}
+
+	/**
+	 * @return	the number of searches in this batch
+	 */
+	public int getTotalCount()
+	{
+		return queries.size();
+	}
+
+	/**
+	 * @return	true when every search has either succeeded or failed
+	 */
+	public boolean isDone()
+	{
+		return done.isDone();
+	}
+
+	/**
+	 * Stop every search that hasn't finished. Their futures are cancelled, and searches that are
+	 * on their way are interrupted.
+	 */
+	public void cancel()
+	{
+		// cancelling a running search makes room for the next one, so stop that from starting first
+		cancelled = true;
+		for(CompletableFuture<SearchResponse> future : futures.values())
+		{
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Block until every search has finished.
+	 *
+	 * @return	the responses of the searches that succeeded, keyed by query, in the order the queries were given
+	 */
+	public Map<SearchQuery, SearchResponse> await()
+	{
+		done.join();
+		return getResults();
+	}
+
+	/**
+	 * @return	the responses of the searches that have succeeded so far, keyed by query
+	 */
+	public Map<SearchQuery, SearchResponse> getResults()
+	{
+		Map<SearchQuery, SearchResponse> results = new LinkedHashMap<SearchQuery, SearchResponse>();
+		for(Map.Entry<SearchQuery, CompletableFuture<SearchResponse>> entry : futures.entrySet())
+		{
+			CompletableFuture<SearchResponse> future = entry.getValue();
+			if (future.isDone() && !future.isCompletedExceptionally())
+				results.put(entry.getKey(), future.join());
+		}
+		return results;
+	}
+
+	/**
+	 * @return	why each of the searches that have failed so far failed, keyed by query. Cancelled searches have a CancellationException.
+	 */
+	public Map<SearchQuery, Throwable> getErrors()
+	{
+		Map<SearchQuery, Throwable> errors = new LinkedHashMap<SearchQuery, Throwable>();
+		for(Map.Entry<SearchQuery, CompletableFuture<SearchResponse>> entry : futures.entrySet())
+		{
+			CompletableFuture<SearchResponse> future = entry.getValue();
+			if (!future.isCompletedExceptionally())
+				continue;
+			try
+			{
+				future.join();
+			}
+			catch(CancellationException e)
+			{
+				errors.put(entry.getKey(), e);
+			}
+			catch(CompletionException e)
+			{
+				errors.put(entry.getKey(), unwrap(e));
+			}
+		}
+		return errors;
+	}
+}
@@ -0,0 +1,173 @@
+package com.algorithmicaudio.freesound;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.algorithmicaudio.freesound.io.Local;
+
+/**
+ * A group of sounds that are being downloaded in parallel. Instances are created by
+ * FreeSound.downloadSounds.
+ *
+ * Sounds are saved either in a plain folder, named by id, or in the client's SoundLibrary.
+ *
+ * Each sound gets its own future, which completes with the path to the downloaded file.
+ * You can wait on individual sounds, wait on the whole batch with await(), or pass a
+ * DownloadListener to be told as each sound finishes.
+ */
+public class BulkDownload
+{
+	private final List<CompletableFuture<String>> futures;
+	private final AtomicInteger completed = new AtomicInteger(0);
+	private final int total;
+
+	/**
+	 * Downloads one sound for a BulkDownload.
+	 */
+	interface SoundDownloader
+	{
+		/**
+		 * @param	soundId		The id of the sound to download.
+		 * @return				The path to the sound file.
+		 */
+		String download(long soundId) throws Exception;
+	}
+
+	/**
+	 * Start downloading the given sounds. The downloads begin immediately.
+	 *
+	 * The downloads run on the client's executor instead of a pool of their own. A few workers are
+	 * started on it, one per concurrent download, and each one takes the next sound from the list
+	 * until the list is empty. So the executor is never asked for more than maximumConcurrentDownloads
+	 * threads at once, however many sounds there are.
+	 *
+	 * @param	soundIds					The ids of the sounds to download.
+	 * @param	maximumConcurrentDownloads	The maximum number of sounds that will be downloaded at the same time.
+	 * @param	downloader					Downloads each sound, unless it is already on disk.
+	 * @param	listener					Notified as each sound finishes. May be null.
+	 * @param	executor					Runs the workers.
+	 */
+	BulkDownload(List<Long> soundIds, int maximumConcurrentDownloads, SoundDownloader downloader, DownloadListener listener, Executor executor)
+	{
+		total = soundIds.size();
+		List<CompletableFuture<String>> newFutures = new ArrayList<CompletableFuture<String>>(total);
+		for(int i = 0; i < total; i++)
+		{
+			newFutures.add(new CompletableFuture<String>());
+		}
+		futures = Collections.unmodifiableList(newFutures);
+
+		AtomicInteger nextSound = new AtomicInteger(0);
+		int workers = Math.min(Math.max(1, maximumConcurrentDownloads), total);
+		for(int i = 0; i < workers; i++)
+		{
+			executor.execute(() -> {
+				int index;
+				while ((index = nextSound.getAndIncrement()) < total)
+				{
+					download(downloader, soundIds.get(index), listener, newFutures.get(index));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Download a single sound, complete its future, and tell the listener how it went.
+	 */
+	private void download(SoundDownloader downloader, long soundId, DownloadListener listener, CompletableFuture<String> future)
+	{
+		String filename;
+		try
+		{
+			filename = downloader.download(soundId);
+		}
+		catch(Exception e)
+		{
+			int done = completed.incrementAndGet();
+			future.completeExceptionally(e);
+			if (listener != null)
+				listener.onDownloadFailed(soundId, e, done, total);
+			return;
+		}
+
+		int done = completed.incrementAndGet();
+		future.complete(filename);
+		if (listener != null)
+			listener.onDownloadComplete(soundId, filename, done, total);
+	}
+
+	/**
+	 * The path where a bulk download saves a sound. Sounds are named by id, so that two
+	 * sounds with the same name never overwrite each other, and the extension comes from
+	 * the format of the sound, so 1234 in mp3 is saved as 1234.mp3.
+	 *
+	 * @param	directory	The directory where the sound files are saved.
+	 * @param	soundId		The id of the sound.
+	 * @param	type		The format of the sound, from SoundResponse.type, like "wav" or "flac". If it is null or empty, the file has no extension.
+	 * @return				The path to the sound file.
+	 */
+	public static String getSoundFilename(String directory, long soundId, String type)
+	{
+		return new File(directory, soundId + Local.getExtension(type)).getPath();
+	}
+
+	/**
+	 * One future per sound, in the same order as the sounds were requested. Each future
+	 * completes with the path to the sound file, or completes exceptionally if the download failed.
+	 */
+	public List<CompletableFuture<String>> getFutures()
+	{
+		return futures;
+	}
+
+	/**
+	 * @return	the number of sounds that have finished downloading, including failures
+	 */
+	public int getCompletedCount()
+	{
+		return completed.get();
+	}
+
+	/**
+	 * @return	the number of sounds in this bulk download
+	 */
+	public int getTotalCount()
+	{
+		return total;
+	}
+
+	/**
+	 * @return	true when every sound has either been downloaded or failed
+	 */
+	public boolean isDone()
+	{
+		return completed.get() == total;
+	}
+
+	/**
+	 * Block until every sound has finished.
+	 *
+	 * @return	the paths of the sounds that were downloaded successfully, in request order
+	 */
+	public List<String> await()
+	{
+		List<String> filenames = new ArrayList<String>(total);
+		for(CompletableFuture<String> future : futures)
+		{
+			try
+			{
+				filenames.add(future.join());
+			}
+			catch(Exception e)
+			{
+				// failures have already been reported to the listener
+			}
+		}
+		return filenames;
+	}
+}
@@ -0,0 +1,30 @@
+package com.algorithmicaudio.freesound;
+
+/**
+ * Receives progress notifications from a bulk download. See FreeSound.downloadSounds.
+ *
+ * These methods are called from the download threads, not from the thread that started
+ * the download, so keep them short and make sure anything they touch is thread safe.
+ */
+public interface DownloadListener
+{
+	/**
+	 * Called when a single sound has been downloaded, or was already on disk.
+	 *
+	 * @param	soundId		The id of the sound that finished.
+	 * @param	filename	The path to the sound file on your local system.
+	 * @param	completed	How many sounds in this bulk download have finished so far, including failures.
+	 * @param	total		How many sounds are in this bulk download.
+	 */
+	void onDownloadComplete(long soundId, String filename, int completed, int total);
+
+	/**
+	 * Called when a single sound could not be downloaded.
+	 *
+	 * @param	soundId		The id of the sound that failed.
+	 * @param	error		The reason the download failed.
+	 * @param	completed	How many sounds in this bulk download have finished so far, including failures.
+	 * @param	total		How many sounds are in this bulk download.
+	 */
+	void onDownloadFailed(long soundId, Exception error, int completed, int total);
+}
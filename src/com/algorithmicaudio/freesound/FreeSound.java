@@ -3,16 +3,58 @@ package com.algorithmicaudio.freesound;
 import java.awt.Desktop;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.security.auth.login.CredentialNotFoundException;
 
+import com.algorithmicaudio.freesound.cache.CacheKey;
+import com.algorithmicaudio.freesound.cache.DiskCache;
+import com.algorithmicaudio.freesound.cache.MemoryCache;
+import com.algorithmicaudio.freesound.io.CountingInputStream;
+import com.algorithmicaudio.freesound.io.DaemonThreadFactory;
+import com.algorithmicaudio.freesound.io.DownloadLocks;
+import com.algorithmicaudio.freesound.io.DownloadWriter;
+import com.algorithmicaudio.freesound.io.DownloadedFile;
 import com.algorithmicaudio.freesound.io.Local;
+import com.algorithmicaudio.freesound.io.Priority;
+import com.algorithmicaudio.freesound.io.RateLimiter;
 import com.algorithmicaudio.freesound.io.Remote;
+import com.algorithmicaudio.freesound.io.Transport;
+import com.algorithmicaudio.freesound.library.SoundLibrary;
+import com.algorithmicaudio.freesound.metrics.Metrics;
 import com.algorithmicaudio.freesound.response.AuthResponse;
+import com.algorithmicaudio.freesound.response.DescriptorLayout;
+import com.algorithmicaudio.freesound.response.Descriptors;
 import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SearchResponseReader;
+import com.algorithmicaudio.freesound.response.SoundResponse;
+import com.algorithmicaudio.freesound.response.SoundResponseAdapter;
 import com.google.gson.Gson; // GSON is Google's JSON parsing library. It is the only external dependency. You can get it from github at https://github.com/google/gson.
 
 /**
@@ -26,28 +68,328 @@ import com.google.gson.Gson; // GSON is Google's JSON parsing library. It is the
  *     making generative music with audio files from FreeSound.
  *  2. Present a simple, streamlined library that can be modified by
  *     musicians who may not be experienced programmers.   
+ *  
+ *  Thread safety: a FreeSound client can be shared by any number of threads. Everything it is
+ *  configured with is fixed when it is built, by the constructors or by a FreeSound.Builder, and
+ *  never changes afterwards. The only exception is the user access token, which the OAuth flow
+ *  fills in once. The JSON parser and the query parameters that every search sends are made once
+ *  and reused, so searches from many threads at once don't repeat that work. To change a setting,
+ *  build a new client with toBuilder().
+ *  
+ *  That includes how requests are sent. The transport, the disk cache, the rate limiter and the
+ *  download writer are given to the Builder, and the client keeps them in its own Remote, so
+ *  nothing elsewhere in the program can change them. To share one, like a disk cache, give the
+ *  same object to several builders. Clients share a rate limiter by default when they use the
+ *  same api key, because FreeSound counts requests per api key, not per client.
+ *  
+ *  A client starts a few background threads, for prefetching pages and for hedged searches. Call
+ *  close() when you are finished with a client to stop them. They are daemon threads, so a client
+ *  that is never closed doesn't keep your program alive, but a program that builds many clients
+ *  should close each one.
  */
-public class FreeSound
+public class FreeSound implements AutoCloseable
 {
-	public String clientSecret = ""; // Your client secret (aka Api Key) from https://freesound.org/apiv2/apply/
-	public String clientId = ""; // Your client id from https://freesound.org/apiv2/apply/
-	public String userAccessToken = ""; // the access token from OAuth Step 3. See https://freesound.org/docs/api/authentication.html#oauth-authentication
+	// the default fields returned on sounds from search endpoints. Others are: license, username. The type names the file extension of downloads.
+	private static final String[] DEFAULT_SEARCH_FIELDS = new String[] { "id", "name", "type", "duration", "tags", "analysis" };
 
-	/*
-	 * The fields returned on sounds from search endpoints
-	 * 
-	 * id, name, duration, tags, analysis, license, username
+	// the default analysis descriptors returned on sounds from search endpoints. For the full list, see https://freesound.org/docs/api/analysis_docs.html#analysis-docs
+	private static final String[] DEFAULT_DESCRIPTOR_FIELDS = new String[] { "lowlevel.average_loudness", "rhythm.bpm", "lowlevel.pitch_salience", "tonal.key_strength", "tonal.key_key", "tonal.key_scale" };
+
+	private static final String DEFAULT_API_URL = "https://www.freesound.org/apiv2/";
+
+	// the largest page FreeSound will return
+	private static final int MAXIMUM_PAGE_SIZE = 150;
+
+	/**
+	 * The most sounds that searchAllByText and searchAllByContent fetch, which is 100 pages of 150.
 	 */
-	public String[] searchFields = new String[] { "id", "name", "duration", "tags", "analysis" };
-	
-	/*
-	 * the analysis descriptors returned on sounds from search endpoints.
+	public static final int MAXIMUM_ALL_RESULTS = 15000;
+
+	// Gson is thread safe, so every client shares one
+	private static final Gson GSON = new Gson();
+
+	// runs the async methods, like searchAsync, unless another executor is chosen. See Builder.asyncExecutor.
+	private static final Executor DEFAULT_ASYNC_EXECUTOR = newAsyncExecutor();
+
+	// the rate limiter of every client that wasn't given one, by api key. See Builder.rateLimiter.
+	private static final ConcurrentHashMap<String, RateLimiter> RATE_LIMITERS = new ConcurrentHashMap<String, RateLimiter>();
+
+	// numbers the clients, so that each one watches its caches in Metrics under names of its own
+	private static final AtomicInteger CLIENT_COUNT = new AtomicInteger();
+
+	private final String clientSecret; // Your client secret (aka Api Key) from https://freesound.org/apiv2/apply/
+	private final String clientId; // Your client id from https://freesound.org/apiv2/apply/
+	private volatile String userAccessToken = ""; // the access token from OAuth Step 3. See https://freesound.org/docs/api/authentication.html#oauth-authentication
+
+	private final String[] searchFields; // the fields returned on sounds from search endpoints
+	private final String[] descriptorFields; // the analysis descriptors returned on sounds from search endpoints
+	private final String searchFieldsParameter; // searchFields joined with commas, the way every search sends them
+	private final String descriptorFieldsParameter; // descriptorFields joined with commas
+	private final DescriptorLayout descriptorLayout; // where each of the descriptorFields is stored in SoundResponse.descriptors
+	private final boolean keepAnalysis; // see Builder.keepAnalysis
+	private final SoundResponseAdapter soundAdapter; // parses each sound in a search response, straight into its descriptors
+
+	private final String apiUrl; // see Builder.apiUrl
+	private final LatencyPolicy latencyPolicy; // optional deadlines and hedged requests for searches. See Builder.latencyPolicy.
+	private final MemoryCache<SearchResponse> memoryCache; // optional cache of parsed search responses. See Builder.memoryCache.
+	private final SoundLibrary soundLibrary; // optional store of downloaded sounds, keyed by id. See Builder.soundLibrary.
+	private final Executor asyncExecutor; // see Builder.asyncExecutor
+	private final Remote remote; // sends every request, with the transport, disk cache, rate limiter and download writer from the builder
+	private final String memoryCacheMetricsName; // the names this client's caches are watched under in Metrics, like memory-3
+	private final String diskCacheMetricsName;
+	private final ConcurrentHashMap<String, CompletableFuture<SearchResponse>> inFlightSearches = new ConcurrentHashMap<String, CompletableFuture<SearchResponse>>(); // searches that are on their way, by normalized URL
+
+	// runs background work like prefetching the next page of results
+	private final ExecutorService backgroundExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("freesound-background"));
+
+	/**
+	 * Collects the settings for a FreeSound client, then builds it. Every setting except the client
+	 * secret is optional.
 	 * 
-	 * For the full list, see https://freesound.org/docs/api/analysis_docs.html#analysis-docs
+	 * For example:
+	 * FreeSound freeSoundClient = new FreeSound.Builder(clientSecret).memoryCache(new MemoryCache&lt;SearchResponse&gt;(100, 60000)).build();
 	 * 
-	 *  
+	 * A builder is not thread safe, but the client it builds is.
 	 */
-	public String[] descriptorFields = new String[] { "lowlevel.average_loudness", "rhythm.bpm", "lowlevel.pitch_salience", "tonal.key_strength", "tonal.key_key", "tonal.key_scale" };
+	public static class Builder
+	{
+		private final String clientSecret;
+		private String clientId = "";
+		private String authorizationCode = "";
+		private String userAccessToken = "";
+		private String[] searchFields = DEFAULT_SEARCH_FIELDS;
+		private String[] descriptorFields = DEFAULT_DESCRIPTOR_FIELDS;
+		private String apiUrl = DEFAULT_API_URL;
+		private LatencyPolicy latencyPolicy = null;
+		private MemoryCache<SearchResponse> memoryCache = null;
+		private SoundLibrary soundLibrary = null;
+		private Executor asyncExecutor = DEFAULT_ASYNC_EXECUTOR;
+		private boolean keepAnalysis = false;
+		private Transport transport = null;
+		private DiskCache diskCache = null;
+		private RateLimiter rateLimiter = null;
+		private boolean rateLimiterChosen = false; // false means the shared limiter for the api key
+		private DownloadWriter downloadWriter = null;
+
+		/**
+		 * @param	clientSecret	Your api key that permits you to use the FreeSound API. See https://freesound.org/apiv2/apply/
+		 */
+		public Builder(String clientSecret)
+		{
+			this.clientSecret = clientSecret;
+		}
+
+		/**
+		 * @param	clientId	The identifier that uniquely identifies your app. Only needed for the OAuth flow.
+		 * @return				this builder
+		 */
+		public Builder clientId(String clientId)
+		{
+			this.clientId = clientId;
+			return this;
+		}
+
+		/**
+		 * @param	authorizationCode	The code from the user that permits this app to request downloads for a user. See the OAuth flow in the constructor.
+		 * @return						this builder
+		 */
+		public Builder authorizationCode(String authorizationCode)
+		{
+			this.authorizationCode = authorizationCode;
+			return this;
+		}
+
+		/**
+		 * Use a user access token that you already have, instead of going through the OAuth flow.
+		 * An empty string means there is no token, so the OAuth flow runs as usual.
+		 * 
+		 * @param	userAccessToken		The access token from OAuth Step 3.
+		 * @return						this builder
+		 * @throws IllegalArgumentException	if the token is null
+		 */
+		public Builder userAccessToken(String userAccessToken)
+		{
+			if (userAccessToken == null)
+				throw new IllegalArgumentException("The user access token can't be null. Use an empty string if you don't have one.");
+			this.userAccessToken = userAccessToken;
+			return this;
+		}
+
+		/**
+		 * @param	searchFields	The fields returned on sounds from search endpoints, like id, name, duration, tags, analysis, license and username.
+		 * @return					this builder
+		 */
+		public Builder searchFields(String... searchFields)
+		{
+			this.searchFields = searchFields.clone();
+			return this;
+		}
+
+		/**
+		 * @param	descriptorFields	The analysis descriptors returned on sounds from search endpoints. See https://freesound.org/docs/api/analysis_docs.html#analysis-docs
+		 * @return						this builder
+		 */
+		public Builder descriptorFields(String... descriptorFields)
+		{
+			this.descriptorFields = descriptorFields.clone();
+			return this;
+		}
+
+		/**
+		 * Keep the raw analysis map on every sound, in SoundResponse.analysis, as well as the typed
+		 * SoundResponse.descriptors.
+		 * 
+		 * This is off by default, because building the map is most of the work of parsing a search.
+		 * Descriptors are read straight from the JSON into numbers, and SoundResponse.getAnalysis
+		 * builds a map from them only for the sounds you call it on. Turn this on if your code reads
+		 * the analysis field directly, or needs parts of the analysis that aren't descriptor fields.
+		 * 
+		 * @param	keepAnalysis	true to keep the analysis map
+		 * @return					this builder
+		 */
+		public Builder keepAnalysis(boolean keepAnalysis)
+		{
+			this.keepAnalysis = keepAnalysis;
+			return this;
+		}
+
+		/**
+		 * Send requests to a different server, like a local stub server used for testing.
+		 * 
+		 * @param	apiUrl	the base URL of the API, ending with a slash. The default is https://www.freesound.org/apiv2/
+		 * @return			this builder
+		 */
+		public Builder apiUrl(String apiUrl)
+		{
+			this.apiUrl = apiUrl;
+			return this;
+		}
+
+		/**
+		 * Give every search a deadline, and send a second request when a search is slow. See LatencyPolicy.
+		 * 
+		 * @param	latencyPolicy	the policy to use, or null to let searches take as long as they take
+		 * @return					this builder
+		 */
+		public Builder latencyPolicy(LatencyPolicy latencyPolicy)
+		{
+			this.latencyPolicy = latencyPolicy;
+			return this;
+		}
+
+		/**
+		 * Keep parsed search responses in memory, so that repeating a search does not touch the network,
+		 * the disk cache, or the JSON parser. The cached responses are shared, so do not modify them.
+		 * 
+		 * @param	memoryCache		The cache to use, or null for none.
+		 * @return					this builder
+		 */
+		public Builder memoryCache(MemoryCache<SearchResponse> memoryCache)
+		{
+			this.memoryCache = memoryCache;
+			return this;
+		}
+
+		/**
+		 * Save downloaded sounds in a library, organized by sound id, instead of at a path you choose.
+		 * For example: builder.soundLibrary(new SoundLibrary(new File("sounds")))
+		 * 
+		 * @param	soundLibrary	the library to download into, or null for none
+		 * @return					this builder
+		 */
+		public Builder soundLibrary(SoundLibrary soundLibrary)
+		{
+			this.soundLibrary = soundLibrary;
+			return this;
+		}
+
+		/**
+		 * Choose where the async methods, like searchAsync and downloadSoundAsync, do their work. Each call
+		 * takes one thread from the executor until its request is finished.
+		 * 
+		 * By default they run on virtual threads when the JDK has them (Java 21 and later), so hundreds of
+		 * requests can wait at once without a platform thread each. On older JDKs they run on a pool of
+		 * daemon threads. Either way, the rate limiter still decides how fast requests are sent.
+		 * 
+		 * @param	asyncExecutor	the executor to use, or null for the default
+		 * @return					this builder
+		 */
+		public Builder asyncExecutor(Executor asyncExecutor)
+		{
+			this.asyncExecutor = asyncExecutor == null ? DEFAULT_ASYNC_EXECUTOR : asyncExecutor;
+			return this;
+		}
+
+		/**
+		 * Choose how requests are sent. For example, to change the timeouts:
+		 * builder.transport(new HttpClientTransport(2000, 10000))
+		 * 
+		 * @param	transport	the transport to use, or null for the default HttpClientTransport
+		 * @return				this builder
+		 */
+		public Builder transport(Transport transport)
+		{
+			this.transport = transport;
+			return this;
+		}
+
+		/**
+		 * Keep search responses in a cache on disk, so that repeated searches do not go to the network,
+		 * even after your program restarts. Several clients can share one cache.
+		 * For example: builder.diskCache(new DiskCache(new File("cache"), 50000000, 86400000))
+		 * 
+		 * @param	diskCache	the cache to use, or null for none
+		 * @return				this builder
+		 */
+		public Builder diskCache(DiskCache diskCache)
+		{
+			this.diskCache = diskCache;
+			return this;
+		}
+
+		/**
+		 * Choose the rate limiter that every request of the client waits in.
+		 * 
+		 * By default, every client with the same api key shares one RateLimiter with the standard
+		 * FreeSound limits, because FreeSound counts requests per api key. Give a limiter of your own
+		 * if your key has different limits, or null to send requests as fast as they are made, which
+		 * is only sensible for a local test server.
+		 * 
+		 * @param	rateLimiter	the rate limiter to use, or null for none
+		 * @return				this builder
+		 */
+		public Builder rateLimiter(RateLimiter rateLimiter)
+		{
+			this.rateLimiter = rateLimiter;
+			this.rateLimiterChosen = true;
+			return this;
+		}
+
+		/**
+		 * Change how downloaded files are written to disk. For example, to use a 1 MB buffer and
+		 * compute a checksum of every file: builder.downloadWriter(new DownloadWriter(1024 * 1024, true))
+		 * 
+		 * @param	downloadWriter	the writer to use, or null for the default
+		 * @return					this builder
+		 */
+		public Builder downloadWriter(DownloadWriter downloadWriter)
+		{
+			this.downloadWriter = downloadWriter;
+			return this;
+		}
+
+		/**
+		 * Build the client. Unless a user access token was given, this runs the OAuth flow the same way
+		 * the constructors do.
+		 * 
+		 * @return	the client
+		 * @throws CredentialNotFoundException	if there is no client secret
+		 */
+		public FreeSound build() throws CredentialNotFoundException
+		{
+			return new FreeSound(this);
+		}
+	}
 
 	/**
 	 * This simple constructor will only allow your app to search for files. It will not 
@@ -72,17 +414,81 @@ public class FreeSound
 	 * @throws CredentialNotFoundException 
 	 */
 	public FreeSound(String newClientSecret, String newClientId, String newAuthorizationCode) throws CredentialNotFoundException
+	{
+		this(new Builder(newClientSecret).clientId(newClientId).authorizationCode(newAuthorizationCode));
+	}
+
+	/**
+	 * Build a client from the settings in a Builder.
+	 */
+	private FreeSound(Builder builder) throws CredentialNotFoundException
 	{
 		// ensure that we have the credentials necessary to use the FreeSound API at some level
-		if( newClientSecret.length() == 0 )
+		if( builder.clientSecret == null || builder.clientSecret.length() == 0 )
 		{
 			throw new CredentialNotFoundException("You must obtain developer credentials from FreeSound in order to use the FreeSound API. It only takes a second. Go to https://freesound.org/help/developers/ and sign up.");
 		}
 		
-		clientSecret = newClientSecret;
-		clientId = newClientId;
-		
-		authorize(newAuthorizationCode);
+		clientSecret = builder.clientSecret;
+		clientId = builder.clientId;
+
+		searchFields = builder.searchFields;
+		descriptorFields = builder.descriptorFields;
+		searchFieldsParameter = String.join(",", searchFields);
+		descriptorFieldsParameter = String.join(",", descriptorFields);
+		descriptorLayout = new DescriptorLayout(descriptorFields);
+		keepAnalysis = builder.keepAnalysis;
+		soundAdapter = new SoundResponseAdapter(descriptorLayout, keepAnalysis);
+
+		apiUrl = builder.apiUrl;
+		latencyPolicy = builder.latencyPolicy;
+		memoryCache = builder.memoryCache;
+		soundLibrary = builder.soundLibrary;
+		asyncExecutor = builder.asyncExecutor;
+
+		RateLimiter rateLimiter = builder.rateLimiterChosen ? builder.rateLimiter : RATE_LIMITERS.computeIfAbsent(clientSecret, key -> new RateLimiter());
+		remote = new Remote(builder.transport, builder.diskCache, rateLimiter, builder.downloadWriter);
+
+		// each client watches its caches under its own names, and stops watching them in close
+		int clientNumber = CLIENT_COUNT.incrementAndGet();
+		memoryCacheMetricsName = "memory-" + clientNumber;
+		diskCacheMetricsName = "disk-" + clientNumber;
+		if (memoryCache != null)
+			Metrics.watchCache(memoryCacheMetricsName, memoryCache::getHitCount, memoryCache::getMissCount);
+		DiskCache diskCache = remote.getCache();
+		if (diskCache != null)
+			Metrics.watchCache(diskCacheMetricsName, diskCache::getHitCount, diskCache::getMissCount);
+
+		if (builder.userAccessToken.length() > 0)
+			userAccessToken = builder.userAccessToken;
+		else
+			authorize(builder.authorizationCode);
+	}
+
+	/**
+	 * Start a Builder with every setting of this client, so that you can build a new client that
+	 * differs in just a few settings. The user access token is carried over too.
+	 * 
+	 * @return	a builder with the settings of this client
+	 */
+	public Builder toBuilder()
+	{
+		Builder builder = new Builder(clientSecret)
+			.clientId(clientId)
+			.userAccessToken(userAccessToken)
+			.apiUrl(apiUrl)
+			.latencyPolicy(latencyPolicy)
+			.memoryCache(memoryCache)
+			.soundLibrary(soundLibrary)
+			.asyncExecutor(asyncExecutor)
+			.keepAnalysis(keepAnalysis)
+			.transport(remote.getTransport())
+			.diskCache(remote.getCache())
+			.rateLimiter(remote.getRateLimiter())
+			.downloadWriter(remote.getDownloadWriter());
+		builder.searchFields = searchFields;
+		builder.descriptorFields = descriptorFields;
+		return builder;
 	}
 	
 	/**
@@ -182,10 +588,9 @@ public class FreeSound
 		formData.put("grant_type", "authorization_code");
 		formData.put("code", authorizationCode);
 
-		String authorizationJson = Remote.httpPost("https://freesound.org/apiv2/oauth2/access_token/", formData);
+		String authorizationJson = remote.httpPost("https://freesound.org/apiv2/oauth2/access_token/", formData);
 
-		Gson gson = new Gson();
-		AuthResponse result = gson.fromJson(authorizationJson, AuthResponse.class);
+		AuthResponse result = GSON.fromJson(authorizationJson, AuthResponse.class);
 
 		if (result.access_token.length() > 0)
 		{
@@ -227,35 +632,62 @@ public class FreeSound
 	 * @return								The SearchResponse from FreeSound
 	 */
 	public SearchResponse searchByText(String searchString, String tag, int maximumDurationInSeconds, boolean canonical)
+	{
+		return searchByText(searchString, tag, maximumDurationInSeconds, canonical, null);
+	}
+
+	/**
+	 * Search for a sound by text, and hand each sound to a callback as soon as it arrives. This lets you
+	 * start working with the first sounds before the whole page has been downloaded.
+	 * 
+	 * @param	searchString				the text you want to search for
+	 * @param	tag							only return sounds with this tag. May be empty.
+	 * @param 	maximumDurationInSeconds	the maximum duration of returned sounds. It may be desirable to exclude long ambient sounds.
+	 * @param 	canonical					Return only canonical wav files?
+	 * @param	onSound						called with each sound as soon as it is parsed
+	 * @return								The SearchResponse from FreeSound
+	 */
+	public SearchResponse searchByText(String searchString, String tag, int maximumDurationInSeconds, boolean canonical, Consumer<SoundResponse> onSound)
 	{
 		try
 		{
-			// make the hash of parameters for the HTTP post request
-			HashMap<String, String> params = new HashMap<String, String>();
-			params.put("fields", String.join(",", searchFields));
-			params.put("descriptors", String.join(",", descriptorFields));
-			params.put("format", "json");
-			params.put("token", clientSecret);
-			
-			// if there is a text search, then include - this method is also used to search by tag, so the text search may not be used
-			if( searchString.length() > 0 )
-				params.put("query", searchString);
-			
-			String filter = buildFilter(tag, canonical, maximumDurationInSeconds);
-			if(filter.length() > 0)
-				params.put("filter", filter);
-
+			HashMap<String, String> params = textSearchParameters(searchString, tag, maximumDurationInSeconds, canonical);
 			String query = getSearchUrl("search/text/?" + Remote.makeParameters(params));
 
 			// query the FreeSound API
-			String jsonString = Remote.httpGet(query);
-			// if we managed to get a response
-			if (jsonString.length() > 0)
-			{
-				// gson
-				Gson gson = new Gson();
-				return gson.fromJson(jsonString, SearchResponse.class);
-			}
+			return fetchSearch(query, onSound, Priority.INTERACTIVE);
+		}
+		catch(Exception e)
+		{
+			System.out.println("Error while searching freesound for " + searchString + "\n" + e.getMessage());
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Search for a sound by text, and return every result instead of just the first page. Once the first
+	 * page says how many pages there are, the rest are requested at the same time.
+	 * 
+	 * At most MAXIMUM_ALL_RESULTS sounds are returned. If there are more, the next field of the response
+	 * points at the rest. If any page fails, the whole search fails, so a response is never missing pages.
+	 * 
+	 * @param	searchString				the text you want to search for
+	 * @param	tag							only return sounds with this tag. May be empty.
+	 * @param 	maximumDurationInSeconds	the maximum duration of returned sounds
+	 * @param 	canonical					Return only canonical wav files?
+	 * @param	pageSize					how many sounds to request per page. FreeSound allows up to 150.
+	 * @param	maximumConcurrentRequests	the maximum number of pages to request at the same time
+	 * @return								A SearchResponse containing every result, in order, or null if the search failed
+	 * @throws IllegalArgumentException	if pageSize isn't between 1 and 150, or maximumConcurrentRequests is less than 1
+	 */
+	public SearchResponse searchAllByText(String searchString, String tag, int maximumDurationInSeconds, boolean canonical, int pageSize, int maximumConcurrentRequests)
+	{
+		checkAllPagesArguments(pageSize, maximumConcurrentRequests);
+		try
+		{
+			HashMap<String, String> params = textSearchParameters(searchString, tag, maximumDurationInSeconds, canonical);
+			return fetchAllPages("search/text/", params, pageSize, maximumConcurrentRequests);
 		}
 		catch(Exception e)
 		{
@@ -265,6 +697,29 @@ public class FreeSound
 		return null;
 	}
 
+	/**
+	 * Build the parameters for a text search.
+	 */
+	private HashMap<String, String> textSearchParameters(String searchString, String tag, int maximumDurationInSeconds, boolean canonical)
+	{
+		// make the hash of parameters for the HTTP post request
+		HashMap<String, String> params = new HashMap<String, String>();
+		params.put("fields", searchFieldsParameter);
+		params.put("descriptors", descriptorFieldsParameter);
+		params.put("format", "json");
+		params.put("token", clientSecret);
+		
+		// if there is a text search, then include - this method is also used to search by tag, so the text search may not be used
+		if( searchString.length() > 0 )
+			params.put("query", searchString);
+		
+		String filter = buildFilter(tag, canonical, maximumDurationInSeconds);
+		if(filter.length() > 0)
+			params.put("filter", filter);
+
+		return params;
+	}
+
 	/**
 	 * This uses content search to find sounds in a specific key.
 	 * 
@@ -274,7 +729,19 @@ public class FreeSound
 	 */
 	public SearchResponse searchByKey(String key, String scale)
 	{
-		return searchByContent("(tonal.key_key:\"" + key + "\" AND tonal.key_scale:\"" + scale + "\")", true, 0);
+		return searchByContent(keyFilter(key, scale), true, 0);
+	}
+
+	/**
+	 * Build the descriptors filter that searchByKey uses. It can also be run locally with DescriptorIndex.query.
+	 * 
+	 * @param 	key							for example, C
+	 * @param 	scale						major or minor
+	 * @return								the descriptors filter
+	 */
+	public static String keyFilter(String key, String scale)
+	{
+		return "(tonal.key_key:\"" + key + "\" AND tonal.key_scale:\"" + scale + "\")";
 	}
 	
 	/**
@@ -286,30 +753,55 @@ public class FreeSound
 	 * @return								SearchResponse
 	 */
 	public SearchResponse searchByContent(String descriptorsFilter, boolean canonical, int maximumDurationInSeconds)
+	{
+		return searchByContent(descriptorsFilter, canonical, maximumDurationInSeconds, null);
+	}
+
+	/**
+	 * Search based on numeric descriptions of the sounds, and hand each sound to a callback as soon as it
+	 * arrives. See searchByText.
+	 * 
+	 * @param 	descriptorsFilter			The descriptors that describe the target sound
+	 * @param 	canonical					Return only canonical wav files?
+	 * @param 	maximumDurationInSeconds	The maximum duration for returned sound files.
+	 * @param	onSound						called with each sound as soon as it is parsed
+	 * @return								SearchResponse
+	 */
+	public SearchResponse searchByContent(String descriptorsFilter, boolean canonical, int maximumDurationInSeconds, Consumer<SoundResponse> onSound)
 	{
 		try
 		{
-			// make the hash of parameters for the HTTP post request
-			HashMap<String, String> params = new HashMap<String, String>();
-			params.put("fields", String.join(",", searchFields));
-			params.put("descriptors", String.join(",", descriptorFields));
-			params.put("format", "json");
-			params.put("token", clientSecret);
-			params.put("descriptors_filter", descriptorsFilter);
-			
-			String filter = buildFilter("", canonical, maximumDurationInSeconds);
-			if(filter.length() > 0)
-				params.put("filter", filter);
-
+			HashMap<String, String> params = contentSearchParameters(descriptorsFilter, canonical, maximumDurationInSeconds);
 			String query = getSearchUrl("search/content/?" + Remote.makeParameters(params));
 			
-			String jsonString = Remote.httpGet(query);
-			if (jsonString.length() > 0)
-			{
-				// gson
-				Gson gson = new Gson();
-				return gson.fromJson(jsonString, SearchResponse.class);
-			}
+			return fetchSearch(query, onSound, Priority.INTERACTIVE);
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Search based on numeric descriptions of the sounds, and return every result instead of just the
+	 * first page. See searchAllByText.
+	 * 
+	 * @param 	descriptorsFilter			The descriptors that describe the target sound
+	 * @param 	canonical					Return only canonical wav files?
+	 * @param 	maximumDurationInSeconds	The maximum duration for returned sound files.
+	 * @param	pageSize					how many sounds to request per page. FreeSound allows up to 150.
+	 * @param	maximumConcurrentRequests	the maximum number of pages to request at the same time
+	 * @return								A SearchResponse containing every result, in order, or null if the search failed
+	 * @throws IllegalArgumentException	if pageSize isn't between 1 and 150, or maximumConcurrentRequests is less than 1
+	 */
+	public SearchResponse searchAllByContent(String descriptorsFilter, boolean canonical, int maximumDurationInSeconds, int pageSize, int maximumConcurrentRequests)
+	{
+		checkAllPagesArguments(pageSize, maximumConcurrentRequests);
+		try
+		{
+			HashMap<String, String> params = contentSearchParameters(descriptorsFilter, canonical, maximumDurationInSeconds);
+			return fetchAllPages("search/content/", params, pageSize, maximumConcurrentRequests);
 		}
 		catch(Exception e)
 		{
@@ -318,6 +810,125 @@ public class FreeSound
 		return null;
 	}
 
+	/**
+	 * Build the parameters for a content search.
+	 */
+	private HashMap<String, String> contentSearchParameters(String descriptorsFilter, boolean canonical, int maximumDurationInSeconds)
+	{
+		// make the hash of parameters for the HTTP post request
+		HashMap<String, String> params = new HashMap<String, String>();
+		params.put("fields", searchFieldsParameter);
+		params.put("descriptors", descriptorFieldsParameter);
+		params.put("format", "json");
+		params.put("token", clientSecret);
+		params.put("descriptors_filter", descriptorsFilter);
+		
+		String filter = buildFilter("", canonical, maximumDurationInSeconds);
+		if(filter.length() > 0)
+			params.put("filter", filter);
+
+		return params;
+	}
+
+	/**
+	 * Check the arguments of searchAllByText and searchAllByContent before anything is sent.
+	 */
+	private static void checkAllPagesArguments(int pageSize, int maximumConcurrentRequests)
+	{
+		if (pageSize < 1 || pageSize > MAXIMUM_PAGE_SIZE)
+			throw new IllegalArgumentException("The page size must be between 1 and " + MAXIMUM_PAGE_SIZE + ", but it was " + pageSize + ".");
+		if (maximumConcurrentRequests < 1)
+			throw new IllegalArgumentException("At least one page must be requested at a time, but maximumConcurrentRequests was " + maximumConcurrentRequests + ".");
+	}
+
+	/**
+	 * Request every page of a search. The first page is requested on its own, to find out how many
+	 * pages there are. Then the remaining pages are requested in parallel and merged back in order.
+	 * 
+	 * At most MAXIMUM_ALL_RESULTS sounds are fetched. If the search has more than that, the merged
+	 * response stops there, and its next field points at the first page that wasn't fetched.
+	 * 
+	 * @param	endpoint					the search endpoint, like search/text/
+	 * @param	params						the search parameters
+	 * @param	pageSize					how many sounds to request per page
+	 * @param	maximumConcurrentRequests	the maximum number of pages to request at the same time
+	 * @return								A SearchResponse containing every result
+	 * @throws IOException	if any of the pages failed. The pages that were still on their way are cancelled.
+	 */
+	private SearchResponse fetchAllPages(String endpoint, HashMap<String, String> params, int pageSize, int maximumConcurrentRequests) throws IOException, InterruptedException
+	{
+		params.put("page_size", Integer.toString(pageSize));
+		params.put("page", "1");
+		SearchResponse first = fetchSearch(getSearchUrl(endpoint + "?" + Remote.makeParameters(params)), null, Priority.BACKGROUND);
+		if (first == null || first.results == null)
+			return first;
+
+		// FreeSound reports the total number of results, so work out the number of pages if it isn't given
+		int pageCount = first.num_pages > 0 ? first.num_pages : (first.count + pageSize - 1) / pageSize;
+
+		// don't let a broad search queue thousands of pages
+		int fetchedPageCount = Math.min(pageCount, Math.max(1, MAXIMUM_ALL_RESULTS / pageSize));
+
+		List<Future<SearchResponse>> pages = new ArrayList<Future<SearchResponse>>();
+		ExecutorService pool = null;
+		try
+		{
+			if (fetchedPageCount > 1)
+			{
+				pool = Executors.newFixedThreadPool(Math.min(maximumConcurrentRequests, fetchedPageCount - 1), new DaemonThreadFactory("freesound-pages"));
+				for(int page = 2; page <= fetchedPageCount; page++)
+				{
+					String query = getPageUrl(endpoint, params, page);
+					pages.add(pool.submit(() -> fetchSearch(query, null, Priority.BACKGROUND)));
+				}
+				pool.shutdown();
+			}
+
+			// merge the pages back together, in order
+			SearchResponse merged = new SearchResponse();
+			merged.count = first.count;
+			merged.num_pages = pageCount;
+			merged.next = fetchedPageCount < pageCount ? getPageUrl(endpoint, params, fetchedPageCount + 1) : null;
+			merged.results = new ArrayList<SoundResponse>(first.results);
+			for(int i = 0; i < pages.size(); i++)
+			{
+				SearchResponse page;
+				try
+				{
+					page = pages.get(i).get();
+				}
+				catch(ExecutionException e)
+				{
+					throw new IOException("Unable to fetch page " + (i + 2) + " of " + pageCount + ".", e.getCause());
+				}
+				if (page == null || page.results == null)
+					throw new IOException("Unable to fetch page " + (i + 2) + " of " + pageCount + ".");
+				merged.results.addAll(page.results);
+			}
+			return merged;
+		}
+		finally
+		{
+			// after a failure or an interruption, stop the pages that haven't arrived, so that they don't use up the rate limit
+			for(Future<SearchResponse> page : pages)
+			{
+				page.cancel(true);
+			}
+			if (pool != null)
+				pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return	the URL of one page of a search
+	 */
+	private String getPageUrl(String endpoint, HashMap<String, String> params, int page)
+	{
+		HashMap<String, String> pageParams = new HashMap<String, String>(params);
+		pageParams.put("page", Integer.toString(page));
+		return getSearchUrl(endpoint + "?" + Remote.makeParameters(pageParams));
+	}
+
 	/**
 	 * Search for sounds that are similar to the sound with the id passed in as argument. This version of this method uses the
 	 * default arguments, with no maximum duration, maximum results set to 15, and only returning canonical wav files, which are
@@ -345,33 +956,7 @@ public class FreeSound
 	{
 		try
 		{
-			
-			// make the hash of parameters for the HTTP post request
-			HashMap<String, String> params = new HashMap<String, String>();
-			params.put("target", SoundId);
-			params.put("fields", String.join(",", searchFields));
-			params.put("descriptors", String.join(",", descriptorFields));
-			params.put("format", "json");
-			params.put("token", clientSecret);
-			
-			String filter = buildFilter("", Canonical, MaximumDurationInSeconds);
-			if(filter.length() > 0)
-				params.put("filter", filter);
-
-			/*
-			 * The similar sounds endpoint is actually at sounds/<SOUND_ID>/similar/?etc
-			 * but it doesn't support filters, while the combined search endpoint
-			 * DOES support filters. So we use that.
-			 */
-			String query = getSearchUrl("search/combined/?" + Remote.makeParameters(params));
-
-			String jsonString = Remote.httpGet(query);
-			if (jsonString.length() > 0)
-			{
-				// gson
-				Gson gson = new Gson();
-				return gson.fromJson(jsonString, SearchResponse.class);
-			}
+			return fetchSearch(similarSearchQuery(SoundId, MaximumDurationInSeconds, MaximumResults, Canonical), null, Priority.INTERACTIVE);
 		}
 		catch(Exception e)
 		{
@@ -382,52 +967,818 @@ public class FreeSound
 	}
 
 	/**
-	 * Download a sound from FreeSound.
-	 * 
-	 * @param newFilename the path to the file on your local system where the audio file will be saved
-	 * @param soundId     the id of the sound to be downloaded
-	 * @return String the path to the newly created file
-	 * @throws CredentialNotFoundException 
+	 * Build the URL of a search for similar sounds.
 	 */
-	public String downloadSound(String newFilename, long soundId) throws CredentialNotFoundException
-	{	
-		// ensure that we have the credentials necessary to download sounds from the FreeSound API
-		if( userAccessToken.length() == 0 )
-		{
-			throw new CredentialNotFoundException("You must obtain a user access token from FreeSound in order to download sounds. See https://freesound.org/docs/api/authentication.html#oauth-authentication.");
-		}
+	private String similarSearchQuery(String SoundId, int MaximumDurationInSeconds, int MaximumResults, boolean Canonical)
+	{
+		// make the hash of parameters for the HTTP post request
+		HashMap<String, String> params = new HashMap<String, String>();
+		params.put("target", SoundId);
+		params.put("fields", searchFieldsParameter);
+		params.put("descriptors", descriptorFieldsParameter);
+		params.put("format", "json");
+		params.put("token", clientSecret);
+		
+		String filter = buildFilter("", Canonical, MaximumDurationInSeconds);
+		if(filter.length() > 0)
+			params.put("filter", filter);
 
-		try
-		{
-			// only download the file if it doesn't already exist
-			File f = new File(newFilename);
-			if (!f.exists())
-			{
-				String url = getDownloadUrl(Long.toString(soundId));
-				if (!Remote.httpGetBinary(url, newFilename, userAccessToken))
-				{
-					System.out.println("Unable to download " + newFilename + ".");
-				}
-			}
-			return newFilename; // return the complete path to the sound file
-		}
-		catch(Exception e)
-		{
-			System.out.println(e.getMessage());
-			System.out.println(e.getStackTrace());
-		}
-		return "";
+		/*
+		 * The similar sounds endpoint is actually at sounds/<SOUND_ID>/similar/?etc
+		 * but it doesn't support filters, while the combined search endpoint
+		 * DOES support filters. So we use that.
+		 */
+		return getSearchUrl("search/combined/?" + Remote.makeParameters(params));
 	}
 
 	/**
-	 * Get the URL for a request to a search endpoint.
+	 * Search for a sound by text without waiting for the answer. The search runs on the async executor
+	 * (see Builder.asyncExecutor), so the calling thread, like a sequencer thread, is never blocked.
+	 * 
+	 * For example:
+	 * freeSoundClient.searchAsync("glass").thenAccept(response -&gt; play(response.results.get(0)));
+	 * 
+	 * Unlike search, a failed search doesn't return null. The future completes exceptionally with the
+	 * reason instead. Cancelling the future with cancel(true) interrupts the request.
+	 * 
+	 * @param	searchString	The text that you want to search for
+	 * @return					The search response from FreeSound, when it arrives
+	 */
+	public CompletableFuture<SearchResponse> searchAsync(String searchString)
+	{
+		return searchByTextAsync(searchString, "", 0, true);
+	}
+
+	/**
+	 * Search for sounds with a tag without waiting for the answer. See searchAsync.
+	 * 
+	 * @param	tag		The tag to search for
+	 * @return			The search response from FreeSound, when it arrives
+	 */
+	public CompletableFuture<SearchResponse> searchByTagAsync(String tag)
+	{
+		return searchByTextAsync("", tag, 0, true);
+	}
+
+	/**
+	 * Search for a sound by text without waiting for the answer. See searchAsync.
+	 * 
+	 * @param	searchString				the text you want to search for
+	 * @param	tag							only return sounds with this tag. May be empty.
+	 * @param 	maximumDurationInSeconds	the maximum duration of returned sounds
+	 * @param 	canonical					Return only canonical wav files?
+	 * @return								The search response from FreeSound, when it arrives
+	 */
+	public CompletableFuture<SearchResponse> searchByTextAsync(String searchString, String tag, int maximumDurationInSeconds, boolean canonical)
+	{
+		String query = getSearchUrl("search/text/?" + Remote.makeParameters(textSearchParameters(searchString, tag, maximumDurationInSeconds, canonical)));
+		return InterruptibleFuture.submit(asyncExecutor, () -> fetchSearch(query, null, Priority.INTERACTIVE));
+	}
+
+	/**
+	 * Search for sounds in a key without waiting for the answer. See searchAsync and searchByKey.
+	 * 
+	 * @param 	key		for example, C
+	 * @param 	scale	major or minor
+	 * @return			The search response from FreeSound, when it arrives
+	 */
+	public CompletableFuture<SearchResponse> searchByKeyAsync(String key, String scale)
+	{
+		return searchByContentAsync(keyFilter(key, scale), true, 0);
+	}
+
+	/**
+	 * Search based on numeric descriptions of the sounds without waiting for the answer. See searchAsync
+	 * and searchByContent.
+	 * 
+	 * @param 	descriptorsFilter			The descriptors that describe the target sound
+	 * @param 	canonical					Return only canonical wav files?
+	 * @param 	maximumDurationInSeconds	The maximum duration for returned sound files.
+	 * @return								The search response from FreeSound, when it arrives
+	 */
+	public CompletableFuture<SearchResponse> searchByContentAsync(String descriptorsFilter, boolean canonical, int maximumDurationInSeconds)
+	{
+		String query = getSearchUrl("search/content/?" + Remote.makeParameters(contentSearchParameters(descriptorsFilter, canonical, maximumDurationInSeconds)));
+		return InterruptibleFuture.submit(asyncExecutor, () -> fetchSearch(query, null, Priority.INTERACTIVE));
+	}
+
+	/**
+	 * Search for sounds that are similar to a target sound without waiting for the answer. See searchAsync.
+	 * 
+	 * @param	SoundId		The id of the target sound
+	 * @return				The search response from FreeSound, when it arrives
+	 */
+	public CompletableFuture<SearchResponse> searchForSimilarAsync(String SoundId)
+	{
+		return searchForSimilarAsync(SoundId, 0, 15, true);
+	}
+
+	/**
+	 * Search for sounds that are similar to a target sound without waiting for the answer. See searchAsync.
+	 * 
+	 * @param 	SoundId						The id of the target sound
+	 * @param 	MaximumDurationInSeconds	The maximum duration of returned sounds
+	 * @param 	MaximumResults				The maximum number of results to return
+	 * @param 	Canonical					Return only canonical wav files?
+	 * @return								The search response from FreeSound, when it arrives
+	 */
+	public CompletableFuture<SearchResponse> searchForSimilarAsync(String SoundId, int MaximumDurationInSeconds, int MaximumResults, boolean Canonical)
+	{
+		String query = similarSearchQuery(SoundId, MaximumDurationInSeconds, MaximumResults, Canonical);
+		return InterruptibleFuture.submit(asyncExecutor, () -> fetchSearch(query, null, Priority.INTERACTIVE));
+	}
+
+	/**
+	 * Run a search that was written down as a SearchQuery, without waiting for the answer. See searchAsync.
+	 * 
+	 * @param	query	the search to run
+	 * @return			The search response from FreeSound, when it arrives
+	 */
+	public CompletableFuture<SearchResponse> searchAsync(SearchQuery query)
+	{
+		String url = getQueryUrl(query);
+		return InterruptibleFuture.submit(asyncExecutor, () -> fetchSearch(url, null, Priority.INTERACTIVE));
+	}
+
+	/**
+	 * Run a batch of searches at the same time, like one search per tag or key in a composition plan,
+	 * instead of calling searchByTag or searchByKey over and over. The searches run on the async
+	 * executor, no more than maximumConcurrentSearches at once, and they all go through the rate limiter.
+	 * 
+	 * For example:
+	 * BatchSearch batch = freeSoundClient.searchBatch(Arrays.asList(SearchQuery.tag("kick"), SearchQuery.tag("snare")), 8);
+	 * Map&lt;SearchQuery, SearchResponse&gt; results = batch.await();
+	 * 
+	 * Searches that fail are reported in batch.getErrors(), keyed by query, rather than as nulls.
+	 * 
+	 * @param	queries						the searches to run
+	 * @param	maximumConcurrentSearches	the maximum number of searches to send at the same time
+	 * @return								a BatchSearch that tracks every search
+	 */
+	public BatchSearch searchBatch(List<SearchQuery> queries, int maximumConcurrentSearches)
+	{
+		return new BatchSearch(queries, maximumConcurrentSearches, this::searchAsync);
+	}
+
+	/**
+	 * Build the URL of a search that was written down as a SearchQuery.
+	 */
+	private String getQueryUrl(SearchQuery query)
+	{
+		switch (query.kind)
+		{
+			case TEXT:
+				return getSearchUrl("search/text/?" + Remote.makeParameters(textSearchParameters(query.target, query.tag, query.maximumDurationInSeconds, query.canonical)));
+			case CONTENT:
+				return getSearchUrl("search/content/?" + Remote.makeParameters(contentSearchParameters(query.target, query.canonical, query.maximumDurationInSeconds)));
+			default:
+				return similarSearchQuery(query.target, query.maximumDurationInSeconds, query.maximumResults, query.canonical);
+		}
+	}
+
+	/**
+	 * Get every sound from a search, not just the first page of results. The following pages are
+	 * requested as you reach them, and each one is fetched in the background while you are still
+	 * working through the page before it.
+	 * 
+	 * For example:
+	 * Iterator&lt;SoundResponse&gt; sounds = freeSoundClient.iterate(freeSoundClient.search("glass"));
+	 * 
+	 * If a page can't be fetched, hasNext and next throw an UncheckedIOException, so that a failure
+	 * is never mistaken for the end of the results.
+	 * 
+	 * @param	firstPage	The response from any of the search methods.
+	 * @return				An iterator over every sound in the search.
+	 */
+	public Iterator<SoundResponse> iterate(SearchResponse firstPage)
+	{
+		return new PageIterator(this, firstPage, backgroundExecutor);
+	}
+
+	/**
+	 * Get every sound from a search as a Stream. See iterate.
+	 * 
+	 * @param	firstPage	The response from any of the search methods.
+	 * @return				A stream of every sound in the search.
+	 */
+	public Stream<SoundResponse> stream(SearchResponse firstPage)
+	{
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterate(firstPage), Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Get every sound from a search pushed to a Flow.Subscriber, for reactive pipelines. Nothing is
+	 * requested until a subscriber subscribes, and then pages are only fetched as fast as the
+	 * subscriber asks for sounds, so a slow consumer, like an audio decoder, never makes the client
+	 * buffer more than one page. Sounds are delivered as soon as they are parsed.
+	 * 
+	 * Each subscriber gets its own pass through the search. If a page can't be fetched, the
+	 * subscriber's onError is called. The pages are fetched on the async executor (see Builder.asyncExecutor).
+	 * 
+	 * @param	query	the search
+	 * @return			a publisher of every sound in the search
+	 */
+	public Flow.Publisher<SoundResponse> publish(SearchQuery query)
+	{
+		return new SearchPublisher(asyncExecutor, this::fetchSearchPage, getQueryUrl(query), null);
+	}
+
+	/**
+	 * Push every sound from a search that has already started to a Flow.Subscriber. The sounds in
+	 * firstPage are delivered first, then the following pages are fetched as the subscriber asks for
+	 * more. See publish(SearchQuery).
+	 * 
+	 * @param	firstPage	The response from any of the search methods.
+	 * @return				a publisher of every sound in the search
+	 */
+	public Flow.Publisher<SoundResponse> publish(SearchResponse firstPage)
+	{
+		String next = firstPage == null || firstPage.next == null || firstPage.next.length() == 0 ? null : firstPage.next;
+		return new SearchPublisher(asyncExecutor, this::fetchSearchPage, next, firstPage == null ? null : firstPage.results);
+	}
+
+	/**
+	 * Fetch one page of a search for a SearchPublisher or a PageIterator. A failure is thrown rather
+	 * than returned as null, so that it reaches whoever is reading the pages.
+	 * 
+	 * @param	url			the first search URL, or the next field of a SearchResponse
+	 * @param	onSound		called with each sound as soon as it is parsed. May be null.
+	 * @param	priority	how urgent the request is, if it has to wait for the rate limiter
+	 * @return				the page
+	 * @throws IOException	if the request failed
+	 */
+	SearchResponse fetchSearchPage(String url, Consumer<SoundResponse> onSound, Priority priority) throws IOException
+	{
+		return fetchSearch(withToken(url), onSound, priority);
+	}
+
+	/**
+	 * The next link of a page doesn't always carry our credentials, so add them if they are missing.
+	 */
+	private String withToken(String url)
+	{
+		if (url.contains("token="))
+			return url;
+		return url + (url.contains("?") ? "&" : "?") + "token=" + clientSecret;
+	}
+
+	/**
+	 * Send a search request to FreeSound and parse the response as it arrives. Each sound is handed to
+	 * onSound as soon as it has been parsed. If there is a memory cache, then it is checked first, and
+	 * the parsed response is added to it.
+	 * 
+	 * If several threads make the same search at the same time, only one request is sent, and they
+	 * all share its response.
+	 * 
+	 * @param	query		the full URL of the search request
+	 * @param	onSound		called with each sound as soon as it is parsed. May be null.
+	 * @param	priority	how urgent the request is, if it has to wait for the rate limiter
+	 * @return				the parsed SearchResponse
+	 * @throws IOException	if the request failed
+	 */
+	private SearchResponse fetchSearch(String query, Consumer<SoundResponse> onSound, Priority priority) throws IOException
+	{
+		MemoryCache<SearchResponse> currentCache = memoryCache;
+		if (currentCache != null)
+		{
+			SearchResponse cached = currentCache.get(query);
+			if (cached != null)
+			{
+				if (onSound != null && cached.results != null)
+					cached.results.forEach(onSound);
+				return cached;
+			}
+		}
+
+		// if the same search is already on its way, wait for that one instead of sending another
+		String key = CacheKey.normalize(query);
+		CompletableFuture<SearchResponse> mine = new CompletableFuture<SearchResponse>();
+		CompletableFuture<SearchResponse> shared = inFlightSearches.putIfAbsent(key, mine);
+		if (shared != null)
+		{
+			SearchResponse response = awaitSharedSearch(shared);
+			if (onSound != null && response != null && response.results != null)
+				response.results.forEach(onSound);
+			return response;
+		}
+
+		try
+		{
+			LatencyPolicy policy = latencyPolicy;
+			SearchResponse response = policy == null ? fetchSearchFromRemote(query, onSound, priority, currentCache) : fetchSearchHedged(query, onSound, priority, currentCache, policy);
+			mine.complete(response);
+			return response;
+		}
+		catch(IOException | RuntimeException e)
+		{
+			mine.completeExceptionally(e);
+			throw e;
+		}
+		finally
+		{
+			inFlightSearches.remove(key, mine);
+		}
+	}
+
+	/**
+	 * Wait for a search that another thread is already running.
+	 * 
+	 * @param	shared	the other thread's search
+	 * @return			its SearchResponse
+	 * @throws IOException	if the other thread's search failed
+	 */
+	private static SearchResponse awaitSharedSearch(CompletableFuture<SearchResponse> shared) throws IOException
+	{
+		try
+		{
+			return shared.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for an identical search.");
+		}
+		catch(ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Run a search within the deadline of a LatencyPolicy. If the search is slow, a second identical request
+	 * is sent, and the first answer wins. If there is still no answer at the deadline, a cached response is
+	 * used, even if it has expired.
+	 * 
+	 * Once there is an answer, or the deadline has passed, the requests that are still running are
+	 * cancelled, so that they don't use up the rate limit.
+	 */
+	private SearchResponse fetchSearchHedged(String query, Consumer<SoundResponse> onSound, Priority priority, MemoryCache<SearchResponse> currentCache, LatencyPolicy policy) throws IOException
+	{
+		long start = System.currentTimeMillis();
+		CompletableFuture<SearchResponse> winner = new CompletableFuture<SearchResponse>();
+		AtomicInteger started = new AtomicInteger(1);
+		AtomicInteger failed = new AtomicInteger(0);
+
+		// the sounds are handed to onSound once there is a winner, so that they are not delivered twice
+		Runnable attempt = () -> {
+			try
+			{
+				long attemptStart = System.currentTimeMillis();
+				SearchResponse response = fetchSearchFromRemote(query, null, priority, currentCache);
+				policy.recordLatency(System.currentTimeMillis() - attemptStart);
+				winner.complete(response);
+			}
+			catch(Exception e)
+			{
+				// only give up once every request that was sent has failed
+				if (failed.incrementAndGet() == started.get())
+					winner.completeExceptionally(e);
+			}
+		};
+
+		List<Future<?>> attempts = new ArrayList<Future<?>>();
+		try
+		{
+			attempts.add(backgroundExecutor.submit(attempt));
+			SearchResponse response = awaitWithin(winner, Math.min(policy.getHedgeDelayMillis(), policy.getDeadlineMillis()));
+			if (response == null)
+			{
+				started.incrementAndGet();
+				attempts.add(backgroundExecutor.submit(attempt));
+				response = awaitWithin(winner, policy.getDeadlineMillis() - (System.currentTimeMillis() - start));
+			}
+			if (response == null)
+			{
+				response = fetchStaleSearch(query, currentCache);
+				if (response == null)
+					throw new SocketTimeoutException("FreeSound did not answer within " + policy.getDeadlineMillis() + "ms, and there is no cached response for " + query);
+			}
+
+			if (onSound != null && response.results != null)
+				response.results.forEach(onSound);
+			return response;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + query);
+		}
+		catch(ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+		finally
+		{
+			// the losing request, or both if the deadline passed, would only waste rate limit tokens now
+			for(Future<?> running : attempts)
+			{
+				running.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * @return	the result of the future, or null if it isn't done in time
+	 */
+	private static SearchResponse awaitWithin(CompletableFuture<SearchResponse> future, long millis) throws InterruptedException, ExecutionException
+	{
+		try
+		{
+			return future.get(Math.max(0, millis), TimeUnit.MILLISECONDS);
+		}
+		catch(TimeoutException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Get a cached response for a search, even if it has expired. The memory cache is checked first,
+	 * because its response is already parsed, and then the disk cache.
+	 * 
+	 * @return	the cached response, or null if there isn't one
+	 */
+	private SearchResponse fetchStaleSearch(String query, MemoryCache<SearchResponse> currentCache) throws IOException
+	{
+		if (currentCache != null)
+		{
+			SearchResponse stale = currentCache.getStale(query);
+			if (stale != null)
+				return stale;
+		}
+
+		DiskCache diskCache = remote.getCache();
+		String cached = diskCache == null ? null : diskCache.getStale(query);
+		if (cached == null)
+			return null;
+
+		return SearchResponseReader.read(new StringReader(cached), soundAdapter, null);
+	}
+
+	/**
+	 * The part of fetchSearch that actually goes to Remote. See fetchSearch.
+	 */
+	private SearchResponse fetchSearchFromRemote(String query, Consumer<SoundResponse> onSound, Priority priority, MemoryCache<SearchResponse> currentCache) throws IOException
+	{
+		// parse straight from the connection, rather than holding the whole response in a String
+		long[] bytesRead = new long[1];
+		SearchResponse response = remote.fetchStream(query, body -> {
+			CountingInputStream counted = new CountingInputStream(body);
+			long start = System.nanoTime();
+			SearchResponse parsed = SearchResponseReader.read(new InputStreamReader(counted, StandardCharsets.UTF_8), soundAdapter, onSound);
+			Metrics.recordParse(System.nanoTime() - start);
+			bytesRead[0] = counted.getCount();
+			return parsed;
+		}, priority);
+
+		if (currentCache != null && response != null)
+		{
+			// a parsed response takes roughly twice as much memory as its JSON
+			currentCache.put(query, response, bytesRead[0] * 2L);
+		}
+		return response;
+	}
+
+	/**
+	 * Get the layout of the typed descriptors for the descriptor fields of this client.
+	 * 
+	 * @return	the layout used for SoundResponse.descriptors
+	 */
+	public DescriptorLayout getDescriptorLayout()
+	{
+		return descriptorLayout;
+	}
+
+	/**
+	 * @return	the Remote that sends the requests of this client, with its transport, disk cache, rate limiter and download writer
+	 */
+	public Remote getRemote()
+	{
+		return remote;
+	}
+
+	/**
+	 * @return	the memory cache for parsed search responses, or null if there isn't one
+	 */
+	public MemoryCache<SearchResponse> getMemoryCache()
+	{
+		return memoryCache;
+	}
+
+	/**
+	 * Download a sound from FreeSound.
+	 * 
+	 * @param newFilename the path to the file on your local system where the audio file will be saved
+	 * @param soundId     the id of the sound to be downloaded
+	 * @return String the path to the newly created file
+	 * @throws CredentialNotFoundException 
+	 */
+	public String downloadSound(String newFilename, long soundId) throws CredentialNotFoundException
+	{	
+		// ensure that we have the credentials necessary to download sounds from the FreeSound API
+		requireUserAccessToken();
+
+		try
+		{
+			downloadIfMissing(newFilename, soundId, Priority.INTERACTIVE);
+			return newFilename; // return the complete path to the sound file
+		}
+		catch(Exception e)
+		{
+			System.out.println(e.getMessage());
+			System.out.println(e.getStackTrace());
+		}
+		return "";
+	}
+
+	/**
+	 * Download a sound into the sound library, unless it is already there. The sound is saved under
+	 * a name made from its id, along with its descriptors. See Builder.soundLibrary.
+	 * 
+	 * @param	sound	the sound to download
+	 * @return			the path to the sound file, or an empty string if the download failed
+	 * @throws CredentialNotFoundException 
+	 * @throws IllegalStateException	if there is no sound library
+	 */
+	public String downloadSound(SoundResponse sound) throws CredentialNotFoundException
+	{
+		// ensure that we have the credentials necessary to download sounds from the FreeSound API
+		requireUserAccessToken();
+
+		SoundLibrary library = requireSoundLibrary();
+		try
+		{
+			return downloadToLibrary(library, sound.id, sound.type, sound.descriptors, Priority.INTERACTIVE);
+		}
+		catch(IOException e)
+		{
+			System.out.println("Unable to download sound " + sound.id + ". " + e.getMessage());
+		}
+		return "";
+	}
+
+	/**
+	 * Download a sound without waiting for it. The download runs on the async executor (see
+	 * Builder.asyncExecutor). If the download fails, the future completes exceptionally with the reason.
+	 * Cancelling the future with cancel(true) interrupts the download, and the part that was already
+	 * downloaded is kept, so the next attempt resumes from there.
+	 * 
+	 * @param	newFilename	the path to the file on your local system where the audio file will be saved
+	 * @param	soundId		the id of the sound to be downloaded
+	 * @return				the path to the sound file, when it has been downloaded
+	 */
+	public CompletableFuture<String> downloadSoundAsync(String newFilename, long soundId)
+	{
+		return InterruptibleFuture.submit(asyncExecutor, () -> {
+			requireUserAccessToken();
+			downloadIfMissing(newFilename, soundId, Priority.INTERACTIVE);
+			return newFilename;
+		});
+	}
+
+	/**
+	 * Download a sound into the sound library without waiting for it. See downloadSoundAsync(String, long)
+	 * and downloadSound(SoundResponse).
+	 * 
+	 * @param	sound	the sound to download
+	 * @return			the path to the sound file, when it has been downloaded
+	 */
+	public CompletableFuture<String> downloadSoundAsync(SoundResponse sound)
+	{
+		return InterruptibleFuture.submit(asyncExecutor, () -> {
+			requireUserAccessToken();
+			return downloadToLibrary(requireSoundLibrary(), sound.id, sound.type, sound.descriptors, Priority.INTERACTIVE);
+		});
+	}
+
+	/**
+	 * @throws CredentialNotFoundException	if there is no user access token, which is needed to download sounds
+	 */
+	private void requireUserAccessToken() throws CredentialNotFoundException
+	{
+		if( userAccessToken.length() == 0 )
+		{
+			throw new CredentialNotFoundException("You must obtain a user access token from FreeSound in order to download sounds. See https://freesound.org/docs/api/authentication.html#oauth-authentication.");
+		}
+	}
+
+	/**
+	 * @return	the library that sounds are downloaded into, or null if there isn't one
+	 */
+	public SoundLibrary getSoundLibrary()
+	{
+		return soundLibrary;
+	}
+
+	/**
+	 * Download every sound in a search response. The sounds are downloaded in parallel and saved
+	 * in the given directory, named by sound id, with the extension of their format, like 1234.flac.
+	 * Sounds that are already in the directory are not downloaded again.
+	 * 
+	 * The format comes from the type field of each sound, which is in the default search fields. If
+	 * you choose your own search fields without type, the files have no extension.
+	 * 
+	 * @param	response					the search response containing the sounds to download
+	 * @param	directory					the directory on your local system where the audio files will be saved
+	 * @param	maximumConcurrentDownloads	the maximum number of sounds to download at the same time
+	 * @param	listener					notified as each sound finishes. May be null.
+	 * @return								a BulkDownload that tracks the progress of every sound
+	 * @throws CredentialNotFoundException 
+	 */
+	public BulkDownload downloadSounds(SearchResponse response, String directory, int maximumConcurrentDownloads, DownloadListener listener) throws CredentialNotFoundException
+	{
+		List<Long> soundIds = new ArrayList<Long>();
+		HashMap<Long, String> types = new HashMap<Long, String>();
+		if (response != null && response.results != null)
+		{
+			for(SoundResponse sound : response.results)
+			{
+				soundIds.add(sound.id);
+				types.put(sound.id, sound.type);
+			}
+		}
+		return downloadSoundsToDirectory(soundIds, types, directory, maximumConcurrentDownloads, listener);
+	}
+
+	/**
+	 * Download a list of sounds in parallel. See downloadSounds(SearchResponse, String, int, DownloadListener).
+	 * 
+	 * Only the ids are known here, not the formats, so the files are named by id alone, with no extension.
+	 * Download a SearchResponse instead to get files named like 1234.wav.
+	 * 
+	 * @param	soundIds					the ids of the sounds to download
+	 * @param	directory					the directory on your local system where the audio files will be saved
+	 * @param	maximumConcurrentDownloads	the maximum number of sounds to download at the same time
+	 * @param	listener					notified as each sound finishes. May be null.
+	 * @return								a BulkDownload that tracks the progress of every sound
+	 * @throws CredentialNotFoundException 
+	 */
+	public BulkDownload downloadSounds(List<Long> soundIds, String directory, int maximumConcurrentDownloads, DownloadListener listener) throws CredentialNotFoundException
+	{
+		return downloadSoundsToDirectory(soundIds, new HashMap<Long, String>(), directory, maximumConcurrentDownloads, listener);
+	}
+
+	private BulkDownload downloadSoundsToDirectory(List<Long> soundIds, HashMap<Long, String> types, String directory, int maximumConcurrentDownloads, DownloadListener listener) throws CredentialNotFoundException
+	{
+		// ensure that we have the credentials necessary to download sounds from the FreeSound API
+		requireUserAccessToken();
+
+		new File(directory).mkdirs();
+		return new BulkDownload(soundIds, maximumConcurrentDownloads, soundId -> downloadToDirectory(directory, soundId, types.get(soundId)), listener, asyncExecutor);
+	}
+
+	/**
+	 * Download every sound in a search response into the sound library. The sounds are downloaded
+	 * in parallel, and sounds that are already in the library are not downloaded again. The
+	 * descriptors of each sound are saved in the library along with it.
+	 * 
+	 * @param	response					the search response containing the sounds to download
+	 * @param	maximumConcurrentDownloads	the maximum number of sounds to download at the same time
+	 * @param	listener					notified as each sound finishes. May be null.
+	 * @return								a BulkDownload that tracks the progress of every sound
+	 * @throws CredentialNotFoundException 
+	 * @throws IllegalStateException	if there is no sound library. See Builder.soundLibrary.
+	 */
+	public BulkDownload downloadSounds(SearchResponse response, int maximumConcurrentDownloads, DownloadListener listener) throws CredentialNotFoundException
+	{
+		List<Long> soundIds = new ArrayList<Long>();
+		HashMap<Long, SoundResponse> sounds = new HashMap<Long, SoundResponse>();
+		if (response != null && response.results != null)
+		{
+			for(SoundResponse sound : response.results)
+			{
+				soundIds.add(sound.id);
+				sounds.put(sound.id, sound);
+			}
+		}
+		return downloadSoundsToLibrary(soundIds, sounds, maximumConcurrentDownloads, listener);
+	}
+
+	/**
+	 * Download a list of sounds into the sound library. See downloadSounds(SearchResponse, int, DownloadListener).
+	 * 
+	 * Only the ids are known here, so the sounds are saved without descriptors, and without an
+	 * extension, because their formats are unknown.
+	 * 
+	 * @param	soundIds					the ids of the sounds to download
+	 * @param	maximumConcurrentDownloads	the maximum number of sounds to download at the same time
+	 * @param	listener					notified as each sound finishes. May be null.
+	 * @return								a BulkDownload that tracks the progress of every sound
+	 * @throws CredentialNotFoundException 
+	 * @throws IllegalStateException	if there is no sound library. See Builder.soundLibrary.
+	 */
+	public BulkDownload downloadSounds(List<Long> soundIds, int maximumConcurrentDownloads, DownloadListener listener) throws CredentialNotFoundException
+	{
+		return downloadSoundsToLibrary(soundIds, new HashMap<Long, SoundResponse>(), maximumConcurrentDownloads, listener);
+	}
+
+	private BulkDownload downloadSoundsToLibrary(List<Long> soundIds, HashMap<Long, SoundResponse> sounds, int maximumConcurrentDownloads, DownloadListener listener) throws CredentialNotFoundException
+	{
+		// ensure that we have the credentials necessary to download sounds from the FreeSound API
+		requireUserAccessToken();
+
+		SoundLibrary library = requireSoundLibrary();
+		return new BulkDownload(soundIds, maximumConcurrentDownloads, soundId -> {
+			SoundResponse sound = sounds.get(soundId);
+			if (sound == null)
+				return downloadToLibrary(library, soundId, null, null, Priority.BACKGROUND);
+			return downloadToLibrary(library, soundId, sound.type, sound.descriptors, Priority.BACKGROUND);
+		}, listener, asyncExecutor);
+	}
+
+	/**
+	 * Download a sound into a plain folder, named by id, unless it is already there.
+	 * 
+	 * @param	type	the format of the sound, which becomes the extension. May be null.
+	 * @return			the path to the sound file
+	 */
+	private String downloadToDirectory(String directory, long soundId, String type) throws IOException
+	{
+		String filename = BulkDownload.getSoundFilename(directory, soundId, type);
+		downloadIfMissing(filename, soundId, Priority.BACKGROUND);
+		return filename;
+	}
+
+	/**
+	 * Download a sound to a file, unless the file already exists. Other threads and programs that
+	 * download the same sound into the same folder wait for this one, and then use its file.
+	 */
+	@SuppressWarnings("try") // the lock is held for the whole block, but never used inside it
+	private void downloadIfMissing(String filename, long soundId, Priority priority) throws IOException
+	{
+		// only download the file if it doesn't already exist. Downloads are saved under a
+		// temporary name until they are complete, so a file that exists is never truncated.
+		File file = new File(filename);
+		if (file.exists())
+			return;
+
+		try (DownloadLocks.Lock lock = DownloadLocks.forDirectory(file.getAbsoluteFile().getParentFile()).acquire(soundId))
+		{
+			// someone else may have finished downloading it while we waited for the lock
+			if (!file.exists())
+				remote.fetchBinary(getDownloadUrl(Long.toString(soundId)), filename, userAccessToken, priority);
+		}
+	}
+
+	/**
+	 * Download a sound into the library, unless it is already there.
+	 * 
+	 * @param	type	the format of the sound, like "wav", which the library records along with it. May be null.
+	 * @return			the path to the sound file
+	 */
+	@SuppressWarnings("try") // the lock is held for the whole block, but never used inside it
+	private String downloadToLibrary(SoundLibrary library, long soundId, String type, Descriptors descriptors, Priority priority) throws IOException
+	{
+		// the library answers from its manifest, without looking at the disk
+		File existing = library.getSound(soundId);
+		if (existing != null)
+			return existing.getPath();
+
+		try (DownloadLocks.Lock lock = library.lockSound(soundId))
+		{
+			// another thread or program may have downloaded the sound while we waited for the lock
+			library.refresh();
+			existing = library.getSound(soundId);
+			if (existing != null)
+				return existing.getPath();
+
+			File file = library.getFile(soundId, type);
+			DownloadedFile download;
+			if (file.exists())
+			{
+				// a program downloaded the file but stopped before it could add it to the manifest
+				download = new DownloadedFile(file, file.length(), -1);
+			}
+			else
+			{
+				download = remote.fetchBinary(getDownloadUrl(Long.toString(soundId)), file.getPath(), userAccessToken, priority);
+			}
+			library.add(soundId, type, download, descriptors);
+			return file.getPath();
+		}
+	}
+
+	private SoundLibrary requireSoundLibrary()
+	{
+		SoundLibrary library = soundLibrary;
+		if (library == null)
+			throw new IllegalStateException("There is no sound library to download into. Build the client with a SoundLibrary first, like new FreeSound.Builder(clientSecret).soundLibrary(new SoundLibrary(new File(\"sounds\"))).build().");
+		return library;
+	}
+
+	/**
+	 * Get the URL for a request to a search endpoint.
 	 * 
 	 * @param	location	the path to the specific search resource
 	 * @return				the string with the full URL
 	 */
 	private String getSearchUrl(String location)
 	{
-		return "https://www.freesound.org/apiv2/" + location;
+		return apiUrl + location;
 	}
 
 	/**
@@ -436,19 +1787,109 @@ public class FreeSound
 	 * @param	soundId		the sound that you want to download
 	 * @return				the string with the full URL
 	 */
-	private String getDownloadUrl(String soundId)
+	String getDownloadUrl(String soundId)
+	{
+		return apiUrl + "sounds/" + soundId + "/download/";
+	}
+
+	/**
+	 * @return	the base URL of the API that requests are sent to
+	 */
+	public String getApiUrl()
+	{
+		return apiUrl;
+	}
+
+	/**
+	 * @return	the identifier of your app, or an empty string if it wasn't given
+	 */
+	public String getClientId()
+	{
+		return clientId;
+	}
+
+	/**
+	 * Stop the background threads of this client. Work that has already started is allowed to finish,
+	 * but after this, iterate, stream and searches with a LatencyPolicy throw RejectedExecutionException
+	 * when they need to fetch in the background. The client's caches are no longer reported in Metrics.
+	 * 
+	 * The caches, sound library, rate limiter and async executor you gave the builder may be shared with
+	 * other clients, so they are left open. Close them yourself.
+	 */
+	@Override
+	public void close()
+	{
+		backgroundExecutor.shutdown();
+		Metrics.unwatchCache(memoryCacheMetricsName);
+		Metrics.unwatchCache(diskCacheMetricsName);
+	}
+
+	/**
+	 * @return	the user access token that permits downloads, or an empty string if there isn't one yet
+	 */
+	public String getUserAccessToken()
+	{
+		return userAccessToken;
+	}
+
+	/**
+	 * @return	a copy of the fields returned on sounds from search endpoints
+	 */
+	public String[] getSearchFields()
+	{
+		return searchFields.clone();
+	}
+
+	/**
+	 * @return	a copy of the analysis descriptors returned on sounds from search endpoints
+	 */
+	public String[] getDescriptorFields()
+	{
+		return descriptorFields.clone();
+	}
+
+	/**
+	 * @return	the latency policy, or null if there isn't one
+	 */
+	public LatencyPolicy getLatencyPolicy()
+	{
+		return latencyPolicy;
+	}
+
+	/**
+	 * @return	the executor that the async methods run on
+	 */
+	public Executor getAsyncExecutor()
 	{
-		return "https://www.freesound.org/apiv2/sounds/" + soundId + "/download/";
+		return asyncExecutor;
+	}
+
+	/**
+	 * Make the default executor for the async methods. See Builder.asyncExecutor.
+	 */
+	private static Executor newAsyncExecutor()
+	{
+		try
+		{
+			// Java 21 and later. It is looked up by name, so that this library still runs on older versions.
+			return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool(new DaemonThreadFactory("freesound-async"));
+		}
 	}
 	
 	/**
-	 * Build the filter parameter for a search request.
+	 * Build the filter parameter for a search request. It only depends on its arguments, so it is
+	 * public and static, which lets you build your own queries, and lets the benchmarks measure it.
 	 * 
+	 * @param	tag							Only return sounds with this tag. May be empty.
 	 * @param	OnlyCanonicalWaveFiles		If this is true, then the search will only return monophonic wav files with a sample rate of 44.1kHz and a bit depth of 16 bits. These files are very easy to work with, so this option prevents having to understand many different audio file types.
 	 * @param	MaximumDurationInSeconds	The maximum duration of returned audio files.
 	 * @return								The filter as a parameterized String.
 	 */
-	private String buildFilter(String tag, boolean OnlyCanonicalWaveFiles, int MaximumDurationInSeconds)
+	public static String buildFilter(String tag, boolean OnlyCanonicalWaveFiles, int MaximumDurationInSeconds)
 	{
 		String filter = "";
 		if(OnlyCanonicalWaveFiles)
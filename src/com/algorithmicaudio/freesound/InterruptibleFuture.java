@@ -0,0 +1,101 @@
+package com.algorithmicaudio.freesound;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A CompletableFuture for work that runs on an executor, which interrupts that work when it is
+ * cancelled. CompletableFuture.supplyAsync can't do that: cancelling its future only stops
+ * whoever is waiting for the result, while the request itself carries on to the end.
+ *
+ * An interrupted request stops while it waits for the rate limiter, for another thread's
+ * download of the same sound, or for the server, as far as the transport allows.
+ */
+class InterruptibleFuture<T> extends CompletableFuture<T>
+{
+	/**
+	 * The work. Like Callable, except that it is run by this class.
+	 */
+	interface Task<T>
+	{
+		T call() throws Exception;
+	}
+
+	private final Task<T> task;
+	private Thread runner = null; // the thread running the task, or null. Guarded by this.
+
+	private InterruptibleFuture(Task<T> task)
+	{
+		this.task = task;
+	}
+
+	/**
+	 * Start a task on an executor.
+	 *
+	 * @param	executor	Where the task runs.
+	 * @param	task		The work.
+	 * @return				A future that completes with the result of the task, or with the exception it threw.
+	 */
+	static <T> InterruptibleFuture<T> submit(Executor executor, Task<T> task)
+	{
+		InterruptibleFuture<T> future = new InterruptibleFuture<T>(task);
+		try
+		{
+			executor.execute(future::run);
+		}
+		catch(RejectedExecutionException e)
+		{
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private void run()
+	{
+		synchronized (this)
+		{
+			// cancelled before it started
+			if (isDone())
+				return;
+			runner = Thread.currentThread();
+		}
+
+		try
+		{
+			complete(task.call());
+		}
+		catch(Throwable e)
+		{
+			completeExceptionally(e);
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				runner = null;
+			}
+			// a cancel can interrupt the task just as it finishes. Don't let that leak into the next task on this thread.
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * Cancel the task. If mayInterruptIfRunning is true and the task has started, its thread is
+	 * interrupted, so that the request stops instead of running to the end.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if (cancelled && mayInterruptIfRunning)
+		{
+			synchronized (this)
+			{
+				if (runner != null)
+					runner.interrupt();
+			}
+		}
+		return cancelled;
+	}
+}
@@ -0,0 +1,84 @@
+package com.algorithmicaudio.freesound;
+
+import java.util.Arrays;
+
+/**
+ * Keeps slow searches from stalling a musical timeline. Give it to FreeSound.Builder.latencyPolicy.
+ *
+ * Every search gets a deadline. If FreeSound hasn't answered by the time most searches have
+ * finished (the hedge percentile of recent latencies), an identical second request is sent,
+ * and whichever answers first wins. If the deadline passes with no answer, the search falls
+ * back to a cached response, even an expired one. If nothing is cached, the search fails
+ * instead of waiting any longer.
+ *
+ * Hedged requests count against the rate limit, so a lower percentile means faster searches
+ * but more requests.
+ */
+public class LatencyPolicy
+{
+	private static final int HISTORY = 256;
+
+	private final long deadlineMillis;
+	private final double hedgePercentile;
+	private final long minimumHedgeDelayMillis;
+
+	// recent search latencies, in a ring buffer
+	private final long[] latencies = new long[HISTORY];
+	private int recorded = 0;
+
+	/**
+	 * A two second deadline, hedging after the 95th percentile, but never sooner than 50ms.
+	 */
+	public LatencyPolicy()
+	{
+		this(2000, 0.95, 50);
+	}
+
+	/**
+	 * @param	deadlineMillis			How long a search may take before falling back to the cache.
+	 * @param	hedgePercentile			Send a second request once a search is slower than this fraction of recent searches, like 0.95.
+	 * @param	minimumHedgeDelayMillis	Never send a second request sooner than this.
+	 */
+	public LatencyPolicy(long deadlineMillis, double hedgePercentile, long minimumHedgeDelayMillis)
+	{
+		this.deadlineMillis = deadlineMillis;
+		this.hedgePercentile = hedgePercentile;
+		this.minimumHedgeDelayMillis = minimumHedgeDelayMillis;
+	}
+
+	/**
+	 * Remember how long a search took.
+	 *
+	 * @param	millis	The latency of a search that succeeded.
+	 */
+	public synchronized void recordLatency(long millis)
+	{
+		latencies[recorded % HISTORY] = millis;
+		recorded++;
+	}
+
+	/**
+	 * @return	How long to wait before sending a second request. Until enough searches have been seen, this is half the deadline.
+	 */
+	public long getHedgeDelayMillis()
+	{
+		long[] recent;
+		synchronized (this)
+		{
+			if (recorded < 10)
+				return Math.max(minimumHedgeDelayMillis, deadlineMillis / 2);
+			recent = Arrays.copyOf(latencies, Math.min(recorded, HISTORY));
+		}
+		Arrays.sort(recent);
+		int index = (int) Math.min(recent.length - 1, Math.floor(hedgePercentile * recent.length));
+		return Math.min(deadlineMillis, Math.max(minimumHedgeDelayMillis, recent[index]));
+	}
+
+	/**
+	 * @return	How long a search may take before falling back to the cache.
+	 */
+	public long getDeadlineMillis()
+	{
+		return deadlineMillis;
+	}
+}
@@ -0,0 +1,110 @@
+package com.algorithmicaudio.freesound;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.algorithmicaudio.freesound.io.Priority;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SoundResponse;
+
+/**
+ * Walks through every sound in a search, one page at a time. Pages are only requested as they
+ * are needed, and while you are working through one page the next page is already being fetched
+ * in the background. Create one with FreeSound.iterate or FreeSound.stream.
+ *
+ * If a page can't be fetched, hasNext throws an UncheckedIOException that wraps the reason.
+ * After that the iterator is finished.
+ *
+ * An iterator should only be used by one thread.
+ */
+class PageIterator implements Iterator<SoundResponse>
+{
+	private final FreeSound client;
+	private final Executor executor;
+
+	private SearchResponse page;
+	private int index = 0;
+	private CompletableFuture<SearchResponse> nextPage;
+
+	/**
+	 * @param	client		The client used to fetch the following pages.
+	 * @param	firstPage	The response from the original search.
+	 * @param	executor	Where the following pages are fetched.
+	 */
+	PageIterator(FreeSound client, SearchResponse firstPage, Executor executor)
+	{
+		this.client = client;
+		this.executor = executor;
+		startPage(firstPage);
+	}
+
+	/**
+	 * Make a page current, and start fetching the one after it.
+	 */
+	private void startPage(SearchResponse newPage)
+	{
+		page = newPage;
+		index = 0;
+		nextPage = null;
+
+		if (page != null && page.next != null && page.next.length() > 0)
+		{
+			String nextUrl = page.next;
+			nextPage = CompletableFuture.supplyAsync(() -> {
+				try
+				{
+					return client.fetchSearchPage(nextUrl, null, Priority.PREFETCH);
+				}
+				catch(IOException e)
+				{
+					throw new UncheckedIOException("Couldn't fetch the next page of results from " + nextUrl, e);
+				}
+			}, executor);
+		}
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		// skip past pages that are finished, waiting for the prefetched page if it hasn't arrived yet
+		while (page == null || page.results == null || index >= page.results.size())
+		{
+			if (nextPage == null)
+				return false;
+			startPage(waitForNextPage());
+		}
+		return true;
+	}
+
+	/**
+	 * Wait for the prefetched page. If it failed, the iterator ends and the failure is thrown.
+	 */
+	private SearchResponse waitForNextPage()
+	{
+		try
+		{
+			return nextPage.join();
+		}
+		catch(CompletionException e)
+		{
+			page = null;
+			nextPage = null;
+			if (e.getCause() instanceof UncheckedIOException)
+				throw (UncheckedIOException) e.getCause();
+			throw e;
+		}
+	}
+
+	@Override
+	public SoundResponse next()
+	{
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return page.results.get(index++);
+	}
+}
@@ -0,0 +1,221 @@
+package com.algorithmicaudio.freesound;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.algorithmicaudio.freesound.io.Priority;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SoundResponse;
+
+/**
+ * Pushes every sound from a search to a Flow.Subscriber, one page at a time. Create one with
+ * FreeSound.publish.
+ *
+ * The subscriber decides how fast pages are fetched. A page is only requested once the sounds
+ * from the page before it have all been delivered and the subscriber has asked for more, so at
+ * most one page is held in memory. Within a page, each sound is delivered as soon as it has been
+ * parsed, if the subscriber has asked for it.
+ *
+ * Every subscriber gets its own pass through the search, starting from the first page. If a page
+ * can't be fetched, the subscriber gets onError after the sounds that arrived before the failure.
+ */
+class SearchPublisher implements Flow.Publisher<SoundResponse>
+{
+	private final Executor executor;
+	private final PageFetcher fetcher;
+	private final String firstUrl;
+	private final List<SoundResponse> firstResults;
+
+	/**
+	 * Fetches one page for a SearchPublisher.
+	 */
+	interface PageFetcher
+	{
+		/**
+		 * @param	url			The URL of the page.
+		 * @param	onSound		Called with each sound as soon as it is parsed.
+		 * @param	priority	How urgent the request is.
+		 * @return				The page, or null if there wasn't one.
+		 */
+		SearchResponse fetch(String url, Consumer<SoundResponse> onSound, Priority priority) throws Exception;
+	}
+
+	/**
+	 * @param	executor		Where the pages are fetched.
+	 * @param	fetcher			Fetches each page.
+	 * @param	firstUrl		The URL of the first page to fetch, or null if there are no pages to fetch.
+	 * @param	firstResults	Sounds to deliver before the first page is fetched. May be null.
+	 */
+	SearchPublisher(Executor executor, PageFetcher fetcher, String firstUrl, List<SoundResponse> firstResults)
+	{
+		this.executor = executor;
+		this.fetcher = fetcher;
+		this.firstUrl = firstUrl;
+		this.firstResults = firstResults;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super SoundResponse> subscriber)
+	{
+		if (subscriber == null)
+			throw new NullPointerException("The subscriber can't be null.");
+
+		PageSubscription subscription = new PageSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		subscription.drain();
+	}
+
+	/**
+	 * One subscriber's pass through the search.
+	 *
+	 * Only one thread at a time runs drain, which is the only place that talks to the subscriber.
+	 * Any other thread that calls drain while it is running just tells it to go around again.
+	 */
+	private class PageSubscription implements Flow.Subscription
+	{
+		private final Flow.Subscriber<? super SoundResponse> subscriber;
+		private final Queue<SoundResponse> buffer = new ConcurrentLinkedQueue<SoundResponse>();
+		private final AtomicLong requested = new AtomicLong(0);
+		private final AtomicInteger drainers = new AtomicInteger(0);
+
+		private volatile String nextUrl;
+		private boolean fetchedFirstPage = false; // only touched inside drain
+		private volatile boolean fetching = false;
+		private volatile Throwable error = null;
+		private volatile boolean cancelled = false;
+		private boolean terminated = false; // only touched inside drain
+		private volatile CompletableFuture<SearchResponse> currentFetch = null;
+
+		PageSubscription(Flow.Subscriber<? super SoundResponse> subscriber)
+		{
+			this.subscriber = subscriber;
+			this.nextUrl = firstUrl;
+			if (firstResults != null)
+				buffer.addAll(firstResults);
+		}
+
+		@Override
+		public void request(long n)
+		{
+			if (n <= 0)
+			{
+				error = new IllegalArgumentException("A subscriber must request at least one sound, but it requested " + n + ".");
+				buffer.clear();
+				nextUrl = null;
+			}
+			else
+			{
+				// add to the demand, without overflowing. Long.MAX_VALUE means unbounded.
+				requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel()
+		{
+			cancelled = true;
+			CompletableFuture<SearchResponse> fetch = currentFetch;
+			if (fetch != null)
+				fetch.cancel(true);
+			drain();
+		}
+
+		/**
+		 * Deliver as many buffered sounds as the subscriber has asked for, then fetch the next page
+		 * or finish, if that is what comes next.
+		 */
+		void drain()
+		{
+			if (drainers.getAndIncrement() != 0)
+				return;
+
+			int missed = 1;
+			do
+			{
+				if (terminated)
+					return;
+
+				if (cancelled)
+				{
+					terminated = true;
+					buffer.clear();
+					return;
+				}
+
+				long demand = requested.get();
+				long delivered = 0;
+				while (delivered < demand && !cancelled)
+				{
+					SoundResponse sound = buffer.poll();
+					if (sound == null)
+						break;
+					subscriber.onNext(sound);
+					delivered++;
+				}
+				if (delivered > 0 && demand != Long.MAX_VALUE)
+					requested.addAndGet(-delivered);
+
+				if (!cancelled && buffer.isEmpty() && !fetching)
+				{
+					Throwable failure = error;
+					if (failure != null)
+					{
+						terminated = true;
+						subscriber.onError(failure);
+						return;
+					}
+					if (nextUrl == null)
+					{
+						terminated = true;
+						subscriber.onComplete();
+						return;
+					}
+					if (requested.get() > 0)
+						fetchNextPage();
+				}
+
+				missed = drainers.addAndGet(-missed);
+			}
+			while (missed != 0);
+		}
+
+		/**
+		 * Start fetching the page at nextUrl. Its sounds go into the buffer as they are parsed.
+		 */
+		private void fetchNextPage()
+		{
+			// the first page is what the subscriber is waiting for. After that, the pages are a bulk transfer
+			Priority priority = fetchedFirstPage ? Priority.BACKGROUND : Priority.INTERACTIVE;
+			fetchedFirstPage = true;
+
+			String url = nextUrl;
+			nextUrl = null;
+			fetching = true;
+
+			CompletableFuture<SearchResponse> fetch = InterruptibleFuture.submit(executor, () -> fetcher.fetch(url, sound -> {
+				buffer.offer(sound);
+				drain();
+			}, priority));
+			currentFetch = fetch;
+
+			fetch.whenComplete((page, failure) -> {
+				if (failure != null)
+					error = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+				else if (page != null && page.next != null && page.next.length() > 0)
+					nextUrl = page.next;
+				currentFetch = null;
+				fetching = false;
+				drain();
+			});
+		}
+	}
+}
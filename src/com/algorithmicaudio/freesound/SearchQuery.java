@@ -0,0 +1,157 @@
+package com.algorithmicaudio.freesound;
+
+import java.util.Objects;
+
+/**
+ * One search, written down so that it can be run later, or together with other searches in a
+ * BatchSearch. Make one with the static methods, which match the search methods of FreeSound:
+ *
+ *	List&lt;SearchQuery&gt; queries = Arrays.asList(SearchQuery.tag("kick"), SearchQuery.key("C", "minor"));
+ *	BatchSearch batch = freeSoundClient.searchBatch(queries, 8);
+ *
+ * Queries are immutable, and two queries with the same arguments are equal, so they work as map keys.
+ */
+public class SearchQuery
+{
+	/**
+	 * Which FreeSound endpoint a query uses.
+	 */
+	enum Kind
+	{
+		TEXT, CONTENT, SIMILAR
+	}
+
+	final Kind kind;
+	final String target; // the search text, the descriptors filter, or the id of the target sound
+	final String tag;
+	final int maximumDurationInSeconds;
+	final boolean canonical;
+	final int maximumResults;
+
+	private SearchQuery(Kind kind, String target, String tag, int maximumDurationInSeconds, boolean canonical, int maximumResults)
+	{
+		this.kind = kind;
+		this.target = target;
+		this.tag = tag;
+		this.maximumDurationInSeconds = maximumDurationInSeconds;
+		this.canonical = canonical;
+		this.maximumResults = maximumResults;
+	}
+
+	/**
+	 * A text search. See FreeSound.search.
+	 *
+	 * @param	searchString	The text that you want to search for
+	 * @return					The query
+	 */
+	public static SearchQuery text(String searchString)
+	{
+		return text(searchString, "", 0, true);
+	}
+
+	/**
+	 * A text search. See FreeSound.searchByText.
+	 *
+	 * @param	searchString				the text you want to search for
+	 * @param	tag							only return sounds with this tag. May be empty.
+	 * @param 	maximumDurationInSeconds	the maximum duration of returned sounds
+	 * @param 	canonical					Return only canonical wav files?
+	 * @return								The query
+	 */
+	public static SearchQuery text(String searchString, String tag, int maximumDurationInSeconds, boolean canonical)
+	{
+		return new SearchQuery(Kind.TEXT, searchString, tag, maximumDurationInSeconds, canonical, 0);
+	}
+
+	/**
+	 * A search for sounds with a tag. See FreeSound.searchByTag.
+	 *
+	 * @param	tag		The tag to search for
+	 * @return			The query
+	 */
+	public static SearchQuery tag(String tag)
+	{
+		return text("", tag, 0, true);
+	}
+
+	/**
+	 * A search for sounds in a key. See FreeSound.searchByKey.
+	 *
+	 * @param 	key		for example, C
+	 * @param 	scale	major or minor
+	 * @return			The query
+	 */
+	public static SearchQuery key(String key, String scale)
+	{
+		return content(FreeSound.keyFilter(key, scale), true, 0);
+	}
+
+	/**
+	 * A search based on numeric descriptions of the sounds. See FreeSound.searchByContent.
+	 *
+	 * @param 	descriptorsFilter			The descriptors that describe the target sound
+	 * @param 	canonical					Return only canonical wav files?
+	 * @param 	maximumDurationInSeconds	The maximum duration for returned sound files.
+	 * @return								The query
+	 */
+	public static SearchQuery content(String descriptorsFilter, boolean canonical, int maximumDurationInSeconds)
+	{
+		return new SearchQuery(Kind.CONTENT, descriptorsFilter, "", maximumDurationInSeconds, canonical, 0);
+	}
+
+	/**
+	 * A search for sounds that are similar to a target sound. See FreeSound.searchForSimilar.
+	 *
+	 * @param	SoundId		The id of the target sound
+	 * @return				The query
+	 */
+	public static SearchQuery similar(String SoundId)
+	{
+		return similar(SoundId, 0, 15, true);
+	}
+
+	/**
+	 * A search for sounds that are similar to a target sound. See FreeSound.searchForSimilar.
+	 *
+	 * @param 	SoundId						The id of the target sound
+	 * @param 	MaximumDurationInSeconds	The maximum duration of returned sounds
+	 * @param 	MaximumResults				The maximum number of results to return
+	 * @param 	Canonical					Return only canonical wav files?
+	 * @return								The query
+	 */
+	public static SearchQuery similar(String SoundId, int MaximumDurationInSeconds, int MaximumResults, boolean Canonical)
+	{
+		return new SearchQuery(Kind.SIMILAR, SoundId, "", MaximumDurationInSeconds, Canonical, MaximumResults);
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if (this == other)
+			return true;
+		if (!(other instanceof SearchQuery))
+			return false;
+		SearchQuery query = (SearchQuery) other;
+		return kind == query.kind && target.equals(query.target) && tag.equals(query.tag) && maximumDurationInSeconds == query.maximumDurationInSeconds && canonical == query.canonical && maximumResults == query.maximumResults;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(kind, target, tag, maximumDurationInSeconds, canonical, maximumResults);
+	}
+
+	@Override
+	public String toString()
+	{
+		switch (kind)
+		{
+			case TEXT:
+				return target.length() == 0 ? "tag " + tag : "text \"" + target + "\"" + (tag.length() > 0 ? " tag " + tag : "");
+			case CONTENT:
+				return "content " + target;
+			default:
+				return "similar to " + target;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package com.algorithmicaudio.freesound.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Turns a request URL into a cache key. Two URLs that ask FreeSound the same question get
+ * the same key, even if their parameters are in a different order. The API token is left
+ * out, so that a cache can be shared between apps and survives a change of credentials.
+ */
+public class CacheKey
+{
+	/**
+	 * Normalize a request URL.
+	 * 
+	 * @param	url	A URL like https://freesound.org/apiv2/search/text/?query=glass&token=abc
+	 * @return		The endpoint plus the sorted parameters, without the token.
+	 */
+	public static String normalize(String url)
+	{
+		int queryStart = url.indexOf('?');
+		if (queryStart < 0)
+			return url;
+
+		List<String> params = new ArrayList<String>();
+		for(String param : url.substring(queryStart + 1).split("&"))
+		{
+			if (param.length() > 0 && !param.startsWith("token="))
+				params.add(param);
+		}
+		Collections.sort(params);
+
+		return url.substring(0, queryStart) + "?" + String.join("&", params);
+	}
+}
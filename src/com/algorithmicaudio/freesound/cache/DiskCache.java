@@ -0,0 +1,357 @@
+package com.algorithmicaudio.freesound.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.algorithmicaudio.freesound.io.Local;
+
+/**
+ * Saves search responses on disk, so that repeating a search does not use up your FreeSound
+ * rate limit. The cache survives between runs of your program, so a session that repeats
+ * yesterday's searches does not need the network at all.
+ * 
+ * Responses expire after a fixed time to live. When the cache grows beyond its size limit,
+ * the responses that were used least recently are deleted first.
+ * 
+ * To use it, give it to a client: new FreeSound.Builder(clientSecret).diskCache(new DiskCache(new File("cache"), 50000000, 86400000)).build();
+ */
+public class DiskCache
+{
+	private final File directory;
+	private final long maximumBytes;
+	private final long timeToLiveMs;
+
+	// file name -> file size, in least recently used order
+	private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long totalBytes = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Open a cache directory, creating it if necessary. Responses already in the directory are reused.
+	 * 
+	 * @param	directory		Where the cached responses are stored.
+	 * @param	maximumBytes	The size limit of the cache.
+	 * @param	timeToLiveMs	How long a response stays valid, in milliseconds.
+	 */
+	public DiskCache(File directory, long maximumBytes, long timeToLiveMs)
+	{
+		this.directory = directory;
+		this.maximumBytes = maximumBytes;
+		this.timeToLiveMs = timeToLiveMs;
+
+		directory.mkdirs();
+
+		// rebuild the index from the files on disk, oldest first, using the modification time as the last access time
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".json"));
+		if (files != null)
+		{
+			Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+			for(File file : files)
+			{
+				index.put(file.getName(), file.length());
+				totalBytes += file.length();
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * Look up a cached response.
+	 * 
+	 * @param	url		The request URL.
+	 * @return			The cached response body, or null if it is not cached or has expired.
+	 */
+	public String get(String url)
+	{
+		String body = read(url, false);
+		if (body == null)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+		return body;
+	}
+
+	/**
+	 * Look up a cached response, even if it has expired. This is useful as a last resort when
+	 * the network is too slow or unavailable. It does not count as a hit or a miss.
+	 * 
+	 * @param	url		The request URL.
+	 * @return			The cached response body, or null if it is not cached.
+	 */
+	public String getStale(String url)
+	{
+		return read(url, true);
+	}
+
+	private String read(String url, boolean allowExpired)
+	{
+		String key = CacheKey.normalize(url);
+		String name = fileName(key);
+
+		synchronized (this)
+		{
+			// touch the entry so that it counts as recently used
+			if (index.get(name) == null)
+				return null;
+		}
+
+		File file = new File(directory, name);
+		try
+		{
+			String contents = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+			// the first line holds the key and the time the response was saved
+			int headerEnd = contents.indexOf('\n');
+			String[] header = contents.substring(0, headerEnd).split("\t");
+			long savedAt = Long.parseLong(header[1]);
+			if (!header[0].equals(key))
+				return null;
+
+			// expired responses are kept, in case getStale needs them, until they are evicted to make room
+			if (!allowExpired && System.currentTimeMillis() - savedAt > timeToLiveMs)
+				return null;
+
+			file.setLastModified(System.currentTimeMillis());
+			return contents.substring(headerEnd + 1);
+		}
+		catch(Exception e)
+		{
+			// a missing or damaged file is just a miss
+			remove(name);
+			return null;
+		}
+	}
+
+	/**
+	 * Save a response.
+	 * 
+	 * @param	url		The request URL.
+	 * @param	body	The response body.
+	 */
+	public void put(String url, String body)
+	{
+		PendingEntry entry = startEntry(url);
+		if (entry == null)
+			return;
+
+		try (PendingEntry pending = entry)
+		{
+			pending.write(body.getBytes(StandardCharsets.UTF_8));
+			pending.commit();
+		}
+		catch(IOException e)
+		{
+			System.out.println("Unable to cache the response for " + CacheKey.normalize(url) + "\n" + e.getMessage());
+		}
+	}
+
+	/**
+	 * Start saving a response that is still arriving. Write the body to the entry as it is read,
+	 * then call commit once all of it has been written. An entry that is closed without being
+	 * committed is thrown away, so a response that fails halfway never reaches the cache.
+	 * 
+	 * @param	url		The request URL.
+	 * @return			The entry to write the body to, or null if the cache can't be written to.
+	 */
+	public PendingEntry startEntry(String url)
+	{
+		String key = CacheKey.normalize(url);
+		try
+		{
+			return new PendingEntry(key);
+		}
+		catch(IOException e)
+		{
+			System.out.println("Unable to cache the response for " + key + "\n" + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * A response that is being written to the cache. See startEntry.
+	 */
+	public class PendingEntry extends OutputStream
+	{
+		private final String name;
+		private final File temp;
+		private final OutputStream output;
+		private long size = 0;
+		private boolean finished = false;
+
+		private PendingEntry(String key) throws IOException
+		{
+			name = fileName(key);
+
+			// write to a temporary file first, so that a reader never sees half a response
+			temp = File.createTempFile("entry", ".tmp", directory);
+			output = new BufferedOutputStream(new FileOutputStream(temp));
+			write((key + "\t" + System.currentTimeMillis() + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			output.write(b);
+			size++;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException
+		{
+			output.write(bytes, offset, length);
+			size += length;
+		}
+
+		/**
+		 * Put the finished response in the cache, replacing any older copy.
+		 * 
+		 * @throws IOException	if the response couldn't be saved
+		 */
+		public void commit() throws IOException
+		{
+			if (finished)
+				return;
+			finished = true;
+
+			try
+			{
+				output.close();
+				Local.replaceFile(temp, new File(directory, name));
+			}
+			catch(IOException e)
+			{
+				temp.delete();
+				throw e;
+			}
+
+			synchronized (DiskCache.this)
+			{
+				Long previous = index.put(name, size);
+				totalBytes += size - (previous == null ? 0 : previous);
+			}
+			evict();
+		}
+
+		/**
+		 * Throw the entry away, unless it has been committed.
+		 */
+		@Override
+		public void close() throws IOException
+		{
+			if (finished)
+				return;
+			finished = true;
+
+			try
+			{
+				output.close();
+			}
+			finally
+			{
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Delete the least recently used responses until the cache is within its size limit.
+	 */
+	private void evict()
+	{
+		while (true)
+		{
+			String name;
+			synchronized (this)
+			{
+				if (totalBytes <= maximumBytes || index.isEmpty())
+					return;
+				Iterator<Map.Entry<String, Long>> oldest = index.entrySet().iterator();
+				Map.Entry<String, Long> entry = oldest.next();
+				name = entry.getKey();
+				totalBytes -= entry.getValue();
+				oldest.remove();
+			}
+			new File(directory, name).delete();
+		}
+	}
+
+	private void remove(String name)
+	{
+		synchronized (this)
+		{
+			Long size = index.remove(name);
+			if (size != null)
+				totalBytes -= size;
+		}
+		new File(directory, name).delete();
+	}
+
+	/**
+	 * Cached responses are stored in files named by a hash of their key.
+	 */
+	private static String fileName(String key)
+	{
+		try
+		{
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for(byte b : hash)
+			{
+				name.append(String.format("%02x", b));
+			}
+			return name.append(".json").toString();
+		}
+		catch(Exception e)
+		{
+			// every JVM is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return	the number of lookups that found a valid response
+	 */
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return	the number of lookups that had to go to the network
+	 */
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return	the fraction of lookups that found a valid response, between 0 and 1
+	 */
+	public double getHitRate()
+	{
+		long total = hits.get() + misses.get();
+		return total == 0 ? 0 : (double) hits.get() / total;
+	}
+
+	/**
+	 * @return	the total size of the cached responses, in bytes
+	 */
+	public synchronized long getSizeInBytes()
+	{
+		return totalBytes;
+	}
+}
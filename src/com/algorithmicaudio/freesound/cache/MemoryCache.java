@@ -0,0 +1,205 @@
+package com.algorithmicaudio.freesound.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps responses that have already been parsed in memory, so that repeating a search skips
+ * the network, the disk and the JSON parser entirely. The cache is bounded by a number of
+ * entries, an estimated number of bytes, or both. When it is full, the entries that were used
+ * least recently are dropped.
+ *
+ * Like DiskCache, entries can have a time to live. An expired entry is no longer returned by
+ * get, but it stays in the cache for getStale until it is pushed out to make room.
+ *
+ * The cache can be shared by many threads. Every lookup takes a short lock, because a lookup
+ * moves its entry to the recently used end of the list. The cached objects are shared too, so
+ * treat them as read only.
+ *
+ * @param	<V>	The type of the cached objects, like SearchResponse.
+ */
+public class MemoryCache<V>
+{
+	private static class Entry<V>
+	{
+		final V value;
+		final long bytes;
+		final long savedAt;
+
+		Entry(V value, long bytes, long savedAt)
+		{
+			this.value = value;
+			this.bytes = bytes;
+			this.savedAt = savedAt;
+		}
+	}
+
+	private final int maximumEntries;
+	private final long maximumBytes;
+	private final long timeToLiveMs;
+	private long totalBytes = 0;
+
+	// normalized url -> entry, in least recently used order. Guarded by this.
+	private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest)
+		{
+			if (!isOverLimit())
+				return false;
+			totalBytes -= eldest.getValue().bytes;
+			return true;
+		}
+	};
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Create a cache whose entries never expire.
+	 *
+	 * @param	maximumEntries	The maximum number of cached objects, or 0 for no limit.
+	 * @param	maximumBytes	The maximum estimated size of the cached objects, or 0 for no limit.
+	 */
+	public MemoryCache(int maximumEntries, long maximumBytes)
+	{
+		this(maximumEntries, maximumBytes, 0);
+	}
+
+	/**
+	 * @param	maximumEntries	The maximum number of cached objects, or 0 for no limit.
+	 * @param	maximumBytes	The maximum estimated size of the cached objects, or 0 for no limit.
+	 * @param	timeToLiveMs	How long an object stays valid, in milliseconds, or 0 to keep it valid until it is dropped.
+	 */
+	public MemoryCache(int maximumEntries, long maximumBytes, long timeToLiveMs)
+	{
+		this.maximumEntries = maximumEntries;
+		this.maximumBytes = maximumBytes;
+		this.timeToLiveMs = timeToLiveMs;
+	}
+
+	/**
+	 * Look up a cached object.
+	 *
+	 * @param	url		The request URL that produced the object.
+	 * @return			The cached object, or null if it is not cached or has expired.
+	 */
+	public V get(String url)
+	{
+		V value = read(url, false);
+		if (value == null)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+		return value;
+	}
+
+	/**
+	 * Look up a cached object, even if it has expired. This is useful as a last resort when
+	 * the network is too slow or unavailable. It does not count as a hit or a miss.
+	 *
+	 * @param	url		The request URL that produced the object.
+	 * @return			The cached object, or null if it is not cached.
+	 */
+	public V getStale(String url)
+	{
+		return read(url, true);
+	}
+
+	private synchronized V read(String url, boolean allowExpired)
+	{
+		// get moves the entry to the recently used end
+		Entry<V> entry = entries.get(CacheKey.normalize(url));
+		if (entry == null)
+			return null;
+		if (!allowExpired && timeToLiveMs > 0 && System.currentTimeMillis() - entry.savedAt > timeToLiveMs)
+			return null;
+		return entry.value;
+	}
+
+	/**
+	 * Add an object to the cache.
+	 *
+	 * @param	url				The request URL that produced the object.
+	 * @param	value			The parsed object.
+	 * @param	estimatedBytes	Roughly how much memory the object uses. The length of the JSON it came from is a good guess.
+	 */
+	public synchronized void put(String url, V value, long estimatedBytes)
+	{
+		String key = CacheKey.normalize(url);
+		Entry<V> previous = entries.remove(key);
+		if (previous != null)
+			totalBytes -= previous.bytes;
+
+		// removeEldestEntry drops at most one entry per put, which is enough for the entry limit
+		totalBytes += estimatedBytes;
+		entries.put(key, new Entry<V>(value, estimatedBytes, System.currentTimeMillis()));
+
+		// but one large object can push out several small ones
+		Iterator<Entry<V>> eldest = entries.values().iterator();
+		while (isOverLimit() && eldest.hasNext())
+		{
+			totalBytes -= eldest.next().bytes;
+			eldest.remove();
+		}
+	}
+
+	private boolean isOverLimit()
+	{
+		return (maximumEntries > 0 && entries.size() > maximumEntries) || (maximumBytes > 0 && totalBytes > maximumBytes);
+	}
+
+	/**
+	 * Remove every cached object.
+	 */
+	public synchronized void clear()
+	{
+		entries.clear();
+		totalBytes = 0;
+	}
+
+	/**
+	 * @return	the number of cached objects
+	 */
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @return	the estimated size of the cached objects, in bytes
+	 */
+	public synchronized long getSizeInBytes()
+	{
+		return totalBytes;
+	}
+
+	/**
+	 * @return	the number of lookups that found an object
+	 */
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * @return	the number of lookups that did not find an object
+	 */
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return	the fraction of lookups that found an object, between 0 and 1
+	 */
+	public double getHitRate()
+	{
+		long total = hits.get() + misses.get();
+		return total == 0 ? 0 : (double) hits.get() / total;
+	}
+}
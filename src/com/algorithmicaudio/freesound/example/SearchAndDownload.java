@@ -1,8 +1,12 @@
 package com.algorithmicaudio.freesound.example;
 
+import java.io.File;
+import java.io.IOException;
+
 import javax.security.auth.login.CredentialNotFoundException;
 
 import com.algorithmicaudio.freesound.FreeSound;
+import com.algorithmicaudio.freesound.library.SoundLibrary;
 import com.algorithmicaudio.freesound.response.SearchResponse;
 import com.algorithmicaudio.freesound.response.SoundResponse;
 
@@ -19,12 +23,12 @@ import com.algorithmicaudio.freesound.response.SoundResponse;
  */
 public class SearchAndDownload
 {
-	public static void main(String[] args) throws CredentialNotFoundException
+	public static void main(String[] args) throws CredentialNotFoundException, IOException
 	{
 		new SearchAndDownload();
 	}
 	
-	public SearchAndDownload() throws CredentialNotFoundException
+	public SearchAndDownload() throws CredentialNotFoundException, IOException
 	{
 		/*
 		 * These are the FreeSound API credentials for your app.
@@ -45,9 +49,15 @@ public class SearchAndDownload
 		String authorizationCode = "";
 		
 		/*
-		 * Initialize the FreeSound client.
+		 * Initialize the FreeSound client. It keeps downloaded sounds in a library folder
+		 * called "sounds". Sounds are saved by id, so running this program again doesn't
+		 * download the same sound twice.
 		 */
-		FreeSound freeSoundClient = new FreeSound(clientSecret, clientId, authorizationCode);
+		FreeSound freeSoundClient = new FreeSound.Builder(clientSecret)
+			.clientId(clientId)
+			.authorizationCode(authorizationCode)
+			.soundLibrary(new SoundLibrary(new File("sounds")))
+			.build();
 		
 		/*
 		 * Send a text search request to the FreeSound API (website).
@@ -67,11 +77,11 @@ public class SearchAndDownload
 		/*
 		 * Download the sound.
 		 */
-		String filename = freeSoundClient.downloadSound(sound.name, sound.id);
+		String filename = freeSoundClient.downloadSound(sound);
 		
 		/*
 		 * Print the results.
 		 */
-		System.out.println("File downloaded to '" + filename + "'. This file is in the root of your current java project.");
+		System.out.println("File downloaded to '" + filename + "'. The sounds folder is in the root of your current java project.");
 	}
 }
@@ -0,0 +1,66 @@
+package com.algorithmicaudio.freesound.example;
+
+import javax.security.auth.login.CredentialNotFoundException;
+
+import com.algorithmicaudio.freesound.BulkDownload;
+import com.algorithmicaudio.freesound.DownloadListener;
+import com.algorithmicaudio.freesound.FreeSound;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+
+/**
+ * This example demonstrates how to download every sound from a search in parallel.
+ *
+ * Like SearchAndDownload, you must run this program once to obtain an authorization
+ * code, then copy that authorization code into this program and run it again.
+ */
+public class SearchAndDownloadMany
+{
+	public static void main(String[] args) throws CredentialNotFoundException
+	{
+		new SearchAndDownloadMany();
+	}
+
+	public SearchAndDownloadMany() throws CredentialNotFoundException
+	{
+		/*
+		 * These are the FreeSound API credentials for your app.
+		 * Go to this URL to apply: https://freesound.org/help/developers/
+		 */
+		String clientId = ""; // You must enter the client id for YOUR freesound app.
+		String clientSecret = ""; // The client secret for YOUR freesound app.
+		String authorizationCode = ""; // The code from freesound.org. See SearchAndDownload.
+
+		/*
+		 * Initialize the FreeSound client.
+		 */
+		FreeSound freeSoundClient = new FreeSound(clientSecret, clientId, authorizationCode);
+
+		/*
+		 * Send a text search request to the FreeSound API (website).
+		 */
+		SearchResponse results = freeSoundClient.search("glass");
+
+		/*
+		 * Download every sound in the results, four at a time, into a folder called "sounds".
+		 * The listener prints the progress as each sound finishes.
+		 */
+		BulkDownload download = freeSoundClient.downloadSounds(results, "sounds", 4, new DownloadListener()
+		{
+			public void onDownloadComplete(long soundId, String filename, int completed, int total)
+			{
+				System.out.println(completed + "/" + total + ": downloaded " + filename);
+			}
+
+			public void onDownloadFailed(long soundId, Exception error, int completed, int total)
+			{
+				System.out.println(completed + "/" + total + ": unable to download sound " + soundId + ". " + error.getMessage());
+			}
+		});
+
+		/*
+		 * Wait for all of the downloads to finish.
+		 */
+		download.await();
+		System.out.println("Finished downloading " + download.getTotalCount() + " sounds.");
+	}
+}
@@ -0,0 +1,301 @@
+package com.algorithmicaudio.freesound.index;
+
+import java.nio.FloatBuffer;
+import java.util.BitSet;
+
+import com.algorithmicaudio.freesound.response.DescriptorLayout;
+
+/**
+ * A compiled descriptors_filter, the same Solr-style syntax that FreeSound.searchByContent sends
+ * to the server. For example:
+ * 
+ * tonal.key_key:"C" AND tonal.key_scale:"major" AND rhythm.bpm:[118 TO 122]
+ * 
+ * Each condition is either an equality (field:value) or a range (field:[low TO high], where * means
+ * no limit). Conditions can be combined with AND and OR, and grouped with parentheses. As in Solr,
+ * a value that is a single word doesn't need quotes, so tonal.key_key:C is the same as
+ * tonal.key_key:"C".
+ * 
+ * A filter is evaluated one column at a time. Each condition scans a single column of a
+ * DescriptorIndex and produces a set of matching rows, and AND and OR combine those sets.
+ */
+public abstract class DescriptorFilter
+{
+	/**
+	 * Find the rows that match this filter.
+	 * 
+	 * @param	columns	One column of values per descriptor slot.
+	 * @param	rows	The number of rows in each column.
+	 * @return			The matching rows.
+	 */
+	abstract BitSet evaluate(FloatBuffer[] columns, int rows);
+
+	/**
+	 * Compile a filter.
+	 * 
+	 * @param	filter	The filter text.
+	 * @param	layout	The layout of the columns it will be evaluated against.
+	 * @return			The compiled filter.
+	 * @throws IllegalArgumentException	if the filter can't be parsed, or refers to a descriptor that isn't in the layout
+	 */
+	public static DescriptorFilter parse(String filter, DescriptorLayout layout)
+	{
+		Parser parser = new Parser(filter, layout);
+		DescriptorFilter compiled = parser.parseOr();
+		parser.skipSpaces();
+		if (parser.position < filter.length())
+			throw new IllegalArgumentException("Unexpected text at position " + parser.position + " of filter: " + filter);
+		return compiled;
+	}
+
+	/**
+	 * Matches the rows where low <= value <= high. An equality is a range where low == high.
+	 */
+	private static class Range extends DescriptorFilter
+	{
+		private final int slot;
+		private final float low;
+		private final float high;
+
+		Range(int slot, float low, float high)
+		{
+			this.slot = slot;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		BitSet evaluate(FloatBuffer[] columns, int rows)
+		{
+			BitSet matches = new BitSet(rows);
+			FloatBuffer column = columns[slot];
+			for(int row = 0; row < rows; row++)
+			{
+				// NaN (a missing descriptor) fails both comparisons, so it never matches
+				float value = column.get(row);
+				if (value >= low && value <= high)
+					matches.set(row);
+			}
+			return matches;
+		}
+	}
+
+	private static class And extends DescriptorFilter
+	{
+		private final DescriptorFilter left;
+		private final DescriptorFilter right;
+
+		And(DescriptorFilter left, DescriptorFilter right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		BitSet evaluate(FloatBuffer[] columns, int rows)
+		{
+			BitSet matches = left.evaluate(columns, rows);
+			if (!matches.isEmpty())
+				matches.and(right.evaluate(columns, rows));
+			return matches;
+		}
+	}
+
+	private static class Or extends DescriptorFilter
+	{
+		private final DescriptorFilter left;
+		private final DescriptorFilter right;
+
+		Or(DescriptorFilter left, DescriptorFilter right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		BitSet evaluate(FloatBuffer[] columns, int rows)
+		{
+			BitSet matches = left.evaluate(columns, rows);
+			matches.or(right.evaluate(columns, rows));
+			return matches;
+		}
+	}
+
+	/**
+	 * A small recursive descent parser for the filter syntax.
+	 */
+	private static class Parser
+	{
+		private final String text;
+		private final DescriptorLayout layout;
+		int position = 0;
+
+		Parser(String text, DescriptorLayout layout)
+		{
+			this.text = text;
+			this.layout = layout;
+		}
+
+		DescriptorFilter parseOr()
+		{
+			DescriptorFilter filter = parseAnd();
+			while (acceptWord("OR"))
+			{
+				filter = new Or(filter, parseAnd());
+			}
+			return filter;
+		}
+
+		DescriptorFilter parseAnd()
+		{
+			DescriptorFilter filter = parseCondition();
+			while (true)
+			{
+				// Solr treats two conditions side by side as AND
+				if (acceptWord("AND") || peekCondition())
+					filter = new And(filter, parseCondition());
+				else
+					return filter;
+			}
+		}
+
+		DescriptorFilter parseCondition()
+		{
+			skipSpaces();
+			if (accept('('))
+			{
+				DescriptorFilter inner = parseOr();
+				expect(')');
+				return inner;
+			}
+
+			// the descriptor name runs up to the colon
+			int nameStart = position;
+			while (position < text.length() && text.charAt(position) != ':')
+				position++;
+			String field = text.substring(nameStart, position).trim();
+			expect(':');
+
+			int slot = layout.getSlot(field);
+			if (slot < 0)
+				throw new IllegalArgumentException("The descriptor " + field + " is not in the index. Add it to the descriptor fields of the FreeSound client, with FreeSound.Builder.descriptorFields.");
+
+			skipSpaces();
+			if (accept('['))
+			{
+				float low = parseNumber(Float.NEGATIVE_INFINITY);
+				if (!acceptWord("TO"))
+					throw new IllegalArgumentException("Expected TO at position " + position + " of filter: " + text);
+				float high = parseNumber(Float.POSITIVE_INFINITY);
+				expect(']');
+				return new Range(slot, low, high);
+			}
+
+			float value;
+			if (accept('"'))
+			{
+				int valueStart = position;
+				while (position < text.length() && text.charAt(position) != '"')
+					position++;
+				String word = text.substring(valueStart, position);
+				expect('"');
+				value = layout.isDictionaryEncoded(slot) ? layout.encode(slot, word) : toNumber(word, valueStart);
+			}
+			else if (layout.isDictionaryEncoded(slot))
+			{
+				value = layout.encode(slot, parseWord());
+			}
+			else
+			{
+				value = parseNumber(Float.NaN);
+			}
+			// an unknown word encodes as NaN, which matches nothing
+			return new Range(slot, value, value);
+		}
+
+		/**
+		 * @param	wildcard	the value to return for *
+		 */
+		float parseNumber(float wildcard)
+		{
+			skipSpaces();
+			if (accept('*'))
+				return wildcard;
+			int start = position;
+			while (position < text.length() && "+-.0123456789eE".indexOf(text.charAt(position)) >= 0)
+				position++;
+			if (start == position)
+				throw new IllegalArgumentException("Expected a number at position " + position + " of filter: " + text);
+			return toNumber(text.substring(start, position), start);
+		}
+
+		float toNumber(String number, int start)
+		{
+			try
+			{
+				return Float.parseFloat(number);
+			}
+			catch(NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Expected a number at position " + start + " of filter: " + text);
+			}
+		}
+
+		/**
+		 * A value without quotes runs up to the next space or closing parenthesis.
+		 */
+		String parseWord()
+		{
+			skipSpaces();
+			int start = position;
+			while (position < text.length() && !Character.isWhitespace(text.charAt(position)) && text.charAt(position) != ')')
+				position++;
+			if (start == position)
+				throw new IllegalArgumentException("Expected a value at position " + position + " of filter: " + text);
+			return text.substring(start, position);
+		}
+
+		boolean peekCondition()
+		{
+			skipSpaces();
+			if (position >= text.length())
+				return false;
+			char next = text.charAt(position);
+			return next != ')' && !text.startsWith("OR", position);
+		}
+
+		boolean acceptWord(String word)
+		{
+			skipSpaces();
+			if (text.startsWith(word, position) && (position + word.length() == text.length() || !Character.isLetterOrDigit(text.charAt(position + word.length()))))
+			{
+				position += word.length();
+				return true;
+			}
+			return false;
+		}
+
+		boolean accept(char c)
+		{
+			skipSpaces();
+			if (position < text.length() && text.charAt(position) == c)
+			{
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		void expect(char c)
+		{
+			if (!accept(c))
+				throw new IllegalArgumentException("Expected " + c + " at position " + position + " of filter: " + text);
+		}
+
+		void skipSpaces()
+		{
+			while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+				position++;
+		}
+	}
+}
@@ -0,0 +1,531 @@
+package com.algorithmicaudio.freesound.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.algorithmicaudio.freesound.io.Local;
+import com.algorithmicaudio.freesound.response.DescriptorLayout;
+import com.algorithmicaudio.freesound.response.Descriptors;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SoundResponse;
+
+/**
+ * A local, on-disk index of the descriptors of sounds you have already found, so that content
+ * searches like searchByKey can be answered without asking FreeSound.
+ * 
+ * The index is stored column by column: one column of sound ids, then one column of floats for
+ * each descriptor in the layout. The file is memory mapped, so opening an index is nearly instant
+ * and a query only touches the columns it filters on.
+ * 
+ * For example:
+ * DescriptorIndex index = new DescriptorIndex(new File("descriptors.idx"), freeSoundClient.getDescriptorLayout());
+ * index.addAll(freeSoundClient.searchByTag("glass"));
+ * long[] soundIds = index.query(FreeSound.keyFilter("C", "major") + " AND rhythm.bpm:[118 TO 122]");
+ * 
+ * Queries can run on many threads at once. Adding sounds blocks queries briefly.
+ * 
+ * When the index fills up, its columns are copied into a file twice the size, named after the
+ * original with a generation number, like descriptors.idx.1, then descriptors.idx.2, and so on.
+ * The bigger file is finished under a temporary name and then renamed, so a crash leaves either
+ * the old index or the new one. Opening the index finds the newest generation and deletes the
+ * older ones. Because a mapped file is never replaced, there is no need to unmap it first, which
+ * Java can only do through internal APIs before Java 19.
+ */
+public class DescriptorIndex
+{
+	private static final int MAGIC = 0x46534449; // FSDI
+	private static final int VERSION = 1;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final File file;
+	private final DescriptorLayout layout;
+	private final Pattern generationName;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private int generation; // which generation of the file is mapped. See generationFile.
+	private MappedByteBuffer buffer;
+	private int headerBytes;
+	private int capacity;
+	private int count;
+	private LongBuffer ids;
+	private FloatBuffer[] columns;
+
+	// sound id -> row, so that adding a sound twice updates it instead of duplicating it
+	private final HashMap<Long, Integer> rows = new HashMap<Long, Integer>();
+
+	/**
+	 * Open an index file, creating it if necessary.
+	 * 
+	 * @param	file	Where the index is stored.
+	 * @param	layout	The descriptors to index. An existing file must have been created with the same layout.
+	 * @throws IOException	if the file can't be opened, or was created with a different layout
+	 */
+	public DescriptorIndex(File file, DescriptorLayout layout) throws IOException
+	{
+		this.file = file;
+		this.layout = layout;
+		generationName = Pattern.compile(Pattern.quote(file.getName()) + "\\.(\\d+)");
+
+		generation = newestGeneration();
+		File current = generationFile(generation);
+		if (!current.exists() || current.length() == 0)
+			create(current, INITIAL_CAPACITY);
+		open();
+		deleteOldGenerations();
+	}
+
+	/**
+	 * @param	number	A generation. 0 is the file the index was opened with.
+	 * @return			The file that holds that generation of the index.
+	 */
+	private File generationFile(int number)
+	{
+		return number == 0 ? file : new File(file.getPath() + "." + number);
+	}
+
+	/**
+	 * @return	the generation of the newest finished file, or 0 if the index has never grown
+	 */
+	private int newestGeneration()
+	{
+		int newest = 0;
+		for(File sibling : siblings())
+		{
+			Matcher matcher = generationName.matcher(sibling.getName());
+			if (matcher.matches())
+			{
+				try
+				{
+					newest = Math.max(newest, Integer.parseInt(matcher.group(1)));
+				}
+				catch(NumberFormatException e)
+				{
+					// not a generation this index wrote
+				}
+			}
+		}
+		return newest;
+	}
+
+	/**
+	 * Delete the generations before the current one. On Windows a file can't be deleted while it is
+	 * still mapped, so a file this index has only just stopped using may stay until the next time
+	 * the index is opened.
+	 */
+	private void deleteOldGenerations()
+	{
+		for(File sibling : siblings())
+		{
+			Matcher matcher = generationName.matcher(sibling.getName());
+			if (matcher.matches() && !matcher.group(1).equals(Integer.toString(generation)))
+				sibling.delete();
+		}
+		if (generation > 0)
+			file.delete();
+	}
+
+	private File[] siblings()
+	{
+		File directory = file.getAbsoluteFile().getParentFile();
+		File[] files = directory == null ? null : directory.listFiles();
+		return files == null ? new File[0] : files;
+	}
+
+	/**
+	 * Create an empty index file.
+	 */
+	private void create(File target, int newCapacity) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(target, "rw"))
+		{
+			raf.setLength(fileSize(newCapacity));
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(newCapacity);
+			raf.writeInt(0); // count
+			raf.writeInt(layout.size());
+			for(int slot = 0; slot < layout.size(); slot++)
+			{
+				byte[] name = nameBytes(slot);
+				raf.writeShort(name.length);
+				raf.write(name);
+			}
+		}
+	}
+
+	/**
+	 * The name of a descriptor as it is stored in the header: its length in two bytes, then plain
+	 * UTF-8. This is not DataOutput.writeUTF, which writes a modified UTF-8 that is longer for some
+	 * characters, and would not match headerSize. For ordinary descriptor names the two are the same,
+	 * so older files still open.
+	 */
+	private byte[] nameBytes(int slot) throws IOException
+	{
+		byte[] name = layout.getField(slot).getBytes(StandardCharsets.UTF_8);
+		if (name.length > 0xffff)
+			throw new IOException("The descriptor name " + layout.getField(slot).substring(0, 32) + "... is too long to index.");
+		return name;
+	}
+
+	/**
+	 * The header holds the format, the capacity, the count, and the descriptor names. It is padded
+	 * so that the columns start on an 8 byte boundary.
+	 */
+	private int headerSize() throws IOException
+	{
+		int size = 20;
+		for(int slot = 0; slot < layout.size(); slot++)
+		{
+			size += 2 + nameBytes(slot).length;
+		}
+		return (size + 7) & ~7;
+	}
+
+	/**
+	 * The size of an index file with room for a number of sounds. A mapped file can't be larger
+	 * than 2 GB, which is why every offset in the file fits in an int.
+	 * 
+	 * @throws IOException	if the file would be too large to map
+	 */
+	private long fileSize(int newCapacity) throws IOException
+	{
+		try
+		{
+			long rowBytes = Math.addExact(8L, Math.multiplyExact(4L, layout.size()));
+			long size = Math.addExact(headerSize(), Math.multiplyExact((long) newCapacity, rowBytes));
+			if (size > Integer.MAX_VALUE)
+				throw new ArithmeticException();
+			return size;
+		}
+		catch(ArithmeticException e)
+		{
+			throw new IOException("A descriptor index with room for " + newCapacity + " sounds would be larger than 2 GB, which is the most that can be memory mapped.");
+		}
+	}
+
+	/**
+	 * Map the index file into memory and set up a view of each column.
+	 */
+	private void open() throws IOException
+	{
+		File current = generationFile(generation);
+		try (RandomAccessFile raf = new RandomAccessFile(current, "rw"); FileChannel channel = raf.getChannel())
+		{
+			if (raf.readInt() != MAGIC || raf.readInt() != VERSION)
+				throw new IOException(current + " is not a descriptor index.");
+			capacity = raf.readInt();
+			count = raf.readInt();
+			int columnCount = raf.readInt();
+			if (columnCount != layout.size())
+				throw new IOException(current + " was created with different descriptors.");
+			for(int slot = 0; slot < columnCount; slot++)
+			{
+				byte[] name = new byte[raf.readUnsignedShort()];
+				raf.readFully(name);
+				if (!Arrays.equals(name, nameBytes(slot)))
+					throw new IOException(current + " was created with different descriptors.");
+			}
+			headerBytes = headerSize();
+
+			// a damaged capacity could point past the end of the file
+			if (capacity < 0 || count < 0 || count > capacity || fileSize(capacity) > channel.size())
+				throw new IOException(current + " is damaged.");
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+		}
+
+		// fileSize checked that the whole file fits in an int, so none of these can overflow
+		ids = slice(headerBytes, Math.multiplyExact(capacity, 8)).asLongBuffer();
+		columns = new FloatBuffer[layout.size()];
+		int columnStart = headerBytes + Math.multiplyExact(capacity, 8);
+		for(int slot = 0; slot < columns.length; slot++)
+		{
+			columns[slot] = slice(columnStart + Math.multiplyExact(slot, Math.multiplyExact(capacity, 4)), Math.multiplyExact(capacity, 4)).asFloatBuffer();
+		}
+
+		rows.clear();
+		for(int row = 0; row < count; row++)
+		{
+			rows.put(ids.get(row), row);
+		}
+	}
+
+	private ByteBuffer slice(int start, int length)
+	{
+		ByteBuffer view = buffer.duplicate();
+		view.position(start);
+		view.limit(Math.addExact(start, length));
+		return view.slice();
+	}
+
+	/**
+	 * Add every sound in a search response. Sounds without descriptors are skipped.
+	 * 
+	 * @param	response	A search response from FreeSound.
+	 */
+	public void addAll(SearchResponse response) throws IOException
+	{
+		if (response == null || response.results == null)
+			return;
+		for(SoundResponse sound : response.results)
+		{
+			if (sound.descriptors != null)
+				add(sound.id, sound.descriptors);
+		}
+	}
+
+	/**
+	 * Add a sound to the index, or update it if it is already there.
+	 * 
+	 * @param	soundId		The id of the sound.
+	 * @param	descriptors	Its descriptors. They must use the same layout as the index.
+	 */
+	public void add(long soundId, Descriptors descriptors) throws IOException
+	{
+		if (!layout.matches(fieldsOf(descriptors.getLayout())))
+			throw new IllegalArgumentException("These descriptors use a different layout than the index.");
+
+		lock.writeLock().lock();
+		try
+		{
+			Integer row = rows.get(soundId);
+			if (row == null)
+			{
+				if (count == capacity)
+					grow();
+				row = count++;
+				rows.put(soundId, row);
+				ids.put(row, soundId);
+				buffer.putInt(12, count);
+			}
+			for(int slot = 0; slot < columns.length; slot++)
+			{
+				columns[slot].put(row, descriptors.get(slot));
+			}
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	private static String[] fieldsOf(DescriptorLayout layout)
+	{
+		String[] fields = new String[layout.size()];
+		for(int slot = 0; slot < fields.length; slot++)
+		{
+			fields[slot] = layout.getField(slot);
+		}
+		return fields;
+	}
+
+	/**
+	 * Double the capacity of the index. The columns are copied into the next generation of the
+	 * file, which is written in full under a temporary name before it is renamed into place. The
+	 * old file stays mapped and usable until then, so if anything fails the index is unchanged.
+	 */
+	private void grow() throws IOException
+	{
+		int newCapacity;
+		try
+		{
+			newCapacity = Math.multiplyExact(capacity, 2);
+		}
+		catch(ArithmeticException e)
+		{
+			throw new IOException("The descriptor index is full.");
+		}
+		fileSize(newCapacity); // throws if the bigger file couldn't be mapped
+
+		File temp = new File(file.getPath() + ".grow");
+		File next = generationFile(generation + 1);
+		try
+		{
+			create(temp, newCapacity);
+
+			// the new file is written through the channel, not mapped, so that nothing keeps it mapped while it is renamed
+			try (RandomAccessFile raf = new RandomAccessFile(temp, "rw"); FileChannel channel = raf.getChannel())
+			{
+				ByteBuffer header = ByteBuffer.allocate(4).putInt(0, count);
+				writeAt(channel, header, 12);
+
+				ByteBuffer idBytes = ByteBuffer.allocate(count * 8);
+				for(int row = 0; row < count; row++)
+				{
+					idBytes.putLong(ids.get(row));
+				}
+				idBytes.flip();
+				writeAt(channel, idBytes, headerBytes);
+
+				long columnStart = headerBytes + (long) newCapacity * 8;
+				ByteBuffer columnBytes = ByteBuffer.allocate(count * 4);
+				for(int slot = 0; slot < columns.length; slot++)
+				{
+					columnBytes.clear();
+					for(int row = 0; row < count; row++)
+					{
+						columnBytes.putFloat(columns[slot].get(row));
+					}
+					columnBytes.flip();
+					writeAt(channel, columnBytes, columnStart + (long) slot * newCapacity * 4);
+				}
+				channel.force(true);
+			}
+			Local.replaceFile(temp, next);
+		}
+		finally
+		{
+			temp.delete();
+		}
+
+		// the new generation is complete, so switch to it. The old mapping is released by the garbage collector.
+		File previous = generationFile(generation);
+		buffer.force();
+		generation++;
+		open();
+		previous.delete();
+	}
+
+	/**
+	 * Write all of a buffer at a position in a file. A single write may stop short.
+	 */
+	private static void writeAt(FileChannel channel, ByteBuffer bytes, long position) throws IOException
+	{
+		while (bytes.hasRemaining())
+		{
+			position += channel.write(bytes, position);
+		}
+	}
+
+	/**
+	 * Find the sounds that match a descriptors filter. See DescriptorFilter for the syntax.
+	 * 
+	 * @param	filter	A filter like tonal.key_key:"C" AND rhythm.bpm:[118 TO 122]
+	 * @return			The ids of the matching sounds.
+	 */
+	public long[] query(String filter)
+	{
+		return query(DescriptorFilter.parse(filter, layout));
+	}
+
+	/**
+	 * Find the sounds that match a compiled filter. Compile a filter once with DescriptorFilter.parse
+	 * if you run it many times.
+	 * 
+	 * @param	filter	The compiled filter.
+	 * @return			The ids of the matching sounds.
+	 */
+	public long[] query(DescriptorFilter filter)
+	{
+		lock.readLock().lock();
+		try
+		{
+			BitSet matches = filter.evaluate(columns, count);
+			long[] result = new long[matches.cardinality()];
+			int i = 0;
+			for(int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1))
+			{
+				result[i++] = ids.get(row);
+			}
+			return result;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param	soundId		The id of a sound.
+	 * @return				true if the sound is in the index
+	 */
+	public boolean contains(long soundId)
+	{
+		lock.readLock().lock();
+		try
+		{
+			return rows.containsKey(soundId);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param	soundId		The id of a sound.
+	 * @return				its descriptors, or null if the sound is not in the index
+	 */
+	public Descriptors get(long soundId)
+	{
+		lock.readLock().lock();
+		try
+		{
+			Integer row = rows.get(soundId);
+			if (row == null)
+				return null;
+			float[] values = new float[columns.length];
+			for(int slot = 0; slot < columns.length; slot++)
+			{
+				values[slot] = columns[slot].get(row);
+			}
+			return new Descriptors(layout, values);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return	the number of sounds in the index
+	 */
+	public int size()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return count;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return	the layout of the indexed descriptors
+	 */
+	public DescriptorLayout getLayout()
+	{
+		return layout;
+	}
+
+	/**
+	 * Make sure everything added so far has been written to disk.
+	 */
+	public void flush()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			buffer.force();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,515 @@
+package com.algorithmicaudio.freesound.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.algorithmicaudio.freesound.response.DescriptorLayout;
+import com.algorithmicaudio.freesound.response.Descriptors;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SoundResponse;
+
+/**
+ * Finds sounds with similar descriptors without asking FreeSound, so that "something like this"
+ * can be answered inside a generative loop. It is an approximate nearest neighbour index using
+ * a Hierarchical Navigable Small World graph (HNSW). See https://arxiv.org/abs/1603.09320.
+ * 
+ * Each sound is a point whose coordinates are its numeric descriptors. The key and scale are
+ * words rather than measurements, so they are left out. Each descriptor is rescaled so that they
+ * all count about the same. Otherwise bpm, which is in the hundreds, would drown out loudness,
+ * which is between 0 and 1.
+ * 
+ * For example:
+ * SimilarityIndex index = SimilarityIndex.build(freeSoundClient.getDescriptorLayout(), harvestedSounds);
+ * SearchResponse similar = index.search(sound, 15);
+ * 
+ * Searches can run on many threads at once. Adding sounds blocks searches briefly.
+ */
+public class SimilarityIndex
+{
+	private static class Node
+	{
+		final SoundResponse sound;
+		final float[] vector;
+		final int[][] neighbors;
+		final int[] neighborCounts;
+
+		Node(SoundResponse sound, float[] vector, int level, int connections)
+		{
+			this.sound = sound;
+			this.vector = vector;
+			neighbors = new int[level + 1][];
+			neighborCounts = new int[level + 1];
+			for(int l = 0; l <= level; l++)
+			{
+				// the bottom layer holds every node, so it gets twice as many connections
+				neighbors[l] = new int[(l == 0 ? connections * 2 : connections) + 1];
+			}
+		}
+
+		int level()
+		{
+			return neighbors.length - 1;
+		}
+	}
+
+	/**
+	 * A node and its distance from the point being searched for.
+	 */
+	private static class Candidate
+	{
+		final int node;
+		final float distance;
+
+		Candidate(int node, float distance)
+		{
+			this.node = node;
+			this.distance = distance;
+		}
+	}
+
+	private final DescriptorLayout layout;
+	private final int[] dimensions;
+	private final float[] center;
+	private final float[] scale;
+
+	private final int connections;
+	private final int constructionBreadth;
+	private volatile int searchBreadth;
+	private final double levelMultiplier;
+	private final Random random = new Random(42);
+
+	private final List<Node> nodes = new ArrayList<Node>();
+	private final HashMap<Long, Integer> nodesById = new HashMap<Long, Integer>();
+	private int entryPoint = -1;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Create an empty index. Most of the time it is easier to use SimilarityIndex.build, which works out the scales for you.
+	 * 
+	 * @param	layout				The layout of the descriptors.
+	 * @param	center				The typical value of each slot. Subtracted before scaling.
+	 * @param	scale				How much to multiply each slot by, after centering, so that the slots are comparable.
+	 * @param	connections			How many neighbours each sound is linked to. 16 is a good choice. More is more accurate but slower.
+	 * @param	constructionBreadth	How widely to search while adding sounds. 100 is a good choice.
+	 * @param	searchBreadth		How widely to search while answering queries. Must be at least as many results as you ask for.
+	 */
+	public SimilarityIndex(DescriptorLayout layout, float[] center, float[] scale, int connections, int constructionBreadth, int searchBreadth)
+	{
+		this.layout = layout;
+		this.center = center.clone();
+		this.scale = scale.clone();
+		this.connections = connections;
+		this.constructionBreadth = constructionBreadth;
+		this.searchBreadth = searchBreadth;
+		levelMultiplier = 1 / Math.log(connections);
+
+		List<Integer> numeric = new ArrayList<Integer>();
+		for(int slot = 0; slot < layout.size(); slot++)
+		{
+			if (!layout.isDictionaryEncoded(slot))
+				numeric.add(slot);
+		}
+		dimensions = new int[numeric.size()];
+		for(int i = 0; i < dimensions.length; i++)
+		{
+			dimensions[i] = numeric.get(i);
+		}
+	}
+
+	/**
+	 * Build an index of the given sounds, scaling each descriptor by its spread among them.
+	 * 
+	 * @param	layout	The layout of the descriptors.
+	 * @param	sounds	The sounds to index. Sounds without descriptors are skipped.
+	 * @return			The index.
+	 */
+	public static SimilarityIndex build(DescriptorLayout layout, Collection<SoundResponse> sounds)
+	{
+		// work out the mean and standard deviation of each slot
+		int slots = layout.size();
+		double[] sum = new double[slots];
+		double[] sumOfSquares = new double[slots];
+		int[] counts = new int[slots];
+		for(SoundResponse sound : sounds)
+		{
+			if (sound.descriptors == null)
+				continue;
+			for(int slot = 0; slot < slots; slot++)
+			{
+				float value = sound.descriptors.get(slot);
+				if (!Float.isNaN(value))
+				{
+					sum[slot] += value;
+					sumOfSquares[slot] += value * value;
+					counts[slot]++;
+				}
+			}
+		}
+
+		float[] center = new float[slots];
+		float[] scale = new float[slots];
+		for(int slot = 0; slot < slots; slot++)
+		{
+			if (counts[slot] == 0)
+				continue;
+			double mean = sum[slot] / counts[slot];
+			double deviation = Math.sqrt(Math.max(0, sumOfSquares[slot] / counts[slot] - mean * mean));
+			center[slot] = (float) mean;
+			scale[slot] = deviation > 0 ? (float) (1 / deviation) : 1;
+		}
+
+		SimilarityIndex index = new SimilarityIndex(layout, center, scale, 16, 100, 64);
+		for(SoundResponse sound : sounds)
+		{
+			index.add(sound);
+		}
+		return index;
+	}
+
+	/**
+	 * Turn descriptors into a point in the index. Missing descriptors sit at the center.
+	 */
+	private float[] toVector(Descriptors descriptors)
+	{
+		float[] vector = new float[dimensions.length];
+		for(int i = 0; i < dimensions.length; i++)
+		{
+			float value = descriptors.get(dimensions[i]);
+			vector[i] = Float.isNaN(value) ? 0 : (value - center[dimensions[i]]) * scale[dimensions[i]];
+		}
+		return vector;
+	}
+
+	private static float distanceSquared(float[] a, float[] b)
+	{
+		float total = 0;
+		for(int i = 0; i < a.length; i++)
+		{
+			float difference = a[i] - b[i];
+			total += difference * difference;
+		}
+		return total;
+	}
+
+	/**
+	 * Add every sound in a search response.
+	 */
+	public void addAll(SearchResponse response)
+	{
+		if (response == null || response.results == null)
+			return;
+		for(SoundResponse sound : response.results)
+		{
+			add(sound);
+		}
+	}
+
+	/**
+	 * Add a sound to the index. Sounds without descriptors, and sounds that are already in the index, are skipped.
+	 * 
+	 * @param	sound	The sound to add.
+	 */
+	public void add(SoundResponse sound)
+	{
+		if (sound.descriptors == null)
+			return;
+
+		float[] vector = toVector(sound.descriptors);
+		int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+
+		lock.writeLock().lock();
+		try
+		{
+			if (nodesById.containsKey(sound.id))
+				return;
+
+			int id = nodes.size();
+			Node node = new Node(sound, vector, level, connections);
+			nodes.add(node);
+			nodesById.put(sound.id, id);
+
+			if (entryPoint < 0)
+			{
+				entryPoint = id;
+				return;
+			}
+
+			// walk down the upper layers, greedily moving toward the new point
+			int current = entryPoint;
+			int topLevel = nodes.get(entryPoint).level();
+			for(int l = topLevel; l > level; l--)
+			{
+				current = greedyClosest(vector, current, l);
+			}
+
+			// on each layer the new node shares, link it to its nearest neighbours
+			for(int l = Math.min(level, topLevel); l >= 0; l--)
+			{
+				List<Candidate> nearest = searchLayer(vector, current, constructionBreadth, l);
+				int maximum = node.neighbors[l].length - 1;
+				for(int i = 0; i < nearest.size() && i < maximum; i++)
+				{
+					int neighbor = nearest.get(i).node;
+					link(id, neighbor, l);
+					link(neighbor, id, l);
+				}
+				current = nearest.get(0).node;
+			}
+
+			if (level > topLevel)
+				entryPoint = id;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Connect one node to another. If the node already has too many neighbours, keep only the closest.
+	 */
+	private void link(int from, int to, int level)
+	{
+		Node node = nodes.get(from);
+		int[] list = node.neighbors[level];
+		list[node.neighborCounts[level]++] = to;
+
+		int maximum = list.length - 1;
+		if (node.neighborCounts[level] > maximum)
+		{
+			// drop the farthest neighbour
+			int farthest = 0;
+			float farthestDistance = -1;
+			for(int i = 0; i < node.neighborCounts[level]; i++)
+			{
+				float distance = distanceSquared(node.vector, nodes.get(list[i]).vector);
+				if (distance > farthestDistance)
+				{
+					farthestDistance = distance;
+					farthest = i;
+				}
+			}
+			list[farthest] = list[--node.neighborCounts[level]];
+		}
+	}
+
+	/**
+	 * Follow the links on one layer toward the target until no neighbour is closer.
+	 */
+	private int greedyClosest(float[] target, int start, int level)
+	{
+		int current = start;
+		float currentDistance = distanceSquared(target, nodes.get(current).vector);
+		boolean moved = true;
+		while (moved)
+		{
+			moved = false;
+			Node node = nodes.get(current);
+			for(int i = 0; i < node.neighborCounts[level]; i++)
+			{
+				int neighbor = node.neighbors[level][i];
+				float distance = distanceSquared(target, nodes.get(neighbor).vector);
+				if (distance < currentDistance)
+				{
+					current = neighbor;
+					currentDistance = distance;
+					moved = true;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Best-first search of one layer, keeping the closest breadth nodes found.
+	 * 
+	 * @return	the closest nodes found, nearest first
+	 */
+	private List<Candidate> searchLayer(float[] target, int start, int breadth, int level)
+	{
+		Set<Integer> visited = new HashSet<Integer>();
+		PriorityQueue<Candidate> toVisit = new PriorityQueue<Candidate>((a, b) -> Float.compare(a.distance, b.distance));
+		PriorityQueue<Candidate> found = new PriorityQueue<Candidate>((a, b) -> Float.compare(b.distance, a.distance));
+
+		Candidate first = new Candidate(start, distanceSquared(target, nodes.get(start).vector));
+		visited.add(start);
+		toVisit.add(first);
+		found.add(first);
+
+		while (!toVisit.isEmpty())
+		{
+			Candidate closest = toVisit.poll();
+			if (closest.distance > found.peek().distance && found.size() >= breadth)
+				break;
+
+			Node node = nodes.get(closest.node);
+			for(int i = 0; i < node.neighborCounts[level]; i++)
+			{
+				int neighbor = node.neighbors[level][i];
+				if (!visited.add(neighbor))
+					continue;
+
+				float distance = distanceSquared(target, nodes.get(neighbor).vector);
+				if (found.size() < breadth || distance < found.peek().distance)
+				{
+					Candidate candidate = new Candidate(neighbor, distance);
+					toVisit.add(candidate);
+					found.add(candidate);
+					if (found.size() > breadth)
+						found.poll();
+				}
+			}
+		}
+
+		List<Candidate> result = new ArrayList<Candidate>(found);
+		result.sort((a, b) -> Float.compare(a.distance, b.distance));
+		return result;
+	}
+
+	/**
+	 * Find the sounds most similar to a sound. The sound itself is not included.
+	 * 
+	 * @param	target			The sound to match. It must have descriptors.
+	 * @param	maximumResults	The maximum number of sounds to return.
+	 * @return					A SearchResponse like the one from FreeSound.searchForSimilar, nearest first, with distance filled in.
+	 */
+	public SearchResponse search(SoundResponse target, int maximumResults)
+	{
+		return search(target.descriptors, maximumResults, target.id);
+	}
+
+	/**
+	 * Find the sounds with descriptors closest to the given ones.
+	 * 
+	 * @param	descriptors		The descriptors to match.
+	 * @param	maximumResults	The maximum number of sounds to return.
+	 * @return					A SearchResponse, nearest first, with distance filled in.
+	 */
+	public SearchResponse search(Descriptors descriptors, int maximumResults)
+	{
+		return search(descriptors, maximumResults, Long.MIN_VALUE);
+	}
+
+	private SearchResponse search(Descriptors descriptors, int maximumResults, long excludedId)
+	{
+		float[] vector = toVector(descriptors);
+		lock.readLock().lock();
+		try
+		{
+			List<Candidate> nearest = Collections.emptyList();
+			if (entryPoint >= 0)
+			{
+				int current = entryPoint;
+				for(int l = nodes.get(entryPoint).level(); l > 0; l--)
+				{
+					current = greedyClosest(vector, current, l);
+				}
+				nearest = searchLayer(vector, current, Math.max(searchBreadth, maximumResults + 1), 0);
+			}
+			return toResponse(nearest, maximumResults, excludedId);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the closest sounds by comparing against every sound in the index. This is exact but slow,
+	 * and is mostly useful for checking how accurate search is.
+	 */
+	public SearchResponse searchExact(SoundResponse target, int maximumResults)
+	{
+		float[] vector = toVector(target.descriptors);
+		lock.readLock().lock();
+		try
+		{
+			List<Candidate> all = new ArrayList<Candidate>(nodes.size());
+			for(int i = 0; i < nodes.size(); i++)
+			{
+				all.add(new Candidate(i, distanceSquared(vector, nodes.get(i).vector)));
+			}
+			all.sort((a, b) -> Float.compare(a.distance, b.distance));
+			return toResponse(all, maximumResults, target.id);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Copy the closest sounds into a SearchResponse, with their distances.
+	 */
+	private SearchResponse toResponse(List<Candidate> nearest, int maximumResults, long excludedId)
+	{
+		SearchResponse response = new SearchResponse();
+		response.results = new ArrayList<SoundResponse>();
+		for(Candidate candidate : nearest)
+		{
+			if (response.results.size() >= maximumResults)
+				break;
+			SoundResponse original = nodes.get(candidate.node).sound;
+			if (original.id == excludedId)
+				continue;
+
+			// copy the sound so that the distance belongs to this search only
+			SoundResponse sound = new SoundResponse();
+			sound.id = original.id;
+			sound.name = original.name;
+			sound.type = original.type;
+			sound.license = original.license;
+			sound.username = original.username;
+			sound.duration = original.duration;
+			sound.analysis = original.analysis;
+			sound.tags = original.tags;
+			sound.descriptors = original.descriptors;
+			sound.distance = Math.sqrt(candidate.distance);
+			response.results.add(sound);
+		}
+		response.count = response.results.size();
+		response.num_pages = 1;
+		response.next = null;
+		return response;
+	}
+
+	/**
+	 * @param	newSearchBreadth	How widely to search while answering queries. Larger is more accurate but slower.
+	 */
+	public void setSearchBreadth(int newSearchBreadth)
+	{
+		searchBreadth = newSearchBreadth;
+	}
+
+	/**
+	 * @return	the number of sounds in the index
+	 */
+	public int size()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return nodes.size();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return	the layout of the indexed descriptors
+	 */
+	public DescriptorLayout getLayout()
+	{
+		return layout;
+	}
+}
@@ -0,0 +1,52 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that remembers how many bytes have been read through it.
+ */
+public class CountingInputStream extends FilterInputStream
+{
+	private long count = 0;
+
+	public CountingInputStream(InputStream in)
+	{
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		int b = super.read();
+		if (b != -1)
+			count++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException
+	{
+		int bytesRead = super.read(buffer, offset, length);
+		if (bytesRead > 0)
+			count += bytesRead;
+		return bytesRead;
+	}
+
+	@Override
+	public long skip(long n) throws IOException
+	{
+		long skipped = super.skip(n);
+		count += skipped;
+		return skipped;
+	}
+
+	/**
+	 * @return	the number of bytes read so far
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+}
@@ -0,0 +1,34 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Makes the threads for the background pools of this library, like the pool that prefetches
+ * pages and the one that evicts sounds from a SoundLibrary.
+ *
+ * Every thread is a daemon. Java waits for ordinary threads before a program can exit, so a pool
+ * of ordinary threads with a stalled download in it would keep your program running after main
+ * has returned. Daemon threads are simply stopped when the program ends.
+ *
+ * Each thread is named after its pool, so you can tell them apart in a debugger or a thread dump.
+ */
+public class DaemonThreadFactory implements ThreadFactory
+{
+	private final String name;
+
+	/**
+	 * @param	name	The name given to every thread, like "freesound-background".
+	 */
+	public DaemonThreadFactory(String name)
+	{
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable)
+	{
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+}
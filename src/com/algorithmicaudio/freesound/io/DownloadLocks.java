@@ -0,0 +1,195 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Makes sure that a sound is only downloaded by one thread, in one program, at a time, even when
+ * several programs share the same sound folder.
+ *
+ * Every folder has one lock file, and each sound locks the byte of that file at the position of
+ * its id. The operating system holds those locks on behalf of the program, so they are released
+ * even if the program crashes. Threads in the same program wait on an ordinary lock first, so
+ * only one thread per program ever asks the operating system.
+ *
+ * A typical download looks like this:
+ *
+ *	try (DownloadLocks.Lock lock = DownloadLocks.forDirectory(directory).acquire(soundId))
+ *	{
+ *		if (!file.exists())
+ *			Remote.fetchBinary(url, file.getPath(), token, priority);
+ *	}
+ *
+ * Whoever gets the lock second finds the file already there, and uses it.
+ */
+public class DownloadLocks
+{
+	private static final ConcurrentHashMap<String, DownloadLocks> directories = new ConcurrentHashMap<String, DownloadLocks>();
+
+	// how long to wait between attempts to take a lock that another program holds
+	private static final long MINIMUM_POLL_MILLIS = 10;
+	private static final long MAXIMUM_POLL_MILLIS = 250;
+
+	private final FileChannel channel;
+	private final ConcurrentHashMap<Long, ReentrantLock> threadLocks = new ConcurrentHashMap<Long, ReentrantLock>();
+
+	/**
+	 * A lock on one sound. Close it when the download is finished.
+	 */
+	public class Lock implements Closeable
+	{
+		private final long soundId;
+		private final ReentrantLock threadLock;
+		private final FileLock fileLock;
+
+		private Lock(long soundId, ReentrantLock threadLock, FileLock fileLock)
+		{
+			this.soundId = soundId;
+			this.threadLock = threadLock;
+			this.fileLock = fileLock;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				fileLock.release();
+			}
+			finally
+			{
+				threadLock.unlock();
+
+				// forget the lock if no one else is waiting for it. See acquire.
+				if (!threadLock.hasQueuedThreads())
+					threadLocks.remove(soundId, threadLock);
+			}
+		}
+	}
+
+	/**
+	 * @param	lockFile	The file whose bytes are locked.
+	 */
+	private DownloadLocks(File lockFile) throws IOException
+	{
+		File parent = lockFile.getAbsoluteFile().getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+		channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Get the locks for the sounds in a folder. Every caller that names the same folder gets the same locks.
+	 *
+	 * @param	directory	The folder where the sounds are saved.
+	 * @return				The locks for that folder.
+	 * @throws IOException	if the lock file can't be opened
+	 */
+	public static DownloadLocks forDirectory(File directory) throws IOException
+	{
+		String key = directory.getCanonicalPath();
+		DownloadLocks locks = directories.get(key);
+		if (locks != null)
+			return locks;
+
+		synchronized (directories)
+		{
+			locks = directories.get(key);
+			if (locks == null)
+			{
+				locks = new DownloadLocks(new File(directory, ".downloads.lock"));
+				directories.put(key, locks);
+			}
+			return locks;
+		}
+	}
+
+	/**
+	 * Wait until no other thread or program is downloading a sound, then claim it.
+	 *
+	 * @param	soundId		The id of the sound.
+	 * @return				The lock. Close it when the download is finished.
+	 * @throws IOException	if the lock file fails. An InterruptedIOException means the thread was interrupted while waiting.
+	 */
+	public Lock acquire(long soundId) throws IOException
+	{
+		ReentrantLock threadLock = lockThreads(soundId);
+		try
+		{
+			return new Lock(soundId, threadLock, lockFile(soundId));
+		}
+		catch(IOException | RuntimeException e)
+		{
+			threadLock.unlock();
+			if (!threadLock.hasQueuedThreads())
+				threadLocks.remove(soundId, threadLock);
+			throw e;
+		}
+	}
+
+	/**
+	 * Wait for the other threads in this program.
+	 */
+	private ReentrantLock lockThreads(long soundId) throws InterruptedIOException
+	{
+		while (true)
+		{
+			ReentrantLock threadLock = threadLocks.computeIfAbsent(soundId, id -> new ReentrantLock());
+			try
+			{
+				threadLock.lockInterruptibly();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for another download of sound " + soundId + ".");
+			}
+
+			// the lock may have been forgotten by the thread that held it, while we were waiting. If so, try again.
+			if (threadLocks.get(soundId) == threadLock)
+				return threadLock;
+			threadLock.unlock();
+		}
+	}
+
+	/**
+	 * Wait for other programs. FileChannel.lock would wait for us, but interrupting a thread
+	 * that is blocked in it closes the lock file for every thread, so it is safer to poll.
+	 */
+	private FileLock lockFile(long soundId) throws IOException
+	{
+		long pollMillis = MINIMUM_POLL_MILLIS;
+		while (true)
+		{
+			try
+			{
+				FileLock fileLock = channel.tryLock(soundId, 1, false);
+				if (fileLock != null)
+					return fileLock;
+			}
+			catch(OverlappingFileLockException e)
+			{
+				// another lock object in this program holds it. forDirectory prevents that, but waiting is still the right answer
+			}
+
+			try
+			{
+				Thread.sleep(pollMillis);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for another program to download sound " + soundId + ".");
+			}
+			pollMillis = Math.min(MAXIMUM_POLL_MILLIS, pollMillis * 2);
+		}
+	}
+}
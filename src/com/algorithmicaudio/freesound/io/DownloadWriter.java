@@ -0,0 +1,152 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Saves downloaded sounds to disk. Give one to FreeSound.Builder.downloadWriter to change how
+ * downloads are written.
+ *
+ * The bytes are collected in a large direct buffer and written to a FileChannel, so a big WAV
+ * takes a few hundred writes instead of tens of thousands. Each download thread keeps its own
+ * buffer, so nothing is allocated per file. If checksums are turned on, a CRC-32C of the file
+ * is computed from the same buffer as it is written, without reading the file a second time.
+ */
+public class DownloadWriter
+{
+	/** 256 KB, which is enough to keep the number of writes low without using much memory per thread. */
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	private final int bufferSize;
+	private final boolean computeChecksums;
+	private final ThreadLocal<ByteBuffer> buffers;
+
+	/**
+	 * A writer with the default buffer size that doesn't compute checksums.
+	 */
+	public DownloadWriter()
+	{
+		this(DEFAULT_BUFFER_SIZE, false);
+	}
+
+	/**
+	 * @param	bufferSize			How many bytes are collected before each write to disk.
+	 * @param	computeChecksums	Whether to compute a CRC-32C of every downloaded file.
+	 */
+	public DownloadWriter(int bufferSize, boolean computeChecksums)
+	{
+		if (bufferSize < 1024)
+			throw new IllegalArgumentException("The buffer size must be at least 1024 bytes.");
+		this.bufferSize = bufferSize;
+		this.computeChecksums = computeChecksums;
+		this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(this.bufferSize));
+	}
+
+	/**
+	 * @return	How many bytes are collected before each write to disk.
+	 */
+	public int getBufferSize()
+	{
+		return bufferSize;
+	}
+
+	/**
+	 * @return	true if this writer computes a checksum of every file
+	 */
+	public boolean isComputingChecksums()
+	{
+		return computeChecksums;
+	}
+
+	/**
+	 * @return	A new, empty checksum, or null if this writer doesn't compute checksums.
+	 */
+	public Checksum newChecksum()
+	{
+		return computeChecksums ? new CRC32C() : null;
+	}
+
+	/**
+	 * Copy a stream into a file.
+	 *
+	 * @param	input		The downloaded bytes. It is read to the end, but not closed.
+	 * @param	file		The file to write.
+	 * @param	append		true to add to the end of the file, false to replace it.
+	 * @param	checksum	Updated with every byte of the file, or null. When appending, the bytes already in the file are added first, so the checksum always covers the whole file.
+	 * @return				The number of bytes copied from the stream.
+	 * @throws IOException	if the stream or the file fails
+	 */
+	public long write(InputStream input, File file, boolean append, Checksum checksum) throws IOException
+	{
+		ByteBuffer buffer = buffers.get();
+		buffer.clear();
+
+		if (append && checksum != null && file.exists())
+			addToChecksum(file, checksum);
+
+		// a stream that already has a channel, like a FileInputStream, is read without an extra copy
+		ReadableByteChannel source = Channels.newChannel(input);
+		long copied = 0;
+
+		try (FileChannel channel = append
+				? FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+				: FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			int bytesRead;
+			while ((bytesRead = source.read(buffer)) != -1)
+			{
+				copied += bytesRead;
+				if (!buffer.hasRemaining())
+					drain(buffer, channel, checksum);
+			}
+			drain(buffer, channel, checksum);
+		}
+		return copied;
+	}
+
+	/**
+	 * Write everything in the buffer to the file, and leave the buffer empty.
+	 */
+	private void drain(ByteBuffer buffer, FileChannel channel, Checksum checksum) throws IOException
+	{
+		buffer.flip();
+		if (checksum != null)
+		{
+			checksum.update(buffer);
+			buffer.position(0);
+		}
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Add the bytes of a partly downloaded file to a checksum, so that a resumed download gets
+	 * the same checksum as one that never stopped.
+	 */
+	void addToChecksum(File file, Checksum checksum) throws IOException
+	{
+		ByteBuffer buffer = buffers.get();
+		buffer.clear();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			while (channel.read(buffer) != -1)
+			{
+				buffer.flip();
+				checksum.update(buffer);
+				buffer.clear();
+			}
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,57 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.File;
+
+/**
+ * A file that Remote.fetchBinary has finished downloading.
+ */
+public class DownloadedFile
+{
+	private final File file;
+	private final long length;
+	private final long checksum;
+
+	/**
+	 * @param	file		Where the file was saved.
+	 * @param	length		The size of the file, in bytes.
+	 * @param	checksum	The CRC-32C of the file, or -1 if it wasn't computed.
+	 */
+	public DownloadedFile(File file, long length, long checksum)
+	{
+		this.file = file;
+		this.length = length;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * @return	Where the file was saved.
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * @return	The size of the file, in bytes.
+	 */
+	public long getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * @return	true if a checksum was computed while the file was downloaded
+	 */
+	public boolean hasChecksum()
+	{
+		return checksum >= 0;
+	}
+
+	/**
+	 * @return	The CRC-32C of the file, or -1 if it wasn't computed. See DownloadWriter.
+	 */
+	public long getChecksum()
+	{
+		return checksum;
+	}
+}
@@ -0,0 +1,277 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The default Transport. It uses java.net.http.HttpClient, which keeps connections open
+ * between requests and multiplexes requests over HTTP/2 when the server supports it. So
+ * only the first request to FreeSound pays for the TCP and TLS handshakes.
+ *
+ * The client runs on HttpClient's own executor, so a transport holds no threads of its own
+ * and needs no closing. How many requests are sent at once is up to the callers and the
+ * RateLimiter of each Remote.
+ *
+ * Interrupting a thread that is waiting for a response aborts the request: the connection is
+ * dropped and the server stops being waited on. This is how the losing request of a hedged
+ * search (see LatencyPolicy) is stopped. HttpClient.send doesn't promise that on every JDK, so
+ * requests are sent with sendAsync, and its future is cancelled when the wait is interrupted.
+ */
+public class HttpClientTransport implements Transport
+{
+	private final HttpClient client;
+	private final Duration readTimeout;
+
+	/**
+	 * Create a transport with the same timeouts that Remote has always used: 5 seconds to
+	 * connect and 30 seconds to read.
+	 */
+	public HttpClientTransport()
+	{
+		this(5000, 30000);
+	}
+
+	/**
+	 * @param	connectTimeoutMs	How long to wait for a connection to be established, in milliseconds.
+	 * @param	readTimeoutMs		How long to wait for the response headers, and then for each part of the body, in milliseconds.
+	 */
+	public HttpClientTransport(int connectTimeoutMs, int readTimeoutMs)
+	{
+		client = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_2)
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.connectTimeout(Duration.ofMillis(connectTimeoutMs))
+			.build();
+		readTimeout = Duration.ofMillis(readTimeoutMs);
+	}
+
+	@Override
+	public TransportResponse get(String url, Map<String, String> headers) throws IOException
+	{
+		HttpRequest.Builder request = newRequest(url, headers).GET();
+		return send(request.build());
+	}
+
+	@Override
+	public TransportResponse post(String url, Map<String, String> headers, byte[] body) throws IOException
+	{
+		HttpRequest.Builder request = newRequest(url, headers).POST(HttpRequest.BodyPublishers.ofByteArray(body));
+		return send(request.build());
+	}
+
+	private HttpRequest.Builder newRequest(String url, Map<String, String> headers) throws IOException
+	{
+		try
+		{
+			// this timeout only covers the wait for the headers. TimedBody covers the body.
+			HttpRequest.Builder request = HttpRequest.newBuilder(new URI(url)).timeout(readTimeout);
+			for(Map.Entry<String, String> header : headers.entrySet())
+			{
+				request.header(header.getKey(), header.getValue());
+			}
+			return request;
+		}
+		catch(Exception e)
+		{
+			throw new IOException("Invalid request for " + url, e);
+		}
+	}
+
+	private TransportResponse send(HttpRequest request) throws IOException
+	{
+		CompletableFuture<HttpResponse<Flow.Publisher<List<ByteBuffer>>>> exchange = client.sendAsync(request, HttpResponse.BodyHandlers.ofPublisher());
+		HttpResponse<Flow.Publisher<List<ByteBuffer>>> response;
+		try
+		{
+			response = exchange.get();
+		}
+		catch(InterruptedException e)
+		{
+			// cancelling the exchange is what actually stops the request. The interrupt alone doesn't.
+			exchange.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while fetching " + request.uri());
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new IOException("Unable to fetch " + request.uri(), cause);
+		}
+
+		TimedBody body = new TimedBody(readTimeout.toMillis(), request.uri());
+		response.body().subscribe(body);
+		return new TransportResponse(response.statusCode(), "", response.headers().map(), body);
+	}
+
+	/**
+	 * A response body that gives up when no data arrives for a while, the way the read timeout
+	 * of HttpURLConnection does. BodyHandlers.ofInputStream has no timeout at all, so a body that
+	 * stalls would otherwise block its reader forever.
+	 *
+	 * The body arrives as lists of buffers. Only one list is requested at a time, so a slow reader
+	 * holds back the connection instead of filling memory.
+	 */
+	private static class TimedBody extends InputStream implements Flow.Subscriber<List<ByteBuffer>>
+	{
+		// put on the queue when the body has ended, or has failed
+		private static final List<ByteBuffer> END = Collections.unmodifiableList(new ArrayList<ByteBuffer>());
+
+		private final BlockingQueue<List<ByteBuffer>> arrivals = new LinkedBlockingQueue<List<ByteBuffer>>();
+		private final long timeoutMs;
+		private final URI uri;
+
+		private volatile Flow.Subscription subscription = null;
+		private volatile Throwable failure = null;
+		private volatile boolean closed = false;
+
+		// only touched by the reader
+		private Iterator<ByteBuffer> buffers = Collections.emptyIterator();
+		private ByteBuffer current = null;
+		private boolean ended = false;
+
+		TimedBody(long timeoutMs, URI uri)
+		{
+			this.timeoutMs = timeoutMs;
+			this.uri = uri;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription newSubscription)
+		{
+			subscription = newSubscription;
+			if (closed)
+				newSubscription.cancel();
+			else
+				newSubscription.request(1);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> item)
+		{
+			arrivals.offer(item);
+		}
+
+		@Override
+		public void onError(Throwable error)
+		{
+			failure = error;
+			arrivals.offer(END);
+		}
+
+		@Override
+		public void onComplete()
+		{
+			arrivals.offer(END);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			ByteBuffer buffer = nextBuffer();
+			return buffer == null ? -1 : buffer.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] destination, int offset, int length) throws IOException
+		{
+			if (length == 0)
+				return 0;
+			ByteBuffer buffer = nextBuffer();
+			if (buffer == null)
+				return -1;
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(destination, offset, count);
+			return count;
+		}
+
+		@Override
+		public int available()
+		{
+			return current == null ? 0 : current.remaining();
+		}
+
+		/**
+		 * @return	a buffer with data in it, or null at the end of the body
+		 */
+		private ByteBuffer nextBuffer() throws IOException
+		{
+			while (current == null || !current.hasRemaining())
+			{
+				if (buffers.hasNext())
+				{
+					current = buffers.next();
+					continue;
+				}
+				if (ended)
+					return null;
+				if (closed)
+					throw new IOException("The response from " + uri + " has been closed.");
+
+				List<ByteBuffer> next;
+				try
+				{
+					next = arrivals.poll(timeoutMs, TimeUnit.MILLISECONDS);
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					close();
+					throw new InterruptedIOException("Interrupted while reading the response from " + uri);
+				}
+
+				if (next == null)
+				{
+					close();
+					throw new SocketTimeoutException("No data arrived from " + uri + " for " + timeoutMs + " ms.");
+				}
+				if (next == END)
+				{
+					ended = true;
+					Throwable error = failure;
+					if (error != null)
+						throw error instanceof IOException ? (IOException) error : new IOException("Failed reading the response from " + uri, error);
+					return null;
+				}
+
+				buffers = next.iterator();
+				subscription.request(1);
+			}
+			return current;
+		}
+
+		@Override
+		public void close()
+		{
+			if (closed)
+				return;
+			closed = true;
+
+			// cancelling lets HttpClient release or drop the connection
+			Flow.Subscription active = subscription;
+			if (active != null)
+				active.cancel();
+			arrivals.clear();
+		}
+	}
+}
@@ -8,6 +8,9 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /**
  * This class makes the saving/loading of API credentials a little easier.
@@ -27,6 +30,48 @@ public class Local
 		return true;
 	}
 	
+	/**
+	 * Move a finished file into place, replacing whatever is there. Where the file system allows it,
+	 * this is a single atomic rename, so a reader sees either the old file or the new one. Where it
+	 * doesn't, the file is moved the ordinary way.
+	 * 
+	 * @param	source	The finished file, usually a temporary file next to the target.
+	 * @param	target	Where it belongs.
+	 * @throws IOException	if the file can't be moved
+	 */
+	public static void replaceFile(File source, File target) throws IOException
+	{
+		try
+		{
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(AtomicMoveNotSupportedException e)
+		{
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Sounds are saved under names made from their ids, so the extension is the only part of the
+	 * name that says what kind of file it is.
+	 * 
+	 * @param	type	The format of a sound, from SoundResponse.type, like "wav" or "mp3". May be null.
+	 * @return			The extension for a file in that format, like ".wav", or an empty string if the format is unknown.
+	 */
+	public static String getExtension(String type)
+	{
+		if (type == null || type.isEmpty())
+			return "";
+
+		// the format comes from the server, so don't let it put anything odd into a file name
+		for(int i = 0; i < type.length(); i++)
+		{
+			if (!Character.isLetterOrDigit(type.charAt(i)))
+				return "";
+		}
+		return "." + type.toLowerCase();
+	}
+
 	public static String readTextFromFile(String filename)
 	{
 		String output = "";
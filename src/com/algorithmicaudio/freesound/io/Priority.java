@@ -0,0 +1,17 @@
+package com.algorithmicaudio.freesound.io;
+
+/**
+ * How urgent a request is. When the RateLimiter has to make requests wait, the most urgent
+ * ones go first.
+ */
+public enum Priority
+{
+	/** Someone is waiting for the answer right now, like a search from a sequencer. */
+	INTERACTIVE,
+
+	/** Work that can happen whenever there is room, like harvesting a catalog or bulk downloads. */
+	BACKGROUND,
+
+	/** Guesses about what will be needed next, like fetching the next page of results early. */
+	PREFETCH
+}
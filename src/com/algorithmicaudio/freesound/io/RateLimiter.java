@@ -0,0 +1,308 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps requests within FreeSound's limits, so that they wait their turn on the client instead
+ * of being refused by the server with HTTP 429. See https://freesound.org/docs/api/overview.html#throttling.
+ *
+ * There are two token buckets, one per minute and one per day. Every request takes a token from
+ * both. When a bucket is empty, requests wait in a queue until it refills, and more urgent
+ * requests are let through first. See Priority.
+ *
+ * A request never waits longer than the maximum wait. If its turn can't come in time, for
+ * example because the daily bucket is empty and the next token is 43 seconds away, acquire
+ * throws a RemoteException straight away instead of blocking. So a program that has used up its
+ * daily requests gets an error, instead of stalling for hours.
+ *
+ * The time spent waiting is recorded, so that you can see the queueing delay with
+ * getAverageWaitMillis and the other counters. Remote also records it for each endpoint, in
+ * Metrics.
+ *
+ * Waiting threads park on a ReentrantLock instead of a synchronized block, so that virtual
+ * threads (see FreeSound.Builder.asyncExecutor) don't pin their carrier thread while they wait.
+ */
+public class RateLimiter
+{
+	/**
+	 * A request waiting for a token.
+	 */
+	private static class Waiter implements Comparable<Waiter>
+	{
+		final Priority priority;
+		final long sequence;
+
+		Waiter(Priority priority, long sequence)
+		{
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Waiter other)
+		{
+			// most urgent first, then first come first served
+			int byPriority = priority.compareTo(other.priority);
+			return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+		}
+	}
+
+	private static final double MILLIS_PER_MINUTE = 60000.0;
+	private static final double MILLIS_PER_DAY = 86400000.0;
+
+	// how long a request may wait for its turn, unless another maximum is given
+	private static final long DEFAULT_MAXIMUM_WAIT_MILLIS = 30000;
+
+	private final int requestsPerMinute;
+	private final int requestsPerDay;
+	private final long maximumWaitMillis;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition(); // signalled when a token is taken, or the limiter is paused
+
+	// guarded by lock
+	private double minuteTokens;
+	private double dayTokens;
+	private long lastRefill;
+	private long pausedUntil = 0;
+	private final PriorityQueue<Waiter> waiting = new PriorityQueue<Waiter>();
+	private long sequence = 0;
+
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maximumWaitNanos = new AtomicLong();
+	private final AtomicLong throttled = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * The standard FreeSound limits: 60 requests per minute and 2000 requests per day. A request
+	 * waits at most 30 seconds for its turn.
+	 */
+	public RateLimiter()
+	{
+		this(60, 2000);
+	}
+
+	/**
+	 * @param	requestsPerMinute	The most requests allowed in a minute.
+	 * @param	requestsPerDay		The most requests allowed in a day.
+	 * @throws IllegalArgumentException	if either limit is not positive
+	 */
+	public RateLimiter(int requestsPerMinute, int requestsPerDay)
+	{
+		this(requestsPerMinute, requestsPerDay, DEFAULT_MAXIMUM_WAIT_MILLIS);
+	}
+
+	/**
+	 * @param	requestsPerMinute	The most requests allowed in a minute.
+	 * @param	requestsPerDay		The most requests allowed in a day.
+	 * @param	maximumWaitMillis	The longest a request may wait for its turn, in milliseconds. 0 means that a request is refused unless it can go right away.
+	 * @throws IllegalArgumentException	if either limit is not positive, or the maximum wait is negative
+	 */
+	public RateLimiter(int requestsPerMinute, int requestsPerDay, long maximumWaitMillis)
+	{
+		if (requestsPerMinute <= 0)
+			throw new IllegalArgumentException("requestsPerMinute must be at least 1, but it is " + requestsPerMinute + ". To send requests without a limit, use no rate limiter at all.");
+		if (requestsPerDay <= 0)
+			throw new IllegalArgumentException("requestsPerDay must be at least 1, but it is " + requestsPerDay + ". To send requests without a limit, use no rate limiter at all.");
+		if (maximumWaitMillis < 0)
+			throw new IllegalArgumentException("maximumWaitMillis can't be negative, but it is " + maximumWaitMillis + ".");
+
+		this.requestsPerMinute = requestsPerMinute;
+		this.requestsPerDay = requestsPerDay;
+		this.maximumWaitMillis = maximumWaitMillis;
+		minuteTokens = requestsPerMinute;
+		dayTokens = requestsPerDay;
+		lastRefill = System.currentTimeMillis();
+	}
+
+	/**
+	 * Wait until a request is allowed.
+	 *
+	 * @param	priority	How urgent the request is.
+	 * @return				How long the request waited, in nanoseconds.
+	 * @throws RemoteException		with status 429, if the request can't go within the maximum wait
+	 * @throws InterruptedException	if the thread is interrupted while waiting
+	 */
+	public long acquire(Priority priority) throws RemoteException, InterruptedException
+	{
+		long start = System.nanoTime();
+		long deadline = System.currentTimeMillis() + maximumWaitMillis;
+		lock.lockInterruptibly();
+		try
+		{
+			Waiter me = new Waiter(priority, sequence++);
+			waiting.add(me);
+			try
+			{
+				while (true)
+				{
+					refill();
+					long now = System.currentTimeMillis();
+					boolean myTurn = waiting.peek() == me;
+					if (myTurn && now >= pausedUntil && minuteTokens >= 1 && dayTokens >= 1)
+					{
+						minuteTokens -= 1;
+						dayTokens -= 1;
+						break;
+					}
+
+					// the first in line knows how long it has to wait, so it can give up before waiting at all
+					long untilNextToken = myTurn ? Math.max(1, millisUntilNextToken(now)) : 0;
+					if (now + untilNextToken > deadline || (!myTurn && now >= deadline))
+					{
+						rejected.incrementAndGet();
+						throw new RemoteException(429, describeRefusal(now));
+					}
+
+					// the first in line sleeps until the next token, everyone else until they are signalled
+					long sleep = myTurn ? untilNextToken : Math.max(1, Math.min(1000, deadline - now));
+					changed.await(sleep, TimeUnit.MILLISECONDS);
+				}
+			}
+			finally
+			{
+				waiting.remove(me);
+				changed.signalAll();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		long waited = System.nanoTime() - start;
+		acquired.incrementAndGet();
+		totalWaitNanos.addAndGet(waited);
+		maximumWaitNanos.accumulateAndGet(waited, Math::max);
+		return waited;
+	}
+
+	/**
+	 * Say why a request couldn't go in time. Only called while holding the lock.
+	 */
+	private String describeRefusal(long now)
+	{
+		String reason;
+		if (pausedUntil > now)
+			reason = "FreeSound asked us to slow down for another " + (pausedUntil - now) + " ms";
+		else if (dayTokens < 1)
+			reason = "the daily limit of " + requestsPerDay + " requests has been used up";
+		else if (minuteTokens < 1)
+			reason = "the limit of " + requestsPerMinute + " requests per minute has been used up";
+		else
+			reason = waiting.size() + " requests are waiting ahead of it";
+		return "The request was not sent, because it could not go within " + maximumWaitMillis + " ms: " + reason + ".";
+	}
+
+	/**
+	 * Stop letting requests through for a while. Remote calls this when FreeSound answers with
+	 * HTTP 429, which means that the server thinks we are over the limit anyway.
+	 *
+	 * @param	millis	How long to pause, in milliseconds.
+	 */
+	public void pause(long millis)
+	{
+		throttled.incrementAndGet();
+		lock.lock();
+		try
+		{
+			pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + millis);
+			changed.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Add the tokens that have accumulated since the last refill. Only called while holding the lock.
+	 */
+	private void refill()
+	{
+		long now = System.currentTimeMillis();
+		long elapsed = now - lastRefill;
+		if (elapsed <= 0)
+			return;
+		minuteTokens = Math.min(requestsPerMinute, minuteTokens + elapsed * requestsPerMinute / MILLIS_PER_MINUTE);
+		dayTokens = Math.min(requestsPerDay, dayTokens + elapsed * requestsPerDay / MILLIS_PER_DAY);
+		lastRefill = now;
+	}
+
+	private long millisUntilNextToken(long now)
+	{
+		double minuteWait = minuteTokens >= 1 ? 0 : (1 - minuteTokens) * MILLIS_PER_MINUTE / requestsPerMinute;
+		double dayWait = dayTokens >= 1 ? 0 : (1 - dayTokens) * MILLIS_PER_DAY / requestsPerDay;
+		return (long) Math.ceil(Math.max(pausedUntil - now, Math.max(minuteWait, dayWait)));
+	}
+
+	/**
+	 * @return	the number of requests waiting right now
+	 */
+	public int getQueueLength()
+	{
+		lock.lock();
+		try
+		{
+			return waiting.size();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return	the longest a request may wait for its turn, in milliseconds
+	 */
+	public long getMaximumWaitLimitMillis()
+	{
+		return maximumWaitMillis;
+	}
+
+	/**
+	 * @return	the number of requests that have been let through
+	 */
+	public long getAcquiredCount()
+	{
+		return acquired.get();
+	}
+
+	/**
+	 * @return	the number of requests that were refused because they couldn't go within the maximum wait
+	 */
+	public long getRejectedCount()
+	{
+		return rejected.get();
+	}
+
+	/**
+	 * @return	the average time a request waited, in milliseconds
+	 */
+	public double getAverageWaitMillis()
+	{
+		long count = acquired.get();
+		return count == 0 ? 0 : totalWaitNanos.get() / 1e6 / count;
+	}
+
+	/**
+	 * @return	the longest time a request waited, in milliseconds
+	 */
+	public double getMaximumWaitMillis()
+	{
+		return maximumWaitNanos.get() / 1e6;
+	}
+
+	/**
+	 * @return	the number of times FreeSound answered with HTTP 429
+	 */
+	public long getThrottledCount()
+	{
+		return throttled.get();
+	}
+}
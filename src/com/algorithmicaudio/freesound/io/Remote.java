@@ -1,17 +1,18 @@
 package com.algorithmicaudio.freesound.io;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.InterruptedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.zip.Checksum;
+
+import com.algorithmicaudio.freesound.cache.DiskCache;
+import com.algorithmicaudio.freesound.metrics.EndpointMetrics;
+import com.algorithmicaudio.freesound.metrics.Metrics;
 
 /**
  * 
@@ -19,137 +20,461 @@ import java.util.HashMap;
  * class is to abstract away the basic web request logic needed to use the
  * FreeSound API. This is not intended as a fully featured web request
  * library, and will probably break if exposed to a stiff breeze.
+ * 
+ * The requests themselves are sent by a Transport. By default that is an
+ * HttpClientTransport, which keeps connections open between requests.
+ * Every request waits its turn in a RateLimiter, so that FreeSound's
+ * limits are respected on our side instead of being enforced with errors.
+ * 
+ * Each FreeSound client has its own Remote, made from the transport, disk
+ * cache, rate limiter and download writer given to its FreeSound.Builder.
+ * These are fixed when the Remote is made, so a client's requests can't be
+ * changed from somewhere else in the program. To share one of them, like a
+ * disk cache, give the same object to several clients. A Remote can also be
+ * made on its own, to fetch URLs without a FreeSound client.
  *
  */
 public class Remote
 {
+	// shared by every Remote that isn't given its own. A transport keeps a pool of connections, and a writer keeps a buffer per thread, so one of each is plenty.
+	private static final Transport DEFAULT_TRANSPORT = new HttpClientTransport();
+	private static final DownloadWriter DEFAULT_DOWNLOAD_WRITER = new DownloadWriter();
+
+	private final Transport transport;
+	private final DiskCache cache;
+	private final RateLimiter rateLimiter;
+	private final DownloadWriter downloadWriter;
+
+	// how many times a request is sent when FreeSound keeps answering with HTTP 429
+	private static final int MAXIMUM_THROTTLED_ATTEMPTS = 3;
+
+	// how many times a download is resumed after the connection drops
+	private static final int MAXIMUM_DOWNLOAD_ATTEMPTS = 4;
+
+	/**
+	 * A Remote with the standard FreeSound rate limits, no disk cache, and the default transport
+	 * and download writer. The rate limiter is its own, so it only counts the requests of this Remote.
+	 */
+	public Remote()
+	{
+		this(null, null, new RateLimiter(), null);
+	}
+
+	/**
+	 * For example, to change the timeouts and cache search responses on disk, without a rate limit:
+	 * new Remote(new HttpClientTransport(2000, 10000), new DiskCache(new File("cache"), 50000000, 86400000), null, null);
+	 * 
+	 * @param	transport		Sends the requests, or null for a shared HttpClientTransport.
+	 * @param	cache			Keeps responses on disk, so that repeated searches do not go to the network, or null for no cache.
+	 * @param	rateLimiter		Every request waits its turn here, or null to send requests as fast as they are made.
+	 * @param	downloadWriter	Writes downloaded files to disk, or null for a shared DownloadWriter with the default settings.
+	 */
+	public Remote(Transport transport, DiskCache cache, RateLimiter rateLimiter, DownloadWriter downloadWriter)
+	{
+		this.transport = transport == null ? DEFAULT_TRANSPORT : transport;
+		this.cache = cache;
+		this.rateLimiter = rateLimiter;
+		this.downloadWriter = downloadWriter == null ? DEFAULT_DOWNLOAD_WRITER : downloadWriter;
+	}
+
+	/**
+	 * @return	The transport used for every request.
+	 */
+	public Transport getTransport()
+	{
+		return transport;
+	}
+
+	/**
+	 * @return	The cache used for search responses, or null if caching is off.
+	 */
+	public DiskCache getCache()
+	{
+		return cache;
+	}
+
 	/**
-	 *  This function from from https://rest.elkstein.org/2008/02/using-rest-in-java.html.
-	 *  There's probably a better way to do this, but I like having no additional
-	 *  dependencies.
+	 * @return	The rate limiter that every request goes through, or null if there isn't one.
+	 */
+	public RateLimiter getRateLimiter()
+	{
+		return rateLimiter;
+	}
+
+	/**
+	 * @return	The writer that saves downloaded files.
+	 */
+	public DownloadWriter getDownloadWriter()
+	{
+		return downloadWriter;
+	}
+
+	/**
+	 *  Fetch a URL as text. If there is a cache, then it is checked first.
 	 *  
 	 *  @param	urlStr	The URL to GET.
 	 *  @return			The content fetched from the URL.
 	 */
-	public static String httpGet(String urlStr)
+	public String httpGet(String urlStr)
+	{
+		return httpGet(urlStr, Priority.INTERACTIVE);
+	}
+
+	/**
+	 *  Fetch a URL as text. If there is a cache, then it is checked first.
+	 *  
+	 *  @param	urlStr		The URL to GET.
+	 *  @param	priority	How urgent the request is, if it has to wait for the rate limiter.
+	 *  @return				The content fetched from the URL, or an empty string if the request failed.
+	 */
+	public String httpGet(String urlStr, Priority priority)
 	{
 		try
 		{
-			URL url = new URL(urlStr);
-		  
-			// create the http connection
-			HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-			conn.setConnectTimeout(5000); // set the timeout to 5 seconds
-			conn.setReadTimeout(30000); // set the read timeout to 30 seconds
+			return fetchText(urlStr, priority);
+		}
+		catch(Exception ex)
+		{
+			System.out.println("Error while trying to fetch " + urlStr);
+			System.out.println(ex.getMessage());
+		}
+		return "";
+	}
+
+	/**
+	 *  Fetch a URL as text, and throw an exception if it fails. If there is a cache, then it is checked first.
+	 *  
+	 *  @param	urlStr		The URL to GET.
+	 *  @param	priority	How urgent the request is, if it has to wait for the rate limiter.
+	 *  @return				The content fetched from the URL.
+	 *  @throws IOException	if the request failed. A RemoteException carries the HTTP status code.
+	 */
+	public String fetchText(String urlStr, Priority priority) throws IOException
+	{
+		if (cache != null)
+		{
+			String cached = cache.get(urlStr);
+			if (cached != null)
+				return cached;
+		}
 
+		try (TransportResponse response = send(urlStr, () -> transport.get(urlStr, Collections.<String, String>emptyMap()), priority))
+		{
 			// hit the URL
-			if (conn.getResponseCode() != 200)
+			if (response.getStatusCode() != 200)
+				throw new RemoteException(response.getStatusCode(), "Response Code " + response.getStatusCode() + ": " + response.getStatusMessage());
+
+			String body = response.readText();
+			if (cache != null)
+				cache.put(urlStr, body);
+			return body;
+		}
+	}
+	
+	/**
+	 *  Fetch a URL and read the response as it arrives, without buffering it into a String first.
+	 *  If there is a cache, then it is checked first, and the response is copied into it while the
+	 *  handler reads it. The copy is only kept if the whole response arrived.
+	 *  
+	 *  @param	urlStr	The URL to GET.
+	 *  @param	handler	Reads the response body.
+	 *  @return			What the handler read, or null if the request failed.
+	 */
+	public <T> T httpGetStream(String urlStr, StreamHandler<T> handler)
+	{
+		try
+		{
+			return fetchStream(urlStr, handler, Priority.INTERACTIVE);
+		}
+		catch(Exception ex)
+		{
+			System.out.println("Error while trying to fetch " + urlStr);
+			System.out.println(ex.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 *  Fetch a URL and read the response as it arrives, and throw an exception if it fails. See httpGetStream.
+	 *  
+	 *  @param	urlStr		The URL to GET.
+	 *  @param	handler		Reads the response body.
+	 *  @param	priority	How urgent the request is, if it has to wait for the rate limiter.
+	 *  @return				What the handler read.
+	 *  @throws IOException	if the request failed. A RemoteException carries the HTTP status code.
+	 */
+	public <T> T fetchStream(String urlStr, StreamHandler<T> handler, Priority priority) throws IOException
+	{
+		if (cache != null)
+		{
+			String cached = cache.get(urlStr);
+			if (cached != null)
+				return handler.read(new ByteArrayInputStream(cached.getBytes(StandardCharsets.UTF_8)));
+		}
+
+		try (TransportResponse response = send(urlStr, () -> transport.get(urlStr, Collections.<String, String>emptyMap()), priority))
+		{
+			if (response.getStatusCode() != 200)
+				throw new RemoteException(response.getStatusCode(), "Response Code " + response.getStatusCode() + ": " + response.getStatusMessage());
+
+			DiskCache.PendingEntry entry = cache == null ? null : cache.startEntry(urlStr);
+			if (entry == null)
+				return handler.read(response.getBody());
+
+			// save the body in the cache while the handler parses it. If the handler fails, closing the entry throws it away.
+			try (DiskCache.PendingEntry pending = entry)
 			{
-				System.out.println("Response Code " + conn.getResponseCode() + ": " + conn.getResponseMessage());
-				return "";
+				TeeInputStream body = new TeeInputStream(response.getBody(), pending);
+				T result = handler.read(body);
+
+				// the handler can stop before the end of the body, like right after the closing brace of the JSON
+				body.readToEnd();
+				if (!body.hasFailed())
+				{
+					try
+					{
+						pending.commit();
+					}
+					catch(IOException e)
+					{
+						// the response is still good, it just won't be cached
+						System.out.println("Unable to cache the response for " + urlStr + "\n" + e.getMessage());
+					}
+				}
+				return result;
 			}
-			else
+		}
+	}
+
+	/**
+	 *  Download a file. See httpGetBinary(String, String, String, Priority).
+	 *  
+	 *  @param	urlStr			The URL to GET.
+	 *  @param	newFilename		Where to save the file.
+	 *  @param	userAccessToken	The OAuth token that permits downloads.
+	 *  @return					true if the whole file was downloaded
+	 */
+	public boolean httpGetBinary(String urlStr, String newFilename, String userAccessToken)
+	{
+		return httpGetBinary(urlStr, newFilename, userAccessToken, Priority.BACKGROUND);
+	}
+
+	/**
+	 *  Download a file. The bytes are written to newFilename + ".part", and the part file is only
+	 *  renamed to newFilename once every byte has arrived. So if newFilename exists, it is complete.
+	 *  
+	 *  If the connection drops, the download picks up where it left off with an HTTP Range request,
+	 *  so only the missing bytes are fetched again. A part file left behind by a failed download is
+	 *  resumed the same way the next time the file is requested.
+	 *  
+	 *  @param	urlStr			The URL to GET.
+	 *  @param	newFilename		Where to save the file.
+	 *  @param	userAccessToken	The OAuth token that permits downloads.
+	 *  @param	priority		How urgent the request is, if it has to wait for the rate limiter.
+	 *  @return					true if the whole file was downloaded
+	 */
+	public boolean httpGetBinary(String urlStr, String newFilename, String userAccessToken, Priority priority)
+	{
+		try
+		{
+			fetchBinary(urlStr, newFilename, userAccessToken, priority);
+			return true;
+		}
+		catch(Exception e)
+		{
+			System.out.println("Unable to download " + urlStr + " to " + newFilename + ". " + e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 *  Download a file, and throw an exception if it fails. See httpGetBinary.
+	 *  
+	 *  The file is written by the DownloadWriter, which also computes its checksum if it was asked to.
+	 *  
+	 *  @param	urlStr			The URL to GET.
+	 *  @param	newFilename		Where to save the file.
+	 *  @param	userAccessToken	The OAuth token that permits downloads.
+	 *  @param	priority		How urgent the request is, if it has to wait for the rate limiter.
+	 *  @return					The size and checksum of the downloaded file.
+	 *  @throws IOException		if the file couldn't be downloaded. A RemoteException carries the HTTP status code.
+	 */
+	public DownloadedFile fetchBinary(String urlStr, String newFilename, String userAccessToken, Priority priority) throws IOException
+	{
+		File partFile = getPartFile(newFilename);
+		IOException lastError = null;
+
+		for(int attempt = 0; attempt < MAXIMUM_DOWNLOAD_ATTEMPTS; attempt++)
+		{
+			Checksum checksum = downloadWriter.newChecksum();
+			try
+			{
+				downloadPart(urlStr, partFile, userAccessToken, priority, checksum);
+				long length = partFile.length();
+				File target = new File(newFilename);
+				publish(partFile, target);
+				return new DownloadedFile(target, length, checksum == null ? -1 : checksum.getValue());
+			}
+			catch(InterruptedIOException | RemoteException e)
+			{
+				// someone wants this thread to stop, or the server refused, so don't try again
+				throw e;
+			}
+			catch(IOException e)
+			{
+				// the part file keeps whatever arrived, so the next attempt only asks for the rest
+				lastError = e;
+			}
+		}
+		throw lastError;
+	}
+
+	/**
+	 * @param	filename	The path where a download will be saved.
+	 * @return				The file that holds the download until it is complete.
+	 */
+	public static File getPartFile(String filename)
+	{
+		return new File(filename + ".part");
+	}
+
+	/**
+	 * Fetch whatever the part file is missing, and add it to the end of the part file.
+	 *
+	 * @throws IOException	if the connection failed, or ended before the whole file arrived. A RemoteException means the server refused.
+	 */
+	private void downloadPart(String urlStr, File partFile, String userAccessToken, Priority priority, Checksum checksum) throws IOException
+	{
+		long existingBytes = partFile.exists() ? partFile.length() : 0;
+
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put("Authorization", "Bearer " + userAccessToken);
+		if (existingBytes > 0)
+			headers.put("Range", "bytes=" + existingBytes + "-");
+
+		try (TransportResponse response = send(urlStr, () -> transport.get(urlStr, headers), priority))
+		{
+			long expectedLength;
+			boolean append;
+			int status = response.getStatusCode();
+
+			if (status == 206)
+			{
+				// the server is sending the rest of the file
+				long[] range = parseContentRange(response.getHeader("Content-Range"));
+				if (range == null || range[0] != existingBytes)
+				{
+					// not the bytes we asked for, so start again from the beginning
+					partFile.delete();
+					throw new IOException("Unexpected Content-Range " + response.getHeader("Content-Range") + " while resuming " + urlStr);
+				}
+				expectedLength = range[2];
+				append = true;
+			}
+			else if (status == 200)
+			{
+				// the server sent the whole file, either because we asked for it or because it doesn't support ranges
+				expectedLength = parseLength(response.getHeader("Content-Length"));
+				append = false;
+			}
+			else if (status == 416 && existingBytes > 0)
 			{
-				// Buffer the result into a string
-				BufferedReader rd = new BufferedReader( new InputStreamReader(conn.getInputStream()));
-				StringBuilder sb = new StringBuilder();
-				String line;
-				while ((line = rd.readLine()) != null)
+				// there is nothing after the bytes we already have, which usually means the part file is complete
+				long[] range = parseContentRange(response.getHeader("Content-Range"));
+				if (range != null && range[2] == existingBytes)
 				{
-					sb.append(line);
+					if (checksum != null)
+						downloadWriter.addToChecksum(partFile, checksum);
+					return;
 				}
-				rd.close();
-				conn.disconnect();
-		  
-				return sb.toString();
+				partFile.delete();
+				throw new IOException("The partial download of " + urlStr + " no longer matches the file on the server.");
+			}
+			else
+			{
+				throw new RemoteException(status, "Response Code " + status + ": " + response.getStatusMessage());
 			}
+
+			File parent = partFile.getAbsoluteFile().getParentFile();
+			if (parent != null)
+				parent.mkdirs();
+
+			downloadWriter.write(response.getBody(), partFile, append, checksum);
+
+			// a connection that closes early looks just like the end of the file, so check the length
+			if (expectedLength >= 0 && partFile.length() != expectedLength)
+				throw new IOException("Received " + partFile.length() + " of " + expectedLength + " bytes from " + urlStr);
 		}
-		catch(Exception ex)
+	}
+
+	/**
+	 * Rename a complete part file to its final name in one step, so that no one ever sees half a file.
+	 */
+	private static void publish(File partFile, File target) throws IOException
+	{
+		Local.replaceFile(partFile, target);
+	}
+
+	/**
+	 * Read a header like "bytes 100-999/1000".
+	 *
+	 * @return	the first byte, the last byte and the total length, or null if the header can't be read. The total is -1 if the server doesn't know it.
+	 */
+	private static long[] parseContentRange(String contentRange)
+	{
+		if (contentRange == null)
+			return null;
+		try
 		{
-			System.out.println("Error while trying to fetch " + urlStr);
-			System.out.println(ex.getMessage());
+			String value = contentRange.trim();
+			if (value.startsWith("bytes"))
+				value = value.substring(5).trim();
+			int slash = value.indexOf('/');
+			if (slash < 0)
+				return null;
+			String total = value.substring(slash + 1).trim();
+			long totalLength = total.equals("*") ? -1 : Long.parseLong(total);
+
+			String range = value.substring(0, slash).trim();
+			if (range.equals("*"))
+				return new long[] { -1, -1, totalLength };
+			int dash = range.indexOf('-');
+			return new long[] { Long.parseLong(range.substring(0, dash).trim()), Long.parseLong(range.substring(dash + 1).trim()), totalLength };
+		}
+		catch(Exception e)
+		{
+			return null;
 		}
-		return "";
 	}
-	
-	public static boolean httpGetBinary(String urlStr, String newFilename, String userAccessToken)
+
+	/**
+	 * @return	a Content-Length header as a number, or -1 if it is missing
+	 */
+	private static long parseLength(String contentLength)
 	{
 		try
 		{
-			URL url = new URL(urlStr);
-
-			// Get an HttpURLConnection subclass object instead of URLConnection
-			HttpURLConnection myHttpConnection = (HttpURLConnection) url.openConnection();
-
-			myHttpConnection.setInstanceFollowRedirects(false);
-			myHttpConnection.setRequestMethod("GET");
-			myHttpConnection.setDoOutput(true);
-			myHttpConnection.setRequestProperty("Authorization", "Bearer " + userAccessToken);
-
-            // opens input stream from the HTTP connection
-            InputStream inputStream = myHttpConnection.getInputStream();
-             
-            // opens an output stream to save into file
-            FileOutputStream outputStream = new FileOutputStream(newFilename);
- 
-            int bytesRead = -1;
-            byte[] buffer = new byte[4096];
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
- 
-            outputStream.close();
-            inputStream.close();
-		}
-		catch (Exception e)
+			return Long.parseLong(contentLength.trim());
+		}
+		catch(Exception e)
 		{
-			e.printStackTrace();
-			return false;
+			return -1;
 		}
-		return true;
 	}
 	
 	// See https://stackoverflow.com/questions/4205980/java-sending-http-parameters-via-post-method-easily
-	public static String httpPost(String urlStr, HashMap<String, String> data)
+	public String httpPost(String urlStr, HashMap<String, String> data)
 	{
-		try
-		{
-			URL url = new URL(urlStr);
-
-			String formData = Remote.makeParameters(data);
-			byte[] postData = formData.getBytes(StandardCharsets.UTF_8);
-			int postDataLength = postData.length;
-
-			// Get an HttpURLConnection subclass object instead of URLConnection
-			HttpURLConnection myHttpConnection = (HttpURLConnection) url.openConnection();
-
-			myHttpConnection.setInstanceFollowRedirects(false);
-			myHttpConnection.setRequestMethod("POST");
-			myHttpConnection.setDoOutput(true);
-			myHttpConnection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-			myHttpConnection.setRequestProperty("charset", "utf-8");
-			myHttpConnection.setRequestProperty("Content-Length", Integer.toString(postDataLength));
-			myHttpConnection.setUseCaches(false);
-
-			// write the post data to the connection
-			DataOutputStream outputStream = new DataOutputStream(myHttpConnection.getOutputStream());
-			outputStream.write(postData);
-			outputStream.flush();
-
-			// open the contents of the URL as an inputStream and print to stdout
-			String output = "";
-			String input = "";
-			BufferedReader in = new BufferedReader(new InputStreamReader(myHttpConnection.getInputStream()));
-			while ((input = in.readLine()) != null) {
-				output += input;
-			}
-			in.close();
+		String formData = Remote.makeParameters(data);
+		byte[] postData = formData.getBytes(StandardCharsets.UTF_8);
 
-			return output;
-		}
-		catch(MalformedURLException e)
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put("Content-Type", "application/x-www-form-urlencoded; charset=utf-8");
+
+		Metrics.endpoint(Metrics.endpointFor(urlStr)).addBytesSent(postData.length);
+		try (TransportResponse response = send(urlStr, () -> transport.post(urlStr, headers, postData), Priority.INTERACTIVE))
 		{
-			e.printStackTrace();
+			return response.readText();
 		}
 		catch (IOException e)
 		{
@@ -157,6 +482,92 @@ public class Remote
 		}
 		return "";
 	}
+
+	/**
+	 * A request that can be sent, and sent again if FreeSound asks us to slow down.
+	 */
+	private interface Call
+	{
+		TransportResponse send() throws IOException;
+	}
+
+	/**
+	 * Send a request through the rate limiter. If FreeSound answers with HTTP 429 anyway, then the
+	 * rate limiter is paused for as long as FreeSound asks, and the request is sent again.
+	 * 
+	 * Every attempt is counted in Metrics: the time it waited for the rate limiter, the time until
+	 * the response arrived (not counting that wait), the status code, and the size of the body once
+	 * it is closed. Requests that the rate limiter refuses are counted too.
+	 * 
+	 * @param	urlStr		The URL of the request, which decides the endpoint it is counted under.
+	 * @param	call		The request.
+	 * @param	priority	How urgent the request is.
+	 * @return				The response.
+	 * @throws IOException	if the request failed, or was still refused after waiting
+	 */
+	private TransportResponse send(String urlStr, Call call, Priority priority) throws IOException
+	{
+		EndpointMetrics metrics = Metrics.endpoint(Metrics.endpointFor(urlStr));
+		for(int attempt = 0; ; attempt++)
+		{
+			if (rateLimiter != null)
+			{
+				try
+				{
+					metrics.recordQueueWait(rateLimiter.acquire(priority));
+				}
+				catch(RemoteException e)
+				{
+					metrics.recordRejected();
+					throw e;
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the rate limiter.");
+				}
+			}
+
+			long start = System.nanoTime();
+			TransportResponse response;
+			try
+			{
+				response = call.send();
+			}
+			catch(IOException | RuntimeException e)
+			{
+				metrics.recordFailure(System.nanoTime() - start);
+				throw e;
+			}
+			metrics.recordResponse(System.nanoTime() - start, response.getStatusCode());
+			response.setCloseListener(() -> metrics.addBytesReceived(response.getBytesRead()));
+
+			if (response.getStatusCode() != 429)
+				return response;
+
+			String retryAfter = response.getHeader("Retry-After");
+			response.close();
+			if (rateLimiter == null || attempt >= MAXIMUM_THROTTLED_ATTEMPTS - 1)
+				throw new RemoteException(429, "FreeSound refused the request because the rate limit was exceeded. Retry after " + (retryAfter == null ? "a while" : retryAfter + " seconds") + ".");
+
+			rateLimiter.pause(parseRetryAfter(retryAfter));
+		}
+	}
+
+	/**
+	 * @return	the Retry-After header in milliseconds, or one minute if it is missing
+	 */
+	private static long parseRetryAfter(String retryAfter)
+	{
+		try
+		{
+			return Long.parseLong(retryAfter.trim()) * 1000;
+		}
+		catch(Exception e)
+		{
+			return 60000;
+		}
+	}
 	
 	/**
 	 * Return a parameter string that is formatted for use in an HTTP request.
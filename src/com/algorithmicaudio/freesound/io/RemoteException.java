@@ -0,0 +1,31 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.IOException;
+
+/**
+ * FreeSound answered a request, but not with the response we wanted.
+ */
+public class RemoteException extends IOException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+
+	/**
+	 * @param	statusCode	The HTTP status code, like 404 or 429.
+	 * @param	message		What went wrong.
+	 */
+	public RemoteException(int statusCode, String message)
+	{
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * @return	the HTTP status code
+	 */
+	public int getStatusCode()
+	{
+		return statusCode;
+	}
+}
@@ -0,0 +1,19 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a response body as it arrives. See Remote.httpGetStream.
+ *
+ * @param	<T>	The type of object that is read from the body.
+ */
+public interface StreamHandler<T>
+{
+	/**
+	 * @param	body	The response body. It is closed by Remote after this method returns.
+	 * @return			Whatever was read from the body.
+	 * @throws IOException	if the body could not be read
+	 */
+	T read(InputStream body) throws IOException;
+}
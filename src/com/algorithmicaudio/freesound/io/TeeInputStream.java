@@ -0,0 +1,108 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An InputStream that copies every byte read through it to an OutputStream, like the tee
+ * command. Remote uses it to save a response in the DiskCache while it is being parsed.
+ *
+ * If writing the copy fails, copying stops but reading carries on, so a full disk never breaks
+ * a request. Check hasFailed before trusting the copy. Closing the stream does not close the copy.
+ */
+public class TeeInputStream extends FilterInputStream
+{
+	private final OutputStream copy;
+	private boolean failed = false;
+
+	/**
+	 * @param	in		The stream to read.
+	 * @param	copy	Where every byte that is read is written.
+	 */
+	public TeeInputStream(InputStream in, OutputStream copy)
+	{
+		super(in);
+		this.copy = copy;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		int b = super.read();
+		if (b != -1 && !failed)
+		{
+			try
+			{
+				copy.write(b);
+			}
+			catch(IOException e)
+			{
+				failed = true;
+			}
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException
+	{
+		int bytesRead = super.read(buffer, offset, length);
+		if (bytesRead > 0 && !failed)
+		{
+			try
+			{
+				copy.write(buffer, offset, bytesRead);
+			}
+			catch(IOException e)
+			{
+				failed = true;
+			}
+		}
+		return bytesRead;
+	}
+
+	@Override
+	public long skip(long n) throws IOException
+	{
+		// skipped bytes still have to reach the copy, so read them instead
+		byte[] buffer = new byte[(int) Math.min(8192, Math.max(0, n))];
+		long skipped = 0;
+		while (skipped < n)
+		{
+			int bytesRead = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+			if (bytesRead <= 0)
+				break;
+			skipped += bytesRead;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		// a reset would copy the same bytes twice
+		return false;
+	}
+
+	/**
+	 * Read the rest of the stream, so that the copy is complete.
+	 */
+	public void readToEnd() throws IOException
+	{
+		byte[] buffer = new byte[8192];
+		while (read(buffer, 0, buffer.length) != -1)
+		{
+			// read only passes the bytes on to the copy
+		}
+	}
+
+	/**
+	 * @return	true if writing the copy failed, so that it is incomplete
+	 */
+	public boolean hasFailed()
+	{
+		return failed;
+	}
+}
@@ -0,0 +1,37 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The HTTP layer underneath Remote. Remote decides what to request and what to do with
+ * the answer, and a Transport does the actual talking to the network.
+ *
+ * The default is HttpClientTransport, which reuses connections between requests. You can
+ * swap in UrlConnectionTransport, or your own implementation, with FreeSound.Builder.transport.
+ *
+ * Implementations must be safe to call from many threads at once.
+ */
+public interface Transport
+{
+	/**
+	 * Send a GET request.
+	 *
+	 * @param	url		The URL to GET.
+	 * @param	headers	Extra request headers. May be empty.
+	 * @return			The response. The caller must close it.
+	 * @throws IOException	if the request could not be sent or the connection failed
+	 */
+	TransportResponse get(String url, Map<String, String> headers) throws IOException;
+
+	/**
+	 * Send a POST request.
+	 *
+	 * @param	url		The URL to POST to.
+	 * @param	headers	Extra request headers, including the Content-Type of the body.
+	 * @param	body	The request body.
+	 * @return			The response. The caller must close it.
+	 * @throws IOException	if the request could not be sent or the connection failed
+	 */
+	TransportResponse post(String url, Map<String, String> headers, byte[] body) throws IOException;
+}
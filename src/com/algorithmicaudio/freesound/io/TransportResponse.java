@@ -0,0 +1,125 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The answer to a request sent through a Transport. The body is left as a stream so that
+ * large responses, like sound files, never have to fit in memory.
+ *
+ * Always close a response when you are done with it. That returns the connection to the
+ * transport so that it can be reused for the next request.
+ */
+public class TransportResponse implements Closeable
+{
+	private final int statusCode;
+	private final String statusMessage;
+	private final Map<String, List<String>> headers;
+	private final CountingInputStream body;
+	private Runnable closeListener = null;
+
+	/**
+	 * @param	statusCode		The HTTP status code, like 200 or 404.
+	 * @param	statusMessage	The HTTP status message, if the transport knows it.
+	 * @param	headers			The response headers.
+	 * @param	body			The response body.
+	 */
+	public TransportResponse(int statusCode, String statusMessage, Map<String, List<String>> headers, InputStream body)
+	{
+		this.statusCode = statusCode;
+		this.statusMessage = statusMessage == null ? "" : statusMessage;
+		this.headers = headers;
+		this.body = new CountingInputStream(body);
+	}
+
+	public int getStatusCode()
+	{
+		return statusCode;
+	}
+
+	public String getStatusMessage()
+	{
+		return statusMessage;
+	}
+
+	/**
+	 * Get the first value of a response header. Header names are not case sensitive.
+	 *
+	 * @param	name	The name of the header, like Content-Length.
+	 * @return			The header value, or null if the header was not sent.
+	 */
+	public String getHeader(String name)
+	{
+		for(Map.Entry<String, List<String>> header : headers.entrySet())
+		{
+			if (header.getKey() != null && header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty())
+			{
+				return header.getValue().get(0);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return	The response body as a stream.
+	 */
+	public InputStream getBody()
+	{
+		return body;
+	}
+
+	/**
+	 * Read the whole response body into a String.
+	 *
+	 * @return	The body, decoded as UTF-8.
+	 * @throws IOException	if the connection fails while reading
+	 */
+	public String readText() throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int bytesRead;
+		while ((bytesRead = body.read(buffer)) != -1)
+		{
+			output.write(buffer, 0, bytesRead);
+		}
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return	How many bytes of the body have been read so far.
+	 */
+	public long getBytesRead()
+	{
+		return body.getCount();
+	}
+
+	/**
+	 * @param	listener	Run once, when the response is closed.
+	 */
+	void setCloseListener(Runnable listener)
+	{
+		closeListener = listener;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			body.close();
+		}
+		finally
+		{
+			Runnable listener = closeListener;
+			closeListener = null;
+			if (listener != null)
+				listener.run();
+		}
+	}
+}
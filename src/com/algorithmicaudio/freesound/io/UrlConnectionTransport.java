@@ -0,0 +1,125 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * A Transport built on HttpURLConnection. This is how Remote worked originally. It
+ * disconnects after every request, so each one pays for a fresh TCP and TLS handshake.
+ * It is slower than HttpClientTransport, but it is handy as a baseline.
+ *
+ * HttpURLConnection can't be interrupted while it waits: a thread blocked on the server keeps
+ * waiting until the read timeout. So an interrupted request is only stopped between reads of the
+ * body, when the connection is dropped. Use HttpClientTransport if requests need to be cancelled
+ * promptly, as the losing requests of a hedged search do.
+ */
+public class UrlConnectionTransport implements Transport
+{
+	private final int connectTimeoutMs;
+	private final int readTimeoutMs;
+
+	public UrlConnectionTransport()
+	{
+		this(5000, 30000);
+	}
+
+	/**
+	 * @param	connectTimeoutMs	How long to wait for a connection to be established, in milliseconds.
+	 * @param	readTimeoutMs		How long to wait for a response, in milliseconds.
+	 */
+	public UrlConnectionTransport(int connectTimeoutMs, int readTimeoutMs)
+	{
+		this.connectTimeoutMs = connectTimeoutMs;
+		this.readTimeoutMs = readTimeoutMs;
+	}
+
+	@Override
+	public TransportResponse get(String url, Map<String, String> headers) throws IOException
+	{
+		HttpURLConnection conn = open(url, headers);
+		conn.setRequestMethod("GET");
+		return respond(conn);
+	}
+
+	@Override
+	public TransportResponse post(String url, Map<String, String> headers, byte[] body) throws IOException
+	{
+		HttpURLConnection conn = open(url, headers);
+		conn.setInstanceFollowRedirects(false);
+		conn.setRequestMethod("POST");
+		conn.setDoOutput(true);
+		conn.setUseCaches(false);
+		conn.setRequestProperty("Content-Length", Integer.toString(body.length));
+
+		// write the post data to the connection
+		try (OutputStream outputStream = conn.getOutputStream())
+		{
+			outputStream.write(body);
+		}
+		return respond(conn);
+	}
+
+	private HttpURLConnection open(String url, Map<String, String> headers) throws IOException
+	{
+		HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+		conn.setConnectTimeout(connectTimeoutMs);
+		conn.setReadTimeout(readTimeoutMs);
+		for(Map.Entry<String, String> header : headers.entrySet())
+		{
+			conn.setRequestProperty(header.getKey(), header.getValue());
+		}
+		return conn;
+	}
+
+	private TransportResponse respond(HttpURLConnection conn) throws IOException
+	{
+		int statusCode = conn.getResponseCode();
+
+		// error responses have their body on a different stream, which may be missing entirely
+		InputStream body = statusCode >= 400 ? conn.getErrorStream() : conn.getInputStream();
+		if (body == null)
+			body = new ByteArrayInputStream(new byte[0]);
+
+		// disconnect when the caller closes the response, like the original Remote.httpGet, or when the reader is interrupted
+		InputStream disconnectingBody = new FilterInputStream(body)
+		{
+			@Override
+			public int read() throws IOException
+			{
+				checkInterrupted();
+				return super.read();
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException
+			{
+				checkInterrupted();
+				return super.read(buffer, offset, length);
+			}
+
+			private void checkInterrupted() throws IOException
+			{
+				if (Thread.currentThread().isInterrupted())
+				{
+					conn.disconnect();
+					throw new InterruptedIOException("Interrupted while reading " + conn.getURL());
+				}
+			}
+
+			@Override
+			public void close() throws IOException
+			{
+				super.close();
+				conn.disconnect();
+			}
+		};
+		return new TransportResponse(statusCode, conn.getResponseMessage(), conn.getHeaderFields(), disconnectingBody);
+	}
+}
@@ -0,0 +1,13 @@
+package com.algorithmicaudio.freesound.library;
+
+/**
+ * Decides which sounds a SoundLibrary deletes first when it is over its size limit.
+ */
+public enum EvictionPolicy
+{
+	/** Delete the sounds that haven't been used for the longest time. */
+	LEAST_RECENTLY_USED,
+
+	/** Delete the sounds that have been used the fewest times. Ties go to the one used least recently. */
+	LEAST_FREQUENTLY_USED
+}
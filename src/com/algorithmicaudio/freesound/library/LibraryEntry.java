@@ -0,0 +1,107 @@
+package com.algorithmicaudio.freesound.library;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.algorithmicaudio.freesound.response.Descriptors;
+
+/**
+ * What a SoundLibrary knows about one sound it has downloaded. Everything here comes from the
+ * manifest, so reading it never touches the sound file.
+ */
+public class LibraryEntry
+{
+	private final long soundId;
+	private final String type;
+	private final File file;
+	private final long size;
+	private final long checksum;
+	private final Descriptors descriptors;
+	private volatile long lastAccess;
+	private final AtomicLong useCount;
+
+	LibraryEntry(long soundId, String type, File file, long size, long checksum, Descriptors descriptors, long lastAccess, long useCount)
+	{
+		this.soundId = soundId;
+		this.type = type;
+		this.file = file;
+		this.size = size;
+		this.checksum = checksum;
+		this.descriptors = descriptors;
+		this.lastAccess = lastAccess;
+		this.useCount = new AtomicLong(useCount);
+	}
+
+	/**
+	 * @return	The FreeSound id of the sound.
+	 */
+	public long getSoundId()
+	{
+		return soundId;
+	}
+
+	/**
+	 * @return	The format of the sound, like "wav" or "flac", or an empty string if it wasn't known when it was downloaded.
+	 */
+	public String getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return	Where the sound is saved.
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * @return	The size of the sound file, in bytes.
+	 */
+	public long getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * @return	The CRC-32C of the sound file, or -1 if it wasn't computed. See DownloadWriter.
+	 */
+	public long getChecksum()
+	{
+		return checksum;
+	}
+
+	/**
+	 * @return	The analysis descriptors of the sound, or null if they weren't known when it was downloaded.
+	 */
+	public Descriptors getDescriptors()
+	{
+		return descriptors;
+	}
+
+	/**
+	 * @return	When the sound was last used, in milliseconds since 1970.
+	 */
+	public long getLastAccess()
+	{
+		return lastAccess;
+	}
+
+	/**
+	 * @return	How many times the sound has been used, counting the download as the first use.
+	 */
+	public long getUseCount()
+	{
+		return useCount.get();
+	}
+
+	/**
+	 * Remember that the sound was used.
+	 */
+	void recordUse(long time)
+	{
+		lastAccess = time;
+		useCount.incrementAndGet();
+	}
+}
@@ -0,0 +1,834 @@
+package com.algorithmicaudio.freesound.library;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.algorithmicaudio.freesound.io.CountingInputStream;
+import com.algorithmicaudio.freesound.io.DaemonThreadFactory;
+import com.algorithmicaudio.freesound.io.DownloadLocks;
+import com.algorithmicaudio.freesound.io.DownloadedFile;
+import com.algorithmicaudio.freesound.io.Local;
+import com.algorithmicaudio.freesound.response.DescriptorLayout;
+import com.algorithmicaudio.freesound.response.Descriptors;
+
+/**
+ * A folder of downloaded sounds, organized by FreeSound id. A sound is saved under a path made
+ * from its id, so two sounds with the same name never collide, and the same sound is never
+ * downloaded twice. Give one to FreeSound.Builder.soundLibrary, then download with
+ * FreeSound.downloadSound(SoundResponse).
+ *
+ * The library keeps a manifest of every sound it holds: its size, checksum, descriptors and when
+ * it was last used. The manifest is read into memory when the library is opened, so asking
+ * whether a sound is in the library never touches the disk. Changes are added to the end of the
+ * manifest as they happen, and the manifest is rewritten from scratch when it has grown much
+ * larger than the library.
+ *
+ * A library can have a size limit. When downloads push it over the limit, the sounds that were
+ * used least recently (or least often, see EvictionPolicy) are deleted by a background thread, a
+ * few at a time, until the library is comfortably under the limit again. Downloads and lookups
+ * never wait for this.
+ *
+ * Several programs can share a library folder. Each one locks the manifest while it writes, and
+ * reads the changes made by the others before writing its own, so every program's view of the
+ * library catches up whenever it downloads, deletes or flushes. Call refresh to catch up sooner.
+ * Downloads are coordinated with a lock per sound, see lockSound.
+ */
+public class SoundLibrary implements Closeable
+{
+	private static final int MAGIC = 0x46534c4d; // "FSLM"
+	private static final int VERSION = 4; // version 2 added use counts, version 3 added the generation, version 4 added the format
+
+	// the kinds of record in the manifest
+	private static final int RECORD_LAYOUT = 1;
+	private static final int RECORD_ADD = 2;
+	private static final int RECORD_ACCESS = 3;
+	private static final int RECORD_REMOVE = 4;
+
+	// a manifest smaller than this is never worth rewriting
+	private static final int MINIMUM_COMPACTION_RECORDS = 1000;
+
+	// access records are saved in the background once this many bytes of them are waiting
+	private static final int PENDING_ACCESS_BYTES = 4096;
+
+	// eviction stops once the library is this fraction of its size limit, so that it doesn't run after every download
+	private static final double EVICTION_TARGET = 0.9;
+
+	// how many sounds are deleted before the eviction thread looks at the library again
+	private static final int EVICTION_BATCH = 16;
+
+	// a sound used this recently is never evicted, so that the path downloadToLibrary or getSound just returned stays valid
+	static final long EVICTION_GRACE_MILLIS = 30000;
+
+	// the byte of the lock file that guards the manifest. Sound ids never get this large.
+	private static final long MANIFEST_LOCK = Long.MAX_VALUE - 1;
+
+	private final File directory;
+	private final File manifestFile;
+	private final DownloadLocks locks;
+	private final ConcurrentHashMap<Long, LibraryEntry> entries = new ConcurrentHashMap<Long, LibraryEntry>();
+	private final AtomicLong totalBytes = new AtomicLong();
+
+	// the descriptor layouts written to the manifest, by number and by their joined field names
+	private final List<DescriptorLayout> layouts = new ArrayList<DescriptorLayout>();
+	private final Map<String, Integer> layoutNumbers = new HashMap<String, Integer>();
+
+	// how much of the manifest has been read. Only used while holding the manifest lock.
+	private int records = 0;
+	private int manifestVersion = VERSION;
+	private long generation = 0; // changes every time the manifest is rewritten
+	private long manifestOffset = 0;
+
+	// access records that haven't been written yet. Guarded by itself, so that lookups never wait for the manifest.
+	private final ByteArrayOutputStream pendingAccesses = new ByteArrayOutputStream();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+	private volatile long maximumBytes;
+	private volatile EvictionPolicy evictionPolicy;
+	private final AtomicBoolean evictionScheduled = new AtomicBoolean(false);
+
+	// saves access records and deletes sounds when the library is over its size limit
+	private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("freesound-library"));
+
+	/**
+	 * Changes the library while the manifest is locked. See changeManifest.
+	 */
+	private interface ManifestChange
+	{
+		/**
+		 * Change the library in memory, and write records describing the change.
+		 *
+		 * @param	out		Where to write the records.
+		 */
+		void apply(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Open a library folder with no size limit, creating it if necessary. Sounds already in the folder are reused.
+	 *
+	 * @param	directory	Where the sounds and the manifest are stored.
+	 * @throws IOException	if the manifest can't be read or written
+	 */
+	public SoundLibrary(File directory) throws IOException
+	{
+		this(directory, 0, EvictionPolicy.LEAST_RECENTLY_USED);
+	}
+
+	/**
+	 * Open a library folder with a size limit, creating it if necessary. Sounds already in the folder are reused.
+	 *
+	 * @param	directory		Where the sounds and the manifest are stored.
+	 * @param	maximumBytes	The size limit of the sound files, or 0 for no limit.
+	 * @param	evictionPolicy	Which sounds are deleted first when the library is over its limit.
+	 * @throws IOException	if the manifest can't be read or written
+	 */
+	public SoundLibrary(File directory, long maximumBytes, EvictionPolicy evictionPolicy) throws IOException
+	{
+		this.directory = directory;
+		this.manifestFile = new File(directory, "manifest.bin");
+		this.maximumBytes = maximumBytes;
+		this.evictionPolicy = evictionPolicy;
+		directory.mkdirs();
+		this.locks = DownloadLocks.forDirectory(directory);
+
+		refresh();
+		scheduleEviction();
+	}
+
+	/**
+	 * Lock the manifest, read what other programs have added to it, apply a change, and add the
+	 * change to the end of the manifest. If the manifest is damaged or has grown much larger than
+	 * the library, it is rewritten instead.
+	 */
+	@SuppressWarnings("try") // the lock is held for the whole block, but never used inside it
+	private synchronized void changeManifest(ManifestChange change) throws IOException
+	{
+		try (DownloadLocks.Lock lock = locks.acquire(MANIFEST_LOCK))
+		{
+			boolean complete = catchUp();
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			synchronized (pendingAccesses)
+			{
+				records += pendingAccesses.size() / 17; // an access record is a type byte and two longs
+				pendingAccesses.writeTo(out);
+				pendingAccesses.reset();
+			}
+			change.apply(out);
+			out.flush();
+
+			if (!complete || manifestVersion != VERSION || records > Math.max(MINIMUM_COMPACTION_RECORDS, 4 * entries.size()))
+			{
+				compact();
+			}
+			else if (bytes.size() > 0)
+			{
+				// every change is added with a single write, so a reader never sees half of one
+				try (FileOutputStream output = new FileOutputStream(manifestFile, true))
+				{
+					bytes.writeTo(output);
+				}
+				manifestOffset += bytes.size();
+			}
+		}
+	}
+
+	/**
+	 * Read the records that were added to the manifest since we last read it. If another program
+	 * has rewritten the manifest, read the whole thing again.
+	 *
+	 * @return	false if the manifest is missing, or ends partway through a record
+	 */
+	private boolean catchUp() throws IOException
+	{
+		if (!manifestFile.exists())
+			return false;
+
+		try (FileChannel channel = FileChannel.open(manifestFile.toPath(), StandardOpenOption.READ))
+		{
+			CountingInputStream counted = new CountingInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+			DataInputStream input = new DataInputStream(counted);
+
+			if (input.readInt() != MAGIC)
+				throw new IOException(manifestFile + " is not a sound library manifest.");
+			int version = input.readInt();
+			if (version < 1 || version > VERSION)
+				throw new IOException(manifestFile + " was written by a newer version of this library.");
+			long fileGeneration = version >= 3 ? input.readLong() : 0;
+
+			long start;
+			if (fileGeneration != generation || version != manifestVersion || channel.size() < manifestOffset || manifestOffset == 0)
+			{
+				// the manifest was rewritten, or this is the first time we've read it
+				entries.clear();
+				totalBytes.set(0);
+				layouts.clear();
+				layoutNumbers.clear();
+				records = 0;
+				manifestVersion = version;
+				generation = fileGeneration;
+				start = 0;
+			}
+			else
+			{
+				start = manifestOffset;
+				channel.position(start);
+				counted = new CountingInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+				input = new DataInputStream(counted);
+			}
+
+			// how far into the manifest the records that were read completely go, counting from start
+			long consumed = counted.getCount();
+			try
+			{
+				int type;
+				while ((type = input.read()) != -1)
+				{
+					if (!readRecord(type, input))
+						return false;
+					records++;
+					consumed = counted.getCount();
+				}
+				return true;
+			}
+			catch(EOFException e)
+			{
+				// a program stopped in the middle of writing a record. Everything before it is fine.
+				return false;
+			}
+			finally
+			{
+				manifestOffset = start + consumed;
+			}
+		}
+		catch(EOFException e)
+		{
+			// the header itself is cut short
+			return false;
+		}
+	}
+
+	/**
+	 * @return	false if the record type is unknown, which means the manifest is damaged
+	 */
+	private boolean readRecord(int type, DataInputStream input) throws IOException
+	{
+		switch(type)
+		{
+			case RECORD_LAYOUT:
+				String[] fields = new String[input.readInt()];
+				for(int i = 0; i < fields.length; i++)
+				{
+					fields[i] = input.readUTF();
+				}
+				layoutNumbers.put(String.join(",", fields), layouts.size());
+				layouts.add(new DescriptorLayout(fields));
+				return true;
+
+			case RECORD_ADD:
+				long soundId = input.readLong();
+				long size = input.readLong();
+				long checksum = input.readLong();
+				long lastAccess = input.readLong();
+				long useCount = manifestVersion >= 2 ? input.readLong() : 0;
+				String format = manifestVersion >= 4 ? input.readUTF() : "wav"; // older libraries saved every sound as .wav
+				int layoutNumber = input.readInt();
+				Descriptors descriptors = null;
+				if (layoutNumber >= 0)
+				{
+					DescriptorLayout layout = layouts.get(layoutNumber);
+					float[] values = new float[layout.size()];
+					for(int i = 0; i < values.length; i++)
+					{
+						values[i] = input.readFloat();
+					}
+					descriptors = new Descriptors(layout, values);
+				}
+				put(new LibraryEntry(soundId, format, getFile(soundId, format), size, checksum, descriptors, lastAccess, useCount));
+				return true;
+
+			case RECORD_ACCESS:
+				LibraryEntry entry = entries.get(input.readLong());
+				long time = input.readLong();
+				if (entry != null)
+					entry.recordUse(time);
+				return true;
+
+			case RECORD_REMOVE:
+				LibraryEntry removed = entries.remove(input.readLong());
+				if (removed != null)
+					totalBytes.addAndGet(-removed.getSize());
+				return true;
+
+			default:
+				return false;
+		}
+	}
+
+	private void put(LibraryEntry entry)
+	{
+		LibraryEntry previous = entries.put(entry.getSoundId(), entry);
+		totalBytes.addAndGet(entry.getSize() - (previous == null ? 0 : previous.getSize()));
+	}
+
+	/**
+	 * Rewrite the manifest with one record per sound, dropping the history of how the library got
+	 * here. Only called while holding the manifest lock. The new manifest gets a new generation, so
+	 * that other programs know to read it from the start.
+	 */
+	private void compact() throws IOException
+	{
+		layouts.clear();
+		layoutNumbers.clear();
+		records = 0;
+		manifestVersion = VERSION;
+		generation = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+
+		// write to a temporary file first, so that a crash never leaves half a manifest
+		File temp = new File(directory, "manifest.tmp");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(generation);
+		for(LibraryEntry entry : entries.values())
+		{
+			writeAdd(out, entry);
+		}
+		out.flush();
+		Files.write(temp.toPath(), bytes.toByteArray());
+		Local.replaceFile(temp, manifestFile);
+
+		manifestOffset = bytes.size();
+	}
+
+	private void writeAdd(DataOutputStream out, LibraryEntry entry) throws IOException
+	{
+		Descriptors descriptors = entry.getDescriptors();
+		int layoutNumber = descriptors == null ? -1 : writeLayout(out, descriptors.getLayout());
+
+		out.writeByte(RECORD_ADD);
+		out.writeLong(entry.getSoundId());
+		out.writeLong(entry.getSize());
+		out.writeLong(entry.getChecksum());
+		out.writeLong(entry.getLastAccess());
+		out.writeLong(entry.getUseCount());
+		out.writeUTF(entry.getType());
+		out.writeInt(layoutNumber);
+		if (descriptors != null)
+		{
+			for(float value : descriptors.toArray())
+			{
+				out.writeFloat(value);
+			}
+		}
+		records++;
+	}
+
+	/**
+	 * Add a descriptor layout to the manifest, unless it is already there.
+	 *
+	 * @return	the number of the layout in the manifest
+	 */
+	private int writeLayout(DataOutputStream out, DescriptorLayout layout) throws IOException
+	{
+		String[] fields = new String[layout.size()];
+		for(int i = 0; i < fields.length; i++)
+		{
+			fields[i] = layout.getField(i);
+		}
+		String key = String.join(",", fields);
+
+		Integer number = layoutNumbers.get(key);
+		if (number != null)
+			return number;
+
+		out.writeByte(RECORD_LAYOUT);
+		out.writeInt(fields.length);
+		for(String field : fields)
+		{
+			out.writeUTF(field);
+		}
+		records++;
+
+		layoutNumbers.put(key, layouts.size());
+		layouts.add(layout);
+		return layouts.size() - 1;
+	}
+
+	/**
+	 * The name of the file is the id of the sound, and its extension is the format, like 1234.flac.
+	 * The format is saved in the manifest, so the file of a sound in the library is always at
+	 * get(soundId).getFile().
+	 *
+	 * @param	soundId		The FreeSound id of a sound.
+	 * @param	type		The format of the sound, from SoundResponse.type. May be null, for a file with no extension.
+	 * @return				Where the library saves that sound, whether or not it has been downloaded.
+	 */
+	public File getFile(long soundId, String type)
+	{
+		// spread the sounds over 256 folders, so that no folder gets too large to list
+		String folder = String.format("%02x", soundId & 0xff);
+		return new File(new File(directory, folder), soundId + Local.getExtension(type));
+	}
+
+	/**
+	 * Claim a sound, so that no other thread or program downloads or deletes it until the lock is
+	 * closed. Once you have the lock, call refresh and check contains again, because someone else
+	 * may have downloaded the sound while you were waiting.
+	 *
+	 * @param	soundId		The FreeSound id of a sound.
+	 * @return				The lock. Close it when you are done.
+	 * @throws IOException	if the lock file fails, or the thread is interrupted while waiting
+	 */
+	public DownloadLocks.Lock lockSound(long soundId) throws IOException
+	{
+		return locks.acquire(soundId);
+	}
+
+	/**
+	 * @param	soundId		The FreeSound id of a sound.
+	 * @return				true if the sound has been downloaded into the library
+	 */
+	public boolean contains(long soundId)
+	{
+		return entries.containsKey(soundId);
+	}
+
+	/**
+	 * Look up a sound without counting it as used.
+	 *
+	 * @param	soundId		The FreeSound id of a sound.
+	 * @return				What the library knows about the sound, or null if it isn't in the library.
+	 */
+	public LibraryEntry get(long soundId)
+	{
+		return entries.get(soundId);
+	}
+
+	/**
+	 * Get a sound from the library, and remember that it was used. This never waits for the
+	 * manifest. The access time is saved in the background a little later.
+	 *
+	 * @param	soundId		The FreeSound id of a sound.
+	 * @return				The sound file, or null if it isn't in the library.
+	 */
+	public File getSound(long soundId)
+	{
+		LibraryEntry entry = entries.get(soundId);
+		if (entry == null)
+			return null;
+
+		long now = System.currentTimeMillis();
+		entry.recordUse(now);
+
+		boolean full;
+		synchronized (pendingAccesses)
+		{
+			// losing a few access times in a crash only makes those sounds look a little older
+			DataOutputStream out = new DataOutputStream(pendingAccesses);
+			try
+			{
+				out.writeByte(RECORD_ACCESS);
+				out.writeLong(soundId);
+				out.writeLong(now);
+			}
+			catch(IOException e)
+			{
+				// a ByteArrayOutputStream never fails
+			}
+			full = pendingAccesses.size() >= PENDING_ACCESS_BYTES;
+		}
+
+		if (full && flushScheduled.compareAndSet(false, true))
+		{
+			runInBackground(() -> {
+				try
+				{
+					flush();
+				}
+				catch(IOException e)
+				{
+					System.out.println("Unable to update the sound library manifest. " + e.getMessage());
+				}
+				finally
+				{
+					flushScheduled.set(false);
+				}
+			}, flushScheduled);
+		}
+		return entry.getFile();
+	}
+
+	/**
+	 * Add a sound that has been downloaded to getFile(soundId, type).
+	 *
+	 * @param	soundId		The FreeSound id of the sound.
+	 * @param	type		The format of the sound, like "wav". May be null if it isn't known.
+	 * @param	download	The downloaded file.
+	 * @param	descriptors	The analysis descriptors of the sound, or null.
+	 * @return				The new library entry.
+	 * @throws IOException	if the manifest can't be written
+	 */
+	public LibraryEntry add(long soundId, String type, DownloadedFile download, Descriptors descriptors) throws IOException
+	{
+		// only the extension is kept, so that the file can be found again from the manifest
+		String format = Local.getExtension(type).isEmpty() ? "" : type.toLowerCase();
+
+		// the download counts as the first use, so that a new sound isn't the least frequently used one
+		LibraryEntry entry = new LibraryEntry(soundId, format, getFile(soundId, format), download.getLength(), download.getChecksum(), descriptors, System.currentTimeMillis(), 1);
+		changeManifest(out -> {
+			writeAdd(out, entry);
+			put(entry);
+		});
+		scheduleEviction();
+		return entry;
+	}
+
+	/**
+	 * Delete a sound from the library.
+	 *
+	 * @param	soundId		The FreeSound id of the sound.
+	 * @return				true if the sound was in the library
+	 * @throws IOException	if the manifest can't be written
+	 */
+	public boolean remove(long soundId) throws IOException
+	{
+		return remove(soundId, null, 0);
+	}
+
+	/**
+	 * Delete a sound from the library, but only if it is still the given entry and hasn't been used
+	 * since it was chosen for eviction. The sound is locked while it is deleted, so that a program
+	 * that is downloading it again never has its new file deleted.
+	 *
+	 * @param	expected				The entry that should be removed, or null to remove whatever is there.
+	 * @param	expectedLastAccess		When the expected entry was last used.
+	 */
+	@SuppressWarnings("try") // the lock is held for the whole block, but never used inside it
+	private boolean remove(long soundId, LibraryEntry expected, long expectedLastAccess) throws IOException
+	{
+		try (DownloadLocks.Lock lock = locks.acquire(soundId))
+		{
+			LibraryEntry[] removed = new LibraryEntry[1];
+			changeManifest(out -> {
+				if (expected != null && (entries.get(soundId) != expected || expected.getLastAccess() != expectedLastAccess))
+					return;
+
+				removed[0] = entries.remove(soundId);
+				if (removed[0] == null)
+					return;
+				totalBytes.addAndGet(-removed[0].getSize());
+
+				out.writeByte(RECORD_REMOVE);
+				out.writeLong(soundId);
+				records++;
+			});
+
+			if (removed[0] == null)
+				return false;
+			removed[0].getFile().delete();
+			return true;
+		}
+	}
+
+	/**
+	 * Run a task on the background thread, unless the library has been closed.
+	 *
+	 * @param	scheduled	Cleared if the task can't be run.
+	 */
+	private void runInBackground(Runnable task, AtomicBoolean scheduled)
+	{
+		try
+		{
+			backgroundExecutor.execute(task);
+		}
+		catch(RejectedExecutionException e)
+		{
+			// the library has been closed
+			scheduled.set(false);
+		}
+	}
+
+	/**
+	 * Start deleting sounds in the background, if the library is over its size limit and that isn't
+	 * already happening.
+	 */
+	private void scheduleEviction()
+	{
+		if (!isOverLimit(maximumBytes) || !evictionScheduled.compareAndSet(false, true))
+			return;
+
+		runInBackground(() -> {
+			try
+			{
+				evict();
+			}
+			finally
+			{
+				evictionScheduled.set(false);
+			}
+		}, evictionScheduled);
+	}
+
+	private boolean isOverLimit(long limit)
+	{
+		return limit > 0 && totalBytes.get() > limit;
+	}
+
+	/**
+	 * Delete sounds until the library is back under its size limit, using the eviction policy to
+	 * choose them. This happens by itself in the background after a download, so you only need to
+	 * call it to shrink the library straight away, for example after lowering the limit.
+	 *
+	 * Sounds are deleted a few at a time, and the library is only locked while each one is taken
+	 * out of the manifest, so downloads and lookups carry on while this runs. A sound that is used
+	 * after it was chosen is not deleted, and neither is a sound used in the last 30 seconds, so the
+	 * library can stay over its limit for a moment when every sound in it is that new.
+	 *
+	 * @return	the number of sounds that were deleted
+	 */
+	public int evict()
+	{
+		long limit = maximumBytes;
+		if (!isOverLimit(limit))
+			return 0;
+
+		long target = (long) (limit * EVICTION_TARGET);
+		int evicted = 0;
+		while (totalBytes.get() > target)
+		{
+			List<LibraryEntry> victims = chooseVictims(EVICTION_BATCH);
+			if (victims.isEmpty())
+				break;
+
+			for(LibraryEntry victim : victims)
+			{
+				if (totalBytes.get() <= target)
+					break;
+				try
+				{
+					if (remove(victim.getSoundId(), victim, victim.getLastAccess()))
+						evicted++;
+				}
+				catch(IOException e)
+				{
+					System.out.println("Unable to update the sound library manifest. " + e.getMessage());
+					return evicted;
+				}
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * Find the sounds that the eviction policy would delete first, without sorting the whole library.
+	 * Sounds that were used within the grace period are left out.
+	 *
+	 * @param	count	How many sounds to find.
+	 * @return			Up to count sounds, the best one to delete first.
+	 */
+	private List<LibraryEntry> chooseVictims(int count)
+	{
+		Comparator<LibraryEntry> order = Comparator.comparingLong(LibraryEntry::getLastAccess);
+		if (evictionPolicy == EvictionPolicy.LEAST_FREQUENTLY_USED)
+			order = Comparator.comparingLong(LibraryEntry::getUseCount).thenComparing(order);
+
+		// keep the best candidates in a heap with the worst of them on top, so that it is easy to replace
+		PriorityQueue<LibraryEntry> candidates = new PriorityQueue<LibraryEntry>(count + 1, order.reversed());
+		long graceStart = System.currentTimeMillis() - EVICTION_GRACE_MILLIS;
+		for(LibraryEntry entry : entries.values())
+		{
+			if (entry.getLastAccess() > graceStart)
+				continue;
+			candidates.add(entry);
+			if (candidates.size() > count)
+				candidates.poll();
+		}
+
+		List<LibraryEntry> victims = new ArrayList<LibraryEntry>(candidates);
+		victims.sort(order);
+		return victims;
+	}
+
+	/**
+	 * Change the size limit. If the library is now over the limit, sounds are deleted in the background.
+	 *
+	 * @param	newMaximumBytes		The size limit of the sound files, or 0 for no limit.
+	 */
+	public void setMaximumBytes(long newMaximumBytes)
+	{
+		maximumBytes = newMaximumBytes;
+		scheduleEviction();
+	}
+
+	/**
+	 * @return	The size limit of the sound files, or 0 if there is no limit.
+	 */
+	public long getMaximumBytes()
+	{
+		return maximumBytes;
+	}
+
+	/**
+	 * @param	newPolicy	Which sounds are deleted first when the library is over its limit.
+	 */
+	public void setEvictionPolicy(EvictionPolicy newPolicy)
+	{
+		evictionPolicy = newPolicy;
+	}
+
+	/**
+	 * @return	Which sounds are deleted first when the library is over its limit.
+	 */
+	public EvictionPolicy getEvictionPolicy()
+	{
+		return evictionPolicy;
+	}
+
+	/**
+	 * Check every sound file on disk, and forget the sounds whose files have been deleted by
+	 * something other than the library. This touches every file, so it is not done automatically.
+	 *
+	 * @return	the number of sounds that were missing
+	 * @throws IOException	if the manifest can't be written
+	 */
+	public int removeMissing() throws IOException
+	{
+		int missing = 0;
+		for(LibraryEntry entry : entries.values())
+		{
+			if (!entry.getFile().exists() && remove(entry.getSoundId()))
+				missing++;
+		}
+		return missing;
+	}
+
+	/**
+	 * @return	Every sound in the library, in no particular order.
+	 */
+	public Collection<LibraryEntry> getEntries()
+	{
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	/**
+	 * @return	the number of sounds in the library
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @return	the total size of the sound files, in bytes
+	 */
+	public long getSizeInBytes()
+	{
+		return totalBytes.get();
+	}
+
+	/**
+	 * @return	The folder where the library is stored.
+	 */
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * Read the changes that other programs sharing this folder have made to the library.
+	 *
+	 * @throws IOException	if the manifest can't be read
+	 */
+	public void refresh() throws IOException
+	{
+		changeManifest(out -> {});
+	}
+
+	/**
+	 * Save the access times that haven't been written yet, and read the changes made by other programs.
+	 *
+	 * @throws IOException	if the manifest can't be written
+	 */
+	public void flush() throws IOException
+	{
+		refresh();
+	}
+
+	/**
+	 * Save the access times that haven't been written yet, and stop the background thread.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		backgroundExecutor.shutdown();
+		flush();
+	}
+}
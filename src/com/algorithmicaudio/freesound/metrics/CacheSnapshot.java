@@ -0,0 +1,57 @@
+package com.algorithmicaudio.freesound.metrics;
+
+/**
+ * How well a cache was doing at one moment.
+ */
+public class CacheSnapshot
+{
+	private final String name;
+	private final long hitCount;
+	private final long missCount;
+
+	public CacheSnapshot(String name, long hitCount, long missCount)
+	{
+		this.name = name;
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+	}
+
+	/**
+	 * @return	the name the cache was watched under, like "disk-1" or "memory-1". The number tells the clients apart.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return	the number of lookups that found something
+	 */
+	public long getHitCount()
+	{
+		return hitCount;
+	}
+
+	/**
+	 * @return	the number of lookups that found nothing
+	 */
+	public long getMissCount()
+	{
+		return missCount;
+	}
+
+	/**
+	 * @return	the fraction of lookups that found something, between 0 and 1
+	 */
+	public double getHitRate()
+	{
+		long total = hitCount + missCount;
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s: %d hits, %d misses (%.0f%%)", name, hitCount, missCount, getHitRate() * 100);
+	}
+}
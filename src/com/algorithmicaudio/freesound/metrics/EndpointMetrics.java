@@ -0,0 +1,118 @@
+package com.algorithmicaudio.freesound.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters for one FreeSound endpoint, like search/text or download. Get one from
+ * Metrics.endpoint. Every method can be called from any thread without locking.
+ */
+public class EndpointMetrics
+{
+	// HTTP status codes are three digits
+	private static final int STATUS_CODES = 600;
+
+	private final String name;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram queueWait = new LatencyHistogram();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final AtomicLongArray statusCounts = new AtomicLongArray(STATUS_CODES);
+
+	EndpointMetrics(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Count a request that got a response.
+	 *
+	 * @param	nanos		How long it took to get the response.
+	 * @param	statusCode	The HTTP status code of the response.
+	 */
+	public void recordResponse(long nanos, int statusCode)
+	{
+		requests.increment();
+		latency.record(nanos);
+		if (statusCode >= 0 && statusCode < STATUS_CODES)
+			statusCounts.incrementAndGet(statusCode);
+	}
+
+	/**
+	 * Count a request that failed before a response arrived, like a timeout or a refused connection.
+	 *
+	 * @param	nanos	How long it took to fail.
+	 */
+	public void recordFailure(long nanos)
+	{
+		requests.increment();
+		failures.increment();
+		latency.record(nanos);
+	}
+
+	/**
+	 * Count the time a request spent waiting for the RateLimiter before it was sent.
+	 *
+	 * @param	nanos	How long it waited.
+	 */
+	public void recordQueueWait(long nanos)
+	{
+		queueWait.record(nanos);
+	}
+
+	/**
+	 * Count a request that the RateLimiter refused, because it couldn't be sent within the maximum wait.
+	 */
+	public void recordRejected()
+	{
+		rejected.increment();
+	}
+
+	/**
+	 * @param	bytes	The size of a response body that was read.
+	 */
+	public void addBytesReceived(long bytes)
+	{
+		bytesReceived.add(bytes);
+	}
+
+	/**
+	 * @param	bytes	The size of a request body that was sent.
+	 */
+	public void addBytesSent(long bytes)
+	{
+		bytesSent.add(bytes);
+	}
+
+	void reset()
+	{
+		latency.reset();
+		queueWait.reset();
+		rejected.reset();
+		requests.reset();
+		failures.reset();
+		bytesReceived.reset();
+		bytesSent.reset();
+		for(int i = 0; i < STATUS_CODES; i++)
+		{
+			statusCounts.set(i, 0);
+		}
+	}
+
+	EndpointSnapshot snapshot()
+	{
+		Map<Integer, Long> statuses = new TreeMap<Integer, Long>();
+		for(int i = 0; i < STATUS_CODES; i++)
+		{
+			long count = statusCounts.get(i);
+			if (count > 0)
+				statuses.put(i, count);
+		}
+		return new EndpointSnapshot(name, requests.sum(), failures.sum(), rejected.sum(), bytesReceived.sum(), bytesSent.sum(), latency.snapshot(), queueWait.snapshot(), statuses);
+	}
+}
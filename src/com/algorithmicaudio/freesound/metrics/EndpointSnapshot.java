@@ -0,0 +1,111 @@
+package com.algorithmicaudio.freesound.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The counters for one FreeSound endpoint at one moment. See Metrics.snapshot.
+ */
+public class EndpointSnapshot
+{
+	private final String name;
+	private final long requestCount;
+	private final long failureCount;
+	private final long rejectedCount;
+	private final long bytesReceived;
+	private final long bytesSent;
+	private final HistogramSnapshot latency;
+	private final HistogramSnapshot queueWait;
+	private final Map<Integer, Long> statusCounts;
+
+	public EndpointSnapshot(String name, long requestCount, long failureCount, long rejectedCount, long bytesReceived, long bytesSent, HistogramSnapshot latency, HistogramSnapshot queueWait, Map<Integer, Long> statusCounts)
+	{
+		this.name = name;
+		this.requestCount = requestCount;
+		this.failureCount = failureCount;
+		this.rejectedCount = rejectedCount;
+		this.bytesReceived = bytesReceived;
+		this.bytesSent = bytesSent;
+		this.latency = latency;
+		this.queueWait = queueWait;
+		this.statusCounts = Collections.unmodifiableMap(statusCounts);
+	}
+
+	/**
+	 * @return	the endpoint, like search/text
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return	the number of requests sent, including the ones that failed
+	 */
+	public long getRequestCount()
+	{
+		return requestCount;
+	}
+
+	/**
+	 * @return	the number of requests that failed before a response arrived
+	 */
+	public long getFailureCount()
+	{
+		return failureCount;
+	}
+
+	/**
+	 * @return	the number of requests that the RateLimiter refused to send, because their turn wouldn't come in time
+	 */
+	public long getRejectedCount()
+	{
+		return rejectedCount;
+	}
+
+	/**
+	 * @return	the total size of the response bodies that were read
+	 */
+	public long getBytesReceived()
+	{
+		return bytesReceived;
+	}
+
+	/**
+	 * @return	the total size of the request bodies that were sent
+	 */
+	public long getBytesSent()
+	{
+		return bytesSent;
+	}
+
+	/**
+	 * @return	how long it took to get a response
+	 */
+	public HistogramSnapshot getLatency()
+	{
+		return latency;
+	}
+
+	/**
+	 * @return	how long requests waited for the RateLimiter before they were sent. This is not part of getLatency.
+	 */
+	public HistogramSnapshot getQueueWait()
+	{
+		return queueWait;
+	}
+
+	/**
+	 * @return	how many responses had each HTTP status code, like 200 or 429
+	 */
+	public Map<Integer, Long> getStatusCounts()
+	{
+		return statusCounts;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%-16s %6d requests %4d failed %4d refused %10d bytes in  statuses %s  latency %s  queued %s", name, requestCount, failureCount, rejectedCount, bytesReceived, statusCounts, latency, queueWait);
+	}
+}
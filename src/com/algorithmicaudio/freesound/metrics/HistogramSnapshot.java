@@ -0,0 +1,78 @@
+package com.algorithmicaudio.freesound.metrics;
+
+/**
+ * The durations counted by a LatencyHistogram at one moment. All times are in milliseconds.
+ */
+public class HistogramSnapshot
+{
+	private final long count;
+	private final double meanMillis;
+	private final double p50Millis;
+	private final double p90Millis;
+	private final double p99Millis;
+	private final double maximumMillis;
+
+	public HistogramSnapshot(long count, double meanMillis, double p50Millis, double p90Millis, double p99Millis, double maximumMillis)
+	{
+		this.count = count;
+		this.meanMillis = meanMillis;
+		this.p50Millis = p50Millis;
+		this.p90Millis = p90Millis;
+		this.p99Millis = p99Millis;
+		this.maximumMillis = maximumMillis;
+	}
+
+	/**
+	 * @return	how many durations were recorded
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return	the average duration
+	 */
+	public double getMeanMillis()
+	{
+		return meanMillis;
+	}
+
+	/**
+	 * @return	the median duration
+	 */
+	public double getP50Millis()
+	{
+		return p50Millis;
+	}
+
+	/**
+	 * @return	90% of durations were this long or shorter
+	 */
+	public double getP90Millis()
+	{
+		return p90Millis;
+	}
+
+	/**
+	 * @return	99% of durations were this long or shorter
+	 */
+	public double getP99Millis()
+	{
+		return p99Millis;
+	}
+
+	/**
+	 * @return	the longest duration
+	 */
+	public double getMaximumMillis()
+	{
+		return maximumMillis;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("n=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms", count, meanMillis, p50Millis, p90Millis, p99Millis, maximumMillis);
+	}
+}
@@ -0,0 +1,122 @@
+package com.algorithmicaudio.freesound.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long things take, cheaply enough to do on every request.
+ *
+ * Durations are sorted into buckets that double in width every eight buckets, from one
+ * microsecond up to several days, so any percentile read from the histogram is within about 12%
+ * of the true value. Recording a duration is a few atomic additions, with no locks and no
+ * allocation.
+ */
+public class LatencyHistogram
+{
+	// each power of two is split into this many buckets
+	private static final int SUB_BUCKETS = 8;
+	private static final int SUB_BUCKET_BITS = 3;
+
+	// enough buckets for durations up to 2^40 microseconds, which is about 12 days
+	private static final int BUCKETS = SUB_BUCKETS * 40;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final AtomicLong maximumMicros = new AtomicLong();
+
+	/**
+	 * Count one duration.
+	 *
+	 * @param	nanos	How long it took, in nanoseconds, like the difference between two calls to System.nanoTime.
+	 */
+	public void record(long nanos)
+	{
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(bucket(micros));
+		count.increment();
+		totalMicros.add(micros);
+
+		long maximum;
+		while (micros > (maximum = maximumMicros.get()) && !maximumMicros.compareAndSet(maximum, micros))
+		{
+			// another thread changed the maximum, so compare again
+		}
+	}
+
+	/**
+	 * @return	the bucket that counts a duration
+	 */
+	private static int bucket(long micros)
+	{
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int highestBit = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int) (micros >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return Math.min(BUCKETS - 1, (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket);
+	}
+
+	/**
+	 * @return	the shortest duration that a bucket counts, in microseconds
+	 */
+	private static long lowestMicros(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int highestBit = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + subBucket) << (highestBit - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * Forget everything that has been recorded.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			counts.set(i, 0);
+		}
+		count.reset();
+		totalMicros.reset();
+		maximumMicros.set(0);
+	}
+
+	/**
+	 * @return	The count, average, percentiles and maximum of the durations recorded so far.
+	 */
+	public HistogramSnapshot snapshot()
+	{
+		long[] copy = new long[BUCKETS];
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+
+		double maximumMillis = maximumMicros.get() / 1000.0;
+		double meanMillis = total == 0 ? 0 : totalMicros.sum() / 1000.0 / Math.max(1, count.sum());
+		return new HistogramSnapshot(total, meanMillis, percentile(copy, total, 0.5, maximumMillis), percentile(copy, total, 0.9, maximumMillis), percentile(copy, total, 0.99, maximumMillis), maximumMillis);
+	}
+
+	/**
+	 * @return	the top of the bucket that holds the given percentile, in milliseconds, but never more than the maximum
+	 */
+	private static double percentile(long[] counts, long total, double fraction, double maximumMillis)
+	{
+		if (total == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(maximumMillis, lowestMicros(i + 1) / 1000.0);
+		}
+		return maximumMillis;
+	}
+}
@@ -0,0 +1,157 @@
+package com.algorithmicaudio.freesound.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import javax.management.ObjectName;
+
+/**
+ * Measures where the time goes: how long each FreeSound endpoint takes to answer, how many bytes
+ * it sends, which status codes it returns, how long responses take to parse, and how often the
+ * caches save a request.
+ *
+ * Everything is counted all the time. Counting is a handful of atomic additions per request, so
+ * it is cheap enough to leave on. To look at the numbers, either call Metrics.snapshot() from
+ * your program, or connect JConsole to it and open com.algorithmicaudio.freesound:type=Metrics.
+ */
+public class Metrics
+{
+	public static final String SEARCH_TEXT = "search/text";
+	public static final String SEARCH_CONTENT = "search/content";
+	public static final String SEARCH_COMBINED = "search/combined";
+	public static final String SIMILAR = "similar";
+	public static final String DOWNLOAD = "download";
+	public static final String OAUTH = "oauth";
+	public static final String OTHER = "other";
+
+	private static final ConcurrentHashMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+	private static final LatencyHistogram parseTime = new LatencyHistogram();
+	private static final ConcurrentHashMap<String, LongSupplier[]> caches = new ConcurrentHashMap<String, LongSupplier[]>();
+
+	static
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBean()
+			{
+				public MetricsSnapshot getSnapshot()
+				{
+					return snapshot();
+				}
+
+				public void reset()
+				{
+					Metrics.reset();
+				}
+			}, new ObjectName("com.algorithmicaudio.freesound:type=Metrics"));
+		}
+		catch(Exception e)
+		{
+			// JMX is a convenience. The snapshot still works without it.
+		}
+	}
+
+	/**
+	 * @param	name	An endpoint, like SEARCH_TEXT.
+	 * @return			The counters for that endpoint.
+	 */
+	public static EndpointMetrics endpoint(String name)
+	{
+		EndpointMetrics metrics = endpoints.get(name);
+		if (metrics == null)
+			metrics = endpoints.computeIfAbsent(name, EndpointMetrics::new);
+		return metrics;
+	}
+
+	/**
+	 * Work out which endpoint a URL belongs to.
+	 *
+	 * @param	url		A FreeSound API URL.
+	 * @return			The endpoint, like SEARCH_TEXT or DOWNLOAD.
+	 */
+	public static String endpointFor(String url)
+	{
+		if (url.contains("/search/text/"))
+			return SEARCH_TEXT;
+		if (url.contains("/search/content/"))
+			return SEARCH_CONTENT;
+		if (url.contains("/search/combined/"))
+			return SEARCH_COMBINED;
+		if (url.contains("/download/"))
+			return DOWNLOAD;
+		if (url.contains("/similar/"))
+			return SIMILAR;
+		if (url.contains("/oauth2/"))
+			return OAUTH;
+		return OTHER;
+	}
+
+	/**
+	 * Count how long it took to read and parse a response.
+	 *
+	 * @param	nanos	The time taken, in nanoseconds.
+	 */
+	public static void recordParse(long nanos)
+	{
+		parseTime.record(nanos);
+	}
+
+	/**
+	 * Include a cache's hit rate in the snapshots. Watching a cache under a name that is already
+	 * watched replaces the old cache.
+	 *
+	 * @param	name	What to call the cache, like "disk-1".
+	 * @param	hits	Reads the number of lookups that found something.
+	 * @param	misses	Reads the number of lookups that found nothing.
+	 */
+	public static void watchCache(String name, LongSupplier hits, LongSupplier misses)
+	{
+		caches.put(name, new LongSupplier[] { hits, misses });
+	}
+
+	/**
+	 * Stop including a cache in the snapshots.
+	 *
+	 * @param	name	The name the cache was watched under.
+	 */
+	public static void unwatchCache(String name)
+	{
+		caches.remove(name);
+	}
+
+	/**
+	 * @return	Everything that has been measured so far.
+	 */
+	public static MetricsSnapshot snapshot()
+	{
+		Map<String, EndpointSnapshot> endpointSnapshots = new TreeMap<String, EndpointSnapshot>();
+		for(EndpointMetrics metrics : endpoints.values())
+		{
+			EndpointSnapshot snapshot = metrics.snapshot();
+			endpointSnapshots.put(snapshot.getName(), snapshot);
+		}
+
+		Map<String, CacheSnapshot> cacheSnapshots = new TreeMap<String, CacheSnapshot>();
+		for(Map.Entry<String, LongSupplier[]> cache : caches.entrySet())
+		{
+			cacheSnapshots.put(cache.getKey(), new CacheSnapshot(cache.getKey(), cache.getValue()[0].getAsLong(), cache.getValue()[1].getAsLong()));
+		}
+
+		return new MetricsSnapshot(System.currentTimeMillis(), endpointSnapshots, parseTime.snapshot(), cacheSnapshots);
+	}
+
+	/**
+	 * Set every counter back to zero. Cache hit rates come from the caches themselves, so they are not reset.
+	 */
+	public static void reset()
+	{
+		for(EndpointMetrics metrics : endpoints.values())
+		{
+			metrics.reset();
+		}
+		parseTime.reset();
+	}
+}
@@ -0,0 +1,18 @@
+package com.algorithmicaudio.freesound.metrics;
+
+/**
+ * The metrics as seen through JMX, for tools like JConsole and VisualVM. It is registered as
+ * com.algorithmicaudio.freesound:type=Metrics.
+ */
+public interface MetricsMXBean
+{
+	/**
+	 * @return	Everything the client has measured so far.
+	 */
+	MetricsSnapshot getSnapshot();
+
+	/**
+	 * Set every counter back to zero.
+	 */
+	void reset();
+}
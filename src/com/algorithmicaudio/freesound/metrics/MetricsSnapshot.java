@@ -0,0 +1,82 @@
+package com.algorithmicaudio.freesound.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Everything the client has measured, at one moment. Get one from Metrics.snapshot. A snapshot
+ * never changes, so it can be kept and compared with a later one.
+ */
+public class MetricsSnapshot
+{
+	private final long timestamp;
+	private final Map<String, EndpointSnapshot> endpoints;
+	private final HistogramSnapshot parseTime;
+	private final Map<String, CacheSnapshot> caches;
+
+	public MetricsSnapshot(long timestamp, Map<String, EndpointSnapshot> endpoints, HistogramSnapshot parseTime, Map<String, CacheSnapshot> caches)
+	{
+		this.timestamp = timestamp;
+		this.endpoints = Collections.unmodifiableMap(endpoints);
+		this.parseTime = parseTime;
+		this.caches = Collections.unmodifiableMap(caches);
+	}
+
+	/**
+	 * @return	when the snapshot was taken, in milliseconds since 1970
+	 */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	/**
+	 * @return	the counters for each endpoint that has been used, by name
+	 */
+	public Map<String, EndpointSnapshot> getEndpoints()
+	{
+		return endpoints;
+	}
+
+	/**
+	 * @param	name	An endpoint, like Metrics.SEARCH_TEXT.
+	 * @return			Its counters, or null if it hasn't been used.
+	 */
+	public EndpointSnapshot getEndpoint(String name)
+	{
+		return endpoints.get(name);
+	}
+
+	/**
+	 * @return	how long it took to read and parse search responses. Responses are parsed as they
+	 *			arrive, so this includes the time spent waiting for the body.
+	 */
+	public HistogramSnapshot getParseTime()
+	{
+		return parseTime;
+	}
+
+	/**
+	 * @return	the hits and misses of each watched cache, by name
+	 */
+	public Map<String, CacheSnapshot> getCaches()
+	{
+		return caches;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder text = new StringBuilder();
+		for(EndpointSnapshot endpoint : endpoints.values())
+		{
+			text.append(endpoint).append("\n");
+		}
+		text.append("parse            ").append(parseTime).append("\n");
+		for(CacheSnapshot cache : caches.values())
+		{
+			text.append(cache).append("\n");
+		}
+		return text.toString();
+	}
+}
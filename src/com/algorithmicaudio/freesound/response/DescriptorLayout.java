@@ -0,0 +1,234 @@
+package com.algorithmicaudio.freesound.response;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.internal.LinkedTreeMap;
+
+/**
+ * Describes where each analysis descriptor lives in a Descriptors array. There is one slot per
+ * entry in FreeSound.getDescriptorFields(), in the same order.
+ * 
+ * Most descriptors are numbers, and are stored as they are. The key and scale are words, so
+ * they are stored as their position in KEYS and SCALES. That way every descriptor fits in one
+ * float, and reading one never involves a map lookup or unboxing.
+ */
+public class DescriptorLayout
+{
+	/**
+	 * The keys that FreeSound uses for tonal.key_key, in order around the circle of semitones.
+	 */
+	public static final String[] KEYS = new String[] { "C", "C#", "D", "Eb", "E", "F", "F#", "G", "Ab", "A", "Bb", "B" };
+
+	/**
+	 * The scales that FreeSound uses for tonal.key_scale.
+	 */
+	public static final String[] SCALES = new String[] { "major", "minor" };
+
+	public static final String LOUDNESS = "lowlevel.average_loudness";
+	public static final String BPM = "rhythm.bpm";
+	public static final String PITCH_SALIENCE = "lowlevel.pitch_salience";
+	public static final String KEY_STRENGTH = "tonal.key_strength";
+	public static final String KEY = "tonal.key_key";
+	public static final String SCALE = "tonal.key_scale";
+
+	private final String[] fields;
+	private final String[][] paths;
+	private final Map<String, Integer> slots = new HashMap<String, Integer>();
+
+	// the slots of the common descriptors, looked up once so that the accessors on Descriptors are just an array read
+	final int loudnessSlot;
+	final int bpmSlot;
+	final int pitchSalienceSlot;
+	final int keyStrengthSlot;
+	final int keySlot;
+	final int scaleSlot;
+
+	/**
+	 * @param	descriptorFields	The descriptors requested from FreeSound, like FreeSound.getDescriptorFields().
+	 */
+	public DescriptorLayout(String[] descriptorFields)
+	{
+		fields = descriptorFields.clone();
+		paths = new String[fields.length][];
+		for(int i = 0; i < fields.length; i++)
+		{
+			paths[i] = fields[i].split("\\.");
+			slots.put(fields[i], i);
+		}
+
+		loudnessSlot = getSlot(LOUDNESS);
+		bpmSlot = getSlot(BPM);
+		pitchSalienceSlot = getSlot(PITCH_SALIENCE);
+		keyStrengthSlot = getSlot(KEY_STRENGTH);
+		keySlot = getSlot(KEY);
+		scaleSlot = getSlot(SCALE);
+	}
+
+	/**
+	 * @param	descriptor	The name of a descriptor, like rhythm.bpm.
+	 * @return				Its slot, or -1 if it is not part of this layout.
+	 */
+	public int getSlot(String descriptor)
+	{
+		Integer slot = slots.get(descriptor);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * @return	The number of slots.
+	 */
+	public int size()
+	{
+		return fields.length;
+	}
+
+	/**
+	 * @param	slot	A slot number.
+	 * @return			The name of the descriptor in that slot.
+	 */
+	public String getField(int slot)
+	{
+		return fields[slot];
+	}
+
+	/**
+	 * @return	true if this layout was built from the given fields
+	 */
+	public boolean matches(String[] descriptorFields)
+	{
+		return Arrays.equals(fields, descriptorFields);
+	}
+
+	/**
+	 * @param	slot	A slot number.
+	 * @return			true if the descriptor in that slot is a word that is stored as a dictionary code.
+	 */
+	public boolean isDictionaryEncoded(int slot)
+	{
+		return slot == keySlot || slot == scaleSlot;
+	}
+
+	/**
+	 * Turn a word descriptor into the number that is stored for it.
+	 * 
+	 * @param	slot	The slot of the descriptor.
+	 * @param	value	The word, like "C#" or "minor".
+	 * @return			Its code, or NaN if the word is not known.
+	 */
+	public float encode(int slot, String value)
+	{
+		String[] dictionary = slot == keySlot ? KEYS : slot == scaleSlot ? SCALES : null;
+		if (dictionary != null)
+		{
+			for(int i = 0; i < dictionary.length; i++)
+			{
+				if (dictionary[i].equals(value))
+					return i;
+			}
+		}
+		return Float.NaN;
+	}
+
+	/**
+	 * Turn a stored number back into its word.
+	 * 
+	 * @param	slot	The slot of the descriptor.
+	 * @param	code	The stored code.
+	 * @return			The word, or null if the code is missing or unknown.
+	 */
+	public String decode(int slot, float code)
+	{
+		String[] dictionary = slot == keySlot ? KEYS : slot == scaleSlot ? SCALES : null;
+		if (dictionary == null || Float.isNaN(code) || code < 0 || code >= dictionary.length)
+			return null;
+		return dictionary[(int) code];
+	}
+
+	/**
+	 * Convert the analysis map from a SoundResponse into typed descriptors.
+	 * 
+	 * @param	analysis	The nested analysis map, like {rhythm={bpm=120.0}}. May be null.
+	 * @return				The descriptors. Any descriptor that is missing is NaN.
+	 */
+	public Descriptors fromAnalysis(Map<?, ?> analysis)
+	{
+		float[] values = new float[fields.length];
+		for(int slot = 0; slot < fields.length; slot++)
+		{
+			values[slot] = toFloat(slot, lookup(analysis, paths[slot]));
+		}
+		return new Descriptors(this, values);
+	}
+
+	/**
+	 * Turn typed descriptors back into a nested analysis map, the opposite of fromAnalysis. Numbers
+	 * become Doubles and the key and scale become words, the way Gson would have parsed them. A
+	 * descriptor that is missing is left out.
+	 * 
+	 * @param	descriptors	Descriptors in this layout.
+	 * @return				The nested analysis map, like {rhythm={bpm=120.0}}.
+	 */
+	public Map<Object, Object> toAnalysis(Descriptors descriptors)
+	{
+		Map<Object, Object> analysis = new LinkedTreeMap<Object, Object>();
+		for(int slot = 0; slot < fields.length; slot++)
+		{
+			float value = descriptors.get(slot);
+			if (Float.isNaN(value))
+				continue;
+			Object parsed = isDictionaryEncoded(slot) ? decode(slot, value) : (Object) Double.valueOf(value);
+			if (parsed == null)
+				continue;
+
+			// walk down the path, making the maps that aren't there yet
+			Map<Object, Object> node = analysis;
+			String[] path = paths[slot];
+			for(int segment = 0; segment < path.length - 1; segment++)
+			{
+				Object child = node.get(path[segment]);
+				if (!(child instanceof Map))
+				{
+					child = new LinkedTreeMap<Object, Object>();
+					node.put(path[segment], child);
+				}
+				@SuppressWarnings("unchecked")
+				Map<Object, Object> next = (Map<Object, Object>) child;
+				node = next;
+			}
+			node.put(path[path.length - 1], parsed);
+		}
+		return analysis;
+	}
+
+	/**
+	 * Convert a single parsed descriptor value into the float that is stored for it.
+	 */
+	float toFloat(int slot, Object value)
+	{
+		if (value instanceof Number)
+			return ((Number) value).floatValue();
+		if (value instanceof String)
+			return encode(slot, (String) value);
+		if (value instanceof List && !((List<?>) value).isEmpty())
+			return toFloat(slot, ((List<?>) value).get(0)); // only the first value of a list descriptor is kept
+		return Float.NaN;
+	}
+
+	/**
+	 * Walk down the nested analysis map, one path segment at a time.
+	 */
+	private static Object lookup(Map<?, ?> analysis, String[] path)
+	{
+		Object node = analysis;
+		for(String segment : path)
+		{
+			if (!(node instanceof Map))
+				return null;
+			node = ((Map<?, ?>) node).get(segment);
+		}
+		return node;
+	}
+}
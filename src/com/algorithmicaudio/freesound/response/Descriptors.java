@@ -0,0 +1,142 @@
+package com.algorithmicaudio.freesound.response;
+
+/**
+ * The analysis descriptors of a sound, stored as plain floats. Reading a descriptor from here is
+ * an array lookup, so it is cheap enough to do thousands of times per second while choosing
+ * sounds. Get them from SoundResponse.descriptors.
+ * 
+ * A descriptor that FreeSound did not return is NaN. The key and scale are available as words
+ * with getKey and getScale, or as numbers with getKeyIndex and isMajor.
+ */
+public class Descriptors
+{
+	private final DescriptorLayout layout;
+	private final float[] values;
+
+	/**
+	 * @param	layout	Where each descriptor is stored.
+	 * @param	values	One value per slot in the layout.
+	 */
+	public Descriptors(DescriptorLayout layout, float[] values)
+	{
+		this.layout = layout;
+		this.values = values;
+	}
+
+	private float slot(int slot)
+	{
+		return slot < 0 ? Float.NaN : values[slot];
+	}
+
+	/**
+	 * @param	descriptor	The name of a descriptor, like rhythm.bpm.
+	 * @return				Its value, or NaN if it is missing. Keys and scales are returned as their dictionary codes.
+	 */
+	public float get(String descriptor)
+	{
+		return slot(layout.getSlot(descriptor));
+	}
+
+	/**
+	 * @param	slot	A slot number from the layout.
+	 * @return			The value in that slot.
+	 */
+	public float get(int slot)
+	{
+		return values[slot];
+	}
+
+	/**
+	 * @return	rhythm.bpm
+	 */
+	public float getBpm()
+	{
+		return slot(layout.bpmSlot);
+	}
+
+	/**
+	 * @return	lowlevel.average_loudness
+	 */
+	public float getLoudness()
+	{
+		return slot(layout.loudnessSlot);
+	}
+
+	/**
+	 * @return	lowlevel.pitch_salience
+	 */
+	public float getPitchSalience()
+	{
+		return slot(layout.pitchSalienceSlot);
+	}
+
+	/**
+	 * @return	tonal.key_strength
+	 */
+	public float getKeyStrength()
+	{
+		return slot(layout.keyStrengthSlot);
+	}
+
+	/**
+	 * @return	tonal.key_key, like "C" or "F#", or null if it is missing
+	 */
+	public String getKey()
+	{
+		return layout.decode(layout.keySlot, slot(layout.keySlot));
+	}
+
+	/**
+	 * @return	tonal.key_key as a number of semitones above C, or -1 if it is missing
+	 */
+	public int getKeyIndex()
+	{
+		float code = slot(layout.keySlot);
+		return Float.isNaN(code) ? -1 : (int) code;
+	}
+
+	/**
+	 * @return	tonal.key_scale, like "major" or "minor", or null if it is missing
+	 */
+	public String getScale()
+	{
+		return layout.decode(layout.scaleSlot, slot(layout.scaleSlot));
+	}
+
+	/**
+	 * @return	true if tonal.key_scale is major
+	 */
+	public boolean isMajor()
+	{
+		return slot(layout.scaleSlot) == 0;
+	}
+
+	/**
+	 * @return	the layout that describes these descriptors
+	 */
+	public DescriptorLayout getLayout()
+	{
+		return layout;
+	}
+
+	/**
+	 * @return	a copy of the raw values, one per slot
+	 */
+	public float[] toArray()
+	{
+		return values.clone();
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder text = new StringBuilder("Descriptors [");
+		for(int slot = 0; slot < values.length; slot++)
+		{
+			if (slot > 0) text.append(", ");
+			text.append(layout.getField(slot)).append("=");
+			text.append(layout.isDictionaryEncoded(slot) ? layout.decode(slot, values[slot]) : Float.toString(values[slot]));
+		}
+		return text.append("]").toString();
+	}
+}
@@ -0,0 +1,66 @@
+package com.algorithmicaudio.freesound.response;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads and writes a whole SearchResponse by hand, using a SoundResponseAdapter for each sound.
+ * Register it with your own Gson to parse search pages without reflection:
+ *
+ *	Gson gson = new GsonBuilder().registerTypeAdapter(SearchResponse.class, new SearchResponseAdapter(new SoundResponseAdapter(layout, false))).create();
+ *
+ * FreeSound itself goes through SearchResponseReader instead, so that each sound can be handed
+ * on as soon as it is parsed.
+ */
+public class SearchResponseAdapter extends TypeAdapter<SearchResponse>
+{
+	private final TypeAdapter<SoundResponse> soundAdapter;
+
+	/**
+	 * @param	soundAdapter	The parser used for each sound, like a SoundResponseAdapter.
+	 */
+	public SearchResponseAdapter(TypeAdapter<SoundResponse> soundAdapter)
+	{
+		this.soundAdapter = soundAdapter;
+	}
+
+	@Override
+	public SearchResponse read(JsonReader reader) throws IOException
+	{
+		if (reader.peek() == JsonToken.NULL)
+		{
+			reader.nextNull();
+			return null;
+		}
+		return SearchResponseReader.read(reader, soundAdapter, null);
+	}
+
+	@Override
+	public void write(JsonWriter writer, SearchResponse response) throws IOException
+	{
+		if (response == null)
+		{
+			writer.nullValue();
+			return;
+		}
+
+		writer.beginObject();
+		writer.name("count").value(response.count);
+		writer.name("num_pages").value(response.num_pages);
+		writer.name("next").value(response.next);
+		if (response.results != null)
+		{
+			writer.name("results").beginArray();
+			for(SoundResponse sound : response.results)
+			{
+				soundAdapter.write(writer, sound);
+			}
+			writer.endArray();
+		}
+		writer.endObject();
+	}
+}
@@ -0,0 +1,106 @@
+package com.algorithmicaudio.freesound.response;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Parses a SearchResponse one sound at a time, straight from the connection, instead of
+ * reading the whole response into a String first. Each sound can be handed to a callback as
+ * soon as it has been parsed, before the rest of the page has arrived.
+ */
+public class SearchResponseReader
+{
+	/**
+	 * Parse a search response.
+	 * 
+	 * @param	in		The JSON text of the response.
+	 * @param	gson	The parser used for each sound.
+	 * @param	onSound	Called with each sound as soon as it is parsed. May be null.
+	 * @return			The complete SearchResponse.
+	 * @throws IOException	if the JSON is malformed or the connection fails while reading
+	 */
+	public static SearchResponse read(Reader in, Gson gson, Consumer<SoundResponse> onSound) throws IOException
+	{
+		return read(in, gson.getAdapter(SoundResponse.class), onSound);
+	}
+
+	/**
+	 * Parse a search response with an adapter that was looked up once and is reused, which saves
+	 * asking Gson for it on every search.
+	 * 
+	 * @param	in				The JSON text of the response.
+	 * @param	soundAdapter	The parser used for each sound, like gson.getAdapter(SoundResponse.class).
+	 * @param	onSound			Called with each sound as soon as it is parsed. May be null.
+	 * @return					The complete SearchResponse.
+	 * @throws IOException	if the JSON is malformed or the connection fails while reading
+	 */
+	public static SearchResponse read(Reader in, TypeAdapter<SoundResponse> soundAdapter, Consumer<SoundResponse> onSound) throws IOException
+	{
+		return read(new JsonReader(in), soundAdapter, onSound);
+	}
+
+	/**
+	 * Parse a search response from a JsonReader that is positioned at its start. This is what
+	 * SearchResponseAdapter uses.
+	 * 
+	 * @param	reader			The JSON of the response.
+	 * @param	soundAdapter	The parser used for each sound, like a SoundResponseAdapter.
+	 * @param	onSound			Called with each sound as soon as it is parsed. May be null.
+	 * @return					The complete SearchResponse.
+	 * @throws IOException	if the JSON is malformed or the connection fails while reading
+	 */
+	public static SearchResponse read(JsonReader reader, TypeAdapter<SoundResponse> soundAdapter, Consumer<SoundResponse> onSound) throws IOException
+	{
+		SearchResponse response = new SearchResponse();
+		response.results = new ArrayList<SoundResponse>();
+
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			String name = reader.nextName();
+			if (reader.peek() == JsonToken.NULL)
+			{
+				reader.nextNull();
+				if (name.equals("next"))
+					response.next = null;
+				continue;
+			}
+
+			switch (name)
+			{
+				case "count":
+					response.count = reader.nextInt();
+					break;
+				case "num_pages":
+					response.num_pages = reader.nextInt();
+					break;
+				case "next":
+					response.next = reader.nextString();
+					break;
+				case "results":
+					reader.beginArray();
+					while (reader.hasNext())
+					{
+						SoundResponse sound = soundAdapter.read(reader);
+						response.results.add(sound);
+						if (onSound != null)
+							onSound.accept(sound);
+					}
+					reader.endArray();
+					break;
+				default:
+					// previous, and anything FreeSound adds in the future
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return response;
+	}
+}
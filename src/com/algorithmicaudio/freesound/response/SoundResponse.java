@@ -3,6 +3,7 @@ package com.algorithmicaudio.freesound.response;
 // This class encapsulates a Sound from a freesound search result.
 
 import java.util.List;
+import java.util.Map;
 
 import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
@@ -12,10 +13,13 @@ public class SoundResponse
 {	
 	public long id;
 	public String name;
+	public String type; // the file format, like wav, aiff, ogg, mp3, m4a or flac
 	public String license;
 	public String username;
 	public float duration;
-	public LinkedTreeMap<Object, Object> analysis; // TODO: Provide more ways to access this data. See https://stackoverflow.com/questions/35120548/gson-json-to-generic-object, but there has to be a better way, without making dozens of classes or using reflection.
+	public LinkedTreeMap<Object, Object> analysis; // the raw descriptors. FreeSound leaves this null unless Builder.keepAnalysis is turned on. Use getAnalysis for a map either way, or descriptors for fast typed access.
+	public transient Descriptors descriptors; // filled in by FreeSound while parsing, see SoundResponseAdapter. transient so that plain Gson leaves it alone.
+	private transient volatile Map<Object, Object> analysisView; // built from descriptors the first time getAnalysis is called
 	public List<String> tags; // this might need a subclass
 
 	public double distance; // this is only filled in similarity searches
@@ -26,6 +30,39 @@ public class SoundResponse
 		return "Sound [id=" + id + ", name=" + name + ", duration=" + duration + "]";
 	}
 
+	/**
+	 * The analysis descriptors as nested maps, the way FreeSound sends them. For example,
+	 * ((Map) getAnalysis().get("rhythm")).get("bpm") is the tempo as a Double.
+	 * 
+	 * If the raw map was kept (see FreeSound.Builder.keepAnalysis), that is what you get. Otherwise
+	 * the map is built from the descriptors the first time you ask for it, and kept after that. It
+	 * only holds the descriptors the client asked for, which is also all that FreeSound sends.
+	 * Sounds can be shared between threads by the memory cache, so don't modify the map.
+	 * 
+	 * @return	the analysis map, or null if no descriptors were requested
+	 */
+	public Map<Object, Object> getAnalysis()
+	{
+		if (analysis != null)
+			return analysis;
+		Map<Object, Object> view = analysisView;
+		if (view == null && descriptors != null)
+		{
+			// two threads may both build it, but they build the same map, so either one can be kept
+			view = descriptors.getLayout().toAnalysis(descriptors);
+			analysisView = view;
+		}
+		return view;
+	}
+
+	/**
+	 * @return	the typed analysis descriptors, or null if they were not requested
+	 */
+	public Descriptors getDescriptors()
+	{
+		return descriptors;
+	}
+
 	public float getDurationInMilliseconds()
 	{
 		return duration / 1000.0f;
@@ -0,0 +1,347 @@
+package com.algorithmicaudio.freesound.response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads and writes a SoundResponse by hand, instead of letting Gson work it out by reflection.
+ *
+ * Parsing many pages of results with plain Gson spends most of its time and memory on the
+ * analysis of each sound: every descriptor becomes a map entry holding a boxed Double, and then
+ * FreeSound copies the few it wants into Descriptors. This adapter reads the analysis straight
+ * into the float array of Descriptors, and skips every descriptor the layout doesn't ask for
+ * without building anything. Fields it doesn't know are skipped too.
+ *
+ * Types, tags, licenses and user names repeat from sound to sound, so they are shared through a
+ * StringInterner.
+ *
+ * The raw analysis map is only built if you ask for it, because building it is the expensive
+ * part. Without it, SoundResponse.analysis is null and only SoundResponse.descriptors is filled in.
+ * SoundResponse.getAnalysis can still build a map from the descriptors later, for one sound at a time.
+ *
+ * An adapter keeps no state between sounds, so one adapter can be shared by every thread. To use
+ * it with your own Gson, register it: new GsonBuilder().registerTypeAdapter(SoundResponse.class, adapter).
+ */
+public class SoundResponseAdapter extends TypeAdapter<SoundResponse>
+{
+	// enough for every tag, license and user name in a large harvest
+	private static final int INTERNED_STRINGS = 16384;
+
+	private final DescriptorLayout layout;
+	private final boolean keepAnalysis;
+	private final StringInterner interner;
+	private final PathNode descriptorPaths = new PathNode();
+
+	/**
+	 * One step of a descriptor path, like "rhythm" in rhythm.bpm. The analysis is walked along
+	 * these, and anything that isn't on a path is skipped.
+	 */
+	private static class PathNode
+	{
+		final Map<String, PathNode> children = new HashMap<String, PathNode>();
+		int slot = -1; // the slot of the descriptor that ends here, or -1
+	}
+
+	/**
+	 * @param	layout			Where each descriptor is stored. May be null, to leave SoundResponse.descriptors empty.
+	 * @param	keepAnalysis	Also build the raw analysis map, like Gson would. This costs most of what the adapter saves.
+	 */
+	public SoundResponseAdapter(DescriptorLayout layout, boolean keepAnalysis)
+	{
+		this(layout, keepAnalysis, new StringInterner(INTERNED_STRINGS));
+	}
+
+	/**
+	 * @param	layout			Where each descriptor is stored. May be null, to leave SoundResponse.descriptors empty.
+	 * @param	keepAnalysis	Also build the raw analysis map, like Gson would. This costs most of what the adapter saves.
+	 * @param	interner		Shares repeated strings. Give several adapters the same one to share between them.
+	 */
+	public SoundResponseAdapter(DescriptorLayout layout, boolean keepAnalysis, StringInterner interner)
+	{
+		this.layout = layout;
+		this.keepAnalysis = keepAnalysis;
+		this.interner = interner;
+
+		if (layout != null)
+		{
+			for(int slot = 0; slot < layout.size(); slot++)
+			{
+				PathNode node = descriptorPaths;
+				for(String segment : layout.getField(slot).split("\\."))
+				{
+					node = node.children.computeIfAbsent(segment, name -> new PathNode());
+				}
+				node.slot = slot;
+			}
+		}
+	}
+
+	@Override
+	public SoundResponse read(JsonReader reader) throws IOException
+	{
+		if (reader.peek() == JsonToken.NULL)
+		{
+			reader.nextNull();
+			return null;
+		}
+
+		SoundResponse sound = new SoundResponse();
+		float[] values = null;
+		if (layout != null)
+		{
+			values = new float[layout.size()];
+			Arrays.fill(values, Float.NaN);
+		}
+
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			String name = reader.nextName();
+			if (reader.peek() == JsonToken.NULL)
+			{
+				reader.nextNull();
+				continue;
+			}
+
+			switch (name)
+			{
+				case "id":
+					sound.id = reader.nextLong();
+					break;
+				case "name":
+					sound.name = reader.nextString();
+					break;
+				case "type":
+					sound.type = interner.intern(reader.nextString());
+					break;
+				case "license":
+					sound.license = interner.intern(reader.nextString());
+					break;
+				case "username":
+					sound.username = interner.intern(reader.nextString());
+					break;
+				case "duration":
+					sound.duration = (float) reader.nextDouble();
+					break;
+				case "distance":
+					sound.distance = reader.nextDouble();
+					break;
+				case "tags":
+					sound.tags = readTags(reader);
+					break;
+				case "analysis":
+					if (keepAnalysis)
+					{
+						sound.analysis = readMap(reader);
+						if (values != null)
+							sound.descriptors = layout.fromAnalysis(sound.analysis);
+					}
+					else if (values != null)
+						readDescriptors(reader, descriptorPaths, values);
+					else
+						reader.skipValue();
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (values != null && sound.descriptors == null)
+			sound.descriptors = new Descriptors(layout, values);
+		return sound;
+	}
+
+	private List<String> readTags(JsonReader reader) throws IOException
+	{
+		List<String> tags = new ArrayList<String>();
+		reader.beginArray();
+		while (reader.hasNext())
+		{
+			if (reader.peek() == JsonToken.STRING)
+				tags.add(interner.intern(reader.nextString()));
+			else
+				reader.skipValue();
+		}
+		reader.endArray();
+		return tags;
+	}
+
+	/**
+	 * Walk one object of the analysis, storing the descriptors the layout asks for.
+	 */
+	private void readDescriptors(JsonReader reader, PathNode node, float[] values) throws IOException
+	{
+		if (reader.peek() != JsonToken.BEGIN_OBJECT)
+		{
+			reader.skipValue();
+			return;
+		}
+
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			PathNode child = node.children.get(reader.nextName());
+			if (child == null)
+				reader.skipValue();
+			else if (reader.peek() == JsonToken.BEGIN_OBJECT)
+				readDescriptors(reader, child, values);
+			else if (child.slot >= 0)
+				values[child.slot] = readValue(reader, child.slot);
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+	}
+
+	/**
+	 * Read one descriptor value the same way DescriptorLayout.toFloat converts it.
+	 */
+	private float readValue(JsonReader reader, int slot) throws IOException
+	{
+		switch (reader.peek())
+		{
+			case NUMBER:
+				return (float) reader.nextDouble();
+			case STRING:
+				return layout.encode(slot, reader.nextString());
+			case BEGIN_ARRAY:
+				// only the first value of a list descriptor is kept
+				float value = Float.NaN;
+				reader.beginArray();
+				if (reader.hasNext())
+					value = readValue(reader, slot);
+				while (reader.hasNext())
+				{
+					reader.skipValue();
+				}
+				reader.endArray();
+				return value;
+			default:
+				reader.skipValue();
+				return Float.NaN;
+		}
+	}
+
+	/**
+	 * Read an object into the same kind of map that Gson builds for an untyped field.
+	 */
+	private LinkedTreeMap<Object, Object> readMap(JsonReader reader) throws IOException
+	{
+		LinkedTreeMap<Object, Object> map = new LinkedTreeMap<Object, Object>();
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			String name = reader.nextName();
+			map.put(name, readAny(reader));
+		}
+		reader.endObject();
+		return map;
+	}
+
+	private Object readAny(JsonReader reader) throws IOException
+	{
+		switch (reader.peek())
+		{
+			case BEGIN_OBJECT:
+				return readMap(reader);
+			case BEGIN_ARRAY:
+				List<Object> list = new ArrayList<Object>();
+				reader.beginArray();
+				while (reader.hasNext())
+				{
+					list.add(readAny(reader));
+				}
+				reader.endArray();
+				return list;
+			case STRING:
+				return interner.intern(reader.nextString());
+			case NUMBER:
+				return reader.nextDouble();
+			case BOOLEAN:
+				return reader.nextBoolean();
+			default:
+				reader.nextNull();
+				return null;
+		}
+	}
+
+	@Override
+	public void write(JsonWriter writer, SoundResponse sound) throws IOException
+	{
+		if (sound == null)
+		{
+			writer.nullValue();
+			return;
+		}
+
+		writer.beginObject();
+		writer.name("id").value(sound.id);
+		if (sound.name != null)
+			writer.name("name").value(sound.name);
+		if (sound.type != null)
+			writer.name("type").value(sound.type);
+		if (sound.license != null)
+			writer.name("license").value(sound.license);
+		if (sound.username != null)
+			writer.name("username").value(sound.username);
+		writer.name("duration").value(sound.duration);
+		if (sound.analysis != null)
+		{
+			writer.name("analysis");
+			writeAny(writer, sound.analysis);
+		}
+		if (sound.tags != null)
+		{
+			writer.name("tags").beginArray();
+			for(String tag : sound.tags)
+			{
+				writer.value(tag);
+			}
+			writer.endArray();
+		}
+		writer.name("distance").value(sound.distance);
+		writer.endObject();
+	}
+
+	private static void writeAny(JsonWriter writer, Object value) throws IOException
+	{
+		if (value instanceof Map)
+		{
+			writer.beginObject();
+			for(Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+			{
+				writer.name(String.valueOf(entry.getKey()));
+				writeAny(writer, entry.getValue());
+			}
+			writer.endObject();
+		}
+		else if (value instanceof List)
+		{
+			writer.beginArray();
+			for(Object item : (List<?>) value)
+			{
+				writeAny(writer, item);
+			}
+			writer.endArray();
+		}
+		else if (value instanceof Number)
+			writer.value((Number) value);
+		else if (value instanceof Boolean)
+			writer.value((Boolean) value);
+		else if (value == null)
+			writer.nullValue();
+		else
+			writer.value(value.toString());
+	}
+}
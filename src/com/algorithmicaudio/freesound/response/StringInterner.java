@@ -0,0 +1,53 @@
+package com.algorithmicaudio.freesound.response;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares one copy of strings that repeat from sound to sound, like tags, licenses and user names.
+ * A page of 150 sounds might mention the tag "field-recording" 40 times, and without this each
+ * one would be a separate String that a cached response keeps alive.
+ *
+ * Unlike String.intern, the pool belongs to whoever made it, and it stops growing at a fixed
+ * size, so strange input can't fill it up. Strings that arrive after that are returned as they
+ * are. It is safe to use from many threads at once.
+ */
+public class StringInterner
+{
+	private final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<String, String>();
+	private final int maximumSize;
+
+	/**
+	 * @param	maximumSize		The most strings the pool will hold.
+	 */
+	public StringInterner(int maximumSize)
+	{
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * @param	value	A string, or null.
+	 * @return			The pooled copy of the string, or the string itself if it isn't pooled.
+	 */
+	public String intern(String value)
+	{
+		if (value == null)
+			return null;
+
+		String pooled = pool.get(value);
+		if (pooled != null)
+			return pooled;
+		if (pool.size() >= maximumSize)
+			return value;
+
+		pooled = pool.putIfAbsent(value, value);
+		return pooled == null ? value : pooled;
+	}
+
+	/**
+	 * @return	how many strings are in the pool
+	 */
+	public int size()
+	{
+		return pool.size();
+	}
+}
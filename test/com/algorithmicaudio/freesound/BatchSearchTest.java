@@ -0,0 +1,168 @@
+package com.algorithmicaudio.freesound;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SoundResponse;
+
+/*
+ * Checks that a BatchSearch never sends more searches at once than it was asked to, starting the
+ * next one as each finishes, that a query given twice runs once, that a failed search is kept in
+ * getErrors without stopping the others, and that cancelling stops the searches that are running
+ * and the ones that haven't started.
+ *
+ * The searches are futures that the test completes itself, so it decides exactly when each search
+ * finishes and no server is needed.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class BatchSearchTest
+{
+	/**
+	 * Starts searches that only finish when the test says so.
+	 */
+	private static class ManualRunner implements BatchSearch.QueryRunner
+	{
+		final Map<SearchQuery, CompletableFuture<SearchResponse>> started = new LinkedHashMap<SearchQuery, CompletableFuture<SearchResponse>>();
+
+		@Override
+		public synchronized CompletableFuture<SearchResponse> start(SearchQuery query)
+		{
+			check(!started.containsKey(query), query + " should only be started once.");
+			CompletableFuture<SearchResponse> search = new CompletableFuture<SearchResponse>();
+			started.put(query, search);
+			return search;
+		}
+
+		synchronized int running()
+		{
+			int running = 0;
+			for(CompletableFuture<SearchResponse> search : started.values())
+			{
+				if (!search.isDone())
+					running++;
+			}
+			return running;
+		}
+
+		synchronized CompletableFuture<SearchResponse> search(SearchQuery query)
+		{
+			return started.get(query);
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		concurrencyIsBounded();
+		failuresAreKept();
+		cancelStopsEverySearch();
+		emptyBatchIsDone();
+		System.out.println("BatchSearchTest passed.");
+	}
+
+	private static void concurrencyIsBounded()
+	{
+		List<SearchQuery> queries = new ArrayList<SearchQuery>();
+		for(int i = 0; i < 10; i++)
+		{
+			queries.add(SearchQuery.tag("tag" + i));
+		}
+		queries.add(SearchQuery.tag("tag3"));
+
+		ManualRunner runner = new ManualRunner();
+		BatchSearch batch = new BatchSearch(queries, 3, runner);
+		check(batch.getTotalCount() == 10, "The repeated query should only count once, but the batch has " + batch.getTotalCount() + " queries.");
+		check(runner.started.size() == 3, "3 searches should start at once, but " + runner.started.size() + " did.");
+
+		// finish the searches out of order, and check that each one that finishes makes room for exactly one more
+		int[] finishOrder = { 1, 0, 2, 4, 3, 5, 7, 6, 9, 8 };
+		for(int i : finishOrder)
+		{
+			SearchQuery query = SearchQuery.tag("tag" + i);
+			check(runner.search(query) != null, query + " should have started by now.");
+			runner.search(query).complete(response(i));
+			check(runner.running() <= 3, "At most 3 searches should run at once, but " + runner.running() + " are.");
+		}
+
+		check(batch.isDone() && batch.getCompletedCount() == 10, "The batch should be done.");
+		List<SearchQuery> order = new ArrayList<SearchQuery>(batch.await().keySet());
+		check(order.equals(batch.getQueries()), "The results should be in the order the queries were given.");
+		check(batch.getResults().get(SearchQuery.tag("tag4")).count == 4, "Each query should get its own response.");
+		check(batch.getErrors().isEmpty(), "Nothing should have failed.");
+	}
+
+	private static void failuresAreKept()
+	{
+		List<SearchQuery> queries = List.of(SearchQuery.tag("works"), SearchQuery.tag("fails"), SearchQuery.tag("empty"), SearchQuery.tag("throws"), SearchQuery.tag("after"));
+		BatchSearch batch = new BatchSearch(queries, 2, query -> {
+			if (query.equals(SearchQuery.tag("throws")))
+				throw new IllegalStateException("could not start");
+			CompletableFuture<SearchResponse> search = new CompletableFuture<SearchResponse>();
+			if (query.equals(SearchQuery.tag("fails")))
+				search.completeExceptionally(new IOException("no connection"));
+			else if (query.equals(SearchQuery.tag("empty")))
+				search.complete(null);
+			else
+				search.complete(response(1));
+			return search;
+		});
+
+		Map<SearchQuery, SearchResponse> results = batch.await();
+		check(results.keySet().equals(Set.of(SearchQuery.tag("works"), SearchQuery.tag("after"))), "Only the searches that worked should have results, not " + results.keySet());
+
+		Map<SearchQuery, Throwable> errors = batch.getErrors();
+		check(errors.get(SearchQuery.tag("fails")) instanceof IOException, "A failed search should keep its own error, not " + errors.get(SearchQuery.tag("fails")));
+		check(errors.get(SearchQuery.tag("empty")) instanceof IllegalStateException, "A search with no response should be an error.");
+		check(errors.get(SearchQuery.tag("throws")) instanceof IllegalStateException, "A search that can't start should be an error.");
+		check(batch.getCompletedCount() == 5, "Every search should count as finished.");
+	}
+
+	private static void cancelStopsEverySearch()
+	{
+		List<SearchQuery> queries = new ArrayList<SearchQuery>();
+		for(int i = 0; i < 6; i++)
+		{
+			queries.add(SearchQuery.tag("tag" + i));
+		}
+		ManualRunner runner = new ManualRunner();
+		BatchSearch batch = new BatchSearch(queries, 2, runner);
+		runner.search(SearchQuery.tag("tag0")).complete(response(0));
+
+		batch.cancel();
+		check(batch.isDone(), "A cancelled batch should be done.");
+		check(runner.search(SearchQuery.tag("tag1")).isCancelled() && runner.search(SearchQuery.tag("tag2")).isCancelled(), "The searches that were running should be cancelled.");
+		check(runner.started.size() == 3, "No searches should start after cancel, but " + runner.started.size() + " were started in all.");
+		check(batch.getResults().size() == 1, "The search that finished before cancel should keep its result.");
+		check(batch.getErrors().size() == 5 && batch.getErrors().get(SearchQuery.tag("tag5")) instanceof CancellationException, "Every other search should be cancelled.");
+	}
+
+	private static void emptyBatchIsDone()
+	{
+		BatchSearch batch = new BatchSearch(List.of(), 4, query -> {
+			throw new AssertionError("There is nothing to start.");
+		});
+		check(batch.isDone() && batch.await().isEmpty(), "An empty batch should be done at once.");
+	}
+
+	private static SearchResponse response(int count)
+	{
+		SearchResponse response = new SearchResponse();
+		response.count = count;
+		response.results = new ArrayList<SoundResponse>();
+		return response;
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
@@ -0,0 +1,107 @@
+package com.algorithmicaudio.freesound;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.algorithmicaudio.freesound.io.DaemonThreadFactory;
+import com.algorithmicaudio.freesound.io.Local;
+
+/*
+ * Checks that a BulkDownload never runs more downloads at once than it was asked to, even on an
+ * executor with plenty of threads, that every sound gets its own result in request order, and
+ * that downloaded files are named after their format.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class BulkDownloadTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		concurrencyIsBounded();
+		failuresAreReported();
+		filenamesUseTheFormat();
+		System.out.println("BulkDownloadTest passed.");
+	}
+
+	private static void concurrencyIsBounded()
+	{
+		ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("test"));
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger mostRunning = new AtomicInteger();
+
+		List<Long> soundIds = new ArrayList<Long>();
+		for(long soundId = 1; soundId <= 40; soundId++)
+		{
+			soundIds.add(soundId);
+		}
+
+		BulkDownload download = new BulkDownload(soundIds, 3, soundId -> {
+			int now = running.incrementAndGet();
+			mostRunning.accumulateAndGet(now, Math::max);
+			Thread.sleep(5);
+			running.decrementAndGet();
+			return "sound-" + soundId;
+		}, null, executor);
+
+		List<String> filenames = download.await();
+		check(filenames.size() == 40, "Every sound should have been downloaded.");
+		for(int i = 0; i < 40; i++)
+		{
+			check(filenames.get(i).equals("sound-" + (i + 1)), "The results should be in request order.");
+		}
+		check(mostRunning.get() <= 3, "At most 3 downloads should run at once, but " + mostRunning.get() + " did.");
+		check(download.isDone() && download.getCompletedCount() == 40, "The download should be done.");
+		executor.shutdown();
+	}
+
+	private static void failuresAreReported()
+	{
+		List<Long> failed = new ArrayList<Long>();
+		List<Long> soundIds = List.of(1L, 2L, 3L);
+		BulkDownload download = new BulkDownload(soundIds, 2, soundId -> {
+			if (soundId == 2)
+				throw new IOException("no such sound");
+			return "sound-" + soundId;
+		}, new DownloadListener()
+		{
+			@Override
+			public void onDownloadComplete(long soundId, String filename, int completed, int total)
+			{
+			}
+
+			@Override
+			public void onDownloadFailed(long soundId, Exception error, int completed, int total)
+			{
+				synchronized (failed)
+				{
+					failed.add(soundId);
+				}
+			}
+		}, Runnable::run);
+
+		check(download.await().equals(List.of("sound-1", "sound-3")), "Only the sounds that worked should be returned.");
+		check(download.getFutures().get(1).isCompletedExceptionally(), "The failed sound's future should hold the failure.");
+		check(failed.equals(List.of(2L)), "The listener should be told about the failure.");
+	}
+
+	private static void filenamesUseTheFormat()
+	{
+		String directory = "sounds";
+		check(BulkDownload.getSoundFilename(directory, 12, "flac").equals(new File(directory, "12.flac").getPath()), "A flac sound should be saved as .flac.");
+		check(BulkDownload.getSoundFilename(directory, 12, "MP3").equals(new File(directory, "12.mp3").getPath()), "Extensions should be lower case.");
+		check(BulkDownload.getSoundFilename(directory, 12, null).equals(new File(directory, "12").getPath()), "A sound of unknown format should have no extension.");
+		check(Local.getExtension("../wav").isEmpty(), "A format that isn't a plain word should be ignored.");
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
@@ -0,0 +1,106 @@
+package com.algorithmicaudio.freesound;
+
+import java.nio.charset.StandardCharsets;
+
+import com.algorithmicaudio.freesound.benchmark.StubServer;
+import com.algorithmicaudio.freesound.metrics.EndpointSnapshot;
+import com.algorithmicaudio.freesound.metrics.Metrics;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+
+/*
+ * Checks that when a LatencyPolicy sends a second search because the first one is slow, the
+ * second answer wins, and the slow request is really aborted instead of being left to finish in
+ * the background: once while it waits for the server to answer, and once while the server is
+ * still sending the body.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class HedgedSearchTest
+{
+	private static final byte[] RESPONSE = "{\"count\": 1, \"results\": [{\"id\": 1, \"name\": \"glass\"}]}".getBytes(StandardCharsets.UTF_8);
+	private static final long SLOW_MILLIS = 5000;
+
+	public static void main(String[] args) throws Exception
+	{
+		loserIsAbortedBeforeItsAnswer();
+		loserIsAbortedDuringItsBody();
+		System.out.println("HedgedSearchTest passed.");
+	}
+
+	private static void loserIsAbortedBeforeItsAnswer() throws Exception
+	{
+		StubServer server = new StubServer(RESPONSE);
+		try
+		{
+			Metrics.reset();
+			server.delayNext(SLOW_MILLIS);
+			long start = System.currentTimeMillis();
+			search(server);
+
+			// the slow request gives up well before the server would have answered it
+			EndpointSnapshot search = Metrics.snapshot().getEndpoint(Metrics.SEARCH_TEXT);
+			while (search.getFailureCount() == 0 && System.currentTimeMillis() < start + SLOW_MILLIS / 2)
+			{
+				Thread.sleep(10);
+				search = Metrics.snapshot().getEndpoint(Metrics.SEARCH_TEXT);
+			}
+			check(search.getFailureCount() == 1, "The slow request should have been aborted, but it was still waiting after " + (System.currentTimeMillis() - start) + " ms.");
+			check(search.getRequestCount() == 2, "Both requests should be counted.");
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+
+	private static void loserIsAbortedDuringItsBody() throws Exception
+	{
+		StubServer server = new StubServer(RESPONSE);
+		try
+		{
+			server.trickleNext(SLOW_MILLIS);
+			long start = System.currentTimeMillis();
+			search(server);
+
+			// the server finds the connection closed well before it has sent the whole body
+			while (server.getAbortedCount() == 0 && System.currentTimeMillis() < start + SLOW_MILLIS / 2)
+			{
+				Thread.sleep(10);
+			}
+			check(server.getAbortedCount() == 1, "The connection of the slow request should have been closed, but the server was still sending after " + (System.currentTimeMillis() - start) + " ms.");
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+
+	/**
+	 * Run a search whose first request is slow, and check that the second one answers it.
+	 */
+	private static void search(StubServer server) throws Exception
+	{
+		// with no history, the second request is sent after half the deadline, 500 ms. The stub server has no rate limit.
+		FreeSound client = new FreeSound.Builder("test").userAccessToken("test").apiUrl(server.url("/apiv2/")).rateLimiter(null).latencyPolicy(new LatencyPolicy(1000, 0.9, 50)).build();
+		try
+		{
+			long start = System.currentTimeMillis();
+			SearchResponse response = client.search("glass");
+			long tookMillis = System.currentTimeMillis() - start;
+			check(response != null && response.count == 1, "The second request should have answered the search.");
+			check(tookMillis < SLOW_MILLIS / 2, "The search should not wait for the slow request, but it took " + tookMillis + " ms.");
+			check(server.getRequestCount() == 2, "A second request should have been sent, but the server saw " + server.getRequestCount() + ".");
+		}
+		finally
+		{
+			client.close();
+		}
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
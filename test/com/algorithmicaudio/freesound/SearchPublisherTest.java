@@ -0,0 +1,292 @@
+package com.algorithmicaudio.freesound;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import com.algorithmicaudio.freesound.io.DaemonThreadFactory;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SoundResponse;
+
+/*
+ * Checks that a SearchPublisher never delivers more sounds than its subscriber asked for, that it
+ * only fetches the next page once the sounds before it have been delivered and more are wanted,
+ * that cancelling stops the deliveries and interrupts a page that is being fetched, that a failed
+ * page ends the stream with onError after the sounds that arrived, and that a request for no
+ * sounds at all is an error.
+ *
+ * The pages come from a fake PageFetcher, so no server is needed. A search here has 3 pages of 10
+ * sounds, numbered 0 to 29.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class SearchPublisherTest
+{
+	/**
+	 * Remembers everything a publisher tells it, and checks that it is never given more sounds
+	 * than it asked for, or two sounds at once.
+	 */
+	private static class RecordingSubscriber implements Flow.Subscriber<SoundResponse>
+	{
+		final List<Long> received = new ArrayList<Long>();
+		final CountDownLatch finished = new CountDownLatch(1);
+		final AtomicBoolean overlapped = new AtomicBoolean(false);
+		final AtomicBoolean delivering = new AtomicBoolean(false);
+		volatile Flow.Subscription subscription;
+		volatile Throwable error = null;
+		volatile boolean completed = false;
+		private long requested = 0; // guarded by this
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription)
+		{
+			this.subscription = subscription;
+		}
+
+		void request(long n)
+		{
+			synchronized (this)
+			{
+				requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+			}
+			subscription.request(n);
+		}
+
+		@Override
+		public void onNext(SoundResponse sound)
+		{
+			if (delivering.getAndSet(true))
+				overlapped.set(true);
+			synchronized (this)
+			{
+				received.add(sound.id);
+				check(received.size() <= requested, "The publisher delivered sound " + received.size() + ", but only " + requested + " were requested.");
+			}
+			delivering.set(false);
+		}
+
+		@Override
+		public void onError(Throwable throwable)
+		{
+			error = throwable;
+			finished.countDown();
+		}
+
+		@Override
+		public void onComplete()
+		{
+			completed = true;
+			finished.countDown();
+		}
+
+		synchronized int count()
+		{
+			return received.size();
+		}
+	}
+
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("test"));
+
+	public static void main(String[] args) throws Exception
+	{
+		deliveriesFollowDemand();
+		firstResultsNeedNoFetch();
+		cancelStopsDeliveries();
+		cancelInterruptsTheFetch();
+		failedPageEndsTheStream();
+		requestingNothingIsAnError();
+		System.out.println("SearchPublisherTest passed.");
+	}
+
+	private static void deliveriesFollowDemand() throws Exception
+	{
+		AtomicInteger fetches = new AtomicInteger();
+		SearchPublisher publisher = new SearchPublisher(EXECUTOR, pages(fetches), "page-1", null);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		check(fetches.get() == 0, "Nothing should be fetched before the subscriber asks for a sound.");
+
+		subscriber.request(5);
+		waitFor(() -> subscriber.count() == 5, "5 sounds should have been delivered.");
+		Thread.sleep(100);
+		check(subscriber.count() == 5, "No more than 5 sounds should be delivered, but " + subscriber.count() + " were.");
+
+		// the other 5 sounds of the first page are already there, so this doesn't need a fetch
+		subscriber.request(5);
+		waitFor(() -> subscriber.count() == 10, "10 sounds should have been delivered.");
+		Thread.sleep(100);
+		check(fetches.get() == 1, "The second page should wait until a sound from it is wanted, but " + fetches.get() + " pages were fetched.");
+
+		subscriber.request(1);
+		waitFor(() -> subscriber.count() == 11, "The first sound of the second page should have been delivered.");
+		check(fetches.get() == 2, "Asking for one more sound should fetch one more page.");
+
+		subscriber.request(Long.MAX_VALUE);
+		check(subscriber.finished.await(5, TimeUnit.SECONDS) && subscriber.completed, "The stream should complete after the last page.");
+		check(fetches.get() == 3, "Each page should be fetched once, but there were " + fetches.get() + " fetches.");
+		for(int i = 0; i < 30; i++)
+		{
+			check(subscriber.received.get(i) == i, "The sounds should arrive in order, but sound " + i + " was " + subscriber.received.get(i));
+		}
+		check(!subscriber.overlapped.get(), "The subscriber should never be given two sounds at once.");
+	}
+
+	private static void firstResultsNeedNoFetch() throws Exception
+	{
+		AtomicInteger fetches = new AtomicInteger();
+		List<SoundResponse> firstResults = new ArrayList<SoundResponse>();
+		for(long id = 0; id < 10; id++)
+		{
+			firstResults.add(sound(id));
+		}
+
+		SearchPublisher publisher = new SearchPublisher(EXECUTOR, pages(fetches), "page-2", firstResults);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		subscriber.request(10);
+		waitFor(() -> subscriber.count() == 10, "The sounds of the page the publisher was given should be delivered.");
+		check(fetches.get() == 0, "The page the publisher was given should not be fetched again.");
+
+		subscriber.request(Long.MAX_VALUE);
+		check(subscriber.finished.await(5, TimeUnit.SECONDS) && subscriber.completed && subscriber.count() == 30, "The rest of the pages should follow.");
+	}
+
+	private static void cancelStopsDeliveries() throws Exception
+	{
+		AtomicInteger fetches = new AtomicInteger();
+		SearchPublisher publisher = new SearchPublisher(EXECUTOR, pages(fetches), "page-1", null);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		subscriber.request(3);
+		waitFor(() -> subscriber.count() == 3, "3 sounds should have been delivered.");
+
+		subscriber.subscription.cancel();
+		subscriber.request(100);
+		Thread.sleep(100);
+		check(subscriber.count() == 3, "No sounds should be delivered after cancel, but " + (subscriber.count() - 3) + " were.");
+		check(fetches.get() == 1, "No pages should be fetched after cancel.");
+		check(subscriber.finished.getCount() == 1, "A cancelled stream should not complete or fail.");
+	}
+
+	private static void cancelInterruptsTheFetch() throws Exception
+	{
+		CountDownLatch started = new CountDownLatch(1);
+		AtomicBoolean interrupted = new AtomicBoolean(false);
+		AtomicInteger fetches = new AtomicInteger();
+		SearchPublisher.PageFetcher pages = pages(fetches);
+
+		// the second page takes a long time, unless the fetch is interrupted
+		SearchPublisher publisher = new SearchPublisher(EXECUTOR, (url, onSound, priority) -> {
+			if (url.equals("page-2"))
+			{
+				started.countDown();
+				try
+				{
+					Thread.sleep(10000);
+				}
+				catch(InterruptedException e)
+				{
+					interrupted.set(true);
+					throw e;
+				}
+			}
+			return pages.fetch(url, onSound, priority);
+		}, "page-1", null);
+
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		subscriber.request(Long.MAX_VALUE);
+		check(started.await(5, TimeUnit.SECONDS), "The second page should have been requested.");
+
+		subscriber.subscription.cancel();
+		waitFor(interrupted::get, "Cancelling should interrupt the page that is being fetched.");
+		Thread.sleep(100);
+		check(subscriber.count() == 10, "Only the first page should have been delivered, but " + subscriber.count() + " sounds were.");
+		check(subscriber.finished.getCount() == 1, "A cancelled stream should not complete or fail, but it got " + (subscriber.completed ? "onComplete" : "onError " + subscriber.error));
+	}
+
+	private static void failedPageEndsTheStream() throws Exception
+	{
+		AtomicInteger fetches = new AtomicInteger();
+		SearchPublisher.PageFetcher pages = pages(fetches);
+		SearchPublisher publisher = new SearchPublisher(EXECUTOR, (url, onSound, priority) -> {
+			if (url.equals("page-2"))
+				throw new IOException("page 2 is gone");
+			return pages.fetch(url, onSound, priority);
+		}, "page-1", null);
+
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		subscriber.request(Long.MAX_VALUE);
+		check(subscriber.finished.await(5, TimeUnit.SECONDS), "The stream should end when a page fails.");
+		check(subscriber.error instanceof IOException && subscriber.error.getMessage().equals("page 2 is gone"), "The subscriber should get the page's own error, not " + subscriber.error);
+		check(subscriber.count() == 10, "The sounds before the failure should be delivered first, but " + subscriber.count() + " were.");
+	}
+
+	private static void requestingNothingIsAnError() throws Exception
+	{
+		AtomicInteger fetches = new AtomicInteger();
+		SearchPublisher publisher = new SearchPublisher(EXECUTOR, pages(fetches), "page-1", null);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		subscriber.subscription.request(0);
+		check(subscriber.finished.await(5, TimeUnit.SECONDS) && subscriber.error instanceof IllegalArgumentException, "Requesting 0 sounds should be an IllegalArgumentException, not " + subscriber.error);
+		check(fetches.get() == 0, "Nothing should be fetched for a bad request.");
+	}
+
+	/**
+	 * A fetcher for a search with 3 pages of 10 sounds, named page-1 to page-3.
+	 */
+	private static SearchPublisher.PageFetcher pages(AtomicInteger fetches)
+	{
+		return (url, onSound, priority) -> {
+			fetches.incrementAndGet();
+			int page = Integer.parseInt(url.substring("page-".length()));
+			SearchResponse response = new SearchResponse();
+			response.count = 30;
+			response.num_pages = 3;
+			response.next = page < 3 ? "page-" + (page + 1) : null;
+			response.results = new ArrayList<SoundResponse>();
+			for(long id = (page - 1) * 10; id < page * 10; id++)
+			{
+				SoundResponse sound = sound(id);
+				response.results.add(sound);
+				onSound.accept(sound);
+			}
+			return response;
+		};
+	}
+
+	private static SoundResponse sound(long id)
+	{
+		SoundResponse sound = new SoundResponse();
+		sound.id = id;
+		sound.name = "sound " + id;
+		return sound;
+	}
+
+	private static void waitFor(BooleanSupplier condition, String message) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+		check(condition.getAsBoolean(), message);
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
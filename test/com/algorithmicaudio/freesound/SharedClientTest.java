@@ -0,0 +1,207 @@
+package com.algorithmicaudio.freesound;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import com.algorithmicaudio.freesound.benchmark.StubServer;
+import com.algorithmicaudio.freesound.cache.MemoryCache;
+import com.algorithmicaudio.freesound.metrics.EndpointSnapshot;
+import com.algorithmicaudio.freesound.metrics.Metrics;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SoundResponse;
+
+/*
+ * Checks that one FreeSound client can be shared by many threads. Every thread searches and
+ * downloads at the same time as the others, against a stub server that answers each query with a
+ * sound of its own, and checks that it got the answer to its own request. The queries overlap
+ * between threads, so identical searches that are in flight at once and the memory cache are
+ * both used.
+ *
+ * It also checks that each client reports its memory cache in Metrics under a name of its own,
+ * and stops reporting it when the client is closed.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class SharedClientTest
+{
+	private static final int THREADS = 16;
+	private static final int REQUESTS_PER_THREAD = 60;
+	private static final int DIFFERENT_SOUNDS = 40;
+
+	public static void main(String[] args) throws Exception
+	{
+		manyThreadsShareOneClient();
+		eachClientWatchesItsOwnCache();
+		System.out.println("SharedClientTest passed.");
+	}
+
+	private static void manyThreadsShareOneClient() throws Exception
+	{
+		StubServer server = new StubServer(SharedClientTest::respond);
+		File directory = Files.createTempDirectory("shared").toFile();
+		Metrics.reset();
+
+		// the stub server has no rate limit. The memory cache is small, so sounds are evicted and fetched again.
+		FreeSound client = new FreeSound.Builder("test").userAccessToken("test").apiUrl(server.url("/apiv2/")).rateLimiter(null).memoryCache(new MemoryCache<SearchResponse>(10, 1000000)).build();
+		ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<Thread>();
+		try
+		{
+			for(int t = 0; t < THREADS; t++)
+			{
+				int threadNumber = t;
+				Thread thread = new Thread(() -> {
+					try
+					{
+						start.await();
+						for(int i = 0; i < REQUESTS_PER_THREAD; i++)
+						{
+							long soundId = 1 + (threadNumber * 7 + i) % DIFFERENT_SOUNDS;
+							if (i % 10 == 9)
+								checkDownload(client, directory, soundId, threadNumber + "-" + i);
+							else
+								checkSearch(client, soundId);
+						}
+					}
+					catch(Throwable e)
+					{
+						errors.add(e);
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			start.countDown();
+			for(Thread thread : threads)
+			{
+				thread.join(60000);
+				check(!thread.isAlive(), "A thread is still running after a minute.");
+			}
+		}
+		finally
+		{
+			client.close();
+			server.stop();
+			delete(directory);
+		}
+
+		if (!errors.isEmpty())
+		{
+			AssertionError failure = new AssertionError(errors.size() + " threads failed. The first failure is attached.");
+			failure.initCause(errors.peek());
+			throw failure;
+		}
+		for(EndpointSnapshot endpoint : Metrics.snapshot().getEndpoints().values())
+		{
+			check(endpoint.getFailureCount() == 0, "No request should fail, but " + endpoint.getFailureCount() + " " + endpoint.getName() + " requests did.");
+		}
+	}
+
+	private static void checkSearch(FreeSound client, long soundId)
+	{
+		SearchResponse response = client.search("sound" + soundId);
+		check(response != null, "The search for sound" + soundId + " failed.");
+		check(response.count == 1 && response.results.size() == 1, "The search for sound" + soundId + " should find one sound.");
+		SoundResponse sound = response.results.get(0);
+		check(sound.id == soundId && sound.name.equals("sound" + soundId), "The search for sound" + soundId + " found " + sound.name + " instead.");
+		check(sound.descriptors != null && sound.descriptors.getBpm() == 100 + soundId, "The descriptors of sound" + soundId + " are wrong: " + sound.descriptors);
+	}
+
+	private static void checkDownload(FreeSound client, File directory, long soundId, String name) throws Exception
+	{
+		File file = new File(directory, name + ".wav");
+		String filename = client.downloadSound(file.getPath(), soundId);
+		check(file.getPath().equals(filename), "The download of sound " + soundId + " failed.");
+		check(Arrays.equals(Files.readAllBytes(file.toPath()), soundBytes(soundId)), "The file of sound " + soundId + " has the wrong bytes.");
+	}
+
+	private static void eachClientWatchesItsOwnCache() throws Exception
+	{
+		List<String> before = memoryCacheNames();
+		FreeSound first = new FreeSound.Builder("test").userAccessToken("test").memoryCache(new MemoryCache<SearchResponse>(10, 1000000)).build();
+		FreeSound second = first.toBuilder().memoryCache(new MemoryCache<SearchResponse>(10, 1000000)).build();
+
+		List<String> watched = memoryCacheNames();
+		watched.removeAll(before);
+		check(watched.size() == 2, "Each client should watch its memory cache under its own name, but the new names are " + watched);
+
+		first.close();
+		List<String> afterFirst = memoryCacheNames();
+		afterFirst.removeAll(before);
+		check(afterFirst.size() == 1, "A closed client should stop watching its memory cache, but the names are " + afterFirst);
+
+		second.close();
+		List<String> afterBoth = memoryCacheNames();
+		afterBoth.removeAll(before);
+		check(afterBoth.isEmpty(), "Closing every client should leave none of their caches watched, but the names are " + afterBoth);
+	}
+
+	private static List<String> memoryCacheNames()
+	{
+		List<String> names = new ArrayList<String>();
+		for(String name : Metrics.snapshot().getCaches().keySet())
+		{
+			if (name.startsWith("memory"))
+				names.add(name);
+		}
+		return names;
+	}
+
+	/**
+	 * Answer a search with the sound named in the query, and a download with that sound's bytes.
+	 */
+	private static byte[] respond(URI uri)
+	{
+		String path = uri.getPath();
+		if (path.contains("/download/"))
+		{
+			String[] parts = path.split("/");
+			return soundBytes(Long.parseLong(parts[parts.length - 2]));
+		}
+
+		long soundId = 0;
+		for(String parameter : uri.getRawQuery().split("&"))
+		{
+			if (parameter.startsWith("query="))
+				soundId = Long.parseLong(URLDecoder.decode(parameter.substring(6), StandardCharsets.UTF_8).substring(5));
+		}
+		String json = "{\"count\": 1, \"results\": [{\"id\": " + soundId + ", \"name\": \"sound" + soundId + "\", \"type\": \"wav\", \"analysis\": {\"rhythm\": {\"bpm\": " + (100 + soundId) + "}}}]}";
+		return json.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] soundBytes(long soundId)
+	{
+		byte[] bytes = new byte[1000 + (int) soundId];
+		Arrays.fill(bytes, (byte) soundId);
+		return bytes;
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for(File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,148 @@
+package com.algorithmicaudio.freesound.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import com.algorithmicaudio.freesound.FreeSound;
+import com.algorithmicaudio.freesound.io.Local;
+import com.algorithmicaudio.freesound.io.Remote;
+import com.algorithmicaudio.freesound.response.DescriptorLayout;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SearchResponseReader;
+import com.algorithmicaudio.freesound.response.SoundResponseAdapter;
+import com.google.gson.Gson;
+
+/*
+ * Times the hot paths of the client, so that changes to them can be checked for regressions.
+ *
+ * Run it with no arguments to measure everything, or with part of a name, like "parse", to
+ * measure only the benchmarks whose names contain it. It needs no network connection and no
+ * API key: the search responses are recorded pages in the fixtures folder next to this file,
+ * and the end-to-end benchmarks talk to a StubServer.
+ *
+ *   makeParameters        Remote.makeParameters on the parameters of a text search
+ *   buildFilter           FreeSound.buildFilter with a tag, canonical files and a duration
+ *   parse ...             a search page with analysis descriptors, four ways: plain
+ *                         gson.fromJson into a SearchResponse, which is the baseline,
+ *                         SearchResponseReader with Gson plus DescriptorLayout.fromAnalysis,
+ *                         the SoundResponseAdapter that FreeSound uses, and the adapter with
+ *                         Builder.keepAnalysis turned on. The baseline is measured in the same run
+ *                         as the others, even when a name is given, and each is printed relative to it
+ *   readTextFromFile      Local.readTextFromFile on the 15 sound fixture
+ *   end to end ...        a whole search, and a whole 1 MB download, through the stub server
+ *
+ * Run it from the project folder, so that it can find the fixtures, or copy the fixtures onto the
+ * classpath next to this class.
+ *
+ * The timings are ad hoc, not JMH. See Harness for what that means. Compare the ratios to the
+ * baseline within one run, rather than absolute times between runs.
+ */
+public class ClientBenchmark
+{
+	private static final String FIXTURES = "test/com/algorithmicaudio/freesound/benchmark/fixtures/";
+	private static final int SOUND_SIZE = 1024 * 1024;
+
+	public static void main(String[] args) throws Exception
+	{
+		Harness harness = new Harness(args.length > 0 ? args[0] : null);
+
+		byte[] page = readFixture("search-text.json");
+		byte[] largePage = readFixture("search-text-150.json");
+		String[] descriptorFields = new String[] { "lowlevel.average_loudness", "rhythm.bpm", "lowlevel.pitch_salience", "tonal.key_strength", "tonal.key_key", "tonal.key_scale" };
+		DescriptorLayout layout = new DescriptorLayout(descriptorFields);
+		Gson gson = new Gson();
+		SoundResponseAdapter adapter = new SoundResponseAdapter(layout, false);
+		SoundResponseAdapter analysisAdapter = new SoundResponseAdapter(layout, true);
+
+		// the parameters that searchByText sends
+		HashMap<String, String> params = new HashMap<String, String>();
+		params.put("fields", "id,name,duration,tags,analysis");
+		params.put("descriptors", String.join(",", descriptorFields));
+		params.put("format", "json");
+		params.put("token", "0123456789abcdef0123456789abcdef01234567");
+		params.put("query", "glass hit");
+		params.put("filter", FreeSound.buildFilter("percussion", true, 10));
+
+		harness.measure("makeParameters", () -> Remote.makeParameters(params));
+		harness.measure("buildFilter", () -> FreeSound.buildFilter("percussion", true, 10));
+
+		for(byte[] json : new byte[][] { page, largePage })
+		{
+			LinkedHashMap<String, Harness.Operation> ways = new LinkedHashMap<String, Harness.Operation>();
+			ways.put("Gson", () -> gson.fromJson(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8), SearchResponse.class));
+			ways.put("reader + descriptors", () -> parse(json, gson, layout));
+			ways.put("adapter", () -> parse(json, adapter));
+			ways.put("adapter + analysis map", () -> parse(json, analysisAdapter));
+			harness.compare("parse " + (json == page ? 15 : 150) + " sounds", ways);
+		}
+
+		File directory = Files.createTempDirectory("benchmark").toFile();
+		File text = new File(directory, "search-text.json");
+		Files.write(text.toPath(), page);
+		harness.measure("readTextFromFile", () -> Local.readTextFromFile(text.getPath()));
+
+		// the stub servers have no rate limit to respect, and nothing should come from a cache
+		StubServer searchServer = new StubServer(page);
+		FreeSound searchClient = new FreeSound.Builder("benchmark").userAccessToken("benchmark").apiUrl(searchServer.url("/apiv2/")).rateLimiter(null).build();
+		harness.measure("end to end search", () -> searchClient.searchByText("glass hit", "percussion", 10, true));
+		searchServer.stop();
+		searchClient.close();
+
+		byte[] sound = new byte[SOUND_SIZE];
+		new Random(1).nextBytes(sound);
+		StubServer soundServer = new StubServer(sound);
+		FreeSound downloadClient = searchClient.toBuilder().apiUrl(soundServer.url("/apiv2/")).build();
+		File file = new File(directory, "sound.wav");
+		harness.measure("end to end download, 1 MB", () -> {
+			// downloadSound skips files that already exist
+			file.delete();
+			String path = downloadClient.downloadSound(file.getPath(), 1);
+			if (file.length() != SOUND_SIZE)
+				throw new IOException("The download failed.");
+			return path;
+		});
+		soundServer.stop();
+		downloadClient.close();
+
+		file.delete();
+		text.delete();
+		directory.delete();
+	}
+
+	/**
+	 * Parse a page the way FreeSound used to, building the analysis map and then the typed descriptors from it.
+	 */
+	private static SearchResponse parse(byte[] page, Gson gson, DescriptorLayout layout) throws IOException
+	{
+		return SearchResponseReader.read(new InputStreamReader(new ByteArrayInputStream(page), StandardCharsets.UTF_8), gson, sound -> sound.descriptors = layout.fromAnalysis(sound.analysis));
+	}
+
+	/**
+	 * Parse a page the way FreeSound does, reading the descriptors straight from the JSON.
+	 */
+	private static SearchResponse parse(byte[] page, SoundResponseAdapter adapter) throws IOException
+	{
+		return SearchResponseReader.read(new InputStreamReader(new ByteArrayInputStream(page), StandardCharsets.UTF_8), adapter, null);
+	}
+
+	/**
+	 * Read a recorded response from the classpath, or from the source folder if it isn't there.
+	 */
+	private static byte[] readFixture(String name) throws IOException
+	{
+		try (InputStream resource = ClientBenchmark.class.getResourceAsStream("fixtures/" + name))
+		{
+			if (resource != null)
+				return resource.readAllBytes();
+		}
+		return Files.readAllBytes(new File(FIXTURES + name).toPath());
+	}
+}
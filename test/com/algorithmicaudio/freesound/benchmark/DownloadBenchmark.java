@@ -0,0 +1,136 @@
+package com.algorithmicaudio.freesound.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.algorithmicaudio.freesound.io.DownloadWriter;
+import com.algorithmicaudio.freesound.io.HttpClientTransport;
+import com.algorithmicaudio.freesound.io.Priority;
+import com.algorithmicaudio.freesound.io.Remote;
+import com.algorithmicaudio.freesound.io.TransportResponse;
+
+/*
+ * Compares the original download loop (a 4 KB byte array copied into a FileOutputStream)
+ * with the DownloadWriter, which collects bytes in a large direct buffer and writes them to a
+ * FileChannel.
+ *
+ * Run it with no arguments. It prints the throughput of each, first copying from memory so that
+ * only the writing is measured, then downloading from a local stub server. Every test runs
+ * several downloads at once, like FreeSound.downloadSounds does.
+ */
+public class DownloadBenchmark
+{
+	private static final int FILE_SIZE = 16 * 1024 * 1024;
+	private static final int THREADS = 8;
+
+	private interface Copy
+	{
+		void copy(InputStream input, File file) throws IOException;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		byte[] sound = new byte[FILE_SIZE];
+		new Random(1).nextBytes(sound);
+
+		File directory = Files.createTempDirectory("downloads").toFile();
+		directory.deleteOnExit();
+
+		DownloadWriter medium = new DownloadWriter(64 * 1024, false);
+		DownloadWriter large = new DownloadWriter();
+		DownloadWriter checksummed = new DownloadWriter(DownloadWriter.DEFAULT_BUFFER_SIZE, true);
+
+		// run everything twice, so that the second round is measured after the JIT has warmed up
+		System.out.println("Copying from memory:");
+		for(int round = 0; round < 2; round++)
+		{
+			copyFromMemory("4 KB loop             ", DownloadBenchmark::legacyCopy, sound, directory);
+			copyFromMemory("channel, 64 KB        ", (input, file) -> medium.write(input, file, false, null), sound, directory);
+			copyFromMemory("channel, 256 KB       ", (input, file) -> large.write(input, file, false, null), sound, directory);
+			copyFromMemory("channel, 256 KB + CRC ", (input, file) -> checksummed.write(input, file, false, checksummed.newChecksum()), sound, directory);
+		}
+
+		StubServer server = new StubServer(sound);
+		String url = server.url("/apiv2/sounds/1/download/");
+		HttpClientTransport transport = new HttpClientTransport(5000, 30000);
+		// the stub server has no rate limit to respect
+		Remote largeRemote = new Remote(transport, null, null, large);
+		Remote checksummedRemote = new Remote(transport, null, null, checksummed);
+
+		System.out.println("Downloading from a local server:");
+		for(int round = 0; round < 2; round++)
+		{
+			run("4 KB loop             ", (ignored, file) -> {
+				try (TransportResponse response = transport.get(url, Collections.<String, String>emptyMap()))
+				{
+					legacyCopy(response.getBody(), file);
+				}
+			}, directory);
+			run("channel, 256 KB       ", (ignored, file) -> largeRemote.fetchBinary(url, file.getPath(), "", Priority.BACKGROUND), directory);
+			run("channel, 256 KB + CRC ", (ignored, file) -> checksummedRemote.fetchBinary(url, file.getPath(), "", Priority.BACKGROUND), directory);
+		}
+
+		server.stop();
+	}
+
+	/**
+	 * The loop that Remote.httpGetBinary used to run.
+	 */
+	private static void legacyCopy(InputStream inputStream, File file) throws IOException
+	{
+		try (FileOutputStream outputStream = new FileOutputStream(file))
+		{
+			int bytesRead = -1;
+			byte[] buffer = new byte[4096];
+			while ((bytesRead = inputStream.read(buffer)) != -1)
+			{
+				outputStream.write(buffer, 0, bytesRead);
+			}
+		}
+	}
+
+	private static void copyFromMemory(String name, Copy copy, byte[] sound, File directory) throws Exception
+	{
+		run(name, (ignored, file) -> copy.copy(new ByteArrayInputStream(sound), file), directory);
+	}
+
+	/**
+	 * Copy one file per thread, all at once, and print the combined throughput.
+	 */
+	private static void run(String name, Copy copy, File directory) throws Exception
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		long start = System.nanoTime();
+		for(int i = 0; i < THREADS; i++)
+		{
+			File file = new File(directory, i + ".wav");
+			futures.add(pool.submit(() -> { copy.copy(null, file); return null; }));
+		}
+		for(Future<?> future : futures)
+		{
+			future.get();
+		}
+		long elapsed = System.nanoTime() - start;
+		pool.shutdown();
+
+		for(int i = 0; i < THREADS; i++)
+		{
+			new File(directory, i + ".wav").delete();
+		}
+
+		double megabytes = (double) FILE_SIZE * THREADS / (1024 * 1024);
+		System.out.printf("  %s %8.1f MB/s%n", name, megabytes / (elapsed / 1e9));
+	}
+}
@@ -0,0 +1,200 @@
+package com.algorithmicaudio.freesound.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small harness for timing short pieces of code, for the benchmarks in this package.
+ *
+ * Each operation is run for a while to let the JIT compile it, then timed over several rounds.
+ * Within a round, the operation is called in batches that are big enough to make the cost of
+ * reading the clock negligible. The median time per call is printed, along with the fastest and
+ * slowest rounds, and how many bytes each call allocates.
+ *
+ * Everything an operation returns is stored in a volatile field, so the JIT can't decide that
+ * the work is unused and skip it.
+ *
+ * These are ad hoc timings, not JMH. Everything runs in one JVM, one operation after another,
+ * with a fixed warmup, so an operation can be helped or hurt by what ran before it, and numbers
+ * from different runs or different machines can differ by more than the changes you are looking
+ * for. Use compare for alternatives, so that they are measured in the same run as a baseline and
+ * printed relative to it, and trust the ratios more than the absolute times.
+ */
+public class Harness
+{
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 5;
+	private static final long ROUND_NANOS = 500_000_000L;
+
+	// a batch should take at least this long, so that System.nanoTime is a tiny part of it
+	private static final long MINIMUM_BATCH_NANOS = 1_000_000L;
+
+	// results go here, so that the work that made them can't be optimized away
+	private static volatile Object sink;
+
+	private final String filter;
+
+	/**
+	 * Something to measure.
+	 */
+	public interface Operation
+	{
+		/**
+		 * @return	Anything the operation made. It is kept, so that the work is really done.
+		 */
+		Object run() throws Exception;
+	}
+
+	/**
+	 * @param	filter	Only measure operations whose name contains this. May be null, to measure everything.
+	 */
+	public Harness(String filter)
+	{
+		this.filter = filter;
+	}
+
+	/**
+	 * Time an operation and print the result.
+	 *
+	 * @param	name		The name that is printed.
+	 * @param	operation	The code to time.
+	 */
+	public void measure(String name, Operation operation) throws Exception
+	{
+		if (filter != null && !name.contains(filter))
+			return;
+		time(name, operation, Double.NaN);
+	}
+
+	/**
+	 * Time several ways of doing the same thing, and print each one relative to the first, which
+	 * is the baseline. If the filter matches any of them, the baseline is measured too, so every
+	 * ratio comes from a single run.
+	 *
+	 * @param	group	What they all do, like "parse 15 sounds". It starts each printed name.
+	 * @param	ways	The operations by name, in order. The first one is the baseline.
+	 */
+	public void compare(String group, LinkedHashMap<String, Operation> ways) throws Exception
+	{
+		boolean any = false;
+		for(String way : ways.keySet())
+		{
+			any |= filter == null || (group + ", " + way).contains(filter);
+		}
+		if (!any)
+			return;
+
+		double baselineNanos = Double.NaN;
+		boolean first = true;
+		for(Map.Entry<String, Operation> way : ways.entrySet())
+		{
+			String name = group + ", " + way.getKey();
+			if (first || filter == null || name.contains(filter))
+			{
+				double nanos = time(name, way.getValue(), baselineNanos);
+				if (first)
+					baselineNanos = nanos;
+			}
+			first = false;
+		}
+	}
+
+	/**
+	 * Time an operation and print the result, and how it compares with the baseline if there is one.
+	 *
+	 * @return	the median time per call, in nanoseconds
+	 */
+	private double time(String name, Operation operation, double baselineNanos) throws Exception
+	{
+		int batch = calibrate(operation);
+		for(int round = 0; round < WARMUP_ROUNDS; round++)
+		{
+			runRound(operation, batch);
+		}
+
+		boolean countsAllocations = allocatedBytes() >= 0;
+		double[] nanosPerCall = new double[MEASURED_ROUNDS];
+		long allocated = 0;
+		long calls = 0;
+		for(int round = 0; round < MEASURED_ROUNDS; round++)
+		{
+			long allocatedBefore = allocatedBytes();
+			long start = System.nanoTime();
+			long roundCalls = runRound(operation, batch);
+			nanosPerCall[round] = (double) (System.nanoTime() - start) / roundCalls;
+			allocated += allocatedBytes() - allocatedBefore;
+			calls += roundCalls;
+		}
+		Arrays.sort(nanosPerCall);
+
+		double median = nanosPerCall[MEASURED_ROUNDS / 2];
+		String relative = Double.isNaN(baselineNanos) ? "" : String.format("   %.2fx baseline", median / baselineNanos);
+		System.out.printf("%-40s %12s/op   (%s .. %s)   %10.0f ops/s   %9s/op%s%n", name, format(median), format(nanosPerCall[0]), format(nanosPerCall[MEASURED_ROUNDS - 1]), 1e9 / median, countsAllocations ? (allocated / calls) + " B" : "?", relative);
+		return median;
+	}
+
+	/**
+	 * @return	how many calls make a batch that takes at least MINIMUM_BATCH_NANOS
+	 */
+	private static int calibrate(Operation operation) throws Exception
+	{
+		int batch = 1;
+		while (batch < (1 << 24))
+		{
+			long start = System.nanoTime();
+			runBatch(operation, batch);
+			if (System.nanoTime() - start >= MINIMUM_BATCH_NANOS)
+				break;
+			batch *= 2;
+		}
+		return batch;
+	}
+
+	/**
+	 * Call the operation in batches for ROUND_NANOS.
+	 *
+	 * @return	how many calls were made
+	 */
+	private static long runRound(Operation operation, int batch) throws Exception
+	{
+		long calls = 0;
+		long end = System.nanoTime() + ROUND_NANOS;
+		do
+		{
+			runBatch(operation, batch);
+			calls += batch;
+		}
+		while (System.nanoTime() < end);
+		return calls;
+	}
+
+	private static void runBatch(Operation operation, int batch) throws Exception
+	{
+		for(int i = 0; i < batch; i++)
+		{
+			sink = operation.run();
+		}
+	}
+
+	/**
+	 * @return	how many bytes this thread has allocated so far, or a negative number if the JVM can't tell
+	 */
+	private static long allocatedBytes()
+	{
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	private static String format(double nanos)
+	{
+		if (nanos < 1e3)
+			return String.format("%.1f ns", nanos);
+		if (nanos < 1e6)
+			return String.format("%.2f us", nanos / 1e3);
+		return String.format("%.2f ms", nanos / 1e6);
+	}
+}
@@ -0,0 +1,59 @@
+package com.algorithmicaudio.freesound.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import com.algorithmicaudio.freesound.FreeSound;
+import com.algorithmicaudio.freesound.LatencyPolicy;
+import com.algorithmicaudio.freesound.cache.DiskCache;
+
+/*
+ * Shows how a LatencyPolicy trims the long tail of search latency.
+ *
+ * A local stub server answers most requests in 20ms, but one in ten takes a
+ * full second. The same searches are run with and without a LatencyPolicy,
+ * and the median, 99th percentile and worst latencies are printed.
+ *
+ * The disk cache expires responses immediately, so every search goes to the
+ * server, but an expired response is there to fall back on at the deadline.
+ */
+public class HedgingBenchmark
+{
+	private static final int SEARCHES = 200;
+
+	public static void main(String[] args) throws Exception
+	{
+		StubServer server = new StubServer("{\"count\": 1, \"results\": [{\"id\": 1, \"name\": \"glass\"}]}".getBytes(StandardCharsets.UTF_8));
+		server.setDelay(20, 1000, 0.1);
+
+		// the cache expires responses at once, so they are only used as a fallback at the deadline. The stub server has no rate limit to respect.
+		DiskCache cache = new DiskCache(Files.createTempDirectory("hedging").toFile(), 10000000, 0);
+		FreeSound client = new FreeSound.Builder("benchmark").apiUrl(server.url("/apiv2/")).rateLimiter(null).diskCache(cache).build();
+
+		FreeSound hedgingClient = client.toBuilder().latencyPolicy(new LatencyPolicy(500, 0.9, 30)).build();
+
+		measure("no policy    ", client);
+		measure("LatencyPolicy", hedgingClient);
+		client.close();
+		hedgingClient.close();
+
+		System.out.println("The stub server answered " + server.getRequestCount() + " requests.");
+		server.stop();
+	}
+
+	private static void measure(String name, FreeSound client)
+	{
+		long[] latencies = new long[SEARCHES];
+		int failures = 0;
+		for(int i = 0; i < SEARCHES; i++)
+		{
+			long start = System.nanoTime();
+			if (client.search("glass") == null)
+				failures++;
+			latencies[i] = (System.nanoTime() - start) / 1000000;
+		}
+		Arrays.sort(latencies);
+		System.out.printf("%s  median: %4d ms   p99: %4d ms   worst: %4d ms   failures: %d%n", name, latencies[SEARCHES / 2], latencies[SEARCHES * 99 / 100], latencies[SEARCHES - 1], failures);
+	}
+}
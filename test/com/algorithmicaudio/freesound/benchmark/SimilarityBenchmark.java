@@ -0,0 +1,145 @@
+package com.algorithmicaudio.freesound.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.algorithmicaudio.freesound.FreeSound;
+import com.algorithmicaudio.freesound.index.SimilarityIndex;
+import com.algorithmicaudio.freesound.response.DescriptorLayout;
+import com.algorithmicaudio.freesound.response.Descriptors;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SoundResponse;
+
+/*
+ * Measures the recall and latency of the local SimilarityIndex.
+ *
+ * With no arguments, it builds an index of synthetic sounds and compares
+ * search against an exact search of every sound. Recall is the fraction of the
+ * true nearest neighbours that search finds.
+ *
+ * With your client secret as the only argument, it also harvests real sounds
+ * for a tag, and compares the local index with FreeSound.searchForSimilar.
+ */
+public class SimilarityBenchmark
+{
+	private static final int SOUNDS = 20000;
+	private static final int QUERIES = 500;
+	private static final int RESULTS = 15;
+
+	public static void main(String[] args) throws Exception
+	{
+		// the same descriptors that FreeSound requests by default
+		DescriptorLayout layout = new DescriptorLayout(new String[] { "lowlevel.average_loudness", "rhythm.bpm", "lowlevel.pitch_salience", "tonal.key_strength", "tonal.key_key", "tonal.key_scale" });
+
+		List<SoundResponse> sounds = syntheticSounds(layout, SOUNDS);
+		long start = System.nanoTime();
+		SimilarityIndex index = SimilarityIndex.build(layout, sounds);
+		System.out.printf("Built an index of %d sounds in %.1f ms%n", index.size(), (System.nanoTime() - start) / 1e6);
+
+		Random random = new Random(7);
+		double recall = 0;
+		long approximateNanos = 0;
+		long exactNanos = 0;
+		for(int i = 0; i < QUERIES; i++)
+		{
+			SoundResponse target = sounds.get(random.nextInt(sounds.size()));
+
+			start = System.nanoTime();
+			SearchResponse approximate = index.search(target, RESULTS);
+			approximateNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			SearchResponse exact = index.searchExact(target, RESULTS);
+			exactNanos += System.nanoTime() - start;
+
+			recall += overlap(approximate, exact);
+		}
+		System.out.printf("Local index  recall@%d: %.3f   search: %.1f us/query   exact: %.1f us/query%n", RESULTS, recall / QUERIES, approximateNanos / 1e3 / QUERIES, exactNanos / 1e3 / QUERIES);
+
+		if (args.length > 0)
+			compareWithRemote(args[0]);
+	}
+
+	/**
+	 * Harvest real sounds, then ask both FreeSound and the local index for similar sounds.
+	 */
+	private static void compareWithRemote(String clientSecret) throws Exception
+	{
+		FreeSound client = new FreeSound(clientSecret);
+		SearchResponse harvested = client.searchAllByText("", "drum", 0, true, 150, 4);
+		SimilarityIndex index = SimilarityIndex.build(client.getDescriptorLayout(), harvested.results);
+		System.out.printf("Harvested %d real sounds%n", index.size());
+
+		double agreement = 0;
+		long localNanos = 0;
+		long remoteNanos = 0;
+		int queries = Math.min(10, harvested.results.size());
+		for(int i = 0; i < queries; i++)
+		{
+			SoundResponse target = harvested.results.get(i);
+
+			long start = System.nanoTime();
+			SearchResponse local = index.search(target, RESULTS);
+			localNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			SearchResponse remote = client.searchForSimilar(Long.toString(target.id));
+			remoteNanos += System.nanoTime() - start;
+
+			if (remote != null)
+				agreement += overlap(local, remote);
+		}
+		System.out.printf("Against FreeSound   agreement@%d: %.3f   local: %.1f us/query   remote: %.1f ms/query%n", RESULTS, agreement / queries, localNanos / 1e3 / queries, remoteNanos / 1e6 / queries);
+	}
+
+	/**
+	 * The fraction of the expected sounds that were found.
+	 */
+	private static double overlap(SearchResponse found, SearchResponse expected)
+	{
+		Set<Long> expectedIds = new HashSet<Long>();
+		for(SoundResponse sound : expected.results)
+		{
+			expectedIds.add(sound.id);
+		}
+		int matches = 0;
+		for(SoundResponse sound : found.results)
+		{
+			if (expectedIds.contains(sound.id))
+				matches++;
+		}
+		return expectedIds.isEmpty() ? 1 : (double) matches / expectedIds.size();
+	}
+
+	/**
+	 * Sounds with plausible, clustered descriptors.
+	 */
+	static List<SoundResponse> syntheticSounds(DescriptorLayout layout, int count)
+	{
+		Random random = new Random(1);
+		List<SoundResponse> sounds = new ArrayList<SoundResponse>(count);
+		for(int i = 0; i < count; i++)
+		{
+			float[] values = new float[layout.size()];
+			int cluster = random.nextInt(20);
+			for(int slot = 0; slot < values.length; slot++)
+			{
+				if (layout.isDictionaryEncoded(slot))
+					values[slot] = random.nextInt(slot == layout.getSlot(DescriptorLayout.KEY) ? 12 : 2);
+				else
+					values[slot] = (float) (cluster * 0.05 + random.nextGaussian() * 0.1);
+			}
+			values[layout.getSlot(DescriptorLayout.BPM)] = 60 + cluster * 6 + (float) random.nextGaussian() * 4;
+
+			SoundResponse sound = new SoundResponse();
+			sound.id = i;
+			sound.name = "sound " + i;
+			sound.descriptors = new Descriptors(layout, values);
+			sounds.add(sound);
+		}
+		return sounds;
+	}
+}
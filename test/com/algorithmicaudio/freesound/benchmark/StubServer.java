@@ -0,0 +1,192 @@
+package com.algorithmicaudio.freesound.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.algorithmicaudio.freesound.io.DaemonThreadFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A tiny local web server that stands in for the FreeSound API, so that the client can be
+ * measured without a network connection or an API key. Every request gets the same body, unless
+ * the server is given a function that makes a body for each request.
+ */
+public class StubServer
+{
+	private final HttpServer server;
+	private final Function<URI, byte[]> responder;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger aborted = new AtomicInteger();
+
+	// injected latency. See setDelay.
+	private volatile long typicalDelayMillis = 0;
+	private volatile long slowDelayMillis = 0;
+	private volatile double slowFraction = 0;
+	private final AtomicLong nextDelayMillis = new AtomicLong(); // for the next request only. See delayNext.
+	private final AtomicLong nextTrickleMillis = new AtomicLong(); // for the next request only. See trickleNext.
+
+	/**
+	 * Start a server on a free local port.
+	 *
+	 * @param	responseBody	The body returned for every request.
+	 */
+	public StubServer(byte[] responseBody) throws IOException
+	{
+		this(uri -> responseBody);
+	}
+
+	/**
+	 * Start a server on a free local port that answers each request with a body of its own.
+	 *
+	 * @param	responder	Makes the body for a request from its URI, like /apiv2/search/text/?query=glass. It is called from many threads at once.
+	 */
+	public StubServer(Function<URI, byte[]> responder) throws IOException
+	{
+		this.responder = responder;
+
+		// without this, the JDK server waits ~40ms on delayed ACKs and every request looks slow
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", this::handle);
+		server.setExecutor(Executors.newCachedThreadPool(new DaemonThreadFactory("stub-server")));
+		server.start();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException
+	{
+		requests.incrementAndGet();
+
+		long trickle = nextTrickleMillis.getAndSet(0);
+		long delay = nextDelayMillis.getAndSet(0);
+		if (delay == 0)
+			delay = ThreadLocalRandom.current().nextDouble() < slowFraction ? slowDelayMillis : typicalDelayMillis;
+		if (delay > 0)
+		{
+			try
+			{
+				Thread.sleep(delay);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		byte[] body = responder.apply(exchange.getRequestURI());
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		try
+		{
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream output = exchange.getResponseBody())
+			{
+				if (trickle > 0)
+					writeSlowly(output, body, trickle);
+				else
+					output.write(body);
+			}
+		}
+		catch(IOException e)
+		{
+			// the client hung up before it had the whole response
+			aborted.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Send a body one byte at a time, spread over the given time.
+	 */
+	private static void writeSlowly(OutputStream output, byte[] body, long millis) throws IOException
+	{
+		long pause = Math.max(1, millis / body.length);
+		for(byte b : body)
+		{
+			output.write(b);
+			output.flush();
+			try
+			{
+				Thread.sleep(pause);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while sending the body.");
+			}
+		}
+	}
+
+	/**
+	 * @param	path	The path part of the URL, like "/apiv2/search/text/".
+	 * @return			The full URL of that path on this server.
+	 */
+	public String url(String path)
+	{
+		return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+	}
+
+	/**
+	 * Make the server slow, to simulate a network with a long tail of latency.
+	 *
+	 * @param	typicalMillis	How long most requests take.
+	 * @param	slowMillis		How long the slow requests take.
+	 * @param	fraction		The fraction of requests that are slow, between 0 and 1.
+	 */
+	public void setDelay(long typicalMillis, long slowMillis, double fraction)
+	{
+		typicalDelayMillis = typicalMillis;
+		slowDelayMillis = slowMillis;
+		slowFraction = fraction;
+	}
+
+	/**
+	 * Make only the next request slow, for example to check what happens to a request that is
+	 * overtaken by a faster one.
+	 *
+	 * @param	millis	How long the next request takes.
+	 */
+	public void delayNext(long millis)
+	{
+		nextDelayMillis.set(millis);
+	}
+
+	/**
+	 * Make only the next response slow, by sending its headers at once and then its body one byte
+	 * at a time. Unlike delayNext, the client can tell that the server is still sending, so this
+	 * checks that a request is aborted while its body is being read.
+	 *
+	 * @param	millis	How long the body takes to send.
+	 */
+	public void trickleNext(long millis)
+	{
+		nextTrickleMillis.set(millis);
+	}
+
+	/**
+	 * @return	how many responses could not be sent in full, because the client closed the connection
+	 */
+	public int getAbortedCount()
+	{
+		return aborted.get();
+	}
+
+	/**
+	 * @return	how many requests the server has answered
+	 */
+	public int getRequestCount()
+	{
+		return requests.get();
+	}
+
+	public void stop()
+	{
+		server.stop(0);
+	}
+}
@@ -0,0 +1,89 @@
+package com.algorithmicaudio.freesound.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.algorithmicaudio.freesound.io.HttpClientTransport;
+import com.algorithmicaudio.freesound.io.Transport;
+import com.algorithmicaudio.freesound.io.TransportResponse;
+import com.algorithmicaudio.freesound.io.UrlConnectionTransport;
+
+/*
+ * Compares the connection-reusing HttpClientTransport with the original
+ * HttpURLConnection transport against a local stub server.
+ *
+ * Run it with no arguments. It prints the average time per request for each
+ * transport, first one request at a time, then from several threads at once.
+ *
+ * The stub server speaks plain HTTP on the loopback interface, so this measures
+ * the per-request overhead of each transport. It does not include the TLS
+ * handshake that the original transport pays on every call to freesound.org,
+ * which is where connection reuse saves the most time.
+ */
+public class TransportBenchmark
+{
+	private static final int REQUESTS = 1000;
+	private static final int THREADS = 8;
+
+	public static void main(String[] args) throws Exception
+	{
+		StringBuilder json = new StringBuilder("{\"count\": 1, \"results\": [");
+		for(int i = 0; i < 15; i++)
+		{
+			if (i > 0) json.append(",");
+			json.append("{\"id\": " + i + ", \"name\": \"glass " + i + "\", \"duration\": 1.5, \"tags\": [\"glass\", \"hit\"]}");
+		}
+		json.append("]}");
+
+		StubServer server = new StubServer(json.toString().getBytes(StandardCharsets.UTF_8));
+		String url = server.url("/apiv2/search/text/?query=glass");
+
+		// run each transport twice, so that the second round is measured after the JIT has warmed up
+		for(int round = 0; round < 2; round++)
+		{
+			measure("HttpURLConnection", new UrlConnectionTransport(), url);
+			measure("HttpClient       ", new HttpClientTransport(5000, 30000), url);
+		}
+
+		server.stop();
+	}
+
+	private static void measure(String name, Transport transport, String url) throws Exception
+	{
+		long start = System.nanoTime();
+		for(int i = 0; i < REQUESTS; i++)
+		{
+			fetch(transport, url);
+		}
+		long serial = System.nanoTime() - start;
+
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		start = System.nanoTime();
+		for(int i = 0; i < REQUESTS; i++)
+		{
+			futures.add(pool.submit(() -> { fetch(transport, url); return null; }));
+		}
+		for(Future<?> future : futures)
+		{
+			future.get();
+		}
+		long parallel = System.nanoTime() - start;
+		pool.shutdown();
+
+		System.out.printf("%s  serial: %8.1f us/request   %d threads: %8.1f us/request%n", name, serial / 1000.0 / REQUESTS, THREADS, parallel / 1000.0 / REQUESTS);
+	}
+
+	private static void fetch(Transport transport, String url) throws Exception
+	{
+		try (TransportResponse response = transport.get(url, Collections.<String, String>emptyMap()))
+		{
+			response.readText();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package com.algorithmicaudio.freesound.cache;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/*
+ * Checks that the DiskCache stops returning a response once its time to live is over, that
+ * getStale still finds the expired response, that the least recently used responses are deleted
+ * first when the cache is full, that URLs asking the same question share an entry, that a response
+ * which is never committed doesn't reach the cache, and that the cache is still there after it is
+ * reopened.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class DiskCacheTest
+{
+	private static final String SEARCH = "https://freesound.org/apiv2/search/text/?";
+
+	public static void main(String[] args) throws Exception
+	{
+		expiredResponsesAreStale();
+		leastRecentlyUsedGoesFirst();
+		equivalentUrlsShareAnEntry();
+		uncommittedEntriesAreDropped();
+		cacheSurvivesReopening();
+		System.out.println("DiskCacheTest passed.");
+	}
+
+	private static void expiredResponsesAreStale() throws Exception
+	{
+		File directory = Files.createTempDirectory("cache").toFile();
+		try
+		{
+			DiskCache cache = new DiskCache(directory, 1000000, 100);
+			cache.put(SEARCH + "query=glass", "{\"count\":1}");
+			check("{\"count\":1}".equals(cache.get(SEARCH + "query=glass")), "A fresh response should be returned.");
+
+			Thread.sleep(250);
+			check(cache.get(SEARCH + "query=glass") == null, "An expired response should not be returned.");
+			check("{\"count\":1}".equals(cache.getStale(SEARCH + "query=glass")), "getStale should still find an expired response.");
+			check(cache.getStale(SEARCH + "query=wood") == null, "getStale should not invent a response that was never cached.");
+			check(cache.getHitCount() == 1 && cache.getMissCount() == 1, "Only get should count hits and misses, but there were " + cache.getHitCount() + " hits and " + cache.getMissCount() + " misses.");
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void leastRecentlyUsedGoesFirst() throws Exception
+	{
+		File directory = Files.createTempDirectory("cache").toFile();
+		try
+		{
+			// each entry is a little over 1000 bytes with its header, so two fit and a third doesn't
+			String body = "x".repeat(1000);
+			DiskCache cache = new DiskCache(directory, 2500, 60000);
+			cache.put(SEARCH + "query=a", body);
+			cache.put(SEARCH + "query=b", body);
+
+			// using a makes b the least recently used
+			check(cache.get(SEARCH + "query=a") != null, "a should be cached.");
+			cache.put(SEARCH + "query=c", body);
+
+			check(cache.getStale(SEARCH + "query=b") == null, "The least recently used response should have been deleted.");
+			check(cache.getStale(SEARCH + "query=a") != null, "The recently used response should have been kept.");
+			check(cache.getStale(SEARCH + "query=c") != null, "The newest response should have been kept.");
+			check(cache.getSizeInBytes() <= 2500, "The cache should be within its limit, but it holds " + cache.getSizeInBytes() + " bytes.");
+			check(jsonFiles(directory) == 2, "The deleted response's file should be gone, but there are " + jsonFiles(directory) + " files.");
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void equivalentUrlsShareAnEntry() throws Exception
+	{
+		File directory = Files.createTempDirectory("cache").toFile();
+		try
+		{
+			DiskCache cache = new DiskCache(directory, 1000000, 60000);
+			cache.put(SEARCH + "query=glass&page=2&token=abc", "page two");
+			check("page two".equals(cache.get(SEARCH + "page=2&query=glass")), "The order of the parameters and the token should not matter.");
+			check("page two".equals(cache.get(SEARCH + "token=xyz&page=2&query=glass")), "A different token should find the same response.");
+			check(cache.get(SEARCH + "query=glass&page=3") == null, "A different page is a different question.");
+
+			cache.put(SEARCH + "page=2&query=glass", "page two again");
+			check("page two again".equals(cache.get(SEARCH + "query=glass&page=2")), "Saving the same question again should replace the response.");
+			check(jsonFiles(directory) == 1, "A replaced response should not leave its old file behind.");
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void uncommittedEntriesAreDropped() throws Exception
+	{
+		File directory = Files.createTempDirectory("cache").toFile();
+		try
+		{
+			DiskCache cache = new DiskCache(directory, 1000000, 60000);
+			try (DiskCache.PendingEntry entry = cache.startEntry(SEARCH + "query=glass"))
+			{
+				entry.write("{\"count\":".getBytes(StandardCharsets.UTF_8));
+				// the response fails halfway, so the entry is closed without commit
+			}
+			check(cache.getStale(SEARCH + "query=glass") == null, "A response that was never committed should not be cached.");
+			check(directory.listFiles().length == 0, "An uncommitted entry should not leave a temporary file behind.");
+
+			try (DiskCache.PendingEntry entry = cache.startEntry(SEARCH + "query=glass"))
+			{
+				entry.write("{\"count\":2}".getBytes(StandardCharsets.UTF_8));
+				entry.commit();
+			}
+			check("{\"count\":2}".equals(cache.get(SEARCH + "query=glass")), "A committed entry should be cached.");
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void cacheSurvivesReopening() throws Exception
+	{
+		File directory = Files.createTempDirectory("cache").toFile();
+		try
+		{
+			DiskCache first = new DiskCache(directory, 1000000, 60000);
+			first.put(SEARCH + "query=glass", "glass");
+			first.put(SEARCH + "query=wood", "wood");
+			long size = first.getSizeInBytes();
+
+			DiskCache second = new DiskCache(directory, 1000000, 60000);
+			check("glass".equals(second.get(SEARCH + "query=glass")), "A response saved by an earlier run should be found.");
+			check(second.getSizeInBytes() == size, "The reopened cache should know its size, " + size + " bytes, but it thinks it holds " + second.getSizeInBytes());
+
+			// a smaller limit trims the reopened cache straight away
+			DiskCache smaller = new DiskCache(directory, size / 2, 60000);
+			check(smaller.getSizeInBytes() <= size / 2, "Reopening with a smaller limit should delete responses.");
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static int jsonFiles(File directory)
+	{
+		return directory.listFiles((dir, name) -> name.endsWith(".json")).length;
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for(File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,96 @@
+package com.algorithmicaudio.freesound.cache;
+
+/*
+ * Checks that the MemoryCache drops the least recently used objects first, whether it is limited
+ * by entries or by bytes, that one large object can push out several small ones, that an expired
+ * object is only found by getStale, and that URLs asking the same question share an entry.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class MemoryCacheTest
+{
+	private static final String SEARCH = "https://freesound.org/apiv2/search/text/?";
+
+	public static void main(String[] args) throws Exception
+	{
+		entryLimitDropsLeastRecentlyUsed();
+		byteLimitDropsLeastRecentlyUsed();
+		expiredObjectsAreStale();
+		equivalentUrlsShareAnEntry();
+		System.out.println("MemoryCacheTest passed.");
+	}
+
+	private static void entryLimitDropsLeastRecentlyUsed()
+	{
+		MemoryCache<String> cache = new MemoryCache<String>(3, 0);
+		cache.put(SEARCH + "query=a", "a", 10);
+		cache.put(SEARCH + "query=b", "b", 10);
+		cache.put(SEARCH + "query=c", "c", 10);
+
+		// using a makes b the least recently used
+		check("a".equals(cache.get(SEARCH + "query=a")), "a should be cached.");
+		cache.put(SEARCH + "query=d", "d", 10);
+
+		check(cache.size() == 3, "The cache should hold 3 objects, but it holds " + cache.size());
+		check(cache.getStale(SEARCH + "query=b") == null, "The least recently used object should have been dropped.");
+		check(cache.getStale(SEARCH + "query=a") != null && cache.getStale(SEARCH + "query=c") != null && cache.getStale(SEARCH + "query=d") != null, "The other objects should have been kept.");
+		check(cache.getSizeInBytes() == 30, "The dropped object's bytes should be forgotten, but the cache thinks it holds " + cache.getSizeInBytes());
+	}
+
+	private static void byteLimitDropsLeastRecentlyUsed()
+	{
+		MemoryCache<String> cache = new MemoryCache<String>(0, 100);
+		for(String name : new String[] { "a", "b", "c", "d" })
+		{
+			cache.put(SEARCH + "query=" + name, name, 20);
+		}
+		cache.get(SEARCH + "query=a");
+
+		// 60 bytes more makes 140, so the two least recently used small objects, b and c, have to go
+		cache.put(SEARCH + "query=big", "big", 60);
+		check(cache.getSizeInBytes() <= 100, "The cache should be within its limit, but it holds " + cache.getSizeInBytes() + " bytes.");
+		check(cache.getStale(SEARCH + "query=b") == null && cache.getStale(SEARCH + "query=c") == null, "The least recently used objects should have been dropped.");
+		check(cache.getStale(SEARCH + "query=a") != null && cache.getStale(SEARCH + "query=d") != null, "The recently used objects should have been kept.");
+		check(cache.getStale(SEARCH + "query=big") != null, "The new object should have been kept.");
+
+		// replacing an object counts only its new size
+		cache.put(SEARCH + "query=big", "smaller", 10);
+		check(cache.getSizeInBytes() == 50, "Replacing an object should forget its old size, but the cache thinks it holds " + cache.getSizeInBytes() + " bytes.");
+	}
+
+	private static void expiredObjectsAreStale() throws Exception
+	{
+		MemoryCache<String> cache = new MemoryCache<String>(10, 0, 100);
+		cache.put(SEARCH + "query=glass", "glass", 10);
+		check("glass".equals(cache.get(SEARCH + "query=glass")), "A fresh object should be returned.");
+
+		Thread.sleep(250);
+		check(cache.get(SEARCH + "query=glass") == null, "An expired object should not be returned.");
+		check("glass".equals(cache.getStale(SEARCH + "query=glass")), "getStale should still find an expired object.");
+		check(cache.getHitCount() == 1 && cache.getMissCount() == 1, "Only get should count hits and misses, but there were " + cache.getHitCount() + " hits and " + cache.getMissCount() + " misses.");
+
+		MemoryCache<String> forever = new MemoryCache<String>(10, 0);
+		forever.put(SEARCH + "query=glass", "glass", 10);
+		Thread.sleep(50);
+		check("glass".equals(forever.get(SEARCH + "query=glass")), "Without a time to live, an object should stay valid.");
+	}
+
+	private static void equivalentUrlsShareAnEntry()
+	{
+		MemoryCache<String> cache = new MemoryCache<String>(10, 0);
+		cache.put(SEARCH + "query=glass&page=2&token=abc", "page two", 10);
+		check("page two".equals(cache.get(SEARCH + "token=xyz&page=2&query=glass")), "The order of the parameters and the token should not matter.");
+		check(cache.get(SEARCH + "query=glass&page=3") == null, "A different page is a different question.");
+		check(cache.size() == 1, "There should be one entry.");
+
+		cache.clear();
+		check(cache.size() == 0 && cache.getSizeInBytes() == 0, "clear should empty the cache.");
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
@@ -0,0 +1,97 @@
+package com.algorithmicaudio.freesound.index;
+
+import java.io.File;
+import java.util.Arrays;
+
+import com.algorithmicaudio.freesound.response.DescriptorLayout;
+import com.algorithmicaudio.freesound.response.Descriptors;
+
+/*
+ * Checks the descriptors filter syntax against a small DescriptorIndex: equalities with and
+ * without quotes, ranges, AND, OR and parentheses, and that filters with mistakes in them are
+ * refused with an IllegalArgumentException instead of matching something unexpected.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class DescriptorFilterTest
+{
+	private static final DescriptorLayout LAYOUT = new DescriptorLayout(new String[] { DescriptorLayout.KEY, DescriptorLayout.SCALE, DescriptorLayout.BPM });
+
+	public static void main(String[] args) throws Exception
+	{
+		File file = File.createTempFile("descriptors", ".idx");
+		file.delete();
+		try
+		{
+			DescriptorIndex index = new DescriptorIndex(file, LAYOUT);
+			add(index, 1, "C", "major", 120);
+			add(index, 2, "C", "minor", 90);
+			add(index, 3, "F#", "major", 121);
+			add(index, 4, "A", "minor", 140);
+
+			matches(index, "tonal.key_key:\"C\"", 1, 2);
+			matches(index, "tonal.key_key:C", 1, 2);
+			matches(index, "tonal.key_key:F#", 3);
+			matches(index, "(tonal.key_key:C)", 1, 2);
+			matches(index, "tonal.key_key:C AND tonal.key_scale:major", 1);
+			matches(index, "tonal.key_key:C tonal.key_scale:minor", 2);
+			matches(index, "tonal.key_key:A OR tonal.key_key:\"F#\"", 3, 4);
+			matches(index, "rhythm.bpm:[118 TO 122]", 1, 3);
+			matches(index, "rhythm.bpm:[* TO 100]", 2);
+			matches(index, "rhythm.bpm:[130 TO *]", 4);
+			matches(index, "rhythm.bpm:120", 1);
+			matches(index, "tonal.key_scale:major AND (rhythm.bpm:[* TO 100] OR tonal.key_key:F#)", 3);
+			matches(index, "tonal.key_key:H");
+
+			refused(index, "tonal.key_key");
+			refused(index, "tonal.key_key:");
+			refused(index, "tonal.key_key:\"C");
+			refused(index, "lowlevel.spectral_centroid:100");
+			refused(index, "rhythm.bpm:[118 122]");
+			refused(index, "rhythm.bpm:[118 TO 122");
+			refused(index, "rhythm.bpm:[fast TO 122]");
+			refused(index, "rhythm.bpm:fast");
+			refused(index, "rhythm.bpm:1.2.3");
+			refused(index, "(tonal.key_key:C");
+			refused(index, "tonal.key_key:C)");
+			refused(index, "tonal.key_key:C AND");
+		}
+		finally
+		{
+			file.delete();
+		}
+		System.out.println("DescriptorFilterTest passed.");
+	}
+
+	private static void add(DescriptorIndex index, long soundId, String key, String scale, float bpm) throws Exception
+	{
+		index.add(soundId, new Descriptors(LAYOUT, new float[] { LAYOUT.encode(0, key), LAYOUT.encode(1, scale), bpm }));
+	}
+
+	private static void matches(DescriptorIndex index, String filter, long... expected)
+	{
+		long[] found = index.query(filter);
+		Arrays.sort(found);
+		check(Arrays.equals(found, expected), filter + " should match " + Arrays.toString(expected) + ", but matched " + Arrays.toString(found));
+	}
+
+	private static void refused(DescriptorIndex index, String filter)
+	{
+		try
+		{
+			index.query(filter);
+			throw new AssertionError(filter + " should have been refused.");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
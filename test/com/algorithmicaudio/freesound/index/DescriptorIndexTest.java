@@ -0,0 +1,110 @@
+package com.algorithmicaudio.freesound.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import com.algorithmicaudio.freesound.response.DescriptorLayout;
+import com.algorithmicaudio.freesound.response.Descriptors;
+
+/*
+ * Checks that a DescriptorIndex keeps its sounds when it grows past its first file and when it is
+ * reopened, that growing leaves only the newest generation of the file behind, and that
+ * descriptor names which are not plain ASCII don't throw the columns out of place.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class DescriptorIndexTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		growingKeepsEverySound();
+		unusualNamesRoundTrip();
+		System.out.println("DescriptorIndexTest passed.");
+	}
+
+	private static void growingKeepsEverySound() throws Exception
+	{
+		File directory = Files.createTempDirectory("index").toFile();
+		File file = new File(directory, "descriptors.idx");
+		DescriptorLayout layout = new DescriptorLayout(new String[] { DescriptorLayout.BPM });
+		try
+		{
+			// the first file has room for 1024 sounds, so this grows it twice
+			DescriptorIndex index = new DescriptorIndex(file, layout);
+			for(long soundId = 1; soundId <= 3000; soundId++)
+			{
+				index.add(soundId, new Descriptors(layout, new float[] { soundId }));
+			}
+			index.flush();
+			check(index.size() == 3000, "Every sound should be in the index.");
+			check(index.get(1).getBpm() == 1 && index.get(3000).getBpm() == 3000, "The values should survive growing.");
+
+			DescriptorIndex reopened = new DescriptorIndex(file, layout);
+			check(reopened.size() == 3000, "Every sound should be in the reopened index, but there are " + reopened.size());
+			check(reopened.query("rhythm.bpm:[1000 TO 1009]").length == 10, "The reopened index should answer queries.");
+			check(reopened.get(2048).getBpm() == 2048, "The reopened index should have the values.");
+
+			String[] left = directory.list();
+			check(left.length == 1 && left[0].equals("descriptors.idx.2"), "Only the newest generation should be left, but the directory has " + String.join(", ", left));
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void unusualNamesRoundTrip() throws Exception
+	{
+		File directory = Files.createTempDirectory("index").toFile();
+		File file = new File(directory, "descriptors.idx");
+
+		// a NUL and characters outside the basic plane are longer in the modified UTF-8 of DataOutput.writeUTF than in UTF-8
+		DescriptorLayout layout = new DescriptorLayout(new String[] { "a\u0000b", "\uD83C\uDFB5.\uD83C\uDFB6.\uD83C\uDFB7", "lowlevel.\u00e9nergie" });
+		try
+		{
+			DescriptorIndex index = new DescriptorIndex(file, layout);
+			index.add(7, new Descriptors(layout, new float[] { 1, 2, 3 }));
+			index.flush();
+
+			DescriptorIndex reopened = new DescriptorIndex(file, layout);
+			check(reopened.contains(7), "The sound should be found after reopening.");
+			Descriptors descriptors = reopened.get(7);
+			check(descriptors.get(0) == 1 && descriptors.get(1) == 2 && descriptors.get(2) == 3, "The values should be where they were written, but they are " + descriptors);
+
+			try
+			{
+				new DescriptorIndex(file, new DescriptorLayout(new String[] { "a\u0000c", "\uD83C\uDFB5.\uD83C\uDFB6.\uD83C\uDFB7", "lowlevel.\u00e9nergie" }));
+				throw new AssertionError("An index should not open with different descriptors.");
+			}
+			catch(IOException e)
+			{
+				// expected
+			}
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for(File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,165 @@
+package com.algorithmicaudio.freesound.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.algorithmicaudio.freesound.response.DescriptorLayout;
+import com.algorithmicaudio.freesound.response.Descriptors;
+import com.algorithmicaudio.freesound.response.SearchResponse;
+import com.algorithmicaudio.freesound.response.SoundResponse;
+
+/*
+ * Checks that the SimilarityIndex finds nearly the same neighbours as comparing against every
+ * sound, that results are nearest first and leave out the sound being matched, that each
+ * descriptor is scaled so bpm doesn't drown out loudness, that the key is ignored, and that a
+ * result keeps everything needed to download it.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class SimilarityIndexTest
+{
+	private static final DescriptorLayout LAYOUT = new DescriptorLayout(new String[] { DescriptorLayout.BPM, DescriptorLayout.LOUDNESS, DescriptorLayout.PITCH_SALIENCE, DescriptorLayout.KEY });
+
+	public static void main(String[] args) throws Exception
+	{
+		searchFindsTheNearestSounds();
+		descriptorsAreScaled();
+		keyIsIgnored();
+		resultsAreCopies();
+		skippedSounds();
+		System.out.println("SimilarityIndexTest passed.");
+	}
+
+	private static void searchFindsTheNearestSounds()
+	{
+		Random random = new Random(7);
+		List<SoundResponse> sounds = new ArrayList<SoundResponse>();
+		for(long id = 0; id < 2000; id++)
+		{
+			sounds.add(sound(id, 60 + random.nextFloat() * 120, random.nextFloat(), random.nextFloat(), random.nextInt(12)));
+		}
+		SimilarityIndex index = SimilarityIndex.build(LAYOUT, sounds);
+		check(index.size() == 2000, "Every sound should be in the index, but it holds " + index.size());
+
+		// compare the approximate answers with the exact ones
+		int found = 0;
+		int expected = 0;
+		for(int i = 0; i < 50; i++)
+		{
+			SoundResponse target = sounds.get(i * 40);
+			SearchResponse approximate = index.search(target, 10);
+			SearchResponse exact = index.searchExact(target, 10);
+			check(approximate.results.size() == 10, "A search should return as many sounds as were asked for.");
+
+			Set<Long> exactIds = new HashSet<Long>();
+			for(SoundResponse sound : exact.results)
+			{
+				exactIds.add(sound.id);
+			}
+			double previous = 0;
+			for(SoundResponse sound : approximate.results)
+			{
+				check(sound.id != target.id, "A sound should not be similar to itself.");
+				check(sound.distance >= previous, "The results should be nearest first.");
+				previous = sound.distance;
+				if (exactIds.contains(sound.id))
+					found++;
+			}
+			expected += exactIds.size();
+		}
+
+		double recall = (double) found / expected;
+		check(recall >= 0.9, "The index should find at least 90% of the true nearest neighbours, but it found " + Math.round(recall * 100) + "%.");
+	}
+
+	private static void descriptorsAreScaled()
+	{
+		// bpm is spread over about 100, loudness over about 1
+		List<SoundResponse> sounds = new ArrayList<SoundResponse>();
+		Random random = new Random(11);
+		for(long id = 0; id < 200; id++)
+		{
+			sounds.add(sound(id, 60 + random.nextFloat() * 120, random.nextFloat(), 0.5f, 0));
+		}
+
+		// a sound 3 bpm away is much closer than one that is as loud as it can be
+		SoundResponse target = sound(1000, 120, 0.1f, 0.5f, 0);
+		SoundResponse tempoNeighbour = sound(1001, 123, 0.1f, 0.5f, 0);
+		SoundResponse loudnessNeighbour = sound(1002, 120, 0.9f, 0.5f, 0);
+		sounds.add(tempoNeighbour);
+		sounds.add(loudnessNeighbour);
+		SimilarityIndex index = SimilarityIndex.build(LAYOUT, sounds);
+
+		List<Long> order = new ArrayList<Long>();
+		for(SoundResponse sound : index.searchExact(target, 202).results)
+		{
+			order.add(sound.id);
+		}
+		check(order.indexOf(1001L) < order.indexOf(1002L), "Without scaling, 3 bpm would count for more than the whole range of loudness.");
+	}
+
+	private static void keyIsIgnored()
+	{
+		List<SoundResponse> sounds = new ArrayList<SoundResponse>();
+		sounds.add(sound(1, 120, 0.5f, 0.5f, 0));
+		sounds.add(sound(2, 120, 0.5f, 0.5f, 7));
+		sounds.add(sound(3, 140, 0.9f, 0.1f, 0));
+		SimilarityIndex index = SimilarityIndex.build(LAYOUT, sounds);
+
+		SearchResponse similar = index.search(sounds.get(0), 2);
+		check(similar.results.get(0).id == 2, "A sound in another key should still be the nearest.");
+		check(similar.results.get(0).distance == 0, "The key is a word, not a measurement, so it should not add distance.");
+	}
+
+	private static void resultsAreCopies()
+	{
+		List<SoundResponse> sounds = new ArrayList<SoundResponse>();
+		sounds.add(sound(1, 120, 0.5f, 0.5f, 0));
+		sounds.add(sound(2, 125, 0.5f, 0.5f, 0));
+		sounds.get(1).type = "flac";
+		sounds.get(1).username = "someone";
+		SimilarityIndex index = SimilarityIndex.build(LAYOUT, sounds);
+
+		SearchResponse similar = index.search(sounds.get(0), 5);
+		check(similar.count == 1 && similar.results.size() == 1 && similar.next == null, "The only other sound should be the one result.");
+		SoundResponse result = similar.results.get(0);
+		check(result != sounds.get(1), "The result should be a copy, so that its distance belongs to this search.");
+		check(result.distance > 0 && sounds.get(1).distance == 0, "The distance should be on the copy only.");
+		check("flac".equals(result.type), "The result should keep the file format, so that it can be downloaded under the right name.");
+		check("someone".equals(result.username) && result.descriptors == sounds.get(1).descriptors, "The result should keep the rest of the sound.");
+	}
+
+	private static void skippedSounds()
+	{
+		SimilarityIndex empty = SimilarityIndex.build(LAYOUT, new ArrayList<SoundResponse>());
+		check(empty.search(sound(1, 120, 0.5f, 0.5f, 0), 5).results.isEmpty(), "An empty index should find nothing.");
+
+		List<SoundResponse> sounds = new ArrayList<SoundResponse>();
+		sounds.add(sound(1, 120, 0.5f, 0.5f, 0));
+		sounds.add(sound(1, 130, 0.5f, 0.5f, 0));
+		SoundResponse withoutDescriptors = new SoundResponse();
+		withoutDescriptors.id = 2;
+		sounds.add(withoutDescriptors);
+		SimilarityIndex index = SimilarityIndex.build(LAYOUT, sounds);
+		check(index.size() == 1, "A sound that is already in the index, and a sound without descriptors, should be skipped, but the index holds " + index.size());
+	}
+
+	private static SoundResponse sound(long id, float bpm, float loudness, float pitchSalience, int key)
+	{
+		SoundResponse sound = new SoundResponse();
+		sound.id = id;
+		sound.name = "sound " + id;
+		sound.descriptors = new Descriptors(LAYOUT, new float[] { bpm, loudness, pitchSalience, key });
+		return sound;
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
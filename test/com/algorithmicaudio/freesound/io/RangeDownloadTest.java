@@ -0,0 +1,304 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/*
+ * Checks that Remote.fetchBinary resumes a download with an HTTP Range request: that a 206 answer
+ * is added to the end of the part file, that a 416 answer for a part file that is already whole
+ * publishes it, that a Content-Range which doesn't start where the part file ends throws the part
+ * away and starts again, that a server which ignores the Range header replaces the part file, and
+ * that the checksum always covers the whole file.
+ *
+ * The answers come from a scripted Transport instead of a web server, so that each test can say
+ * exactly which status and headers the client sees, and check the Range header it sent.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class RangeDownloadTest
+{
+	/**
+	 * A Transport that gives a list of prepared answers, one per request, and remembers the Range
+	 * header of each request.
+	 */
+	private static class ScriptedTransport implements Transport
+	{
+		private final Deque<TransportResponse> answers = new ArrayDeque<TransportResponse>();
+		private final List<String> ranges = new ArrayList<String>();
+
+		void answer(int status, byte[] body, String... headers)
+		{
+			Map<String, List<String>> headerMap = new HashMap<String, List<String>>();
+			for(int i = 0; i < headers.length; i += 2)
+			{
+				headerMap.put(headers[i], List.of(headers[i + 1]));
+			}
+			answers.add(new TransportResponse(status, null, headerMap, new ByteArrayInputStream(body)));
+		}
+
+		@Override
+		public TransportResponse get(String url, Map<String, String> headers) throws IOException
+		{
+			ranges.add(headers.get("Range"));
+			if (answers.isEmpty())
+				throw new AssertionError("The client sent more requests than expected.");
+			return answers.poll();
+		}
+
+		@Override
+		public TransportResponse post(String url, Map<String, String> headers, byte[] body) throws IOException
+		{
+			throw new AssertionError("A download should not post.");
+		}
+	}
+
+	private static final String URL = "https://freesound.org/apiv2/sounds/1/download/";
+
+	public static void main(String[] args) throws Exception
+	{
+		partialContentIsAppended();
+		droppedConnectionIsResumed();
+		finishedPartFileIsPublished();
+		mismatchedContentRangeStartsAgain();
+		changedFileStartsAgain();
+		ignoredRangeReplacesThePartFile();
+		refusalIsNotRetried();
+		System.out.println("RangeDownloadTest passed.");
+	}
+
+	private static void partialContentIsAppended() throws Exception
+	{
+		File directory = Files.createTempDirectory("download").toFile();
+		try
+		{
+			byte[] sound = sound(100);
+			File target = new File(directory, "1.wav");
+			Files.write(Remote.getPartFile(target.getPath()).toPath(), Arrays.copyOfRange(sound, 0, 40));
+
+			ScriptedTransport transport = new ScriptedTransport();
+			transport.answer(206, Arrays.copyOfRange(sound, 40, 100), "Content-Range", "bytes 40-99/100", "Content-Length", "60");
+			DownloadedFile downloaded = remote(transport).fetchBinary(URL, target.getPath(), "token", Priority.BACKGROUND);
+
+			check(transport.ranges.equals(Arrays.asList("bytes=40-")), "The client should ask for the bytes after the part file, but it sent " + transport.ranges);
+			checkDownloaded(downloaded, target, sound);
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void droppedConnectionIsResumed() throws Exception
+	{
+		File directory = Files.createTempDirectory("download").toFile();
+		try
+		{
+			byte[] sound = sound(100);
+			File target = new File(directory, "1.wav");
+
+			// the first connection closes after 30 of the 100 bytes
+			ScriptedTransport transport = new ScriptedTransport();
+			transport.answer(200, Arrays.copyOfRange(sound, 0, 30), "Content-Length", "100");
+			transport.answer(206, Arrays.copyOfRange(sound, 30, 100), "Content-Range", "bytes 30-99/100");
+			DownloadedFile downloaded = remote(transport).fetchBinary(URL, target.getPath(), "token", Priority.BACKGROUND);
+
+			check(transport.ranges.equals(Arrays.asList(null, "bytes=30-")), "The second attempt should only ask for the missing bytes, but the client sent " + transport.ranges);
+			checkDownloaded(downloaded, target, sound);
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void finishedPartFileIsPublished() throws Exception
+	{
+		File directory = Files.createTempDirectory("download").toFile();
+		try
+		{
+			byte[] sound = sound(100);
+			File target = new File(directory, "1.wav");
+			Files.write(Remote.getPartFile(target.getPath()).toPath(), sound);
+
+			// there is nothing after byte 99, because the part file already holds all of it
+			ScriptedTransport transport = new ScriptedTransport();
+			transport.answer(416, new byte[0], "Content-Range", "bytes */100");
+			DownloadedFile downloaded = remote(transport).fetchBinary(URL, target.getPath(), "token", Priority.BACKGROUND);
+
+			check(transport.ranges.size() == 1, "A finished part file should need one request, but it took " + transport.ranges.size());
+			checkDownloaded(downloaded, target, sound);
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void mismatchedContentRangeStartsAgain() throws Exception
+	{
+		File directory = Files.createTempDirectory("download").toFile();
+		try
+		{
+			byte[] sound = sound(100);
+			File target = new File(directory, "1.wav");
+			Files.write(Remote.getPartFile(target.getPath()).toPath(), Arrays.copyOfRange(sound, 0, 40));
+
+			// the server sends bytes from the wrong place, then something that isn't a Content-Range at all
+			ScriptedTransport transport = new ScriptedTransport();
+			transport.answer(206, Arrays.copyOfRange(sound, 50, 100), "Content-Range", "bytes 50-99/100");
+			transport.answer(200, sound, "Content-Length", "100");
+			DownloadedFile downloaded = remote(transport).fetchBinary(URL, target.getPath(), "token", Priority.BACKGROUND);
+
+			check(transport.ranges.equals(Arrays.asList("bytes=40-", null)), "After a bad Content-Range the client should ask for the whole file, but it sent " + transport.ranges);
+			checkDownloaded(downloaded, target, sound);
+
+			Files.write(Remote.getPartFile(target.getPath()).toPath(), Arrays.copyOfRange(sound, 0, 40));
+			transport = new ScriptedTransport();
+			transport.answer(206, Arrays.copyOfRange(sound, 40, 100), "Content-Range", "forty onwards");
+			transport.answer(200, sound, "Content-Length", "100");
+			downloaded = remote(transport).fetchBinary(URL, target.getPath(), "token", Priority.BACKGROUND);
+
+			check(transport.ranges.equals(Arrays.asList("bytes=40-", null)), "After an unreadable Content-Range the client should ask for the whole file, but it sent " + transport.ranges);
+			checkDownloaded(downloaded, target, sound);
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void changedFileStartsAgain() throws Exception
+	{
+		File directory = Files.createTempDirectory("download").toFile();
+		try
+		{
+			byte[] sound = sound(80);
+			File target = new File(directory, "1.wav");
+
+			// the part file is longer than the file on the server now, so it can't be part of it
+			Files.write(Remote.getPartFile(target.getPath()).toPath(), sound(100));
+			ScriptedTransport transport = new ScriptedTransport();
+			transport.answer(416, new byte[0], "Content-Range", "bytes */80");
+			transport.answer(200, sound, "Content-Length", "80");
+			DownloadedFile downloaded = remote(transport).fetchBinary(URL, target.getPath(), "token", Priority.BACKGROUND);
+
+			check(transport.ranges.equals(Arrays.asList("bytes=100-", null)), "A part file that doesn't match should be fetched again from the start, but the client sent " + transport.ranges);
+			checkDownloaded(downloaded, target, sound);
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void ignoredRangeReplacesThePartFile() throws Exception
+	{
+		File directory = Files.createTempDirectory("download").toFile();
+		try
+		{
+			byte[] sound = sound(100);
+			File target = new File(directory, "1.wav");
+			Files.write(Remote.getPartFile(target.getPath()).toPath(), Arrays.copyOfRange(sound, 0, 40));
+
+			// a server that doesn't support ranges sends the whole file, which must not be added to the 40 bytes
+			ScriptedTransport transport = new ScriptedTransport();
+			transport.answer(200, sound, "Content-Length", "100");
+			DownloadedFile downloaded = remote(transport).fetchBinary(URL, target.getPath(), "token", Priority.BACKGROUND);
+
+			check(transport.ranges.equals(Arrays.asList("bytes=40-")), "One request should be enough, but the client sent " + transport.ranges);
+			checkDownloaded(downloaded, target, sound);
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void refusalIsNotRetried() throws Exception
+	{
+		File directory = Files.createTempDirectory("download").toFile();
+		try
+		{
+			File target = new File(directory, "1.wav");
+			ScriptedTransport transport = new ScriptedTransport();
+			transport.answer(404, new byte[0]);
+			try
+			{
+				remote(transport).fetchBinary(URL, target.getPath(), "token", Priority.BACKGROUND);
+				throw new AssertionError("A missing sound should fail.");
+			}
+			catch(RemoteException e)
+			{
+				check(e.getStatusCode() == 404, "The failure should carry the status code, not " + e.getStatusCode());
+			}
+			check(transport.ranges.size() == 1, "A refusal should not be retried, but the client sent " + transport.ranges.size() + " requests.");
+			check(!target.exists(), "A failed download should not leave a file behind.");
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static Remote remote(Transport transport)
+	{
+		return new Remote(transport, null, null, new DownloadWriter(DownloadWriter.DEFAULT_BUFFER_SIZE, true));
+	}
+
+	/**
+	 * Check that the download was published whole, with the checksum of the whole file.
+	 */
+	private static void checkDownloaded(DownloadedFile downloaded, File target, byte[] sound) throws IOException
+	{
+		check(Arrays.equals(Files.readAllBytes(target.toPath()), sound), "The downloaded file should hold exactly the sound's bytes.");
+		check(!Remote.getPartFile(target.getPath()).exists(), "The part file should have been renamed.");
+		check(downloaded.getLength() == sound.length, "The download should report " + sound.length + " bytes, not " + downloaded.getLength());
+
+		CRC32C expected = new CRC32C();
+		expected.update(sound);
+		check(downloaded.getChecksum() == expected.getValue(), "The checksum should cover the whole file, including the bytes from earlier attempts.");
+	}
+
+	/**
+	 * Bytes that differ along the file, so that bytes in the wrong place are noticed.
+	 */
+	private static byte[] sound(int length)
+	{
+		byte[] sound = new byte[length];
+		for(int i = 0; i < length; i++)
+		{
+			sound[i] = (byte) (i * 7 + 3);
+		}
+		return sound;
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for(File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
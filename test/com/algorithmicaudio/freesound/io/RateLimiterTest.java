@@ -0,0 +1,184 @@
+package com.algorithmicaudio.freesound.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.algorithmicaudio.freesound.benchmark.StubServer;
+import com.algorithmicaudio.freesound.metrics.EndpointSnapshot;
+import com.algorithmicaudio.freesound.metrics.Metrics;
+
+/*
+ * Checks that the RateLimiter lets the most urgent requests through first, refuses requests whose
+ * turn can't come within the maximum wait instead of blocking, rejects limits that make no sense,
+ * and that the time requests spend waiting shows up in Metrics.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class RateLimiterTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		urgentRequestsGoFirst();
+		emptyDailyBucketFailsFast();
+		waitingIsLimited();
+		limitsAreValidated();
+		waitsAreInMetrics();
+		System.out.println("RateLimiterTest passed.");
+	}
+
+	private static void urgentRequestsGoFirst() throws Exception
+	{
+		// use up the bucket, so the next token is 200 ms away and the waiting requests are let through one at a time
+		RateLimiter limiter = new RateLimiter(300, 100000);
+		for(int i = 0; i < 300; i++)
+		{
+			limiter.acquire(Priority.INTERACTIVE);
+		}
+
+		// the least urgent request is first in line, but the others arrive before the next token
+		List<Priority> order = new ArrayList<Priority>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(Priority priority : new Priority[] { Priority.PREFETCH, Priority.BACKGROUND, Priority.INTERACTIVE })
+		{
+			Thread thread = new Thread(() -> {
+				try
+				{
+					limiter.acquire(priority);
+					synchronized (order)
+					{
+						order.add(priority);
+					}
+				}
+				catch(Exception e)
+				{
+					throw new RuntimeException(e);
+				}
+			});
+			thread.start();
+			threads.add(thread);
+			waitForQueue(limiter, threads.size());
+		}
+		for(Thread thread : threads)
+		{
+			thread.join(5000);
+		}
+
+		check(order.equals(List.of(Priority.INTERACTIVE, Priority.BACKGROUND, Priority.PREFETCH)), "The most urgent request should go first, but the order was " + order);
+	}
+
+	private static void emptyDailyBucketFailsFast() throws Exception
+	{
+		// once the 60 requests of the day are used, the next one is 24 minutes away, which is longer than the 1 second maximum wait
+		RateLimiter limiter = new RateLimiter(1000, 60, 1000);
+		for(int i = 0; i < 60; i++)
+		{
+			limiter.acquire(Priority.BACKGROUND);
+		}
+
+		long start = System.nanoTime();
+		try
+		{
+			limiter.acquire(Priority.INTERACTIVE);
+			throw new AssertionError("A request that can't go in time should be refused.");
+		}
+		catch(RemoteException e)
+		{
+			check(e.getStatusCode() == 429, "A refused request should look like HTTP 429.");
+		}
+		long waitedMillis = (System.nanoTime() - start) / 1000000;
+		check(waitedMillis < 500, "A request that can't go in time should fail at once, but it waited " + waitedMillis + " ms.");
+		check(limiter.getRejectedCount() == 1, "The refusal should be counted.");
+	}
+
+	private static void waitingIsLimited() throws Exception
+	{
+		// the limiter is paused for much longer than anyone may wait
+		RateLimiter limiter = new RateLimiter(60, 2000, 200);
+		limiter.pause(60000);
+		long start = System.nanoTime();
+		try
+		{
+			limiter.acquire(Priority.INTERACTIVE);
+			throw new AssertionError("A paused limiter should refuse requests that can't wait that long.");
+		}
+		catch(RemoteException e)
+		{
+			// expected
+		}
+		check((System.nanoTime() - start) / 1000000 < 500, "The refusal should not wait for the pause to end.");
+		check(limiter.getQueueLength() == 0, "A refused request should leave the queue.");
+	}
+
+	private static void limitsAreValidated()
+	{
+		int[][] badLimits = { { 0, 2000 }, { 60, 0 }, { -1, 2000 } };
+		for(int[] limits : badLimits)
+		{
+			try
+			{
+				new RateLimiter(limits[0], limits[1]);
+				throw new AssertionError("A limit of " + limits[0] + "/" + limits[1] + " should be rejected.");
+			}
+			catch(IllegalArgumentException e)
+			{
+				// expected
+			}
+		}
+		try
+		{
+			new RateLimiter(60, 2000, -1);
+			throw new AssertionError("A negative maximum wait should be rejected.");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+
+	private static void waitsAreInMetrics() throws Exception
+	{
+		StubServer server = new StubServer("ok".getBytes(StandardCharsets.UTF_8));
+		try
+		{
+			Metrics.reset();
+
+			// use up the bucket, so that each request waits about 50 ms for the next token. The Remote is made first, so that starting its HttpClient doesn't give the bucket time to refill.
+			RateLimiter limiter = new RateLimiter(1200, 100000);
+			Remote remote = new Remote(null, null, limiter, null);
+			for(int i = 0; i < 1200; i++)
+			{
+				limiter.acquire(Priority.INTERACTIVE);
+			}
+			for(int i = 0; i < 3; i++)
+			{
+				remote.fetchText(server.url("/apiv2/sounds/1/"), Priority.INTERACTIVE);
+			}
+
+			EndpointSnapshot endpoint = Metrics.snapshot().getEndpoint(Metrics.OTHER);
+			check(endpoint.getQueueWait().getCount() == 3, "Every request should record its wait, but " + endpoint.getQueueWait().getCount() + " did.");
+			check(endpoint.getQueueWait().getMaximumMillis() >= 20, "The requests that waited for a token should show it, but the longest wait was " + endpoint.getQueueWait().getMaximumMillis() + " ms.");
+		}
+		finally
+		{
+			server.stop();
+		}
+	}
+
+	private static void waitForQueue(RateLimiter limiter, int length) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while (limiter.getQueueLength() < length && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+		check(limiter.getQueueLength() == length, "The requests should be waiting.");
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
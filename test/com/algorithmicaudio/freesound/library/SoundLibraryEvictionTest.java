@@ -0,0 +1,88 @@
+package com.algorithmicaudio.freesound.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import com.algorithmicaudio.freesound.io.DownloadedFile;
+
+/*
+ * Checks that a sound that was just downloaded is never the one a full library evicts, even under
+ * LEAST_FREQUENTLY_USED, where a new sound has the lowest use count in the library.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if the check fails.
+ */
+public class SoundLibraryEvictionTest
+{
+	private static final int SOUND_SIZE = 1000;
+
+	public static void main(String[] args) throws Exception
+	{
+		for(EvictionPolicy policy : EvictionPolicy.values())
+		{
+			newSoundSurvivesEviction(policy);
+		}
+		System.out.println("SoundLibraryEvictionTest passed.");
+	}
+
+	private static void newSoundSurvivesEviction(EvictionPolicy policy) throws IOException
+	{
+		File directory = Files.createTempDirectory("library").toFile();
+		try (SoundLibrary library = new SoundLibrary(directory, 0, policy))
+		{
+			// four sounds that were last used well before the grace period, and used twice
+			long longAgo = System.currentTimeMillis() - SoundLibrary.EVICTION_GRACE_MILLIS * 10;
+			for(long soundId = 1; soundId <= 4; soundId++)
+			{
+				LibraryEntry old = library.add(soundId, "wav", download(library, soundId), null);
+				old.recordUse(longAgo + soundId);
+			}
+
+			// the new sound pushes the library over its limit
+			library.setMaximumBytes(4 * SOUND_SIZE);
+			library.add(5, "wav", download(library, 5), null);
+			library.evict();
+
+			check(library.contains(5), policy + ": the sound that was just downloaded was evicted.");
+			check(library.get(5).getFile().exists(), policy + ": the file of the sound that was just downloaded was deleted.");
+			check(library.get(5).getUseCount() == 1, policy + ": the download should count as the first use.");
+			check(!library.contains(1), policy + ": the oldest sound should have been evicted instead.");
+			check(library.getSizeInBytes() <= 4 * SOUND_SIZE, policy + ": the library is still over its limit.");
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	/**
+	 * Write a sound file where the library expects it, as a download would.
+	 */
+	private static DownloadedFile download(SoundLibrary library, long soundId) throws IOException
+	{
+		File file = library.getFile(soundId, "wav");
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), new byte[SOUND_SIZE]);
+		return new DownloadedFile(file, SOUND_SIZE, -1);
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for(File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
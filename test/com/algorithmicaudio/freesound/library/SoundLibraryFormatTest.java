@@ -0,0 +1,121 @@
+package com.algorithmicaudio.freesound.library;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import com.algorithmicaudio.freesound.io.DownloadedFile;
+
+/*
+ * Checks that the library saves each sound with the extension of its format, that the format is
+ * kept in the manifest so the file is found again after the library is reopened, and that a
+ * manifest written before formats were saved still finds its .wav files.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class SoundLibraryFormatTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		formatSurvivesReopening();
+		oldManifestsMeanWav();
+		System.out.println("SoundLibraryFormatTest passed.");
+	}
+
+	private static void formatSurvivesReopening() throws IOException
+	{
+		File directory = Files.createTempDirectory("library").toFile();
+		try
+		{
+			try (SoundLibrary library = new SoundLibrary(directory))
+			{
+				library.add(1, "flac", download(library.getFile(1, "flac")), null);
+				library.add(2, "MP3", download(library.getFile(2, "MP3")), null);
+				library.add(3, null, download(library.getFile(3, null)), null);
+			}
+
+			try (SoundLibrary library = new SoundLibrary(directory))
+			{
+				check(library.get(1).getType().equals("flac"), "The format should be read back from the manifest.");
+				check(library.get(1).getFile().getName().equals("1.flac"), "A flac sound should be saved as .flac, not " + library.get(1).getFile().getName());
+				check(library.get(2).getFile().getName().equals("2.mp3"), "Formats should be saved in lower case.");
+				check(library.get(3).getFile().getName().equals("3"), "A sound of unknown format should have no extension.");
+				for(long soundId = 1; soundId <= 3; soundId++)
+				{
+					check(library.getSound(soundId).exists(), "Sound " + soundId + " should be found after reopening.");
+				}
+			}
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void oldManifestsMeanWav() throws IOException
+	{
+		File directory = Files.createTempDirectory("library").toFile();
+		try
+		{
+			// a version 3 manifest with one sound, as written before the format was saved
+			File sound = new File(new File(directory, "07"), "7.wav");
+			download(sound);
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(directory, "manifest.bin"))))
+			{
+				out.writeInt(0x46534c4d);
+				out.writeInt(3);
+				out.writeLong(42); // the generation
+				out.writeByte(2); // an add record
+				out.writeLong(7); // the sound id
+				out.writeLong(sound.length());
+				out.writeLong(-1); // no checksum
+				out.writeLong(System.currentTimeMillis());
+				out.writeLong(1); // the use count
+				out.writeInt(-1); // no descriptors
+			}
+
+			try (SoundLibrary library = new SoundLibrary(directory))
+			{
+				check(library.contains(7), "The sound in the old manifest should be in the library.");
+				check(library.get(7).getType().equals("wav"), "A sound from an old manifest should be a wav.");
+				check(library.get(7).getFile().equals(sound), "A sound from an old manifest should keep its .wav file.");
+			}
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	/**
+	 * Write a small file where the library expects a sound, as a download would.
+	 */
+	private static DownloadedFile download(File file) throws IOException
+	{
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), new byte[100]);
+		return new DownloadedFile(file, 100, -1);
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for(File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
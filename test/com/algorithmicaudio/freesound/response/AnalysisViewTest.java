@@ -0,0 +1,89 @@
+package com.algorithmicaudio.freesound.response;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/*
+ * Checks that a sound parsed the default way, with the descriptors read straight into floats,
+ * still offers the analysis as a map through getAnalysis, holding the same descriptors as the
+ * raw map that is kept when keepAnalysis is turned on.
+ *
+ * It reads the recorded search page in the benchmark fixtures, so run it from the project folder.
+ *
+ * The project has no test framework, so this is a plain program. Run it with the classes from src
+ * and this folder on the classpath. It exits with an AssertionError if a check fails.
+ */
+public class AnalysisViewTest
+{
+	private static final String PAGE = "test/com/algorithmicaudio/freesound/benchmark/fixtures/search-text.json";
+
+	public static void main(String[] args) throws Exception
+	{
+		DescriptorLayout layout = new DescriptorLayout(new String[] { DescriptorLayout.LOUDNESS, DescriptorLayout.BPM, DescriptorLayout.KEY, DescriptorLayout.SCALE });
+		SearchResponse direct = read(new SoundResponseAdapter(layout, false));
+		SearchResponse kept = read(new SoundResponseAdapter(layout, true));
+		check(direct.results.size() == kept.results.size() && !direct.results.isEmpty(), "Both ways should read the same sounds.");
+
+		int compared = 0;
+		for(int i = 0; i < direct.results.size(); i++)
+		{
+			SoundResponse sound = direct.results.get(i);
+			check(sound.analysis == null, "The raw analysis map should not be built by default.");
+			Map<Object, Object> view = sound.getAnalysis();
+			check(view != null, "getAnalysis should build a map from the descriptors.");
+			check(view == sound.getAnalysis(), "The map should be built once and kept.");
+
+			Map<Object, Object> raw = kept.results.get(i).getAnalysis();
+			check(raw == kept.results.get(i).analysis, "getAnalysis should return the raw map when it was kept.");
+			for(int slot = 0; slot < layout.size(); slot++)
+			{
+				Object expected = lookup(raw, layout.getField(slot));
+				Object actual = lookup(view, layout.getField(slot));
+				if (expected instanceof Number)
+				{
+					check(actual instanceof Double && ((Double) actual).floatValue() == ((Number) expected).floatValue(), layout.getField(slot) + " should be " + expected + ", but it is " + actual);
+					compared++;
+				}
+				else if (expected instanceof String)
+				{
+					check(expected.equals(actual), layout.getField(slot) + " should be " + expected + ", but it is " + actual);
+					compared++;
+				}
+				else
+				{
+					check(actual == null, layout.getField(slot) + " is missing, so it should not be in the map.");
+				}
+			}
+		}
+		check(compared > 0, "The fixture should have some descriptors to compare.");
+		System.out.println("AnalysisViewTest passed.");
+	}
+
+	private static SearchResponse read(SoundResponseAdapter adapter) throws IOException
+	{
+		try (FileReader reader = new FileReader(PAGE, StandardCharsets.UTF_8))
+		{
+			return SearchResponseReader.read(reader, adapter, null);
+		}
+	}
+
+	private static Object lookup(Map<?, ?> analysis, String field)
+	{
+		Object node = analysis;
+		for(String segment : field.split("\\."))
+		{
+			if (!(node instanceof Map))
+				return null;
+			node = ((Map<?, ?>) node).get(segment);
+		}
+		return node;
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}